@@ -18,12 +18,15 @@ import org.spongepowered.asm.mixin.Interface.Remap;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 import org.valkyrienskies.mod.common.collision.EntityPolygonCollider;
 import org.valkyrienskies.mod.common.collision.Polygon;
 import org.valkyrienskies.mod.common.collision.ShipPolygon;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.config.VSConfig.ExplosionMode;
+import org.valkyrienskies.mod.common.ships.QueryableShipData;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.ships.ship_world.IHasShipManager;
 import org.valkyrienskies.mod.common.ships.ship_world.IPhysObjectWorld;
@@ -78,6 +81,28 @@ public abstract class MixinWorld implements IWorldVS, IHasShipManager {
         return getBiomeForCoordsBody(pos);
     }
 
+    /**
+     * Block updates are how block changes and tile entity changes get to the players watching a chunk, so the chunk
+     * packets of a ship have to be sent again to the players that got them without watching the chunk. Tile entities
+     * that only mark their chunk dirty, like furnaces every tick, don't send anything and are left alone. Loaded ships
+     * can only be looked up from the game thread.
+     */
+    @Inject(method = "notifyBlockUpdate", at = @At("HEAD"))
+    private void preNotifyBlockUpdate(BlockPos pos, IBlockState oldState, IBlockState newState, int flags,
+        CallbackInfo callbackInfo) {
+        World world = World.class.cast(this);
+        if (!world.isRemote && ShipChunkAllocator.isChunkInShipyard(pos.getX() >> 4, pos.getZ() >> 4)
+            && world.getMinecraftServer().isCallingFromMinecraftThread()) {
+            QueryableShipData.get(world).getShipFromChunk(pos.getX() >> 4, pos.getZ() >> 4).ifPresent(shipData -> {
+                PhysicsObject physicsObject = ValkyrienUtils.getPhysObjWorld(world)
+                    .getPhysObjectFromUUID(shipData.getUuid());
+                if (physicsObject != null) {
+                    physicsObject.getChunkPacketCache().onBlockUpdate(pos);
+                }
+            });
+        }
+    }
+
     private static boolean isBoundingBoxTooLarge(AxisAlignedBB alignedBB) {
         if ((alignedBB.maxX - alignedBB.minX) * (alignedBB.maxY - alignedBB.minY) * (alignedBB.maxZ
             - alignedBB.minZ) > BOUNDING_BOX_SIZE_LIMIT) {
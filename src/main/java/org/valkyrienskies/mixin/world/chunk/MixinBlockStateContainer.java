@@ -10,20 +10,24 @@ import org.spongepowered.asm.mixin.Overwrite;
 import org.spongepowered.asm.mixin.Shadow;
 import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
 import org.valkyrienskies.mod.common.util.datastructures.IBitOctreeProvider;
-import org.valkyrienskies.mod.common.util.datastructures.SimpleBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.SectionBitOctreeCache;
 
 @Mixin(BlockStateContainer.class)
-public class MixinBlockStateContainer implements IBitOctreeProvider {
+public abstract class MixinBlockStateContainer implements IBitOctreeProvider {
 
     @Shadow
     @Final
     public static IBlockState AIR_BLOCK_STATE;
-    private final IBitOctree bitOctree = new SimpleBitOctree();
+    // Only the sections near ships ever need an octree, so it's created the first time the physics asks for it
+    private volatile SectionBitOctreeCache bitOctreeCache = null;
     @Shadow
     public IBlockStatePalette palette;
     @Shadow
     public BitArray storage;
 
+    @Shadow
+    protected abstract IBlockState get(int index);
+
     /**
      * @author thebest108
      */
@@ -36,15 +40,26 @@ public class MixinBlockStateContainer implements IBitOctreeProvider {
         this.storage.setAt(index, i);
 
         // VS code starts here:
-        int x = index & 0xF;
-        int z = (index & 0xF0) >> 4;
-        int y = (index & 0xF00) >> 8;
-        boolean isStateSolid = state.getMaterial().isSolid();
-        bitOctree.set(x & 15, y & 15, z & 15, isStateSolid);
+        SectionBitOctreeCache cache = bitOctreeCache;
+        if (cache != null && !cache.onBlockSet(index)) {
+            // The physics hasn't looked at this section in a while, it gets a new octree if it ever does again
+            bitOctreeCache = null;
+        }
     }
 
     @Override
     public IBitOctree getBitOctree() {
-        return bitOctree;
+        SectionBitOctreeCache cache = bitOctreeCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = bitOctreeCache;
+                if (cache == null) {
+                    // May be called off thread, get() handles the palette being resized at the same time
+                    cache = new SectionBitOctreeCache(index -> get(index).getMaterial().isSolid());
+                    bitOctreeCache = cache;
+                }
+            }
+        }
+        return cache.get();
     }
-}
\ No newline at end of file
+}
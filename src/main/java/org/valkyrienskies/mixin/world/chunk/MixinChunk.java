@@ -2,6 +2,7 @@ package org.valkyrienskies.mixin.world.chunk;
 
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.Entity;
+import net.minecraft.init.Blocks;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.MathHelper;
@@ -21,6 +22,8 @@ import org.valkyrienskies.mod.common.ships.QueryableShipData;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.ShipDataMethods;
 import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.ships.ship_world.WorldServerShipManager;
 import org.valkyrienskies.mod.common.util.ValkyrienUtils;
 
 import java.util.ArrayList;
@@ -106,11 +109,33 @@ public abstract class MixinChunk implements ITileEntitiesToRenderProvider {
      */
     @Inject(method = "setBlockState", at = @At("HEAD"))
     private void pre_setBlockState(BlockPos pos, IBlockState state, CallbackInfoReturnable<IBlockState> cir) {
-        if (!world.isRemote) {
+        // Only shipyard chunks can be part of a ship, skip the lookup for everything else
+        if (!world.isRemote && ShipChunkAllocator.isChunkInShipyard(this.x, this.z)) {
             IBlockState oldState = getBlockState(pos);
             QueryableShipData queryableShipData = QueryableShipData.get(world);
             Optional<ShipData> shipDataOptional = queryableShipData.getShipFromChunk(pos.getX() >> 4, pos.getZ() >> 4);
-            shipDataOptional.ifPresent(shipData -> ShipDataMethods.onSetBlockState(shipData, pos, oldState, state));
+            if (!shipDataOptional.isPresent() && state.getBlock() != Blocks.AIR) {
+                // Ships only claim the chunks they have blocks in, so claim this one for the ship that owns this part
+                // of the shipyard.
+                WorldServerShipManager shipManager = (WorldServerShipManager) ValkyrienUtils.getPhysObjWorld(world);
+                shipDataOptional = shipManager.claimChunkOnDemand((Chunk) (Object) this);
+            }
+            shipDataOptional.ifPresent(shipData -> {
+                ShipDataMethods.onSetBlockState(shipData, pos, oldState, state);
+                PhysicsObject physicsObject = ValkyrienUtils.getPhysObjWorld(world)
+                    .getPhysObjectFromUUID(shipData.getUuid());
+                if (physicsObject != null) {
+                    physicsObject.getForceProducerRegistry().onSetBlockState(pos, state);
+                    physicsObject.getCollisionBoxCache().onSetBlockState(pos);
+                    physicsObject.getChunkPacketCache().onSetBlockState(pos);
+                    physicsObject.getPhysicsCalculations().getWorldCollision().onShipBlockChanged();
+                    physicsObject.getSleepTracker().wakeUp();
+                }
+            });
+        } else if (world.isRemote && ShipChunkAllocator.isChunkInShipyard(this.x, this.z)) {
+            // Players collide with ships on the client too
+            ValkyrienUtils.getPhysoManagingBlock(world, pos)
+                .ifPresent(physicsObject -> physicsObject.getCollisionBoxCache().onSetBlockState(pos));
         }
     }
 
@@ -0,0 +1,45 @@
+package org.valkyrienskies.mixin.world.chunk;
+
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
+import org.valkyrienskies.mod.common.util.ValkyrienUtils;
+
+/**
+ * This class contains the mixins for the Chunk class that are client side only.
+ */
+@Mixin(Chunk.class)
+public abstract class MixinChunkClient {
+
+    @Shadow
+    @Final
+    public int x;
+
+    @Shadow
+    @Final
+    public int z;
+
+    @Shadow
+    @Final
+    public World world;
+
+    /**
+     * Chunk packets replace the blocks without calling setBlockState, so the collision boxes of the ship that owns
+     * this chunk have to be rebuilt.
+     */
+    @Inject(method = "read", at = @At("RETURN"))
+    private void postRead(PacketBuffer buf, int availableSections, boolean groundUpContinuous, CallbackInfo ci) {
+        if (ShipChunkAllocator.isChunkInShipyard(this.x, this.z)) {
+            ValkyrienUtils.getPhysoManagingBlock(world, new BlockPos(this.x << 4, 0, this.z << 4))
+                .ifPresent(physicsObject -> physicsObject.getCollisionBoxCache().onChunkReplaced(this.x, this.z));
+        }
+    }
+}
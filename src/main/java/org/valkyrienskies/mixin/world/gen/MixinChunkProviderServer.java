@@ -1,13 +1,17 @@
 package org.valkyrienskies.mixin.world.gen;
 
 import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.gen.ChunkProviderServer;
+import net.minecraft.world.gen.IChunkGenerator;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
 import org.valkyrienskies.mod.common.ships.ship_world.WorldServerShipManager;
 import org.valkyrienskies.mod.common.util.ValkyrienUtils;
 
@@ -22,7 +26,7 @@ public class MixinChunkProviderServer {
     public WorldServer world;
 
     /**
-     * Used to prevent the world from unloading the chunks of ships being loaded in the background
+     * Used to prevent the world from unloading the chunks of ships that are being loaded
      */
     @Inject(method = "tick", at = @At("HEAD"))
     private void preTick(CallbackInfoReturnable<Boolean> cir) {
@@ -31,4 +35,17 @@ public class MixinChunkProviderServer {
             droppedChunks.remove(chunkPos);
         }
     }
+
+    /**
+     * Ships claim shipyard chunks as they need them, so the unclaimed chunks in the shipyard must stay empty. Don't
+     * generate terrain there, otherwise a ship claiming the chunk later would get a chunk full of terrain.
+     */
+    @Redirect(method = "provideChunk", at = @At(value = "INVOKE",
+        target = "Lnet/minecraft/world/gen/IChunkGenerator;generateChunk(II)Lnet/minecraft/world/chunk/Chunk;"))
+    private Chunk redirectGenerateChunk(IChunkGenerator chunkGenerator, int x, int z) {
+        if (ShipChunkAllocator.isChunkInShipyard(x, z)) {
+            return new Chunk(world, x, z);
+        }
+        return chunkGenerator.generateChunk(x, z);
+    }
 }
@@ -2,6 +2,8 @@ package org.valkyrienskies.mod.client.render;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.*;
@@ -14,13 +16,16 @@ import net.minecraft.util.BlockRenderLayer;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.world.World;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import net.minecraftforge.client.ForgeHooksClient;
 import net.minecraftforge.client.MinecraftForgeClient;
 import org.lwjgl.opengl.GL11;
+import org.valkyrienskies.mod.client.render.ShipSectionMesher.SectionMesh;
 import org.valkyrienskies.mod.common.collision.Polygon;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.util.ValkyrienUtils;
 import valkyrienwarfare.api.TransformType;
 
 public class PhysRenderChunk {
@@ -101,13 +106,21 @@ public class PhysRenderChunk {
         int maxY();
     }
 
+    /**
+     * Renders a section from vertex buffers. The section is meshed in the background from a snapshot whenever it
+     * changes, and the buffers keep showing the last mesh until the new one is ready.
+     */
     private class RenderLayerVBO implements IVSRenderChunk {
 
         Chunk chunkToRender;
         int yMin, yMax;
         VertexBuffer cutoutBuffer, cutoutMippedBuffer, solidBuffer, translucentBuffer;
         PhysRenderChunk parent;
-        boolean needsCutoutUpdate, needsCutoutMippedUpdate, needsSolidUpdate, needsTranslucentUpdate;
+        // Goes up every time the section changes, the buffers hold the mesh of builtVersion
+        int dirtyVersion, builtVersion;
+        // The mesh of pendingVersion being built in the background, at most one at a time
+        CompletableFuture<SectionMesh> pendingMesh;
+        int pendingVersion;
         List<TileEntity> renderTiles = new ArrayList<>();
 
         RenderLayerVBO(Chunk chunk, int yMin, int yMax, PhysRenderChunk parent) {
@@ -120,6 +133,7 @@ public class PhysRenderChunk {
             cutoutMippedBuffer = null;
             solidBuffer = null;
             translucentBuffer = null;
+            pendingMesh = null;
         }
 
         public int minY() {
@@ -131,10 +145,8 @@ public class PhysRenderChunk {
         }
 
         public void markDirty() {
-            needsCutoutUpdate = true;
-            needsCutoutMippedUpdate = true;
-            needsSolidUpdate = true;
-            needsTranslucentUpdate = true;
+            // Any number of changes before the next rebuild starts are handled by that rebuild
+            dirtyVersion++;
             updateRenderTileEntities();
         }
 
@@ -150,6 +162,11 @@ public class PhysRenderChunk {
         }
 
         public void deleteRenderChunk() {
+            if (pendingMesh != null) {
+                // The mesh isn't needed anymore, but its buffers can still be reused
+                pendingMesh.thenAccept(ShipSectionMesher::releaseMesh);
+                pendingMesh = null;
+            }
             clearRenderLists();
             Minecraft.getMinecraft().renderGlobal.updateTileEntities(renderTiles, new ArrayList<>());
             renderTiles.clear();
@@ -167,37 +184,52 @@ public class PhysRenderChunk {
         }
 
         public void renderBlockLayer(BlockRenderLayer layerToRender, double partialTicks, int pass) {
+            updateMesh();
+            VertexBuffer renderBuffer;
             switch (layerToRender) {
                 case CUTOUT:
-                    if (needsCutoutUpdate) {
-                        updateList(layerToRender);
-                    }
-                    FastBlockModelRenderer.renderVertexBuffer(cutoutBuffer);
+                    renderBuffer = cutoutBuffer;
                     break;
                 case CUTOUT_MIPPED:
-                    if (needsCutoutMippedUpdate) {
-                        updateList(layerToRender);
-                    }
-                    FastBlockModelRenderer.renderVertexBuffer(cutoutMippedBuffer);
+                    renderBuffer = cutoutMippedBuffer;
                     break;
                 case SOLID:
-                    if (needsSolidUpdate) {
-                        updateList(layerToRender);
-                    }
-                    FastBlockModelRenderer.renderVertexBuffer(solidBuffer);
+                    renderBuffer = solidBuffer;
                     break;
                 case TRANSLUCENT:
-                    if (needsTranslucentUpdate) {
-                        updateList(layerToRender);
-                    }
-                    FastBlockModelRenderer.renderVertexBuffer(translucentBuffer);
+                    renderBuffer = translucentBuffer;
                     break;
                 default:
+                    renderBuffer = null;
                     break;
             }
+            // Null until the first mesh is done
+            if (renderBuffer != null) {
+                FastBlockModelRenderer.renderVertexBuffer(renderBuffer);
+            }
         }
 
-        private void updateList(BlockRenderLayer layerToUpdate) {
+        /**
+         * Uploads the pending mesh if it's done, and starts a new one if the section changed since the last. Never waits
+         * for a mesh to be built, unless meshing in the background is turned off.
+         */
+        private void updateMesh() {
+            if (pendingMesh != null) {
+                if (!pendingMesh.isDone()) {
+                    return;
+                }
+                // A failed mesh was already logged, it's only tried again once the section changes
+                if (!pendingMesh.isCompletedExceptionally()) {
+                    SectionMesh mesh = pendingMesh.join();
+                    uploadMesh(mesh);
+                    ShipSectionMesher.releaseMesh(mesh);
+                }
+                builtVersion = pendingVersion;
+                pendingMesh = null;
+            }
+            if (builtVersion == dirtyVersion) {
+                return;
+            }
             if (parent.toRender.getShipRenderer() == null) {
                 return;
             }
@@ -205,95 +237,37 @@ public class PhysRenderChunk {
             if (offsetPos == null) {
                 return;
             }
-            // Tessellator tessellator = Tessellator.getInstance();
-            // BufferBuilder worldrenderer = tessellator.getBuffer();
-            BufferBuilder vsChunkBuilder = FastBlockModelRenderer.VERTEX_BUILDER;
-            vsChunkBuilder.begin(GL11.GL_QUADS, DefaultVertexFormats.BLOCK);
-            vsChunkBuilder.setTranslation(-offsetPos.getX(), -offsetPos.getY(), -offsetPos.getZ());
-
-            // The vertex buffer we're going to render this 16x16x16 chunk into
-            VertexBuffer renderBuffer;
-
-            switch (layerToUpdate) {
-                case CUTOUT:
-                    if (cutoutBuffer != null) {
-                        cutoutBuffer.deleteGlBuffers();
-                    }
-                    cutoutBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
-                    renderBuffer = cutoutBuffer;
-                    break;
-                case CUTOUT_MIPPED:
-                    if (cutoutMippedBuffer != null) {
-                        cutoutMippedBuffer.deleteGlBuffers();
-                    }
-                    cutoutMippedBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
-                    renderBuffer = cutoutMippedBuffer;
-                    break;
-                case SOLID:
-                    if (solidBuffer != null) {
-                        solidBuffer.deleteGlBuffers();
-                    }
-                    solidBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
-                    renderBuffer = solidBuffer;
-                    break;
-                case TRANSLUCENT:
-                    if (translucentBuffer != null) {
-                        translucentBuffer.deleteGlBuffers();
-                    }
-                    translucentBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
-                    renderBuffer = translucentBuffer;
-                    break;
-                default:
-                    throw new IllegalStateException("Unexpected value: " + layerToUpdate);
-            }
-
-            // Be careful with render layers
-            BlockRenderLayer oldLayer = MinecraftForgeClient.getRenderLayer();
-            ForgeHooksClient.setRenderLayer(layerToUpdate);
-            MutableBlockPos pos = new MutableBlockPos();
-            for (int x = chunkToRender.x * 16; x < chunkToRender.x * 16 + 16; x++) {
-                for (int z = chunkToRender.z * 16; z < chunkToRender.z * 16 + 16; z++) {
-                    for (int y = yMin; y <= yMax; y++) {
-                        pos.setPos(x, y, z);
-                        IBlockState iblockstate = chunkToRender.getBlockState(pos);
-                        try {
-                            if (iblockstate.getBlock()
-                                .canRenderInLayer(iblockstate, layerToUpdate)) {
-                                Minecraft.getMinecraft().getBlockRendererDispatcher()
-                                    .renderBlock(iblockstate, pos, chunkToRender.world, vsChunkBuilder);
-                            }
-                        } catch (NullPointerException e) {
-                            System.out.println("Something was null!");
-                        }
-                    }
-                }
+            BlockPos sectionMin = new BlockPos(chunkToRender.x << 4, yMin, chunkToRender.z << 4);
+
+            if (!ShipSectionMesher.isAsyncEnabled()) {
+                SectionMesh mesh = ShipSectionMesher.build(chunkToRender.world, sectionMin, offsetPos);
+                uploadMesh(mesh);
+                ShipSectionMesher.releaseMesh(mesh);
+                builtVersion = dirtyVersion;
+            } else if (ShipSectionMesher.canScheduleBuild()) {
+                World world = chunkToRender.world;
+                ShipSectionSnapshot snapshot = new ShipSectionSnapshot(world, sectionMin.getX(), sectionMin.getY(),
+                    sectionMin.getZ(), pos -> ValkyrienUtils.getTileEntitySafe(world, pos));
+                pendingVersion = dirtyVersion;
+                pendingMesh = ShipSectionMesher.buildAsync(snapshot, sectionMin, offsetPos);
             }
+        }
 
-            vsChunkBuilder.finishDrawing();
-            renderBuffer.bufferData(vsChunkBuilder.getByteBuffer());
-            vsChunkBuilder.reset();
-
-            // Fix the old render layer
-            ForgeHooksClient.setRenderLayer(oldLayer);
-
-            vsChunkBuilder.setTranslation(0, 0, 0);
+        private void uploadMesh(SectionMesh mesh) {
+            cutoutBuffer = uploadLayer(cutoutBuffer, mesh, BlockRenderLayer.CUTOUT);
+            cutoutMippedBuffer = uploadLayer(cutoutMippedBuffer, mesh, BlockRenderLayer.CUTOUT_MIPPED);
+            solidBuffer = uploadLayer(solidBuffer, mesh, BlockRenderLayer.SOLID);
+            translucentBuffer = uploadLayer(translucentBuffer, mesh, BlockRenderLayer.TRANSLUCENT);
+        }
 
-            switch (layerToUpdate) {
-                case CUTOUT:
-                    needsCutoutUpdate = false;
-                    break;
-                case CUTOUT_MIPPED:
-                    needsCutoutMippedUpdate = false;
-                    break;
-                case SOLID:
-                    needsSolidUpdate = false;
-                    break;
-                case TRANSLUCENT:
-                    needsTranslucentUpdate = false;
-                    break;
-                default:
-                    break;
+        private VertexBuffer uploadLayer(@Nullable VertexBuffer renderBuffer, SectionMesh mesh,
+            BlockRenderLayer layer) {
+            if (renderBuffer == null) {
+                renderBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
             }
+            // Replaces the whole buffer, so the driver can give it new memory instead of waiting on the old frame
+            renderBuffer.bufferData(mesh.getVertexData(layer));
+            return renderBuffer;
         }
     }
 
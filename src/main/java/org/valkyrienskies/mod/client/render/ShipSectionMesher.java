@@ -0,0 +1,189 @@
+package org.valkyrienskies.mod.client.render;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.util.BlockRenderLayer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.world.IBlockAccess;
+import net.minecraftforge.client.ForgeHooksClient;
+import net.minecraftforge.client.MinecraftForgeClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.GL11;
+import org.valkyrienskies.mod.common.config.VSConfig;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the vertex data of the 16x16x16 sections of ship chunks, either right away on the render thread or on a pool
+ * of background threads from a {@link ShipSectionSnapshot}. Both go through {@link #buildLayer}, so a section meshed
+ * from a snapshot comes out the same as one meshed from the world.
+ * <p>
+ * The {@link BufferBuilder}s are reused: a {@link SectionMesh} goes back to the pool once it's been uploaded.
+ */
+class ShipSectionMesher {
+
+    private static final Logger logger = LogManager.getLogger();
+    private static final BlockRenderLayer[] LAYERS = BlockRenderLayer.values();
+    // In ints, the builders grow by themselves when a section needs more
+    private static final int BUILDER_START_SIZE = 0x8000;
+    // How many meshes are kept for later once a burst of rebuilds is over
+    private static final int MAX_POOLED_MESHES = 16;
+
+    /**
+     * Renders blocks with the block renderer of Minecraft, which can be used from any thread as long as the world it's
+     * given can.
+     */
+    static final IBlockLayerRenderer BLOCK_RENDERER = (state, pos, blockAccess, layer, buffer) -> {
+        if (state.getBlock().canRenderInLayer(state, layer)) {
+            Minecraft.getMinecraft().getBlockRendererDispatcher().renderBlock(state, pos, blockAccess, buffer);
+        }
+    };
+
+    private static final Queue<SectionMesh> meshPool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pendingBuilds = new AtomicInteger();
+    private static ExecutorService executor = null;
+    private static int executorThreads = 0;
+
+    /**
+     * @return False if sections should be meshed on the render thread, like they used to be.
+     */
+    static boolean isAsyncEnabled() {
+        return VSConfig.MULTITHREADING_SETTINGS.shipMeshingThreads > 0;
+    }
+
+    /**
+     * Sections that want a new mesh while the pool is busy wait for a later frame instead, so that they aren't all
+     * copied into snapshots on the same frame when a big ship shows up.
+     */
+    static boolean canScheduleBuild() {
+        return pendingBuilds.get() < Math.max(executorThreads, 1) * 2;
+    }
+
+    /**
+     * Meshes a section on the calling thread, which has to be the render thread unless blockAccess is a snapshot.
+     */
+    static SectionMesh build(IBlockAccess blockAccess, BlockPos sectionMin, BlockPos offsetPos) {
+        final SectionMesh mesh = takeMesh();
+        final BlockRenderLayer oldLayer = MinecraftForgeClient.getRenderLayer();
+        for (BlockRenderLayer layer : LAYERS) {
+            // Forge keeps the layer per thread, some models look at it
+            ForgeHooksClient.setRenderLayer(layer);
+            buildLayer(blockAccess, sectionMin, offsetPos, layer, BLOCK_RENDERER, mesh.builders[layer.ordinal()]);
+        }
+        ForgeHooksClient.setRenderLayer(oldLayer);
+        return mesh;
+    }
+
+    /**
+     * Meshes snapshot on the pool. Only the render thread may call this.
+     */
+    static CompletableFuture<SectionMesh> buildAsync(ShipSectionSnapshot snapshot, BlockPos sectionMin,
+        BlockPos offsetPos) {
+        pendingBuilds.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> build(snapshot, sectionMin, offsetPos), getExecutor())
+            .whenComplete((mesh, throwable) -> {
+                pendingBuilds.decrementAndGet();
+                if (throwable != null) {
+                    logger.error("Failed to mesh the ship section at " + sectionMin, throwable);
+                }
+            });
+    }
+
+    /**
+     * Gives a mesh back once its vertex data has been uploaded, or won't be.
+     */
+    static void releaseMesh(SectionMesh mesh) {
+        for (BufferBuilder builder : mesh.builders) {
+            builder.reset();
+        }
+        if (meshPool.size() < MAX_POOLED_MESHES) {
+            meshPool.add(mesh);
+        }
+    }
+
+    /**
+     * Renders the blocks of the section starting at sectionMin that are in layer into buffer, relative to offsetPos.
+     */
+    static void buildLayer(IBlockAccess blockAccess, BlockPos sectionMin, BlockPos offsetPos, BlockRenderLayer layer,
+        IBlockLayerRenderer renderer, BufferBuilder buffer) {
+        buffer.begin(GL11.GL_QUADS, DefaultVertexFormats.BLOCK);
+        buffer.setTranslation(-offsetPos.getX(), -offsetPos.getY(), -offsetPos.getZ());
+        final MutableBlockPos pos = new MutableBlockPos();
+        for (int x = sectionMin.getX(); x < sectionMin.getX() + 16; x++) {
+            for (int z = sectionMin.getZ(); z < sectionMin.getZ() + 16; z++) {
+                for (int y = sectionMin.getY(); y < sectionMin.getY() + 16; y++) {
+                    pos.setPos(x, y, z);
+                    final IBlockState state = blockAccess.getBlockState(pos);
+                    try {
+                        renderer.renderBlock(state, pos, blockAccess, layer, buffer);
+                    } catch (NullPointerException e) {
+                        // Some modded blocks can't be rendered on ships, the rest of the section still can
+                        logger.debug("Failed to render " + state + " at " + pos, e);
+                    }
+                }
+            }
+        }
+        buffer.finishDrawing();
+        buffer.setTranslation(0, 0, 0);
+    }
+
+    private static SectionMesh takeMesh() {
+        final SectionMesh mesh = meshPool.poll();
+        return mesh != null ? mesh : new SectionMesh();
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            // Changing the thread count takes a restart, like the physics threads
+            executorThreads = Math.max(VSConfig.MULTITHREADING_SETTINGS.shipMeshingThreads, 1);
+            final AtomicInteger threadNumber = new AtomicInteger();
+            final ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "VS Ship Mesher " + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            executor = Executors.newFixedThreadPool(executorThreads, threadFactory);
+        }
+        return executor;
+    }
+
+    @FunctionalInterface
+    interface IBlockLayerRenderer {
+
+        /**
+         * Adds the quads of state in layer to buffer, if it has any.
+         */
+        void renderBlock(IBlockState state, BlockPos pos, IBlockAccess blockAccess, BlockRenderLayer layer,
+            BufferBuilder buffer);
+    }
+
+    /**
+     * The vertex data of every layer of a section.
+     */
+    static class SectionMesh {
+
+        private final BufferBuilder[] builders;
+
+        private SectionMesh() {
+            this.builders = new BufferBuilder[LAYERS.length];
+            for (int i = 0; i < builders.length; i++) {
+                builders[i] = new BufferBuilder(BUILDER_START_SIZE);
+            }
+        }
+
+        ByteBuffer getVertexData(BlockRenderLayer layer) {
+            return builders[layer.ordinal()].getByteBuffer();
+        }
+    }
+}
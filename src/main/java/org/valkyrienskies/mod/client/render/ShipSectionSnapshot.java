@@ -0,0 +1,141 @@
+package org.valkyrienskies.mod.client.render;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.EnumSkyBlock;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.biome.Biome;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A copy of a 16x16x16 section of a ship chunk and the blocks right around it, which is everything block models look
+ * at while being rendered. It's taken on the client thread, after which the section can be meshed on any thread while
+ * the world keeps changing.
+ * <p>
+ * Light is stored the way {@link net.minecraft.world.World#getCombinedLight(BlockPos, int)} returns it for a light
+ * value of 0, so the light of blocks that glow can still be applied later. Anything outside of the copied region is
+ * air with full sky light.
+ */
+class ShipSectionSnapshot implements IBlockAccess {
+
+    // One extra block on every side, the same margin vanilla uses for the chunks it renders
+    private static final int SIZE = 18;
+
+    private final int minX, minY, minZ;
+    private final IBlockState[] blockStates;
+    private final int[] combinedLights;
+    private final Biome[] biomes;
+    private final Map<BlockPos, TileEntity> tileEntities;
+    private final WorldType worldType;
+
+    /**
+     * @param tileEntityReader Reads the tile entities of the source, is only used while the snapshot is taken.
+     */
+    ShipSectionSnapshot(IBlockAccess source, int sectionMinX, int sectionMinY, int sectionMinZ,
+        Function<BlockPos, TileEntity> tileEntityReader) {
+        this.minX = sectionMinX - 1;
+        this.minY = sectionMinY - 1;
+        this.minZ = sectionMinZ - 1;
+        this.blockStates = new IBlockState[SIZE * SIZE * SIZE];
+        this.combinedLights = new int[SIZE * SIZE * SIZE];
+        this.biomes = new Biome[SIZE * SIZE];
+        this.tileEntities = new HashMap<>();
+        this.worldType = source.getWorldType();
+
+        final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                pos.setPos(minX + x, minY, minZ + z);
+                biomes[x * SIZE + z] = source.getBiome(pos);
+                for (int y = 0; y < SIZE; y++) {
+                    pos.setPos(minX + x, minY + y, minZ + z);
+                    final int index = getIndex(x, y, z);
+                    blockStates[index] = source.getBlockState(pos);
+                    combinedLights[index] = source.getCombinedLight(pos, 0);
+                    final TileEntity tileEntity = tileEntityReader.apply(pos);
+                    if (tileEntity != null) {
+                        tileEntities.put(pos.toImmutable(), tileEntity);
+                    }
+                }
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public TileEntity getTileEntity(BlockPos pos) {
+        return tileEntities.get(pos);
+    }
+
+    @Override
+    public int getCombinedLight(BlockPos pos, int lightValue) {
+        if (!isInside(pos)) {
+            return EnumSkyBlock.SKY.defaultLightValue << 20 | lightValue << 4;
+        }
+        final int combinedLight = combinedLights[getIndex(pos)];
+        final int blockLight = Math.max((combinedLight >> 4) & 15, lightValue);
+        return (combinedLight & 0xF00000) | blockLight << 4;
+    }
+
+    @Override
+    public IBlockState getBlockState(BlockPos pos) {
+        if (!isInside(pos)) {
+            return Blocks.AIR.getDefaultState();
+        }
+        return blockStates[getIndex(pos)];
+    }
+
+    @Override
+    public boolean isAirBlock(BlockPos pos) {
+        final IBlockState state = getBlockState(pos);
+        return state.getBlock().isAir(state, this, pos);
+    }
+
+    @Override
+    public Biome getBiome(BlockPos pos) {
+        final int x = Math.min(Math.max(pos.getX() - minX, 0), SIZE - 1);
+        final int z = Math.min(Math.max(pos.getZ() - minZ, 0), SIZE - 1);
+        return biomes[x * SIZE + z];
+    }
+
+    @Override
+    public int getStrongPower(BlockPos pos, EnumFacing direction) {
+        return getBlockState(pos).getStrongPower(this, pos, direction);
+    }
+
+    @Override
+    public WorldType getWorldType() {
+        return worldType;
+    }
+
+    @Override
+    public boolean isSideSolid(BlockPos pos, EnumFacing side, boolean _default) {
+        if (!isInside(pos)) {
+            return _default;
+        }
+        return getBlockState(pos).isSideSolid(this, pos, side);
+    }
+
+    private boolean isInside(BlockPos pos) {
+        final int x = pos.getX() - minX;
+        final int y = pos.getY() - minY;
+        final int z = pos.getZ() - minZ;
+        return x >= 0 && x < SIZE && y >= 0 && y < SIZE && z >= 0 && z < SIZE;
+    }
+
+    private int getIndex(BlockPos pos) {
+        return getIndex(pos.getX() - minX, pos.getY() - minY, pos.getZ() - minZ);
+    }
+
+    private static int getIndex(int x, int y, int z) {
+        return (x * SIZE + z) * SIZE + y;
+    }
+}
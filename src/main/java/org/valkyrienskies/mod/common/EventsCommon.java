@@ -37,6 +37,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.capability.VSCapabilityRegistry;
+import org.valkyrienskies.mod.common.capability.VSWorldDataCapability;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.entity.EntityMountable;
 import org.valkyrienskies.mod.common.ships.entity_interaction.EntityDraggable;
@@ -163,6 +165,14 @@ public class EventsCommon {
         lastPositions.clear();
         IHasShipManager shipManager = (IHasShipManager) event.getWorld();
         shipManager.getManager().onWorldUnload();
+        if (!event.getWorld().isRemote) {
+            // The world was just saved, make sure its ships are on disk before the server stops
+            VSWorldDataCapability worldData = event.getWorld()
+                .getCapability(VSCapabilityRegistry.VS_WORLD_DATA, null);
+            if (worldData != null) {
+                worldData.waitForSaves();
+            }
+        }
     }
 
     @SubscribeEvent(priority = EventPriority.HIGHEST)
@@ -173,6 +183,10 @@ public class EventsCommon {
             .getPhysoManagingBlock(event.getWorld(), pos);
         if (physicsObject.isPresent()) {
             event.setResult(Result.ALLOW);
+            if (!event.getWorld().isRemote) {
+                // Whatever the player is doing to the ship might make it move
+                physicsObject.get().getSleepTracker().wakeUp();
+            }
         }
     }
 
@@ -18,6 +18,7 @@ import org.valkyrienskies.mod.common.capability.framework.VSDefaultCapabilitySto
 import org.valkyrienskies.mod.common.capability.framework.VSDefaultCapabilityTransientStorage;
 
 import javax.annotation.Nonnull;
+import java.io.File;
 
 @EventBusSubscriber(modid = ValkyrienSkiesMod.MOD_ID)
 public class VSCapabilityRegistry {
@@ -30,9 +31,21 @@ public class VSCapabilityRegistry {
 
     @SubscribeEvent
     public static void attachWorldCapabilities(AttachCapabilitiesEvent<World> event) {
+        VSDefaultCapabilityProvider<VSWorldDataCapability> worldDataProvider =
+            new VSDefaultCapabilityProvider<>(VS_WORLD_DATA);
+        World world = event.getObject();
+        if (!world.isRemote) {
+            // Ships are saved next to the region files of the dimension
+            File worldDirectory = world.getSaveHandler().getWorldDirectory();
+            String dimensionFolder = world.provider.getSaveFolder();
+            if (dimensionFolder != null) {
+                worldDirectory = new File(worldDirectory, dimensionFolder);
+            }
+            worldDataProvider.getCapability(VS_WORLD_DATA, null)
+                .setSaveDirectory(new File(worldDirectory, ValkyrienSkiesMod.MOD_ID));
+        }
         event.addCapability(
-            new ResourceLocation(ValkyrienSkiesMod.MOD_ID, "world_data_capability"),
-            new VSDefaultCapabilityProvider<>(VS_WORLD_DATA));
+            new ResourceLocation(ValkyrienSkiesMod.MOD_ID, "world_data_capability"), worldDataProvider);
     }
 
     @SubscribeEvent
@@ -1,14 +1,42 @@
 package org.valkyrienskies.mod.common.capability;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.EnumFacing;
 import org.valkyrienskies.mod.common.capability.framework.VSDefaultCapability;
+import org.valkyrienskies.mod.common.ships.QueryableShipData;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
+import org.valkyrienskies.mod.common.ships.ship_world.ShipDataSaver;
+import org.valkyrienskies.mod.common.ships.ship_world.ShipRecordFile;
 import org.valkyrienskies.mod.common.ships.ship_world.VSWorldData;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+
 /**
  * This sort of class basically only exists because Java generics are trash
+ * <p>
+ * On server worlds the ships aren't part of the capability NBT, they're saved incrementally to a
+ * {@link ShipRecordFile} in the save directory of the world. The NBT only has the rest of {@link VSWorldData}. NBT
+ * with every ship in it, from before ships were saved this way, can still be read.
  */
+@Log4j2
 public class VSWorldDataCapability extends VSDefaultCapability<VSWorldData> {
 
+    private static final String RECORD_FORMAT_KEY = "shipRecordFormat";
+    private static final String ALLOCATOR_KEY = "shipChunkAllocator";
+
+    // Null on client worlds, which never save
+    @Nullable
+    private File saveDirectory;
+    @Nullable
+    private ShipRecordFile recordFile;
+    @Nullable
+    private ShipDataSaver saver;
+
     public VSWorldDataCapability(ObjectMapper mapper) {
         super(VSWorldData.class, VSWorldData::new, mapper);
     }
@@ -17,4 +45,87 @@ public class VSWorldDataCapability extends VSDefaultCapability<VSWorldData> {
         super(VSWorldData.class, VSWorldData::new);
     }
 
+    /**
+     * Makes ships save to a {@link ShipRecordFile} in saveDirectory. Must be called before the capability is read.
+     */
+    public void setSaveDirectory(File saveDirectory) {
+        this.saveDirectory = saveDirectory;
+    }
+
+    @Nullable
+    @Override
+    public NBTBase writeNBT(EnumFacing side) {
+        if (saveDirectory == null) {
+            return super.writeNBT(side);
+        }
+        try {
+            if (saver == null) {
+                // There's no record file yet, or it could be older than the ship data we just read
+                saver = new ShipDataSaver(get().getQueryableShipData(), getRecordFile(), getMapper());
+                saver.markAllDirty();
+            }
+            saver.save();
+
+            NBTTagCompound compound = new NBTTagCompound();
+            compound.setInteger(RECORD_FORMAT_KEY, ShipRecordFile.FORMAT_VERSION);
+            compound.setByteArray(ALLOCATOR_KEY, getMapper().writeValueAsBytes(get().getShipChunkAllocator()));
+            return compound;
+        } catch (IOException ex) {
+            log.fatal("Failed to save the ships incrementally, saving every ship instead", ex);
+            return super.writeNBT(side);
+        }
+    }
+
+    @Override
+    public VSWorldData readNBT(NBTBase base, EnumFacing side) {
+        if (saveDirectory == null || !(base instanceof NBTTagCompound)) {
+            // Ship data from before ships were saved incrementally
+            saver = null;
+            return super.readNBT(base, side);
+        }
+
+        long time = System.currentTimeMillis();
+        NBTTagCompound compound = (NBTTagCompound) base;
+        try {
+            if (compound.getInteger(RECORD_FORMAT_KEY) > ShipRecordFile.FORMAT_VERSION) {
+                throw new IOException("The ships were saved by a newer version of Valkyrien Skies");
+            }
+            ShipRecordFile file = getRecordFile();
+            QueryableShipData ships = ShipDataSaver.load(file, getMapper());
+            ShipChunkAllocator allocator = getMapper().readValue(compound.getByteArray(ALLOCATOR_KEY),
+                ShipChunkAllocator.class);
+            set(new VSWorldData(ships, allocator));
+            saver = new ShipDataSaver(ships, file, getMapper());
+            log.info("VS deserialization took {} ms. Read {} ships, the ship file is {} KB.",
+                System.currentTimeMillis() - time, file.size(), file.getFileLength() / 1024);
+        } catch (IOException ex) {
+            log.fatal("Failed to read your ship data? Ships will probably be missing", ex);
+            set(new VSWorldData());
+            // Don't write over the broken file, save every ship in the NBT instead
+            saveDirectory = null;
+            recordFile = null;
+            saver = null;
+        }
+        return get();
+    }
+
+    private ShipRecordFile getRecordFile() throws IOException {
+        if (recordFile == null) {
+            if (!saveDirectory.isDirectory() && !saveDirectory.mkdirs()) {
+                throw new IOException("Failed to create " + saveDirectory);
+            }
+            recordFile = new ShipRecordFile(saveDirectory);
+        }
+        return recordFile;
+    }
+
+    /**
+     * Blocks until every ship saved so far is written to disk. Should be called before the world is unloaded.
+     */
+    public void waitForSaves() {
+        if (saver != null) {
+            saver.waitForSaves();
+        }
+    }
+
 }
@@ -0,0 +1,231 @@
+package org.valkyrienskies.mod.common.collision;
+
+import lombok.Getter;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import valkyrienwarfare.api.TransformType;
+
+/**
+ * An allocation free replacement for {@link PhysPolygonCollider} and {@link PolygonCollisionPointFinder},
+ * specialized for colliding one ship block against one world block, or against a block of another ship. All the
+ * vertices and penetration distances are kept in scratch space owned by this object, so a single instance can be
+ * reused for any number of block pairs.
+ * <p>
+ * The math is done in exactly the same order as the Polygon based version, so the results are identical to it. Not
+ * thread safe, every thread needs its own instance.
+ */
+public class BlockBoxCollider {
+
+    private final Vector3d[] shipVertices;
+    private final Vector3d[] worldVertices;
+    private final Vector3d shipCenter;
+    private final Vector3d worldCenter;
+    private double[] penetrationDistances;
+
+    // The results of the last call to collide()
+    @Getter
+    private Vector3dc collisionNormal;
+    @Getter
+    private double penetrationDistance;
+    @Getter
+    private Vector3dc topContactPoint;
+    @Getter
+    private Vector3dc bottomContactPoint;
+
+    public BlockBoxCollider() {
+        this.shipVertices = createVertices();
+        this.worldVertices = createVertices();
+        this.shipCenter = new Vector3d();
+        this.worldCenter = new Vector3d();
+        this.penetrationDistances = new double[15];
+    }
+
+    /**
+     * Checks for a collision between the ship block at shipX, shipY, shipZ and the world block at worldX, worldY,
+     * worldZ along the given separating axes.
+     *
+     * @return True if the blocks are colliding, in which case the collision normal, penetration distance and contact
+     * points are available through the getters until the next call.
+     */
+    public boolean collide(int shipX, int shipY, int shipZ, ShipTransform shipTransform, int worldX, int worldY,
+        int worldZ, Vector3dc[] axes) {
+        setCornersForBlock(shipVertices, shipX, shipY, shipZ);
+        for (Vector3d vertex : shipVertices) {
+            shipTransform.transformPosition(vertex, TransformType.SUBSPACE_TO_GLOBAL);
+        }
+        setCornersForBlock(worldVertices, worldX, worldY, worldZ);
+        // Same as the choice made by WorldPhysicsCollider.handleActualCollision(), the world up axis is preferred
+        return collideVertices(axes, 1);
+    }
+
+    /**
+     * Checks for a collision between a block of one ship and a block of another ship, in world space. The first ship
+     * takes the place of the ship and the second ship takes the place of the world in the results, so the first block
+     * has to be moved against the collision normal if the penetration distance is positive, and along it otherwise.
+     *
+     * @param axes The separating axes of the two ships in world space, see
+     *             {@link ShipPairCollisionTask#createCollisionNormals(ShipTransform, ShipTransform)}
+     * @return True if the blocks are colliding, in which case the results are available through the getters until the
+     * next call.
+     */
+    public boolean collideShipBlocks(int firstX, int firstY, int firstZ, ShipTransform firstTransform, int secondX,
+        int secondY, int secondZ, ShipTransform secondTransform, Vector3dc[] axes) {
+        setCornersForBlock(shipVertices, firstX, firstY, firstZ);
+        for (Vector3d vertex : shipVertices) {
+            firstTransform.transformPosition(vertex, TransformType.SUBSPACE_TO_GLOBAL);
+        }
+        setCornersForBlock(worldVertices, secondX, secondY, secondZ);
+        for (Vector3d vertex : worldVertices) {
+            secondTransform.transformPosition(vertex, TransformType.SUBSPACE_TO_GLOBAL);
+        }
+        // Neither ship has a preferred up axis
+        return collideVertices(axes, -1);
+    }
+
+    /**
+     * @param preferredAxisIndex The axis to use as the collision normal when the penetration along it is within
+     *                           {@link WorldPhysicsCollider#AXIS_TOLERANCE}, or -1 to always use the axis with the
+     *                           smallest penetration
+     */
+    private boolean collideVertices(Vector3dc[] axes, int preferredAxisIndex) {
+        if (penetrationDistances.length < axes.length) {
+            penetrationDistances = new double[axes.length];
+        }
+
+        // Same as PhysPolygonCollider.processData()
+        for (int i = 0; i < axes.length; i++) {
+            if (!computePenetrationDistance(axes[i], i)) {
+                return false;
+            }
+        }
+
+        double minDistance = 420;
+        int minDistanceIndex = 0;
+        for (int i = 0; i < axes.length; i++) {
+            // Take the collision response closest to 0
+            if (Math.abs(penetrationDistances[i]) < minDistance) {
+                minDistanceIndex = i;
+                minDistance = Math.abs(penetrationDistances[i]);
+            }
+        }
+
+        int collisionAxisIndex = minDistanceIndex;
+        if (preferredAxisIndex >= 0 && penetrationDistances[preferredAxisIndex] <= WorldPhysicsCollider.AXIS_TOLERANCE
+            && penetrationDistances[preferredAxisIndex] >= -WorldPhysicsCollider.AXIS_TOLERANCE) {
+            collisionAxisIndex = preferredAxisIndex;
+        }
+        collisionNormal = axes[collisionAxisIndex];
+        penetrationDistance = penetrationDistances[collisionAxisIndex];
+
+        findContactPoints();
+        return true;
+    }
+
+    /**
+     * Same as PhysCollisionObject.generateCollision()
+     *
+     * @return False if the blocks are separated along this axis
+     */
+    private boolean computePenetrationDistance(Vector3dc axis, int axisIndex) {
+        double shipMin, shipMax, worldMin, worldMax;
+        shipMin = shipMax = axis.dot(shipVertices[7]);
+        worldMin = worldMax = axis.dot(worldVertices[7]);
+        for (int i = 6; i >= 0; i--) {
+            double shipDot = axis.dot(shipVertices[i]);
+            shipMin = Math.min(shipMin, shipDot);
+            shipMax = Math.max(shipMax, shipDot);
+            double worldDot = axis.dot(worldVertices[i]);
+            worldMin = Math.min(worldMin, worldDot);
+            worldMax = Math.max(worldMax, worldDot);
+        }
+
+        double movMaxFixMin = shipMin - worldMax;
+        double movMinFixMax = shipMax - worldMin;
+        if (movMaxFixMin > 0 || movMinFixMax < 0) {
+            penetrationDistances[axisIndex] = 0;
+            return false;
+        }
+        // Set the penetration to be the smaller distance
+        if (Math.abs(movMaxFixMin) > Math.abs(movMinFixMax)) {
+            penetrationDistances[axisIndex] = movMinFixMax;
+        } else {
+            penetrationDistances[axisIndex] = movMaxFixMin;
+        }
+        return true;
+    }
+
+    /**
+     * Same as PolygonCollisionPointFinder.getPointsOfCollisionForPolygons()
+     */
+    private void findContactPoints() {
+        setToCenter(shipVertices, shipCenter);
+        setToCenter(worldVertices, worldCenter);
+        Vector3dc centerDifference = shipCenter.sub(worldCenter);
+
+        Vector3d[] topVertices;
+        Vector3d[] bottomVertices;
+        if (centerDifference.dot(collisionNormal) > 0) {
+            // Then the movable is the bottom
+            topVertices = worldVertices;
+            bottomVertices = shipVertices;
+        } else {
+            // Then the fixed is the bottom
+            topVertices = shipVertices;
+            bottomVertices = worldVertices;
+        }
+
+        double minDot = 99999999D;
+        int topPointIndex = -1;
+        for (int i = 0; i < topVertices.length; i++) {
+            double dotProduct = topVertices[i].dot(collisionNormal);
+            if (dotProduct < minDot) {
+                minDot = dotProduct;
+                topPointIndex = i;
+            }
+        }
+
+        double maxDot = -9999999999D;
+        int bottomPointIndex = -1;
+        for (int i = 0; i < bottomVertices.length; i++) {
+            double dotProduct = bottomVertices[i].dot(collisionNormal);
+            if (dotProduct > maxDot) {
+                maxDot = dotProduct;
+                bottomPointIndex = i;
+            }
+        }
+
+        topContactPoint = topVertices[topPointIndex];
+        bottomContactPoint = bottomVertices[bottomPointIndex];
+    }
+
+    private static void setToCenter(Vector3d[] vertices, Vector3d center) {
+        center.zero();
+        for (Vector3dc v : vertices) {
+            center.add(v);
+        }
+        center.mul(1.0 / vertices.length);
+    }
+
+    /**
+     * Same order of corners as Polygon.getCornersForAABB()
+     */
+    private static void setCornersForBlock(Vector3d[] vertices, int x, int y, int z) {
+        vertices[0].set(x, y, z);
+        vertices[1].set(x, y + 1, z);
+        vertices[2].set(x, y, z + 1);
+        vertices[3].set(x, y + 1, z + 1);
+        vertices[4].set(x + 1, y, z);
+        vertices[5].set(x + 1, y + 1, z);
+        vertices[6].set(x + 1, y, z + 1);
+        vertices[7].set(x + 1, y + 1, z + 1);
+    }
+
+    private static Vector3d[] createVertices() {
+        Vector3d[] vertices = new Vector3d[8];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new Vector3d();
+        }
+        return vertices;
+    }
+}
@@ -0,0 +1,120 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.joml.Vector3dc;
+
+/**
+ * Stores the contacts generated by a {@link ShipCollisionTask} as a structure of arrays, so that recording a contact
+ * doesn't allocate anything. The arrays only grow, so once a task has seen its largest number of contacts it never
+ * allocates again.
+ */
+public class CollisionContactBuffer {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private double[] normalX, normalY, normalZ;
+    private double[] penetrationDistance;
+    private double[] topX, topY, topZ;
+    private double[] bottomX, bottomY, bottomZ;
+
+    public CollisionContactBuffer() {
+        this.size = 0;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Records the results of a successful {@link BlockBoxCollider#collide}.
+     */
+    public void add(BlockBoxCollider collider) {
+        if (size == normalX.length) {
+            grow();
+        }
+        Vector3dc normal = collider.getCollisionNormal();
+        Vector3dc top = collider.getTopContactPoint();
+        Vector3dc bottom = collider.getBottomContactPoint();
+        normalX[size] = normal.x();
+        normalY[size] = normal.y();
+        normalZ[size] = normal.z();
+        penetrationDistance[size] = collider.getPenetrationDistance();
+        topX[size] = top.x();
+        topY[size] = top.y();
+        topZ[size] = top.z();
+        bottomX[size] = bottom.x();
+        bottomY[size] = bottom.y();
+        bottomZ[size] = bottom.z();
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getNormalX(int index) {
+        return normalX[index];
+    }
+
+    public double getNormalY(int index) {
+        return normalY[index];
+    }
+
+    public double getNormalZ(int index) {
+        return normalZ[index];
+    }
+
+    public double getPenetrationDistance(int index) {
+        return penetrationDistance[index];
+    }
+
+    public double getTopX(int index) {
+        return topX[index];
+    }
+
+    public double getTopY(int index) {
+        return topY[index];
+    }
+
+    public double getTopZ(int index) {
+        return topZ[index];
+    }
+
+    public double getBottomX(int index) {
+        return bottomX[index];
+    }
+
+    public double getBottomY(int index) {
+        return bottomY[index];
+    }
+
+    public double getBottomZ(int index) {
+        return bottomZ[index];
+    }
+
+    private void grow() {
+        int oldSize = size;
+        double[][] old = {normalX, normalY, normalZ, penetrationDistance, topX, topY, topZ, bottomX, bottomY,
+            bottomZ};
+        allocate(normalX.length * 2);
+        double[][] current = {normalX, normalY, normalZ, penetrationDistance, topX, topY, topZ, bottomX, bottomY,
+            bottomZ};
+        for (int i = 0; i < old.length; i++) {
+            System.arraycopy(old[i], 0, current[i], 0, oldSize);
+        }
+    }
+
+    private void allocate(int capacity) {
+        normalX = new double[capacity];
+        normalY = new double[capacity];
+        normalZ = new double[capacity];
+        penetrationDistance = new double[capacity];
+        topX = new double[capacity];
+        topY = new double[capacity];
+        topZ = new double[capacity];
+        bottomX = new double[capacity];
+        bottomY = new double[capacity];
+        bottomZ = new double[capacity];
+    }
+}
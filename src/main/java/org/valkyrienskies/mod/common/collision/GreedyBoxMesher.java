@@ -0,0 +1,156 @@
+package org.valkyrienskies.mod.common.collision;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.Arrays;
+
+/**
+ * Splits the filled voxels of a 16x16x16 section into a small number of boxes, which together cover exactly the
+ * filled voxels and don't overlap.
+ * <p>
+ * The voxels are given as 64 longs, voxel (x, y, z) being bit {@link #getIndex(int, int, int)}. Every box is packed
+ * into an int, see {@link #getMinX(int)} and {@link #getMaxX(int)}. Starting from the first voxel not covered yet, a
+ * box is grown as far as possible along x, then along z, then along y. This isn't the smallest possible number of
+ * boxes, but is close to it for the shapes ships are usually made of, and only takes a few microseconds per section.
+ */
+@UtilityClass
+public class GreedyBoxMesher {
+
+    public static final int VOXEL_WORDS = 4096 / 64;
+
+    public static int getIndex(int x, int y, int z) {
+        return x | (z << 4) | (y << 8);
+    }
+
+    public static void setVoxel(long[] voxels, int x, int y, int z) {
+        int index = getIndex(x, y, z);
+        voxels[index >> 6] |= 1L << index;
+    }
+
+    public static boolean getVoxel(long[] voxels, int x, int y, int z) {
+        int index = getIndex(x, y, z);
+        return (voxels[index >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return The boxes covering the voxels, empty if there are none. Doesn't modify voxels.
+     */
+    public static int[] mesh(long[] voxels) {
+        if (voxels.length != VOXEL_WORDS) {
+            throw new IllegalArgumentException("Expected " + VOXEL_WORDS + " longs, got " + voxels.length);
+        }
+        // The voxels not covered by a box yet
+        final long[] remaining = voxels.clone();
+        int[] boxes = new int[8];
+        int boxCount = 0;
+        for (int index = nextSetBit(remaining, 0); index != -1; index = nextSetBit(remaining, index)) {
+            final int minX = index & 15;
+            final int minZ = (index >> 4) & 15;
+            final int minY = index >> 8;
+
+            // The row starting at minX is as long as the number of consecutive set bits from minX
+            final int maxX = minX + Integer.numberOfTrailingZeros(~(getRow(remaining, minY, minZ) >>> minX));
+            final int rowMask = ((1 << (maxX - minX)) - 1) << minX;
+
+            int maxZ = minZ + 1;
+            while (maxZ < 16 && (getRow(remaining, minY, maxZ) & rowMask) == rowMask) {
+                maxZ++;
+            }
+
+            int maxY = minY + 1;
+            while (maxY < 16 && isRectangleSet(remaining, maxY, minZ, maxZ, rowMask)) {
+                maxY++;
+            }
+
+            for (int y = minY; y < maxY; y++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    clearRow(remaining, y, z, rowMask);
+                }
+            }
+            if (boxCount == boxes.length) {
+                boxes = Arrays.copyOf(boxes, boxCount * 2);
+            }
+            boxes[boxCount++] = pack(minX, minY, minZ, maxX, maxY, maxZ);
+        }
+        return Arrays.copyOf(boxes, boxCount);
+    }
+
+    // region Packed boxes
+
+    private static int pack(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        // The maximums are stored minus one so that 16 fits in 4 bits
+        return minX | (minY << 4) | (minZ << 8) | ((maxX - 1) << 12) | ((maxY - 1) << 16) | ((maxZ - 1) << 20);
+    }
+
+    public static int getMinX(int box) {
+        return box & 15;
+    }
+
+    public static int getMinY(int box) {
+        return (box >> 4) & 15;
+    }
+
+    public static int getMinZ(int box) {
+        return (box >> 8) & 15;
+    }
+
+    /**
+     * @return The maximum x of the box, exclusive.
+     */
+    public static int getMaxX(int box) {
+        return ((box >> 12) & 15) + 1;
+    }
+
+    /**
+     * @return The maximum y of the box, exclusive.
+     */
+    public static int getMaxY(int box) {
+        return ((box >> 16) & 15) + 1;
+    }
+
+    /**
+     * @return The maximum z of the box, exclusive.
+     */
+    public static int getMaxZ(int box) {
+        return ((box >> 20) & 15) + 1;
+    }
+
+    // endregion
+
+    // A row of 16 voxels along x is always within a single long
+    private static int getRow(long[] voxels, int y, int z) {
+        int index = getIndex(0, y, z);
+        return (int) (voxels[index >> 6] >>> (index & 63)) & 0xFFFF;
+    }
+
+    private static void clearRow(long[] voxels, int y, int z, int rowMask) {
+        int index = getIndex(0, y, z);
+        voxels[index >> 6] &= ~((long) rowMask << (index & 63));
+    }
+
+    private static boolean isRectangleSet(long[] voxels, int y, int minZ, int maxZ, int rowMask) {
+        for (int z = minZ; z < maxZ; z++) {
+            if ((getRow(voxels, y, z) & rowMask) != rowMask) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int nextSetBit(long[] voxels, int fromIndex) {
+        int wordIndex = fromIndex >> 6;
+        if (wordIndex >= voxels.length) {
+            return -1;
+        }
+        long word = voxels[wordIndex] & (-1L << fromIndex);
+        while (true) {
+            if (word != 0) {
+                return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++wordIndex == voxels.length) {
+                return -1;
+            }
+            word = voxels[wordIndex];
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.valkyrienskies.mod.common.util.SectionKeys;
+import org.valkyrienskies.mod.common.util.VSIterationUtils.IntTernaryConsumer;
+import org.valkyrienskies.mod.common.util.VSIterationUtils.IntTernaryPredicate;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Keeps track of the solid world blocks within the collision region of a ship in between collision cache updates.
+ * <p>
+ * A block is a candidate if it is solid and the base corner (the corner with even coordinates) of the 2x2x2 octree
+ * leaf containing it is within the region. This is exactly the set of blocks visited by the full octree walk in
+ * {@link WorldPhysicsCollider}. Instead of walking every section under the ship on every update, only the parts of
+ * the new region that weren't inside of the previous region are scanned. Sections whose octree has been modified
+ * (or replaced) since they were last scanned are rescanned entirely.
+ * <p>
+ * Every candidate also remembers whether it was a hit the last time it was checked, see
+ * {@link #checkCandidates(boolean, IntTernaryPredicate)}. As long as the ship hasn't moved or changed, only the
+ * candidates that were scanned since the last check need to be checked again.
+ *
+ * @see IBitOctree#getModificationCount()
+ */
+public class IncrementalWorldCollisionCache {
+
+    private final ISectionOctreeSource octreeSource;
+    private final TLongObjectMap<SectionEntry> sections;
+    private boolean hasRegion;
+    private int minX, minY, minZ, maxX, maxY, maxZ;
+
+    public IncrementalWorldCollisionCache(ISectionOctreeSource octreeSource) {
+        this.octreeSource = octreeSource;
+        this.sections = new TLongObjectHashMap<>();
+        this.hasRegion = false;
+    }
+
+    /**
+     * Updates the candidates to be those of the given region. All bounds are inclusive.
+     */
+    public void update(int newMinX, int newMinY, int newMinZ, int newMaxX, int newMaxY, int newMaxZ) {
+        final int sectionMinX = newMinX >> 4;
+        final int sectionMinY = newMinY >> 4;
+        final int sectionMinZ = newMinZ >> 4;
+        final int sectionMaxX = newMaxX >> 4;
+        final int sectionMaxY = newMaxY >> 4;
+        final int sectionMaxZ = newMaxZ >> 4;
+
+        // First forget about the sections that aren't in the new region at all
+        TLongObjectIterator<SectionEntry> iterator = sections.iterator();
+        while (iterator.hasNext()) {
+            iterator.advance();
+            SectionEntry entry = iterator.value();
+            if (entry.sectionX < sectionMinX || entry.sectionX > sectionMaxX
+                || entry.sectionY < sectionMinY || entry.sectionY > sectionMaxY
+                || entry.sectionZ < sectionMinZ || entry.sectionZ > sectionMaxZ) {
+                iterator.remove();
+            }
+        }
+
+        for (int sectionX = sectionMinX; sectionX <= sectionMaxX; sectionX++) {
+            for (int sectionY = sectionMinY; sectionY <= sectionMaxY; sectionY++) {
+                for (int sectionZ = sectionMinZ; sectionZ <= sectionMaxZ; sectionZ++) {
+                    final long key = SectionKeys.getSectionKey(sectionX, sectionY, sectionZ);
+                    final IBitOctree octree = octreeSource.getSectionOctree(sectionX, sectionY, sectionZ);
+                    SectionEntry entry = sections.get(key);
+
+                    if (octree == null) {
+                        if (entry != null) {
+                            sections.remove(key);
+                        }
+                        continue;
+                    }
+
+                    // The part of the new region within this section
+                    final int clippedMinX = Math.max(sectionX << 4, newMinX);
+                    final int clippedMinY = Math.max(sectionY << 4, newMinY);
+                    final int clippedMinZ = Math.max(sectionZ << 4, newMinZ);
+                    final int clippedMaxX = Math.min((sectionX << 4) + 15, newMaxX);
+                    final int clippedMaxY = Math.min((sectionY << 4) + 15, newMaxY);
+                    final int clippedMaxZ = Math.min((sectionZ << 4) + 15, newMaxZ);
+
+                    if (entry == null || entry.octree != octree
+                        || entry.modificationCount != octree.getModificationCount()) {
+                        // Either new or stale, scan the whole section.
+                        if (entry == null) {
+                            entry = new SectionEntry(sectionX, sectionY, sectionZ);
+                            sections.put(key, entry);
+                        }
+                        entry.reset(octree);
+                        scanSection(entry, clippedMinX, clippedMinY, clippedMinZ, clippedMaxX, clippedMaxY,
+                            clippedMaxZ, false);
+                    } else {
+                        // Unchanged, so only drop what we left and scan what we swept into.
+                        entry.retainInside(newMinX, newMinY, newMinZ, newMaxX, newMaxY, newMaxZ);
+                        boolean alreadyScanned = clippedMinX >= minX && clippedMaxX <= maxX
+                            && clippedMinY >= minY && clippedMaxY <= maxY
+                            && clippedMinZ >= minZ && clippedMaxZ <= maxZ;
+                        if (!alreadyScanned) {
+                            scanSection(entry, clippedMinX, clippedMinY, clippedMinZ, clippedMaxX, clippedMaxY,
+                                clippedMaxZ, true);
+                        }
+                    }
+                }
+            }
+        }
+
+        this.minX = newMinX;
+        this.minY = newMinY;
+        this.minZ = newMinZ;
+        this.maxX = newMaxX;
+        this.maxY = newMaxY;
+        this.maxZ = newMaxZ;
+        this.hasRegion = true;
+    }
+
+    /**
+     * Forgets every candidate, the next {@link #update(int, int, int, int, int, int)} will scan everything.
+     */
+    public void clear() {
+        sections.clear();
+        hasRegion = false;
+    }
+
+    /**
+     * Walks the octree of a section the same way {@link WorldPhysicsCollider} does. If excludeOldRegion is true then
+     * octree leaves with a base inside of the previous region are skipped, because they're already candidates.
+     */
+    private void scanSection(SectionEntry entry, int scanMinX, int scanMinY, int scanMinZ, int scanMaxX,
+                             int scanMaxY, int scanMaxZ, boolean excludeOldRegion) {
+        final IBitOctree octree = entry.octree;
+        final int minStorageX = entry.sectionX << 4;
+        final int minStorageY = entry.sectionY << 4;
+        final int minStorageZ = entry.sectionZ << 4;
+
+        for (int levelThree = 0; levelThree < 8; levelThree++) {
+            int levelThreeIndex = octree.getOctreeLevelThreeIndex(levelThree);
+            if (!octree.getAtIndex(levelThreeIndex)) {
+                continue;
+            }
+            for (int levelTwo = 0; levelTwo < 8; levelTwo++) {
+                int levelTwoIndex = octree.getOctreeLevelTwoIndex(levelThreeIndex, levelTwo);
+                if (!octree.getAtIndex(levelTwoIndex)) {
+                    continue;
+                }
+                for (int levelOne = 0; levelOne < 8; levelOne++) {
+                    int levelOneIndex = octree.getOctreeLevelOneIndex(levelTwoIndex, levelOne);
+                    if (!octree.getAtIndex(levelOneIndex)) {
+                        continue;
+                    }
+                    int baseX = ((levelThree % 2) * 8) + ((levelTwo % 2) * 4) + ((levelOne % 2) * 2);
+                    int baseY = (((levelThree >> 1) % 2) * 8) + (((levelTwo >> 1) % 2) * 4)
+                        + (((levelOne >> 1) % 2) * 2);
+                    int baseZ = (((levelThree >> 2) % 2) * 8) + (((levelTwo >> 2) % 2) * 4)
+                        + (((levelOne >> 2) % 2) * 2);
+
+                    int x = baseX + minStorageX;
+                    int y = baseY + minStorageY;
+                    int z = baseZ + minStorageZ;
+
+                    if (x < scanMinX || x > scanMaxX || y < scanMinY || y > scanMaxY || z < scanMinZ
+                        || z > scanMaxZ) {
+                        continue;
+                    }
+                    if (excludeOldRegion && x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ
+                        && z <= maxZ) {
+                        continue;
+                    }
+                    for (int offset = 0; offset < 8; offset++) {
+                        int localX = baseX + (offset & 1);
+                        int localY = baseY + ((offset >> 1) & 1);
+                        int localZ = baseZ + ((offset >> 2) & 1);
+                        if (octree.get(localX, localY, localZ)) {
+                            entry.candidates.add(getLocalIndex(localX, localY, localZ));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer with the world position of every candidate block.
+     */
+    public void forEachCandidate(IntTernaryConsumer consumer) {
+        for (SectionEntry entry : sections.valueCollection()) {
+            entry.forEachCandidate(consumer);
+        }
+    }
+
+    /**
+     * Checks the candidates of every section on the calling thread.
+     *
+     * @see SectionEntry#checkCandidates(boolean, IntTernaryPredicate)
+     */
+    public void checkCandidates(boolean checkAll, IntTernaryPredicate isHit) {
+        for (SectionEntry entry : sections.valueCollection()) {
+            entry.checkCandidates(checkAll, isHit);
+        }
+    }
+
+    /**
+     * Calls the consumer with the world position of every candidate that was a hit when it was last checked.
+     */
+    public void forEachHit(IntTernaryConsumer consumer) {
+        for (SectionEntry entry : sections.valueCollection()) {
+            entry.forEachHit(consumer);
+        }
+    }
+
+    /**
+     * Replaces the contents of output with the sections currently holding candidates, used to split the candidates
+     * between threads. Sections are only ever checked by one thread at a time.
+     */
+    public void getSectionsWithCandidates(List<SectionEntry> output) {
+        output.clear();
+        output.addAll(sections.valueCollection());
+    }
+
+    public int getCandidateCount() {
+        int count = 0;
+        for (SectionEntry entry : sections.valueCollection()) {
+            count += entry.candidates.size();
+        }
+        return count;
+    }
+
+    private static int getLocalIndex(int localX, int localY, int localZ) {
+        return localX | (localY << 4) | (localZ << 8);
+    }
+
+    /**
+     * Provides the octree for a chunk section, or null if that section is empty or not loaded.
+     */
+    @FunctionalInterface
+    public interface ISectionOctreeSource {
+
+        @Nullable
+        IBitOctree getSectionOctree(int sectionX, int sectionY, int sectionZ);
+    }
+
+    public static class SectionEntry {
+
+        // Set on the candidates that were a hit when they were last checked
+        private static final int HIT_FLAG = 1 << 12;
+        private static final int INDEX_MASK = HIT_FLAG - 1;
+
+        private final int sectionX, sectionY, sectionZ;
+        // Indices of the candidate blocks, in the same x | y << 4 | z << 8 format as the octree, plus HIT_FLAG
+        private final TIntArrayList candidates;
+        // Candidates are only ever appended, so the ones that haven't been checked yet are all at the end
+        private int checkedCount;
+        private IBitOctree octree;
+        private int modificationCount;
+
+        private SectionEntry(int sectionX, int sectionY, int sectionZ) {
+            this.sectionX = sectionX;
+            this.sectionY = sectionY;
+            this.sectionZ = sectionZ;
+            this.candidates = new TIntArrayList();
+        }
+
+        private void reset(IBitOctree octree) {
+            this.octree = octree;
+            this.modificationCount = octree.getModificationCount();
+            this.candidates.resetQuick();
+            this.checkedCount = 0;
+        }
+
+        private void retainInside(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            int kept = 0;
+            int keptChecked = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                int candidate = candidates.getQuick(i);
+                int index = candidate & INDEX_MASK;
+                // Candidates are kept based on the base corner of their octree leaf
+                int baseX = (sectionX << 4) + (index & 0xE);
+                int baseY = (sectionY << 4) + ((index >> 4) & 0xE);
+                int baseZ = (sectionZ << 4) + ((index >> 8) & 0xE);
+                if (baseX >= minX && baseX <= maxX && baseY >= minY && baseY <= maxY && baseZ >= minZ
+                    && baseZ <= maxZ) {
+                    candidates.setQuick(kept++, candidate);
+                    if (i < checkedCount) {
+                        keptChecked++;
+                    }
+                }
+            }
+            if (kept < candidates.size()) {
+                candidates.remove(kept, candidates.size() - kept);
+            }
+            checkedCount = keptChecked;
+        }
+
+        public void forEachCandidate(IntTernaryConsumer consumer) {
+            for (int i = 0; i < candidates.size(); i++) {
+                int index = candidates.getQuick(i) & INDEX_MASK;
+                consumer.accept((sectionX << 4) + (index & 15), (sectionY << 4) + ((index >> 4) & 15),
+                    (sectionZ << 4) + ((index >> 8) & 15));
+            }
+        }
+
+        /**
+         * Remembers for every candidate of this section whether it's a hit.
+         *
+         * @param checkAll If false then only the candidates scanned since the last check are checked, the others keep
+         *                 their last result. Only correct if the ship hasn't moved or changed since then.
+         * @param isHit    Tests a candidate by its world position.
+         */
+        public void checkCandidates(boolean checkAll, IntTernaryPredicate isHit) {
+            for (int i = checkAll ? 0 : checkedCount; i < candidates.size(); i++) {
+                int index = candidates.getQuick(i) & INDEX_MASK;
+                boolean hit = isHit.test((sectionX << 4) + (index & 15), (sectionY << 4) + ((index >> 4) & 15),
+                    (sectionZ << 4) + ((index >> 8) & 15));
+                candidates.setQuick(i, hit ? index | HIT_FLAG : index);
+            }
+            checkedCount = candidates.size();
+        }
+
+        public void forEachHit(IntTernaryConsumer consumer) {
+            for (int i = 0; i < checkedCount; i++) {
+                int candidate = candidates.getQuick(i);
+                if ((candidate & HIT_FLAG) != 0) {
+                    int index = candidate & INDEX_MASK;
+                    consumer.accept((sectionX << 4) + (index & 15), (sectionY << 4) + ((index >> 4) & 15),
+                        (sectionZ << 4) + ((index >> 8) & 15));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.list.array.TLongArrayList;
+import net.minecraft.util.math.AxisAlignedBB;
+
+/**
+ * Finds the pairs of ships whose bounding boxes intersect, by sorting the boxes along the x axis and sweeping over
+ * them. Only boxes that overlap along x are ever compared with each other.
+ * <p>
+ * The sort order is kept between calls, ships barely move between physics ticks so the boxes are almost sorted
+ * already and the insertion sort runs in close to linear time. Not thread safe.
+ */
+public class ShipBroadphase {
+
+    // The indices of the boxes, sorted by minX
+    private int[] order;
+    // Every pair as firstIndex << 32 | secondIndex with firstIndex < secondIndex, sorted
+    private final TLongArrayList pairs;
+
+    public ShipBroadphase() {
+        this.order = new int[0];
+        this.pairs = new TLongArrayList();
+    }
+
+    /**
+     * Replaces the pairs with those of the given boxes. Pairs are always reported in the same order for the same
+     * boxes, no matter what order they were in before.
+     *
+     * @param boxes The first count elements are the boxes to check
+     */
+    public void findPairs(AxisAlignedBB[] boxes, int count) {
+        pairs.resetQuick();
+        if (order.length != count) {
+            // Different ships, start from scratch.
+            order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+        }
+
+        // Insertion sort, fast for nearly sorted input
+        for (int i = 1; i < count; i++) {
+            int index = order[i];
+            double minX = boxes[index].minX;
+            int j = i - 1;
+            while (j >= 0 && boxes[order[j]].minX > minX) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+
+        for (int i = 0; i < count; i++) {
+            AxisAlignedBB box = boxes[order[i]];
+            // Every box after this one starts at or after box.minX, so once one starts past box.maxX they all do
+            for (int j = i + 1; j < count && boxes[order[j]].minX < box.maxX; j++) {
+                if (box.intersects(boxes[order[j]])) {
+                    int first = Math.min(order[i], order[j]);
+                    int second = Math.max(order[i], order[j]);
+                    pairs.add(((long) first << 32) | second);
+                }
+            }
+        }
+        // Sorting by index makes the order independent of the sweep order, which depends on the previous calls
+        pairs.sort();
+    }
+
+    public int getPairCount() {
+        return pairs.size();
+    }
+
+    /**
+     * @return The smaller box index of the pair
+     */
+    public int getFirst(int pair) {
+        return (int) (pairs.getQuick(pair) >>> 32);
+    }
+
+    /**
+     * @return The larger box index of the pair
+     */
+    public int getSecond(int pair) {
+        return (int) pairs.getQuick(pair);
+    }
+}
@@ -0,0 +1,232 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.minecraftforge.event.ForgeEventFactory;
+import org.valkyrienskies.mod.common.ships.chunk_claims.VSChunkClaim;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.util.SectionKeys;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the collision boxes of the blocks of a ship in ship space, by 16x16x16 section, so that entity collision
+ * doesn't have to ask the world for the box of every block near the entity on every move.
+ * <p>
+ * Only plain full cube blocks are cached, see {@link #isCacheable}, merged into a few large boxes by
+ * {@link GreedyBoxMesher}. Every other block is only remembered by its position, and asked for its boxes with the
+ * colliding entity on every query, like {@link World#getCollisionBoxes(Entity, AxisAlignedBB)} does. A section is built
+ * the first time it's queried, and thrown away whenever a block in it or right next to it changes.
+ * <p>
+ * Only the thread of the world of the ship may use this class.
+ */
+public class ShipCollisionBoxCache {
+
+    private static final AxisAlignedBB[] NO_BOXES = new AxisAlignedBB[0];
+    private static final SectionBoxes EMPTY_SECTION = new SectionBoxes(NO_BOXES, new int[0], new IBlockState[0]);
+
+    private final PhysicsObject parent;
+    private final TLongObjectMap<SectionBoxes> sections;
+    // Scratch space for building sections
+    private final long[] voxels;
+    private final List<AxisAlignedBB> blockBoxes;
+    private final BlockPos.MutableBlockPos mutablePos;
+
+    public ShipCollisionBoxCache(@Nonnull PhysicsObject parent) {
+        this.parent = parent;
+        this.sections = new TLongObjectHashMap<>();
+        this.voxels = new long[GreedyBoxMesher.VOXEL_WORDS];
+        this.blockBoxes = new ArrayList<>();
+        this.mutablePos = new BlockPos.MutableBlockPos();
+    }
+
+    /**
+     * Adds the boxes in ship space that entity collides with inside of subspaceBB to collidingBoxes, the same ones
+     * {@link World#getCollisionBoxes(Entity, AxisAlignedBB)} gives: those of the blocks of this ship, those of the
+     * entities in ship space, and whatever the listeners of Forge's GetCollisionBoxesEvent add. The merged boxes of
+     * full blocks may stick out of subspaceBB, and must not be modified.
+     */
+    public void getCollisionBoxes(@Nullable Entity entity, @Nonnull AxisAlignedBB subspaceBB,
+        @Nonnull List<AxisAlignedBB> collidingBoxes) {
+        final World world = parent.getWorld();
+        final VSChunkClaim claim = parent.getChunkClaim();
+        // Not the field, blocks may look up collision boxes themselves while adding theirs
+        final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        // Blocks like fences stick out of their own block space, so blocks right next to subspaceBB are checked too
+        final int minX = MathHelper.floor(subspaceBB.minX) - 1;
+        final int minY = MathHelper.floor(subspaceBB.minY) - 1;
+        final int minZ = MathHelper.floor(subspaceBB.minZ) - 1;
+        final int maxX = MathHelper.ceil(subspaceBB.maxX);
+        final int maxY = MathHelper.ceil(subspaceBB.maxY);
+        final int maxZ = MathHelper.ceil(subspaceBB.maxZ);
+        for (int sectionX = minX >> 4; sectionX <= maxX >> 4; sectionX++) {
+            for (int sectionZ = minZ >> 4; sectionZ <= maxZ >> 4; sectionZ++) {
+                if (!claim.containsChunk(sectionX, sectionZ)) {
+                    continue;
+                }
+                for (int sectionY = Math.max(0, minY >> 4); sectionY <= Math.min(15, maxY >> 4); sectionY++) {
+                    final SectionBoxes section = getSectionBoxes(sectionX, sectionY, sectionZ);
+                    for (AxisAlignedBB box : section.fullBlockBoxes) {
+                        if (box.intersects(subspaceBB)) {
+                            collidingBoxes.add(box);
+                        }
+                    }
+                    for (int i = 0; i < section.uncachedIndices.length; i++) {
+                        final int index = section.uncachedIndices[i];
+                        final int x = (sectionX << 4) + (index & 15);
+                        final int y = (sectionY << 4) + ((index >> 8) & 15);
+                        final int z = (sectionZ << 4) + ((index >> 4) & 15);
+                        if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) {
+                            pos.setPos(x, y, z);
+                            section.uncachedStates[i].addCollisionBoxToList(world, pos, subspaceBB,
+                                collidingBoxes, entity, false);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (entity != null) {
+            // Boats and shulkers placed on the ship are in ship space too
+            for (Entity other : world.getEntitiesWithinAABBExcludingEntity(entity, subspaceBB.grow(0.25D))) {
+                if (entity.isRidingSameEntity(other)) {
+                    continue;
+                }
+                AxisAlignedBB otherBox = other.getCollisionBoundingBox();
+                if (otherBox != null && otherBox.intersects(subspaceBB)) {
+                    collidingBoxes.add(otherBox);
+                }
+                otherBox = entity.getCollisionBox(other);
+                if (otherBox != null && otherBox.intersects(subspaceBB)) {
+                    collidingBoxes.add(otherBox);
+                }
+            }
+        }
+        ForgeEventFactory.gatherCollisionBoxes(world, entity, subspaceBB, collidingBoxes);
+    }
+
+    /**
+     * Forgets the sections whose boxes may have changed because of a block change at pos.
+     */
+    public void onSetBlockState(@Nonnull BlockPos pos) {
+        for (int sectionX = (pos.getX() - 1) >> 4; sectionX <= (pos.getX() + 1) >> 4; sectionX++) {
+            for (int sectionY = Math.max(0, (pos.getY() - 1) >> 4); sectionY <= Math.min(15, (pos.getY() + 1) >> 4);
+                 sectionY++) {
+                for (int sectionZ = (pos.getZ() - 1) >> 4; sectionZ <= (pos.getZ() + 1) >> 4; sectionZ++) {
+                    sections.remove(SectionKeys.getSectionKey(sectionX, sectionY, sectionZ));
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets every section of a chunk, for when the whole chunk has been replaced.
+     */
+    public void onChunkReplaced(int chunkX, int chunkZ) {
+        for (int sectionY = 0; sectionY < 16; sectionY++) {
+            sections.remove(SectionKeys.getSectionKey(chunkX, sectionY, chunkZ));
+        }
+    }
+
+    private SectionBoxes getSectionBoxes(int sectionX, int sectionY, int sectionZ) {
+        final long key = SectionKeys.getSectionKey(sectionX, sectionY, sectionZ);
+        SectionBoxes section = sections.get(key);
+        if (section == null) {
+            final Chunk chunk = parent.getClaimedChunkCache().getChunkAt(sectionX, sectionZ);
+            if (chunk == null) {
+                // Not loaded yet, try again next time
+                return EMPTY_SECTION;
+            }
+            section = buildSectionBoxes(chunk, sectionX, sectionY, sectionZ);
+            sections.put(key, section);
+        }
+        return section;
+    }
+
+    private SectionBoxes buildSectionBoxes(Chunk chunk, int sectionX, int sectionY, int sectionZ) {
+        final ExtendedBlockStorage storage = chunk.getBlockStorageArray()[sectionY];
+        if (storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty()) {
+            return EMPTY_SECTION;
+        }
+        final int baseX = sectionX << 4;
+        final int baseY = sectionY << 4;
+        final int baseZ = sectionZ << 4;
+        final List<AxisAlignedBB> boxes = new ArrayList<>();
+        final List<IBlockState> uncachedStates = new ArrayList<>();
+        int[] uncachedIndices = new int[16];
+        Arrays.fill(voxels, 0);
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    final IBlockState state = storage.get(x, y, z);
+                    if (state.getMaterial() == Material.AIR) {
+                        continue;
+                    }
+                    mutablePos.setPos(baseX + x, baseY + y, baseZ + z);
+                    if (isCacheable(state, mutablePos)) {
+                        GreedyBoxMesher.setVoxel(voxels, x, y, z);
+                    } else {
+                        if (uncachedStates.size() == uncachedIndices.length) {
+                            uncachedIndices = Arrays.copyOf(uncachedIndices, uncachedIndices.length * 2);
+                        }
+                        // The same y << 8 | z << 4 | x order as the block storage
+                        uncachedIndices[uncachedStates.size()] = y << 8 | z << 4 | x;
+                        uncachedStates.add(state);
+                    }
+                }
+            }
+        }
+        for (int box : GreedyBoxMesher.mesh(voxels)) {
+            boxes.add(new AxisAlignedBB(
+                baseX + GreedyBoxMesher.getMinX(box), baseY + GreedyBoxMesher.getMinY(box),
+                baseZ + GreedyBoxMesher.getMinZ(box), baseX + GreedyBoxMesher.getMaxX(box),
+                baseY + GreedyBoxMesher.getMaxY(box), baseZ + GreedyBoxMesher.getMaxZ(box)));
+        }
+        return new SectionBoxes(boxes.toArray(NO_BOXES), Arrays.copyOf(uncachedIndices, uncachedStates.size()),
+            uncachedStates.toArray(new IBlockState[0]));
+    }
+
+    /**
+     * @return True if the only box of state is its whole block no matter which entity asks. Blocks with tile entities
+     * are never cached, their boxes can change without the block changing, like those of a moving piston.
+     */
+    private boolean isCacheable(IBlockState state, BlockPos pos) {
+        final Block block = state.getBlock();
+        if (block.hasTileEntity(state) || !state.isFullCube()) {
+            return false;
+        }
+        final AxisAlignedBB blockBB = new AxisAlignedBB(pos);
+        blockBoxes.clear();
+        state.addCollisionBoxToList(parent.getWorld(), pos, blockBB, blockBoxes, null, false);
+        return blockBoxes.size() == 1 && blockBoxes.get(0).equals(blockBB);
+    }
+
+    private static class SectionBoxes {
+
+        // The merged boxes of the cacheable blocks
+        final AxisAlignedBB[] fullBlockBoxes;
+        // The other blocks, which are asked for their boxes on every query
+        final int[] uncachedIndices;
+        final IBlockState[] uncachedStates;
+
+        SectionBoxes(AxisAlignedBB[] fullBlockBoxes, int[] uncachedIndices, IBlockState[] uncachedStates) {
+            this.fullBlockBoxes = fullBlockBoxes;
+            this.uncachedIndices = uncachedIndices;
+            this.uncachedStates = uncachedStates;
+        }
+    }
+}
@@ -1,44 +1,46 @@
 package org.valkyrienskies.mod.common.collision;
 
-import net.minecraft.block.state.IBlockState;
-import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos.MutableBlockPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import org.joml.Vector3d;
 import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
-import org.valkyrienskies.mod.common.util.VSIterationUtils;
 import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
 import org.valkyrienskies.mod.common.util.datastructures.IBitOctreeProvider;
+import org.valkyrienskies.mod.common.util.multithreaded.PhysicsPhase;
 import valkyrienwarfare.api.TransformType;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 import java.util.concurrent.Callable;
 
 public class ShipCollisionTask implements Callable<Void> {
 
     public final static int MAX_TASKS_TO_CHECK = 45;
     private final WorldPhysicsCollider toTask;
-    private final int taskStartIndex;
-    private final int tasksToCheck;
     private final MutableBlockPos mutablePos;
-    private final MutableBlockPos inLocalPos;
     private final Vector3d inWorld;
-    private final List<CollisionInformationHolder> collisionInformationGenerated;
-    private IBlockState inWorldState;
-    // public TIntArrayList foundPairs = new TIntArrayList();
+    // Scratch space and output, reused every time this task runs so that the narrow phase doesn't allocate.
+    private final BlockBoxCollider collider;
+    private final CollisionContactBuffer contacts;
+    private int taskStartIndex;
+    private int tasksToCheck;
 
-    public ShipCollisionTask(WorldPhysicsCollider toTask, int taskStartIndex) {
-        this.taskStartIndex = taskStartIndex;
+    /**
+     * Creates a task with no work; {@link #setTaskStartIndex(int)} must be called before running it. Tasks are pooled
+     * by their {@link WorldPhysicsCollider} and reused.
+     */
+    public ShipCollisionTask(WorldPhysicsCollider toTask) {
         this.toTask = toTask;
         this.mutablePos = new MutableBlockPos();
-        this.inLocalPos = new MutableBlockPos();
         this.inWorld = new Vector3d();
-        this.collisionInformationGenerated = new ArrayList<>();
-        this.inWorldState = null;
+        this.collider = new BlockBoxCollider();
+        this.contacts = new CollisionContactBuffer();
+        this.taskStartIndex = 0;
+        this.tasksToCheck = 0;
+    }
+
+    public void setTaskStartIndex(int taskStartIndex) {
+        this.taskStartIndex = taskStartIndex;
 
         int size = toTask.getCachedPotentialHitSize();
         if (taskStartIndex + MAX_TASKS_TO_CHECK > size + 1) {
@@ -50,33 +52,28 @@ public class ShipCollisionTask implements Callable<Void> {
 
     @Override
     public Void call() {
-        for (int index = taskStartIndex; index < tasksToCheck + 1; index++) {
+        final long startTime = System.nanoTime();
+        contacts.clear();
+        // Stop at the end of the potential hits instead of running off of the end of the list
+        int endIndex = Math.min(tasksToCheck + 1, toTask.getCachedPotentialHitSize());
+        for (int index = taskStartIndex; index < endIndex; index++) {
             int integer = toTask.getCachedPotentialHit(index);
             processNumber(integer);
         }
 
+        toTask.getParent().getPhysicsProfile().addTime(PhysicsPhase.NARROW_PHASE, System.nanoTime() - startTime);
         return null;
     }
 
-    public List<CollisionInformationHolder> getCollisionInformationGenerated() {
-        return collisionInformationGenerated;
-    }
-
     /**
-     * Returns an iterator that loops over the collision information in quasi-random order. This is
-     * important to avoid biasing one side over another, because otherwise one side would slowly
-     * sink into the ground.
-     *
-     * @return
+     * The contacts found by the last run of this task, in the order they were found.
      */
-    public Iterator<CollisionInformationHolder> getCollisionInformationIterator() {
-        // Collections.shuffle(collisionInformationGenerated);
-        return collisionInformationGenerated.iterator();
+    public CollisionContactBuffer getContacts() {
+        return contacts;
     }
 
     private void processNumber(int integer) {
         SpatialDetector.setPosWithRespectTo(integer, toTask.getCenterPotentialHit(), mutablePos);
-        inWorldState = toTask.getParent().getCachedSurroundingChunks().getBlockState(mutablePos);
 
         inWorld.x = mutablePos.getX() + .5;
         inWorld.y = mutablePos.getY() + .5;
@@ -89,11 +86,17 @@ public class ShipCollisionTask implements Callable<Void> {
         int midY = MathHelper.floor(inWorld.y + .5D);
         int midZ = MathHelper.floor(inWorld.z + .5D);
 
-        // Check the 27 possible positions
-        VSIterationUtils.expand3d(midX, midY, midZ, (x, y, z) -> checkPosition(x, y, z, integer));
+        // Check the 27 possible positions, in the same order as VSIterationUtils.expand3d()
+        for (int x = midX - 1; x <= midX + 1; x++) {
+            for (int y = midY - 1; y <= midY + 1; y++) {
+                for (int z = midZ - 1; z <= midZ + 1; z++) {
+                    checkPosition(x, y, z);
+                }
+            }
+        }
     }
 
-    public void checkPosition(int x, int y, int z, int positionHash) {
+    public void checkPosition(int x, int y, int z) {
         if (!toTask.getParent().getChunkClaim().containsChunk(x >> 4, z >> 4)) {
             return;
         }
@@ -106,45 +109,14 @@ public class ShipCollisionTask implements Callable<Void> {
             IBitOctree octree = provider.getBitOctree();
 
             if (octree.get(x & 15, y & 15, z & 15)) {
-                IBlockState inLocalState = chunkIn.getBlockState(x, y, z);
-                // Only if you want to stop short
-                // foundPairs.add(positionHash);
-                // foundPairs.add(x);
-                // foundPairs.add(y);
-                // foundPairs.add(z);
-
-                inLocalPos.setPos(x, y, z);
-
-                AxisAlignedBB inLocalBB = new AxisAlignedBB(inLocalPos.getX(), inLocalPos.getY(),
-                    inLocalPos.getZ(),
-                    inLocalPos.getX() + 1, inLocalPos.getY() + 1, inLocalPos.getZ() + 1);
-                AxisAlignedBB inGlobalBB = new AxisAlignedBB(mutablePos.getX(), mutablePos.getY(),
-                    mutablePos.getZ(),
-                    mutablePos.getX() + 1, mutablePos.getY() + 1, mutablePos.getZ() + 1);
-
-                // This changes the box bounding box to the real bounding box, not sure if this
-                // is better or worse for this mod
-                // List<AxisAlignedBB> colBB = worldObj.getCollisionBoxes(inLocalBB);
-                // inLocalBB = colBB.get(0);
-
-                Polygon shipInWorld = new Polygon(inLocalBB,
-                    toTask.getParent().getShipTransformationManager().getCurrentPhysicsTransform(),
-                    TransformType.SUBSPACE_TO_GLOBAL);
-                Polygon worldPoly = new Polygon(inGlobalBB);
-
                 // TODO: Remove the normals crap
-                PhysPolygonCollider collider = new PhysPolygonCollider(shipInWorld, worldPoly,
+                boolean collided = collider.collide(x, y, z,
+                    toTask.getParent().getShipTransformationManager().getCurrentPhysicsTransform(),
+                    mutablePos.getX(), mutablePos.getY(), mutablePos.getZ(),
                     toTask.getParent().getShipTransformationManager().normals);
 
-                if (!collider.seperated) {
-                    // return handleActualCollision(collider, mutablePos, inLocalPos, inWorldState,
-                    // inLocalState);
-                    CollisionInformationHolder holder = new CollisionInformationHolder(collider,
-                        mutablePos.getX(),
-                        mutablePos.getY(), mutablePos.getZ(), inLocalPos.getX(), inLocalPos.getY(),
-                        inLocalPos.getZ(), inWorldState, inLocalState);
-
-                    collisionInformationGenerated.add(holder);
+                if (collided) {
+                    contacts.add(collider);
                 }
             }
         }
@@ -154,61 +126,4 @@ public class ShipCollisionTask implements Callable<Void> {
         return toTask;
     }
 
-    /**
-     * Quasi-Random Iterator that uses a linear congruential generator to generate the order of
-     * iteration.
-     *
-     * @param <E>
-     * @author thebest108
-     */
-    private static class QuasiRandomIterator<E> implements Iterator<E> {
-
-        // Any large prime number works here.
-        private static final int c = 65537;
-        private final List<E> internalList;
-        private final int startIndex;
-        private int index;
-        private boolean isFinished;
-
-        /**
-         * Creates a new quasi random iterator for the given list, the list passed must not be empty
-         * otherwise an IllegalArgumentException is thrown.
-         */
-        QuasiRandomIterator(List<E> list) {
-            if (list.size() == 0) {
-                throw new IllegalArgumentException();
-            }
-            this.internalList = list;
-            this.isFinished = false;
-            // Start the index at a random value between 0 <= x < list.size()
-            this.startIndex = (int) (Math.random() * list.size());
-            this.index = startIndex;
-        }
-
-        @Override
-        public boolean hasNext() {
-            return !isFinished;
-        }
-
-        @Override
-        public E next() {
-            int oldIndex = index;
-            advanceIndex();
-            return internalList.get(oldIndex);
-        }
-
-        /**
-         * Sets index to be the next value in the linear congruential generator. Also marks the
-         * iterator as finished once a full period has occured.
-         */
-        private void advanceIndex() {
-            index = (index + c) % internalList.size();
-            // Stop the iterator after we've been over every element.
-            if (index == startIndex) {
-                isFinished = true;
-            }
-        }
-
-    }
-
 }
@@ -0,0 +1,215 @@
+package org.valkyrienskies.mod.common.collision;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.MathHelper;
+import org.joml.Matrix4d;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.collision.IncrementalWorldCollisionCache.ISectionOctreeSource;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import valkyrienwarfare.api.TransformType;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Finds the contacts between the blocks of one chunk section of a ship and the blocks of another ship.
+ * <p>
+ * The octree of the section is walked the same way {@link IncrementalWorldCollisionCache} walks the world, skipping
+ * every node that is entirely outside of the region where the ships overlap. Each solid block found is moved into
+ * the subspace of the second ship, and collided against the solid blocks of the second ship around it, again read
+ * from octrees. Tasks are pooled by {@link ShipToShipCollider} and reused.
+ */
+public class ShipPairCollisionTask implements Callable<Void> {
+
+    private final BlockBoxCollider collider;
+    private final CollisionContactBuffer contacts;
+    private final Matrix4d firstToSecond;
+    private final Vector3d inSecond;
+    private ShipTransform firstTransform, secondTransform;
+    private ISectionOctreeSource secondOctrees;
+    private Vector3dc[] axes;
+    private IBitOctree sectionOctree;
+    private int sectionX, sectionY, sectionZ;
+    // The blocks of the first ship to check, inclusive
+    private int minX, minY, minZ, maxX, maxY, maxZ;
+    // The last section of the second ship that was looked up
+    private boolean hasCachedSection;
+    private int cachedSectionX, cachedSectionY, cachedSectionZ;
+    private IBitOctree cachedOctree;
+    private long lastRunNanos;
+
+    /**
+     * Creates a task with no work; {@link #reset} must be called before running it.
+     */
+    public ShipPairCollisionTask() {
+        this.collider = new BlockBoxCollider();
+        this.contacts = new CollisionContactBuffer();
+        this.firstToSecond = new Matrix4d();
+        this.inSecond = new Vector3d();
+    }
+
+    /**
+     * @param firstRegion   The region where the two ships might be touching, in the subspace of the first ship
+     * @param sectionOctree The octree of the section of the first ship at sectionX, sectionY, sectionZ
+     * @param axes          The separating axes of the two ships, see {@link #createCollisionNormals(ShipTransform,
+     *                      ShipTransform)}
+     */
+    public void reset(ShipTransform firstTransform, IBitOctree sectionOctree, int sectionX, int sectionY,
+        int sectionZ, AxisAlignedBB firstRegion, ShipTransform secondTransform, ISectionOctreeSource secondOctrees,
+        Vector3dc[] axes) {
+        this.firstTransform = firstTransform;
+        this.secondTransform = secondTransform;
+        this.secondOctrees = secondOctrees;
+        this.axes = axes;
+        this.sectionOctree = sectionOctree;
+        this.sectionX = sectionX;
+        this.sectionY = sectionY;
+        this.sectionZ = sectionZ;
+        // Grown by a block, so that blocks only touching the edge of the region are included
+        this.minX = MathHelper.floor(firstRegion.minX) - 1;
+        this.minY = MathHelper.floor(firstRegion.minY) - 1;
+        this.minZ = MathHelper.floor(firstRegion.minZ) - 1;
+        this.maxX = MathHelper.floor(firstRegion.maxX) + 1;
+        this.maxY = MathHelper.floor(firstRegion.maxY) + 1;
+        this.maxZ = MathHelper.floor(firstRegion.maxZ) + 1;
+        secondTransform.getGlobalToSubspace().mul(firstTransform.getSubspaceToGlobal(), firstToSecond);
+        this.hasCachedSection = false;
+        this.cachedOctree = null;
+    }
+
+    @Override
+    public Void call() {
+        final long startTime = System.nanoTime();
+        contacts.clear();
+        final IBitOctree octree = sectionOctree;
+        final int minStorageX = sectionX << 4;
+        final int minStorageY = sectionY << 4;
+        final int minStorageZ = sectionZ << 4;
+
+        for (int levelThree = 0; levelThree < 8; levelThree++) {
+            int levelThreeIndex = octree.getOctreeLevelThreeIndex(levelThree);
+            int levelThreeX = minStorageX + (levelThree % 2) * 8;
+            int levelThreeY = minStorageY + ((levelThree >> 1) % 2) * 8;
+            int levelThreeZ = minStorageZ + ((levelThree >> 2) % 2) * 8;
+            if (!octree.getAtIndex(levelThreeIndex) || !isNodeInRegion(levelThreeX, levelThreeY, levelThreeZ, 8)) {
+                continue;
+            }
+            for (int levelTwo = 0; levelTwo < 8; levelTwo++) {
+                int levelTwoIndex = octree.getOctreeLevelTwoIndex(levelThreeIndex, levelTwo);
+                int levelTwoX = levelThreeX + (levelTwo % 2) * 4;
+                int levelTwoY = levelThreeY + ((levelTwo >> 1) % 2) * 4;
+                int levelTwoZ = levelThreeZ + ((levelTwo >> 2) % 2) * 4;
+                if (!octree.getAtIndex(levelTwoIndex) || !isNodeInRegion(levelTwoX, levelTwoY, levelTwoZ, 4)) {
+                    continue;
+                }
+                for (int levelOne = 0; levelOne < 8; levelOne++) {
+                    int levelOneIndex = octree.getOctreeLevelOneIndex(levelTwoIndex, levelOne);
+                    int baseX = levelTwoX + (levelOne % 2) * 2;
+                    int baseY = levelTwoY + ((levelOne >> 1) % 2) * 2;
+                    int baseZ = levelTwoZ + ((levelOne >> 2) % 2) * 2;
+                    if (!octree.getAtIndex(levelOneIndex) || !isNodeInRegion(baseX, baseY, baseZ, 2)) {
+                        continue;
+                    }
+                    for (int offset = 0; offset < 8; offset++) {
+                        int x = baseX + (offset & 1);
+                        int y = baseY + ((offset >> 1) & 1);
+                        int z = baseZ + ((offset >> 2) & 1);
+                        if (octree.get(x & 15, y & 15, z & 15)) {
+                            collideBlock(x, y, z);
+                        }
+                    }
+                }
+            }
+        }
+        lastRunNanos = System.nanoTime() - startTime;
+        return null;
+    }
+
+    /**
+     * The contacts found by the last run of this task, in the order they were found. The first ship takes the place
+     * of the ship and the second ship takes the place of the world, see
+     * {@link BlockBoxCollider#collideShipBlocks(int, int, int, ShipTransform, int, int, int, ShipTransform,
+     * Vector3dc[])}.
+     */
+    public CollisionContactBuffer getContacts() {
+        return contacts;
+    }
+
+    /**
+     * @return How long the last run of this task took, in nanoseconds.
+     */
+    public long getLastRunNanos() {
+        return lastRunNanos;
+    }
+
+    private boolean isNodeInRegion(int nodeX, int nodeY, int nodeZ, int nodeSize) {
+        return nodeX + nodeSize - 1 >= minX && nodeX <= maxX && nodeY + nodeSize - 1 >= minY && nodeY <= maxY
+            && nodeZ + nodeSize - 1 >= minZ && nodeZ <= maxZ;
+    }
+
+    private void collideBlock(int x, int y, int z) {
+        inSecond.set(x + .5, y + .5, z + .5);
+        firstToSecond.transformPosition(inSecond);
+
+        // A block is never more than sqrt(3) / 2 from its center, so only these 27 blocks can be touching it
+        int midX = MathHelper.floor(inSecond.x);
+        int midY = MathHelper.floor(inSecond.y);
+        int midZ = MathHelper.floor(inSecond.z);
+        for (int secondX = midX - 1; secondX <= midX + 1; secondX++) {
+            for (int secondY = midY - 1; secondY <= midY + 1; secondY++) {
+                for (int secondZ = midZ - 1; secondZ <= midZ + 1; secondZ++) {
+                    IBitOctree secondOctree = getSecondOctree(secondX >> 4, secondY >> 4, secondZ >> 4);
+                    if (secondOctree != null && secondOctree.get(secondX & 15, secondY & 15, secondZ & 15)
+                        && collider.collideShipBlocks(x, y, z, firstTransform, secondX, secondY, secondZ,
+                        secondTransform, axes)) {
+                        contacts.add(collider);
+                    }
+                }
+            }
+        }
+    }
+
+    private IBitOctree getSecondOctree(int sectionX, int sectionY, int sectionZ) {
+        if (!hasCachedSection || sectionX != cachedSectionX || sectionY != cachedSectionY
+            || sectionZ != cachedSectionZ) {
+            cachedOctree = secondOctrees.getSectionOctree(sectionX, sectionY, sectionZ);
+            cachedSectionX = sectionX;
+            cachedSectionY = sectionY;
+            cachedSectionZ = sectionZ;
+            hasCachedSection = true;
+        }
+        return cachedOctree;
+    }
+
+    /**
+     * Creates the 15 separating axes of two ships in world space: the axes of each ship, and the cross products of
+     * every axis of the first ship with every axis of the second. Same as the normals of a ship against the world,
+     * with the axes of the second ship in the place of the world axes.
+     */
+    public static Vector3dc[] createCollisionNormals(ShipTransform first, ShipTransform second) {
+        final Vector3dc[] normals = new Vector3dc[15];
+        final Vector3d[] firstNormals = Polygon.generateAxisAlignedNorms();
+        final Vector3d[] secondNormals = Polygon.generateAxisAlignedNorms();
+        for (int i = 0; i < 3; i++) {
+            first.transformDirection(firstNormals[i], TransformType.SUBSPACE_TO_GLOBAL);
+            second.transformDirection(secondNormals[i], TransformType.SUBSPACE_TO_GLOBAL);
+            normals[i] = firstNormals[i];
+            normals[i + 3] = secondNormals[i];
+        }
+        int index = 6;
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                Vector3d normal = firstNormals[i].cross(secondNormals[j], new Vector3d());
+                // Parallel axes have no cross product, repeat an axis we already have instead.
+                if (normal.lengthSquared() < .01) {
+                    normals[index] = firstNormals[i];
+                } else {
+                    normals[index] = normal.normalize();
+                }
+                index++;
+            }
+        }
+        return normals;
+    }
+}
@@ -0,0 +1,358 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.collision.IncrementalWorldCollisionCache.ISectionOctreeSource;
+import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctreeProvider;
+import org.valkyrienskies.mod.common.util.multithreaded.IShipPairCollider;
+import org.valkyrienskies.mod.common.util.multithreaded.PhysicsPhase;
+import valkyrienwarfare.api.TransformType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Handles the task of finding and processing collisions between the ships of a world.
+ * <p>
+ * Once per physics tick {@link #updatePairs(List, double)} finds the pairs of ships that might touch during the tick
+ * with a {@link ShipBroadphase}. Then for every step, {@link #splitIntoCollisionTasks(List, List)} creates a
+ * {@link ShipPairCollisionTask} for every section of the smaller ship of each pair that is inside the region where
+ * the two ships overlap, to be run on the physics thread pool. The contacts found are then applied to both ships by
+ * {@link #processCollisionTasks()}, in task order.
+ */
+public class ShipToShipCollider implements IShipPairCollider<PhysicsObject> {
+
+    // Bounding boxes are grown by this much, to catch ships that are about to touch
+    public static final double AABB_EXPANSION = 1D;
+    // Below this speed, in meters per second, ships don't bounce off of each other
+    public static final double RESTITUTION_SPEED_THRESHOLD = .5D;
+    // How fast ships are pushed apart, as a fraction of their penetration per second
+    public static final double PENETRATION_CORRECTION = 4D;
+    // Penetrations smaller than this are left alone, so ships resting on each other don't jitter
+    public static final double PENETRATION_SLOP = .01D;
+
+    private final ShipBroadphase broadphase;
+    private AxisAlignedBB[] boxes;
+    // The pairs found by the last updatePairs(), the first ship of a pair is the one with fewer blocks
+    private final List<PhysicsObject> pairFirst;
+    private final List<PhysicsObject> pairSecond;
+    private final List<AxisAlignedBB> pairRegions;
+    private final Set<PhysicsObject> collidingShips;
+    // The tasks created by the last splitIntoCollisionTasks(), and the index of the pair of each task
+    private final List<ShipPairCollisionTask> tasks;
+    private final TIntArrayList taskPairs;
+    private final List<ShipPairCollisionTask> taskPool;
+    private final Vector3d linearVelocity, normal, contactPoint, firstInBody, secondInBody, firstVelocity,
+        secondVelocity, firstCross, secondCross, impulse;
+
+    public ShipToShipCollider() {
+        this.broadphase = new ShipBroadphase();
+        this.boxes = new AxisAlignedBB[0];
+        this.pairFirst = new ArrayList<>();
+        this.pairSecond = new ArrayList<>();
+        this.pairRegions = new ArrayList<>();
+        this.collidingShips = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.tasks = new ArrayList<>();
+        this.taskPairs = new TIntArrayList();
+        this.taskPool = new ArrayList<>();
+        this.linearVelocity = new Vector3d();
+        this.normal = new Vector3d();
+        this.contactPoint = new Vector3d();
+        this.firstInBody = new Vector3d();
+        this.secondInBody = new Vector3d();
+        this.firstVelocity = new Vector3d();
+        this.secondVelocity = new Vector3d();
+        this.firstCross = new Vector3d();
+        this.secondCross = new Vector3d();
+        this.impulse = new Vector3d();
+    }
+
+    /**
+     * Finds the pairs of ships that might touch within the next delta seconds.
+     */
+    public void updatePairs(List<PhysicsObject> ships, double delta) {
+        if (boxes.length < ships.size()) {
+            boxes = new AxisAlignedBB[ships.size()];
+        }
+        for (int i = 0; i < ships.size(); i++) {
+            PhysicsObject ship = ships.get(i);
+            Vector3dc velocity = ship.getPhysicsCalculations().getLinearVelocity(linearVelocity);
+            boxes[i] = ship.getShipBB().grow(AABB_EXPANSION)
+                .expand(velocity.x() * delta, velocity.y() * delta, velocity.z() * delta);
+        }
+        broadphase.findPairs(boxes, ships.size());
+
+        clearPairs();
+        for (int pair = 0; pair < broadphase.getPairCount(); pair++) {
+            int firstIndex = broadphase.getFirst(pair);
+            int secondIndex = broadphase.getSecond(pair);
+            PhysicsObject first = ships.get(firstIndex);
+            PhysicsObject second = ships.get(secondIndex);
+            // Only the sections of the first ship are walked, so pick the one with the fewest blocks
+            if (second.getBlockPositions().size() < first.getBlockPositions().size()) {
+                PhysicsObject temp = first;
+                first = second;
+                second = temp;
+            }
+            pairFirst.add(first);
+            pairSecond.add(second);
+            pairRegions.add(boxes[firstIndex].intersect(boxes[secondIndex]));
+            collidingShips.add(first);
+            collidingShips.add(second);
+        }
+        Arrays.fill(boxes, null);
+    }
+
+    /**
+     * Forgets every pair, for when ships shouldn't collide with each other.
+     */
+    public void clearPairs() {
+        pairFirst.clear();
+        pairSecond.clear();
+        pairRegions.clear();
+        collidingShips.clear();
+    }
+
+    public boolean hasPairs() {
+        return !pairFirst.isEmpty();
+    }
+
+    public int getPairCount() {
+        return pairFirst.size();
+    }
+
+    /**
+     * @return The ship of the pair with the fewest blocks.
+     */
+    public PhysicsObject getPairFirst(int pair) {
+        return pairFirst.get(pair);
+    }
+
+    public PhysicsObject getPairSecond(int pair) {
+        return pairSecond.get(pair);
+    }
+
+    /**
+     * Steps the ships that were going to skip this tick anyway when they're paired with a ship that steps, otherwise
+     * the two would never collide. Such a step covers the ticks the ship skipped as well as this one. A ship stepped
+     * this way can pull in the skipped ships it's paired with in turn.
+     *
+     * @param pairFirst    The index of the first ship of every pair in stepCounts, -1 if that ship isn't simulated
+     * @param pairSecond   The index of the second ship of every pair in stepCounts, -1 if that ship isn't simulated
+     * @param stepCounts   The number of steps of each ship this tick, 0 if the ship is skipped
+     * @param stepTimes    The number of seconds simulated by each step of each ship
+     * @param skippedTicks How many ticks in a row each ship was skipped before this one
+     * @param delta        The number of seconds of a tick
+     */
+    public static void stepSkippedPartners(TIntList pairFirst, TIntList pairSecond, int[] stepCounts,
+        double[] stepTimes, int[] skippedTicks, double delta) {
+        boolean steppedShip = true;
+        while (steppedShip) {
+            steppedShip = false;
+            for (int pair = 0; pair < pairFirst.size(); pair++) {
+                final int first = pairFirst.get(pair);
+                final int second = pairSecond.get(pair);
+                if (first == -1 || second == -1 || (stepCounts[first] == 0) == (stepCounts[second] == 0)) {
+                    continue;
+                }
+                final int skipped = stepCounts[first] == 0 ? first : second;
+                stepCounts[skipped] = 1;
+                stepTimes[skipped] = delta * (skippedTicks[skipped] + 1);
+                steppedShip = true;
+            }
+        }
+    }
+
+    /**
+     * @return True if the ship is in any of the pairs found by the last {@link #updatePairs(List, double)}.
+     */
+    @Override
+    public boolean isColliding(PhysicsObject ship) {
+        return collidingShips.contains(ship);
+    }
+
+    /**
+     * Creates the collision tasks of every pair with both ships in shipsInStep, from their current physics
+     * transforms.
+     */
+    @Override
+    public void splitIntoCollisionTasks(List<PhysicsObject> shipsInStep, List<ShipPairCollisionTask> toAdd) {
+        tasks.clear();
+        taskPairs.resetQuick();
+        if (!hasPairs()) {
+            return;
+        }
+        Set<PhysicsObject> stepping = Collections.newSetFromMap(new IdentityHashMap<>());
+        stepping.addAll(shipsInStep);
+
+        for (int pair = 0; pair < pairFirst.size(); pair++) {
+            PhysicsObject first = pairFirst.get(pair);
+            PhysicsObject second = pairSecond.get(pair);
+            if (!stepping.contains(first) || !stepping.contains(second)) {
+                continue;
+            }
+            final long startTime = System.nanoTime();
+            ShipTransform firstTransform = first.getShipTransformationManager().getCurrentPhysicsTransform();
+            ShipTransform secondTransform = second.getShipTransformationManager().getCurrentPhysicsTransform();
+            Vector3dc[] axes = ShipPairCollisionTask.createCollisionNormals(firstTransform, secondTransform);
+            ISectionOctreeSource secondOctrees = (x, y, z) -> getShipSectionOctree(second, x, y, z);
+            AxisAlignedBB firstRegion = new Polygon(pairRegions.get(pair), firstTransform,
+                TransformType.GLOBAL_TO_SUBSPACE).getEnclosedAABB();
+
+            int minSectionX = (MathHelper.floor(firstRegion.minX) - 1) >> 4;
+            int minSectionY = Math.max(0, (MathHelper.floor(firstRegion.minY) - 1) >> 4);
+            int minSectionZ = (MathHelper.floor(firstRegion.minZ) - 1) >> 4;
+            int maxSectionX = (MathHelper.floor(firstRegion.maxX) + 1) >> 4;
+            int maxSectionY = Math.min(15, (MathHelper.floor(firstRegion.maxY) + 1) >> 4);
+            int maxSectionZ = (MathHelper.floor(firstRegion.maxZ) + 1) >> 4;
+            for (int sectionX = minSectionX; sectionX <= maxSectionX; sectionX++) {
+                for (int sectionZ = minSectionZ; sectionZ <= maxSectionZ; sectionZ++) {
+                    for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+                        IBitOctree octree = getShipSectionOctree(first, sectionX, sectionY, sectionZ);
+                        if (octree == null) {
+                            continue;
+                        }
+                        if (taskPool.size() == tasks.size()) {
+                            taskPool.add(new ShipPairCollisionTask());
+                        }
+                        ShipPairCollisionTask task = taskPool.get(tasks.size());
+                        task.reset(firstTransform, octree, sectionX, sectionY, sectionZ, firstRegion,
+                            secondTransform, secondOctrees, axes);
+                        tasks.add(task);
+                        taskPairs.add(pair);
+                    }
+                }
+            }
+            first.getPhysicsProfile().addTime(PhysicsPhase.COLLISION_CACHE, System.nanoTime() - startTime);
+        }
+        toAdd.addAll(tasks);
+    }
+
+    /**
+     * Applies the contacts found by the tasks of the last {@link #splitIntoCollisionTasks(List, List)} to both ships
+     * of each pair. Must be called after all of those tasks have finished running.
+     */
+    @Override
+    public void processCollisionTasks() {
+        for (int i = 0; i < tasks.size(); i++) {
+            final long startTime = System.nanoTime();
+            ShipPairCollisionTask task = tasks.get(i);
+            PhysicsObject first = pairFirst.get(taskPairs.get(i));
+            PhysicsObject second = pairSecond.get(taskPairs.get(i));
+            CollisionContactBuffer contacts = task.getContacts();
+            for (int contact = 0; contact < contacts.size(); contact++) {
+                handleContact(first, second, contacts, contact);
+            }
+            contacts.clear();
+
+            first.getPhysicsProfile().addTime(PhysicsPhase.NARROW_PHASE, task.getLastRunNanos());
+            // Both ships get half of the time it took to resolve their contacts
+            long halfImpulseTime = (System.nanoTime() - startTime) / 2;
+            first.getPhysicsProfile().addTime(PhysicsPhase.IMPULSE_RESOLUTION, halfImpulseTime);
+            second.getPhysicsProfile().addTime(PhysicsPhase.IMPULSE_RESOLUTION, halfImpulseTime);
+        }
+        tasks.clear();
+        taskPairs.resetQuick();
+    }
+
+    /**
+     * Applies equal and opposite impulses to both ships at the contact point, so that they stop moving into each other
+     * and a part of the penetration is removed every step.
+     */
+    private void handleContact(PhysicsObject first, PhysicsObject second, CollisionContactBuffer contacts,
+        int index) {
+        double penetration = contacts.getPenetrationDistance(index);
+        if (penetration == 0) {
+            return;
+        }
+        // The first block has to move against the normal if the penetration is positive, so this points from the
+        // second ship towards the first.
+        normal.set(contacts.getNormalX(index), contacts.getNormalY(index), contacts.getNormalZ(index))
+            .mul(-Math.signum(penetration));
+        contactPoint.set(
+            (contacts.getTopX(index) + contacts.getBottomX(index)) / 2,
+            (contacts.getTopY(index) + contacts.getBottomY(index)) / 2,
+            (contacts.getTopZ(index) + contacts.getBottomZ(index)) / 2);
+
+        PhysicsCalculations firstCalculations = first.getPhysicsCalculations();
+        PhysicsCalculations secondCalculations = second.getPhysicsCalculations();
+        ShipTransform firstTransform = first.getShipTransformationManager().getCurrentPhysicsTransform();
+        ShipTransform secondTransform = second.getShipTransformationManager().getCurrentPhysicsTransform();
+        firstInBody.set(contactPoint).sub(firstTransform.getPosX(), firstTransform.getPosY(),
+            firstTransform.getPosZ());
+        secondInBody.set(contactPoint).sub(secondTransform.getPosX(), secondTransform.getPosY(),
+            secondTransform.getPosZ());
+
+        firstCalculations.getVelocityAtPoint(firstInBody, firstVelocity);
+        secondCalculations.getVelocityAtPoint(secondInBody, secondVelocity);
+        // Negative when the ships are moving into each other
+        double normalSpeed = firstVelocity.sub(secondVelocity).dot(normal);
+
+        double bounceSpeed = normalSpeed < -RESTITUTION_SPEED_THRESHOLD
+            ? -WorldPhysicsCollider.COEFFICIENT_OF_RESTITUTION * normalSpeed : 0;
+        double timeStep = Math.min(firstCalculations.getPhysicsTimeDeltaPerPhysTick(),
+            secondCalculations.getPhysicsTimeDeltaPerPhysTick());
+        double correctionSpeed = PENETRATION_CORRECTION
+            * Math.max(0, Math.abs(penetration) - PENETRATION_SLOP);
+        if (timeStep > 0) {
+            // Never remove more than the whole penetration in a single step
+            correctionSpeed = Math.min(correctionSpeed, Math.abs(penetration) / timeStep);
+        }
+        double targetSpeed = Math.max(bounceSpeed, correctionSpeed);
+
+        // The effective inverse mass of both ships along the normal at the contact point
+        firstInBody.cross(normal, firstCross);
+        firstCalculations.transformByPhysInvMOITensor(firstCross).cross(firstInBody);
+        secondInBody.cross(normal, secondCross);
+        secondCalculations.transformByPhysInvMOITensor(secondCross).cross(secondInBody);
+        double inverseMass = firstCalculations.getInvMass() + secondCalculations.getInvMass()
+            + firstCross.dot(normal) + secondCross.dot(normal);
+        if (inverseMass <= 0) {
+            return;
+        }
+        double impulseMagnitude = (targetSpeed - normalSpeed) / inverseMass;
+        if (impulseMagnitude <= 0) {
+            // Already separating fast enough
+            return;
+        }
+
+        normal.mul(impulseMagnitude, impulse);
+        applyImpulse(firstCalculations, firstInBody, impulse, firstCross);
+        impulse.negate();
+        applyImpulse(secondCalculations, secondInBody, impulse, secondCross);
+    }
+
+    private static void applyImpulse(PhysicsCalculations calculations, Vector3dc inBody, Vector3dc impulse,
+        Vector3d temp) {
+        calculations.addLinearVelocity(impulse.mul(calculations.getInvMass(), temp));
+        inBody.cross(impulse, temp);
+        calculations.addAngularVelocity(calculations.transformByPhysInvMOITensor(temp));
+    }
+
+    /**
+     * Provides the octree of a chunk section of a ship, or null if that section is empty or not part of the ship.
+     */
+    private static IBitOctree getShipSectionOctree(PhysicsObject ship, int sectionX, int sectionY, int sectionZ) {
+        if (sectionY < 0 || sectionY > 15 || !ship.getChunkClaim().containsChunk(sectionX, sectionZ)) {
+            return null;
+        }
+        ExtendedBlockStorage storage = ship.getChunkAt(sectionX, sectionZ).storageArrays[sectionY];
+        if (storage == null) {
+            return null;
+        }
+        return ((IBitOctreeProvider) storage.data).getBitOctree();
+    }
+}
@@ -2,7 +2,6 @@ package org.valkyrienskies.mod.common.collision;
 
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
-import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.BlockPos.MutableBlockPos;
@@ -13,6 +12,8 @@ import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.Triple;
+import org.joml.Matrix4d;
+import org.joml.Matrix4dc;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
 import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
@@ -21,15 +22,16 @@ import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
 import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.util.VSIterationUtils.IntTernaryConsumer;
+import org.valkyrienskies.mod.common.util.VSIterationUtils.IntTernaryPredicate;
 import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
 import org.valkyrienskies.mod.common.util.datastructures.IBitOctreeProvider;
 import valkyrienwarfare.api.TransformType;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -64,19 +66,38 @@ public class WorldPhysicsCollider {
     public static final double COLLISION_TASK_SHUFFLE_FREQUENCY = .50D;
     // Greater coefficients result in more friction
     public static final double KINETIC_FRICTION_COEFFICIENT = .15D;
+    // Scratch vectors for checking candidates of the incremental cache, which happens on many threads at once
+    private static final ThreadLocal<Vector3d[]> CHECK_SCRATCH =
+        ThreadLocal.withInitial(() -> new Vector3d[] {new Vector3d(), new Vector3d(), new Vector3d()});
     private final MutableBlockPos mutablePos;
-    // Use ThreadLocalRandom because its much faster than Random.
-    private final ThreadLocalRandom rand;
-    private final Collection<ShipCollisionTask> tasks;
+    // Each ship gets its own seeded Random, so the collision order of a ship doesn't depend on which thread ticks it.
+    private final Random rand;
+    private final List<ShipCollisionTask> tasks;
+    // Tasks are reused between collision cache updates to avoid allocating new ones
+    private final List<ShipCollisionTask> taskPool;
     private final PhysicsCalculations calculator;
     private final World worldObj;
     private final PhysicsObject parent;
     private final TIntList cachedPotentialHits;
     private final TIntArrayList cachedHitsToRemove;
+    // Remembers the solid world blocks under the ship between collision cache updates
+    private final IncrementalWorldCollisionCache incrementalCache;
+    // The sections of the incremental cache to check on the physics thread pool, reused between updates
+    private final List<IncrementalWorldCollisionCache.SectionEntry> sectionsToCheck;
+    // Where the ship was the last time the candidates of the incremental cache were checked
+    private final Matrix4d lastCheckedTransform;
+    private AxisAlignedBB lastCheckedShipBB;
+    // Set by the game thread when a block of the ship changes, so the candidates have to be checked again
+    private final AtomicBoolean shipBlocksChanged;
     // Ensures this always updates the first tick after creation
     private double ticksSinceCacheUpdate;
     private boolean updateCollisionTasksCache;
     private BlockPos centerPotentialHit;
+    // Scratch vectors for the impulse solver. Collisions of a ship are always processed by one thread at a time.
+    private final Vector3d inBody, velocityAtPoint, collisionNormal, collisionResponse;
+    private final Vector3d firstCross, collisionImpulseForce, scaledImpulse, thirdCross;
+    private final Vector3d contactNormal, frictionVector, toRemove, deltaVelocity, initialVelocity,
+        initialAngularVelocity, deltaAngularVelocity, rotationAxis;
 
     public WorldPhysicsCollider(PhysicsCalculations calculations) {
         this.calculator = calculations;
@@ -84,9 +105,31 @@ public class WorldPhysicsCollider {
         this.worldObj = parent.getWorld();
         this.cachedPotentialHits = new TIntArrayList();
         this.cachedHitsToRemove = new TIntArrayList();
-        this.rand = ThreadLocalRandom.current();
+        this.incrementalCache = new IncrementalWorldCollisionCache(this::getSurroundingSectionOctree);
+        this.sectionsToCheck = new ArrayList<>();
+        this.lastCheckedTransform = new Matrix4d();
+        this.lastCheckedShipBB = null;
+        this.shipBlocksChanged = new AtomicBoolean(true);
+        this.rand = new Random(parent.getShipData().getUuid().getLeastSignificantBits());
         this.mutablePos = new MutableBlockPos();
         this.tasks = new ArrayList<>();
+        this.taskPool = new ArrayList<>();
+        this.inBody = new Vector3d();
+        this.velocityAtPoint = new Vector3d();
+        this.collisionNormal = new Vector3d();
+        this.collisionResponse = new Vector3d();
+        this.firstCross = new Vector3d();
+        this.collisionImpulseForce = new Vector3d();
+        this.scaledImpulse = new Vector3d();
+        this.thirdCross = new Vector3d();
+        this.contactNormal = new Vector3d();
+        this.frictionVector = new Vector3d();
+        this.toRemove = new Vector3d();
+        this.deltaVelocity = new Vector3d();
+        this.initialVelocity = new Vector3d();
+        this.initialAngularVelocity = new Vector3d();
+        this.deltaAngularVelocity = new Vector3d();
+        this.rotationAxis = new Vector3d();
         this.ticksSinceCacheUpdate = 25D;
         this.updateCollisionTasksCache = true;
         this.centerPotentialHit = null;
@@ -106,13 +149,24 @@ public class WorldPhysicsCollider {
         }
     }
 
+    /**
+     * Called from the game thread when a block of the ship changes.
+     */
+    public void onShipBlockChanged() {
+        shipBlocksChanged.set(true);
+    }
+
     public void splitIntoCollisionTasks(List<ShipCollisionTask> toAdd) {
         if (updateCollisionTasksCache) {
             tasks.clear();
             int index = 0;
             int size = cachedPotentialHits.size();
             while (index < size) {
-                ShipCollisionTask task = new ShipCollisionTask(this, index);
+                if (taskPool.size() == tasks.size()) {
+                    taskPool.add(new ShipCollisionTask(this));
+                }
+                ShipCollisionTask task = taskPool.get(tasks.size());
+                task.setTaskStartIndex(index);
                 index += ShipCollisionTask.MAX_TASKS_TO_CHECK;
                 tasks.add(task);
             }
@@ -123,63 +177,39 @@ public class WorldPhysicsCollider {
     }
 
     public void processCollisionTask(ShipCollisionTask task) {
-        MutableBlockPos inWorldPos = new MutableBlockPos();
-        MutableBlockPos inLocalPos = new MutableBlockPos();
-
-        Iterator<CollisionInformationHolder> collisionIterator = task
-            .getCollisionInformationIterator();
-
-        while (collisionIterator.hasNext()) {
-            CollisionInformationHolder info = collisionIterator.next();
-            inWorldPos.setPos(info.inWorldX, info.inWorldY, info.inWorldZ);
-            inLocalPos.setPos(info.inLocalX, info.inLocalY, info.inLocalZ);
-            handleActualCollision(info.collider, inWorldPos, inLocalPos, info.inWorldState,
-                info.inLocalState);
+        CollisionContactBuffer contacts = task.getContacts();
+        for (int i = 0; i < contacts.size(); i++) {
+            handleActualCollision(contacts, i);
         }
-
-        /*
-         * for (CollisionInformationHolder info :
-         * task.getCollisionInformationGenerated()) { inWorldPos.setPos(info.inWorldX,
-         * info.inWorldY, info.inWorldZ); inLocalPos.setPos(info.inLocalX,
-         * info.inLocalY, info.inLocalZ); handleActualCollision(info.collider,
-         * inWorldPos, inLocalPos, info.inWorldState, info.inLocalState); }
-         */
-
-        task.getCollisionInformationGenerated().clear();
+        contacts.clear();
     }
 
 
     // Takes the collision data along all axes generated prior, and creates the
     // ideal value that is to be followed
-    private boolean handleActualCollision(PhysPolygonCollider collider, BlockPos inWorldPos,
-        BlockPos inLocalPos,
-        IBlockState inWorldState, IBlockState inLocalState) {
-        PhysCollisionObject toCollideWith = collider.collisions[1];
-
-        if (toCollideWith.penetrationDistance > AXIS_TOLERANCE
-            || toCollideWith.penetrationDistance < -AXIS_TOLERANCE) {
-            toCollideWith = collider.collisions[collider.minDistanceIndex];
-        }
-
-        Vector3dc[] collisionPoints = PolygonCollisionPointFinder
-            .getPointsOfCollisionForPolygons(toCollideWith);
-
-        double impulseApplied = 1.0 / collisionPoints.length;;
-
-        for (Vector3dc collisionPos : collisionPoints) {
-            Vector3d inBody = new Vector3d(
-                    collisionPos.x() - parent.getShipTransform().getPosX(),
-                    collisionPos.y() - parent.getShipTransform().getPosY(),
-                    collisionPos.z() - parent.getShipTransform().getPosZ());
-            Vector3d momentumAtPoint = calculator
-                .getVelocityAtPoint(inBody);
-            Vector3dc axis = toCollideWith.collision_normal;
-            Vector3d offsetVector = toCollideWith.getResponse();
-            calculateCollisionImpulseForce(inBody, momentumAtPoint, axis, offsetVector, false,
+    private void handleActualCollision(CollisionContactBuffer contacts, int index) {
+        collisionNormal.set(contacts.getNormalX(index), contacts.getNormalY(index), contacts.getNormalZ(index));
+        collisionNormal.mul(contacts.getPenetrationDistance(index), collisionResponse);
+
+        // We're oversolving for the collision here, but it prevents things going through eachother.
+        final double impulseApplied = 1.0 / 4;
+        for (int point = 0; point < 4; point++) {
+            // The collision points are top, bottom, top, bottom
+            if (point % 2 == 0) {
+                inBody.set(
+                    contacts.getTopX(index) - parent.getShipTransform().getPosX(),
+                    contacts.getTopY(index) - parent.getShipTransform().getPosY(),
+                    contacts.getTopZ(index) - parent.getShipTransform().getPosZ());
+            } else {
+                inBody.set(
+                    contacts.getBottomX(index) - parent.getShipTransform().getPosX(),
+                    contacts.getBottomY(index) - parent.getShipTransform().getPosY(),
+                    contacts.getBottomZ(index) - parent.getShipTransform().getPosZ());
+            }
+            calculator.getVelocityAtPoint(inBody, velocityAtPoint);
+            calculateCollisionImpulseForce(inBody, velocityAtPoint, collisionNormal, collisionResponse, false,
                 false, impulseApplied);
         }
-
-        return false;
     }
 
     // Finally, the end of all this spaghetti code! This step takes all of the math
@@ -191,9 +221,9 @@ public class WorldPhysicsCollider {
                                                 boolean didBlockBreakInShip,
                                                 boolean didBlockBreakInWorld,
                                                 double impulseApplied) {
-        Vector3d firstCross = inBody.cross(axis, new Vector3d());
+        inBody.cross(axis, firstCross);
 
-        calculator.getPhysInvMOITensor().transform(firstCross);
+        calculator.transformByPhysInvMOITensor(firstCross);
 
         Vector3d secondCross = firstCross.cross(inBody);
 
@@ -210,7 +240,7 @@ public class WorldPhysicsCollider {
             // impulseMagnitude *= .5D;
         }
 
-        Vector3d collisionImpulseForce = axis.mul(impulseMagnitude, new Vector3d());
+        axis.mul(impulseMagnitude, collisionImpulseForce);
 
         // This is just an optimized way to add this force as quickly as possible.
         // Added collisionImpulseForce.dot(inBody) > 0 to force all collision to move in
@@ -220,22 +250,22 @@ public class WorldPhysicsCollider {
             double collisionVelocity = velocityAtPointOfCollision.dot(axis);
 
             addFrictionToNormalForce(velocityAtPointOfCollision, collisionImpulseForce, inBody);
-            calculator.getLinearVelocity().add(collisionImpulseForce.mul(calculator.getInvMass(), new Vector3d()));
-            Vector3d thirdCross = inBody.cross(collisionImpulseForce, new Vector3d());
+            calculator.addLinearVelocity(collisionImpulseForce.mul(calculator.getInvMass(), scaledImpulse));
+            inBody.cross(collisionImpulseForce, thirdCross);
 
-            calculator.getPhysInvMOITensor().transform(thirdCross);
+            calculator.transformByPhysInvMOITensor(thirdCross);
 
-            calculator.getAngularVelocity().add(thirdCross, calculator.getAngularVelocity());
+            calculator.addAngularVelocity(thirdCross);
         }
     }
 
     // Applies the friction force generated by the collision.
     // The magnitude of this vector must be adjusted to minimize energy
     private void addFrictionToNormalForce(Vector3dc momentumAtPoint, Vector3d impulseVector, Vector3dc inBody) {
-        Vector3d contactNormal = new Vector3d(impulseVector);
+        contactNormal.set(impulseVector);
         contactNormal.normalize();
 
-        Vector3d frictionVector = new Vector3d(momentumAtPoint);
+        frictionVector.set(momentumAtPoint);
         frictionVector.normalize();
         frictionVector.mul(impulseVector.length() * KINETIC_FRICTION_COEFFICIENT);
 
@@ -245,15 +275,15 @@ public class WorldPhysicsCollider {
 
         // Remove all friction components along the impulse vector
         double frictionImpulseDot = frictionVector.dot(contactNormal);
-        Vector3d toRemove = contactNormal.mul(frictionImpulseDot, new Vector3d());
+        contactNormal.mul(frictionImpulseDot, toRemove);
         frictionVector.sub(toRemove);
 
         double inertiaScalarAlongAxis = parent.getPhysicsCalculations()
-            .getInertiaAlongRotationAxis();
+            .getInertiaAlongRotationAxis(rotationAxis);
         // The change in velocity vector
-        Vector3dc initialVelocity = parent.getPhysicsCalculations().getLinearVelocity();
+        Vector3dc initialVelocity = parent.getPhysicsCalculations().getLinearVelocity(this.initialVelocity);
         // Don't forget to multiply by delta t
-        Vector3d deltaVelocity = new Vector3d(frictionVector);
+        deltaVelocity.set(frictionVector);
         deltaVelocity.mul(parent.getPhysicsCalculations().getInvMass() * parent.getPhysicsCalculations()
                 .getDragForPhysTick());
 
@@ -261,8 +291,8 @@ public class WorldPhysicsCollider {
         double B = 2 * initialVelocity.dot(deltaVelocity);
         double C = deltaVelocity.lengthSquared();
 
-        Vector3d initialAngularVelocity = new Vector3d(parent.getPhysicsCalculations().getAngularVelocity());
-        Vector3d deltaAngularVelocity = inBody.cross(frictionVector, new Vector3d());
+        parent.getPhysicsCalculations().getAngularVelocity(initialAngularVelocity);
+        inBody.cross(frictionVector, deltaAngularVelocity);
         // This might need to be 1 / inertiaScalarAlongAxis
         deltaAngularVelocity.mul(parent.getPhysicsCalculations().getDragForPhysTick() / inertiaScalarAlongAxis);
 
@@ -287,7 +317,7 @@ public class WorldPhysicsCollider {
 
         double scaleFactor = -secondCoefficient / (thirdCoefficient * 2);
 
-        if (new Double(scaleFactor).isNaN()) {
+        if (Double.isNaN(scaleFactor)) {
             scaleFactor = 0;
         } else {
             scaleFactor = Math.max(0, Math.min(scaleFactor, 1));
@@ -311,17 +341,18 @@ public class WorldPhysicsCollider {
         // Use the physics tick collision box instead of the game tick collision box.
         // We are using grow(3) on both because for some reason if we don't then ships start
         // jiggling through the ground. God I can't wait for a new physics engine.
+        final Vector3dc linearVelocity = calculator.getLinearVelocity();
         final AxisAlignedBB collisionBB = shipBB
             .grow(AABB_EXPANSION).expand(
-                calculator.getLinearVelocity().x * calculator.getPhysicsTimeDeltaPerPhysTick() * 5,
-                calculator.getLinearVelocity().y * calculator.getPhysicsTimeDeltaPerPhysTick() * 5,
-                calculator.getLinearVelocity().z * calculator.getPhysicsTimeDeltaPerPhysTick() * 5);
+                linearVelocity.x() * calculator.getPhysicsTimeDeltaPerPhysTick() * 5,
+                linearVelocity.y() * calculator.getPhysicsTimeDeltaPerPhysTick() * 5,
+                linearVelocity.z() * calculator.getPhysicsTimeDeltaPerPhysTick() * 5);
 
         ticksSinceCacheUpdate = 0D;
         // This is being used to occasionally offset the collision cache update, in the
         // hopes this will prevent multiple ships from all updating
         // in the same tick
-        if (Math.random() > .5) {
+        if (rand.nextBoolean()) {
             ticksSinceCacheUpdate -= .05D;
         }
         int oldSize = cachedPotentialHits.size();
@@ -330,6 +361,7 @@ public class WorldPhysicsCollider {
         cachedPotentialHits.clear();
         // Ship is outside of world blockSpace, just skip this all togvalkyrium
         if (collisionBB.maxY < 0 || collisionBB.minY > 255) {
+            incrementalCache.clear();
             return;
         }
 
@@ -348,6 +380,7 @@ public class WorldPhysicsCollider {
         if (cache == null) {
             System.err.println(
                 "VS Cached Surrounding Chunks was null! This is going to cause catastophric terrible events!!");
+            incrementalCache.clear();
             return;
         }
 
@@ -364,6 +397,13 @@ public class WorldPhysicsCollider {
         int maxY = max.getY();
         int maxZ = max.getZ();
 
+        if (VSConfig.PHYSICS_SETTINGS.incrementalCollisionCache) {
+            updateCollisionCacheIncremental(minX, minY, minZ, maxX, maxY, maxZ, shipBB);
+            return;
+        }
+        // Don't let the incremental cache hold onto stale data if it gets turned back on.
+        incrementalCache.clear();
+
         // More multithreading!
         if (VSConfig.MULTITHREADING_SETTINGS.multithreadCollisionCacheUpdate &&
             parent.getBlockPositions().size() > 100) {
@@ -405,6 +445,77 @@ public class WorldPhysicsCollider {
         }
     }
 
+    /**
+     * Produces the same potential hits as the full rebuild, but only scans the parts of the region the ship moved into
+     * since the last update. If the ship hasn't moved or changed since then, only those new candidates are checked
+     * against the ship too.
+     *
+     * @see IncrementalWorldCollisionCache
+     */
+    private void updateCollisionCacheIncremental(int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+        AxisAlignedBB shipBB) {
+        // Cast to double to avoid overflow errors
+        double size = ((double) ((maxX >> 4) - (minX >> 4) + 1)) * ((double) ((maxZ >> 4) - (minZ >> 4) + 1));
+        if (size > 300000) {
+            // Sanity check; don't execute the rest of the code because we'll just freeze the physics thread.
+            incrementalCache.clear();
+            return;
+        }
+
+        incrementalCache.update(minX, minY, minZ, maxX, maxY, maxZ);
+
+        // Whether a candidate is a hit only depends on where the ship is and on its blocks, so unless one of those
+        // changed the candidates that were already checked keep their result.
+        final Matrix4dc transform = parent.getShipTransformationManager().getCurrentPhysicsTransform()
+            .getGlobalToSubspace();
+        final boolean checkAll = shipBlocksChanged.getAndSet(false) || !lastCheckedTransform.equals(transform)
+            || !shipBB.equals(lastCheckedShipBB);
+        lastCheckedTransform.set(transform);
+        lastCheckedShipBB = shipBB;
+        final IntTernaryPredicate isHit = (x, y, z) -> {
+            Vector3d[] scratch = CHECK_SCRATCH.get();
+            return isNearShip(x, y, z, scratch[0], scratch[1], scratch[2], shipBB);
+        };
+
+        if (VSConfig.MULTITHREADING_SETTINGS.multithreadCollisionCacheUpdate &&
+            parent.getBlockPositions().size() > 100) {
+            incrementalCache.getSectionsWithCandidates(sectionsToCheck);
+            ValkyrienSkiesMod.getPhysicsThreadPool().submit(
+                () -> sectionsToCheck.parallelStream().forEach(entry -> entry.checkCandidates(checkAll, isHit)))
+            .join();
+            sectionsToCheck.clear();
+        } else {
+            incrementalCache.checkCandidates(checkAll, isHit);
+        }
+        incrementalCache.forEachHit((x, y, z) ->
+            cachedPotentialHits.add(SpatialDetector.getHashWithRespectTo(x, y, z, centerPotentialHit)));
+    }
+
+    /**
+     * Used by the incremental cache to read the octrees of the world around the ship.
+     */
+    private IBitOctree getSurroundingSectionOctree(int sectionX, int sectionY, int sectionZ) {
+        ChunkCache cache = parent.getCachedSurroundingChunks();
+        if (cache == null || sectionY < 0 || sectionY > 15) {
+            return null;
+        }
+        int arrayChunkX = sectionX - cache.chunkX;
+        int arrayChunkZ = sectionZ - cache.chunkZ;
+        if (arrayChunkX < 0 || arrayChunkZ < 0 || arrayChunkX > cache.chunkArray.length - 1
+            || arrayChunkZ > cache.chunkArray[0].length - 1) {
+            return null;
+        }
+        Chunk chunk = cache.chunkArray[arrayChunkX][arrayChunkZ];
+        if (chunk == null) {
+            return null;
+        }
+        ExtendedBlockStorage storage = chunk.storageArrays[sectionY];
+        if (storage == null) {
+            return null;
+        }
+        return ((IBitOctreeProvider) storage.data).getBitOctree();
+    }
+
     private void updateCollisionCacheSequential(ChunkCache cache, int chunkX, int chunkZ, int minX,
         int minY, int minZ,
         int maxX, int maxY, int maxZ, AxisAlignedBB shipBB, TIntList output) {
@@ -435,66 +546,9 @@ public class WorldPhysicsCollider {
                     IBitOctree octree = provider.getBitOctree();
 
                     if (USE_OCTREE_COLLISION) {
-                        for (int levelThree = 0; levelThree < 8; levelThree++) {
-                            int levelThreeIndex = octree.getOctreeLevelThreeIndex(levelThree);
-                            if (octree.getAtIndex(levelThreeIndex)) {
-                                for (int levelTwo = 0; levelTwo < 8; levelTwo++) {
-                                    int levelTwoIndex = octree
-                                        .getOctreeLevelTwoIndex(levelThreeIndex, levelTwo);
-                                    if (octree.getAtIndex(levelTwoIndex)) {
-                                        for (int levelOne = 0; levelOne < 8; levelOne++) {
-                                            int levelOneIndex = octree
-                                                .getOctreeLevelOneIndex(levelTwoIndex, levelOne);
-                                            if (octree.getAtIndex(levelOneIndex)) {
-
-                                                int baseX =
-                                                    ((levelThree % 2) * 8) + ((levelTwo % 2) * 4)
-                                                        + ((levelOne % 2) * 2);
-                                                int baseY = (((levelThree >> 1) % 2) * 8) + (
-                                                    ((levelTwo >> 1) % 2) * 4)
-                                                    + (((levelOne >> 1) % 2) * 2);
-                                                int baseZ = (((levelThree >> 2) % 2) * 8) + (
-                                                    ((levelTwo >> 2) % 2) * 4)
-                                                    + (((levelOne >> 2) % 2) * 2);
-
-                                                int x = baseX + minStorageX;
-                                                int y = baseY + minStorageY;
-                                                int z = baseZ + minStorageZ;
-
-                                                if (x >= minX && x <= maxX && y >= minY && y <= maxY
-                                                    && z >= minZ
-                                                    && z <= maxZ) {
-                                                    checkForCollision(x, y, z, extendedblockstorage,
-                                                        octree, temp1,
-                                                        temp2, temp3, shipBB, output);
-                                                    checkForCollision(x, y, z + 1,
-                                                        extendedblockstorage, octree, temp1,
-                                                        temp2, temp3, shipBB, output);
-                                                    checkForCollision(x, y + 1, z,
-                                                        extendedblockstorage, octree, temp1,
-                                                        temp2, temp3, shipBB, output);
-                                                    checkForCollision(x, y + 1, z + 1,
-                                                        extendedblockstorage, octree,
-                                                        temp1, temp2, temp3, shipBB, output);
-                                                    checkForCollision(x + 1, y, z,
-                                                        extendedblockstorage, octree, temp1,
-                                                        temp2, temp3, shipBB, output);
-                                                    checkForCollision(x + 1, y, z + 1,
-                                                        extendedblockstorage, octree,
-                                                        temp1, temp2, temp3, shipBB, output);
-                                                    checkForCollision(x + 1, y + 1, z,
-                                                        extendedblockstorage, octree,
-                                                        temp1, temp2, temp3, shipBB, output);
-                                                    checkForCollision(x + 1, y + 1, z + 1,
-                                                        extendedblockstorage, octree,
-                                                        temp1, temp2, temp3, shipBB, output);
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
+                        forEachCollisionCandidate(octree, chunkX, storageY, chunkZ, minX, minY, minZ, maxX, maxY,
+                            maxZ, (x, y, z) -> checkForCollisionNearShip(x, y, z, temp1, temp2, temp3, shipBB,
+                                output));
                     } else {
                         for (int x = minStorageX; x < maxStorageX; x++) {
                             for (int y = minStorageY; y < maxStorageY; y++) {
@@ -511,129 +565,200 @@ public class WorldPhysicsCollider {
         }
     }
 
+    /**
+     * Calls the consumer with every solid block of a section in an octree leaf whose base corner (the corner with even
+     * coordinates) is within the region. All bounds are inclusive.
+     */
+    static void forEachCollisionCandidate(IBitOctree octree, int sectionX, int sectionY, int sectionZ, int minX,
+        int minY, int minZ, int maxX, int maxY, int maxZ, IntTernaryConsumer consumer) {
+        int minStorageX = sectionX << 4;
+        int minStorageY = sectionY << 4;
+        int minStorageZ = sectionZ << 4;
+        for (int levelThree = 0; levelThree < 8; levelThree++) {
+            int levelThreeIndex = octree.getOctreeLevelThreeIndex(levelThree);
+            if (octree.getAtIndex(levelThreeIndex)) {
+                for (int levelTwo = 0; levelTwo < 8; levelTwo++) {
+                    int levelTwoIndex = octree
+                        .getOctreeLevelTwoIndex(levelThreeIndex, levelTwo);
+                    if (octree.getAtIndex(levelTwoIndex)) {
+                        for (int levelOne = 0; levelOne < 8; levelOne++) {
+                            int levelOneIndex = octree
+                                .getOctreeLevelOneIndex(levelTwoIndex, levelOne);
+                            if (octree.getAtIndex(levelOneIndex)) {
+
+                                int baseX =
+                                    ((levelThree % 2) * 8) + ((levelTwo % 2) * 4)
+                                        + ((levelOne % 2) * 2);
+                                int baseY = (((levelThree >> 1) % 2) * 8) + (
+                                    ((levelTwo >> 1) % 2) * 4)
+                                    + (((levelOne >> 1) % 2) * 2);
+                                int baseZ = (((levelThree >> 2) % 2) * 8) + (
+                                    ((levelTwo >> 2) % 2) * 4)
+                                    + (((levelOne >> 2) % 2) * 2);
+
+                                int x = baseX + minStorageX;
+                                int y = baseY + minStorageY;
+                                int z = baseZ + minStorageZ;
+
+                                if (x >= minX && x <= maxX && y >= minY && y <= maxY
+                                    && z >= minZ
+                                    && z <= maxZ) {
+                                    for (int offset = 0; offset < 8; offset++) {
+                                        int localX = baseX + ((offset >> 2) & 1);
+                                        int localY = baseY + ((offset >> 1) & 1);
+                                        int localZ = baseZ + (offset & 1);
+                                        if (octree.get(localX, localY, localZ)) {
+                                            consumer.accept(minStorageX + localX, minStorageY + localY,
+                                                minStorageZ + localZ);
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     private void checkForCollision(int x, int y, int z, ExtendedBlockStorage storage,
         IBitOctree octree, Vector3d inLocal,
         Vector3d inBody,
         Vector3d speedInBody, AxisAlignedBB shipBB, TIntList output) {
         if (octree.get(x & 15, y & 15, z & 15)) {
-            inLocal.x = x + .5D;
-            inLocal.y = y + .5D;
-            inLocal.z = z + .5D;
-            // TODO: Something
-            // parent.coordTransform.fromGlobalToLocal(inLocal);
-            if (inLocal.x > shipBB.minX && inLocal.x < shipBB.maxX && inLocal.y > shipBB.minY
-                && inLocal.y < shipBB.maxY
-                && inLocal.z > shipBB.minZ && inLocal.z < shipBB.maxZ) {
-                parent.getShipTransformationManager().getCurrentPhysicsTransform()
-                    .transformPosition(inLocal, TransformType.GLOBAL_TO_SUBSPACE);
-
-                inLocal.sub(parent.getCenterCoord(), inBody);
-                // parent.physicsProcessor.setVectorToVelocityAtPoint(inBody, speedInBody);
-                // speedInBody.multiply(-parent.physicsProcessor.getPhysicsTimeDeltaPerGameTick());
-
-                // TODO: This isnt ideal, but we do gain a lot of performance.
-                speedInBody.zero();
-
-                // double RANGE_CHECK = 1;
-
-                int minX, minY, minZ, maxX, maxY, maxZ;
-                if (speedInBody.x > 0) {
-                    minX = MathHelper.floor(inLocal.x - RANGE_CHECK);
-                    maxX = MathHelper.floor(inLocal.x + RANGE_CHECK + speedInBody.x);
-                } else {
-                    minX = MathHelper.floor(inLocal.x - RANGE_CHECK + speedInBody.x);
-                    maxX = MathHelper.floor(inLocal.x + RANGE_CHECK);
-                }
+            checkForCollisionNearShip(x, y, z, inLocal, inBody, speedInBody, shipBB, output);
+        }
+    }
 
-                if (speedInBody.y > 0) {
-                    minY = MathHelper.floor(inLocal.y - RANGE_CHECK);
-                    maxY = MathHelper.floor(inLocal.y + RANGE_CHECK + speedInBody.y);
-                } else {
-                    minY = MathHelper.floor(inLocal.y - RANGE_CHECK + speedInBody.y);
-                    maxY = MathHelper.floor(inLocal.y + RANGE_CHECK);
-                }
+    /**
+     * Adds the solid world block at x, y, z to the output if it is close to a solid block of the ship.
+     */
+    private void checkForCollisionNearShip(int x, int y, int z, Vector3d inLocal, Vector3d inBody,
+        Vector3d speedInBody, AxisAlignedBB shipBB, TIntList output) {
+        if (isNearShip(x, y, z, inLocal, inBody, speedInBody, shipBB)) {
+            int hash = SpatialDetector.getHashWithRespectTo(x, y, z, centerPotentialHit);
+            // Sometimes we end up adding to the hits array in multiple threads at once,
+            // crashing the physics.
+            output.add(hash);
+        }
+    }
 
-                if (speedInBody.z > 0) {
-                    minZ = MathHelper.floor(inLocal.z - RANGE_CHECK);
-                    maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK + speedInBody.z);
-                } else {
-                    minZ = MathHelper.floor(inLocal.z - RANGE_CHECK + speedInBody.z);
-                    maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK);
-                }
+    /**
+     * @return True if the solid world block at x, y, z is close to a solid block of the ship. Only reads the ship, so
+     * it can be called from many threads at once.
+     */
+    private boolean isNearShip(int x, int y, int z, Vector3d inLocal, Vector3d inBody,
+        Vector3d speedInBody, AxisAlignedBB shipBB) {
+        inLocal.x = x + .5D;
+        inLocal.y = y + .5D;
+        inLocal.z = z + .5D;
+        // TODO: Something
+        // parent.coordTransform.fromGlobalToLocal(inLocal);
+        if (inLocal.x > shipBB.minX && inLocal.x < shipBB.maxX && inLocal.y > shipBB.minY
+            && inLocal.y < shipBB.maxY
+            && inLocal.z > shipBB.minZ && inLocal.z < shipBB.maxZ) {
+            parent.getShipTransformationManager().getCurrentPhysicsTransform()
+                .transformPosition(inLocal, TransformType.GLOBAL_TO_SUBSPACE);
+
+            inLocal.sub(parent.getCenterCoord(), inBody);
+            // parent.physicsProcessor.setVectorToVelocityAtPoint(inBody, speedInBody);
+            // speedInBody.multiply(-parent.physicsProcessor.getPhysicsTimeDeltaPerGameTick());
+
+            // TODO: This isnt ideal, but we do gain a lot of performance.
+            speedInBody.zero();
+
+            // double RANGE_CHECK = 1;
+
+            int minX, minY, minZ, maxX, maxY, maxZ;
+            if (speedInBody.x > 0) {
+                minX = MathHelper.floor(inLocal.x - RANGE_CHECK);
+                maxX = MathHelper.floor(inLocal.x + RANGE_CHECK + speedInBody.x);
+            } else {
+                minX = MathHelper.floor(inLocal.x - RANGE_CHECK + speedInBody.x);
+                maxX = MathHelper.floor(inLocal.x + RANGE_CHECK);
+            }
 
-                minY = Math.min(255, Math.max(minY, 0));
-                maxY = Math.min(255, Math.max(maxY, 0));
-
-                // int localX = MathHelper.floor(inLocal.X);
-                // int localY = MathHelper.floor(inLocal.Y);
-                // int localZ = MathHelper.floor(inLocal.Z);
-
-                // tooTiredToName(localX, localY, localZ, x, y, z);
-                // if (false)
-                // maxX = Math.min(maxX, minX << 4);
-                // maxZ = Math.min(maxZ, minZ << 4);
-
-                Chunk chunkIn00 = parent.getChunkClaim().containsChunk(minX >> 4, minZ >> 4) ? parent.getChunkAt(minX >> 4, minZ >> 4) : null;
-                Chunk chunkIn01 = parent.getChunkClaim().containsChunk(minX >> 4, maxZ >> 4) ? parent.getChunkAt(minX >> 4, maxZ >> 4) : null;
-                Chunk chunkIn10 = parent.getChunkClaim().containsChunk(maxX >> 4, minZ >> 4) ? parent.getChunkAt(maxX >> 4, minZ >> 4) : null;
-                Chunk chunkIn11 = parent.getChunkClaim().containsChunk(maxX >> 4, maxZ >> 4) ? parent.getChunkAt(maxX >> 4, maxZ >> 4) : null;
-
-                breakThisLoop:
-                for (int localX = minX; localX < maxX; localX++) {
-                    for (int localZ = minZ; localZ < maxZ; localZ++) {
-                        Chunk theChunk;
-                        if (localX >> 4 == minX >> 4) {
-                            if (localZ >> 4 == minZ >> 4) {
-                                theChunk = chunkIn00;
-                            } else {
-                                theChunk = chunkIn01;
-                            }
+            if (speedInBody.y > 0) {
+                minY = MathHelper.floor(inLocal.y - RANGE_CHECK);
+                maxY = MathHelper.floor(inLocal.y + RANGE_CHECK + speedInBody.y);
+            } else {
+                minY = MathHelper.floor(inLocal.y - RANGE_CHECK + speedInBody.y);
+                maxY = MathHelper.floor(inLocal.y + RANGE_CHECK);
+            }
+
+            if (speedInBody.z > 0) {
+                minZ = MathHelper.floor(inLocal.z - RANGE_CHECK);
+                maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK + speedInBody.z);
+            } else {
+                minZ = MathHelper.floor(inLocal.z - RANGE_CHECK + speedInBody.z);
+                maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK);
+            }
+
+            minY = Math.min(255, Math.max(minY, 0));
+            maxY = Math.min(255, Math.max(maxY, 0));
+
+            // int localX = MathHelper.floor(inLocal.X);
+            // int localY = MathHelper.floor(inLocal.Y);
+            // int localZ = MathHelper.floor(inLocal.Z);
+
+            // tooTiredToName(localX, localY, localZ, x, y, z);
+            // if (false)
+            // maxX = Math.min(maxX, minX << 4);
+            // maxZ = Math.min(maxZ, minZ << 4);
+
+            Chunk chunkIn00 = parent.getChunkClaim().containsChunk(minX >> 4, minZ >> 4) ? parent.getChunkAt(minX >> 4, minZ >> 4) : null;
+            Chunk chunkIn01 = parent.getChunkClaim().containsChunk(minX >> 4, maxZ >> 4) ? parent.getChunkAt(minX >> 4, maxZ >> 4) : null;
+            Chunk chunkIn10 = parent.getChunkClaim().containsChunk(maxX >> 4, minZ >> 4) ? parent.getChunkAt(maxX >> 4, minZ >> 4) : null;
+            Chunk chunkIn11 = parent.getChunkClaim().containsChunk(maxX >> 4, maxZ >> 4) ? parent.getChunkAt(maxX >> 4, maxZ >> 4) : null;
+
+            for (int localX = minX; localX < maxX; localX++) {
+                for (int localZ = minZ; localZ < maxZ; localZ++) {
+                    Chunk theChunk;
+                    if (localX >> 4 == minX >> 4) {
+                        if (localZ >> 4 == minZ >> 4) {
+                            theChunk = chunkIn00;
                         } else {
-                            if (localZ >> 4 == minZ >> 4) {
-                                theChunk = chunkIn10;
-                            } else {
-                                theChunk = chunkIn11;
-                            }
+                            theChunk = chunkIn01;
                         }
-                        if (theChunk == null) {
-                            // No collision here
-                            continue;
+                    } else {
+                        if (localZ >> 4 == minZ >> 4) {
+                            theChunk = chunkIn10;
+                        } else {
+                            theChunk = chunkIn11;
                         }
-                        for (int localY = minY; localY < maxY; localY++) {
-                            boolean result = checkForCollisionFast(theChunk, localX, localY,
-                                localZ, x, y, z, output);
-                            if (result) {
-                                break breakThisLoop;
-                            }
-
-                            /*
-                             * if (false) // TODO: This code isn't thread safe. try { boolean result =
-                             * tooTiredToName(localX, localY, localZ, x, y, z); if (result) { break
-                             * breakThisLoop; } } catch (Exception e) { e.printStackTrace(); }
-                             */
+                    }
+                    if (theChunk == null) {
+                        // No collision here
+                        continue;
+                    }
+                    for (int localY = minY; localY < maxY; localY++) {
+                        boolean result = checkForCollisionFast(theChunk, localX, localY,
+                            localZ);
+                        if (result) {
+                            return true;
                         }
+
+                        /*
+                         * if (false) // TODO: This code isn't thread safe. try { boolean result =
+                         * tooTiredToName(localX, localY, localZ, x, y, z); if (result) { break
+                         * breakThisLoop; } } catch (Exception e) { e.printStackTrace(); }
+                         */
                     }
                 }
             }
         }
+        return false;
     }
 
     private boolean checkForCollisionFast(final Chunk chunk, final int localX, final int localY,
-        final int localZ,
-        final int x, final int y, final int z, final TIntList output) {
+        final int localZ) {
         if (chunk.storageArrays[localY >> 4] != null) {
             IBitOctreeProvider provider = (IBitOctreeProvider) chunk.storageArrays[localY >> 4]
                 .getData();
             IBitOctree octreeInLocal = provider.getBitOctree();
             if (octreeInLocal.get(localX & 15, localY & 15, localZ & 15)) {
-                int hash = SpatialDetector.getHashWithRespectTo(x, y, z, centerPotentialHit);
-                // Sometimes we end up adding to the hits array in multiple threads at once,
-                // crashing the physics.
-                output.add(hash);
                 return true;
-                // break outermostloop;
             }
-            // }
         }
         return false;
     }
@@ -5,6 +5,7 @@ import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextComponentTranslation;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 import org.valkyrienskies.mod.common.command.MainCommand.*;
 import org.valkyrienskies.mod.common.command.autocompleters.ShipNameAutocompleter;
 import org.valkyrienskies.mod.common.command.autocompleters.WorldAutocompleter;
@@ -14,8 +15,11 @@ import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.ships.ship_world.IHasShipManager;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject.DeconstructState;
+import org.valkyrienskies.mod.common.ships.ship_world.ShipLoadingProfiler;
 import org.valkyrienskies.mod.common.ships.ship_world.WorldServerShipManager;
 import org.valkyrienskies.mod.common.util.ValkyrienUtils;
+import org.valkyrienskies.mod.common.util.multithreaded.PhysicsProfiler;
+import org.valkyrienskies.mod.common.util.multithreaded.VSExecutors;
 import org.valkyrienskies.mod.common.util.multithreaded.VSWorldPhysicsLoop;
 import picocli.CommandLine.*;
 import picocli.CommandLine.Model.CommandSpec;
@@ -32,6 +36,10 @@ import java.util.stream.Collectors;
         DisableShip.class,
         GC.class,
         TPS.class,
+        PhysicsBenchmark.class,
+        Profile.class,
+        ShipLoading.class,
+        ShipSleep.class,
         TeleportTo.class,
         DeconstructShip.class,
         DeleteShip.class
@@ -162,6 +170,164 @@ public class MainCommand implements Runnable {
         }
     }
 
+    @Command(name = "physics-benchmark")
+    static class PhysicsBenchmark implements Runnable {
+
+        @Inject
+        ICommandSender sender;
+
+        @Option(names = {"--world", "-w"}, completionCandidates = WorldAutocompleter.class)
+        World world;
+
+        @Option(names = {"--ticks", "-t"})
+        int ticks = 500;
+
+        @Override
+        public void run() {
+            if (world == null) {
+                world = sender.getEntityWorld();
+            }
+            if (ticks <= 0) {
+                sender.sendMessage(new TextComponentString("The number of ticks must be positive"));
+                return;
+            }
+
+            VSWorldPhysicsLoop worldPhysicsThread = ((WorldServerShipManager) ((IHasShipManager) world)
+                .getManager()).getPhysicsLoop();
+
+            sender.sendMessage(new TextComponentString(
+                "Running " + ticks + " serial and " + ticks + " parallel physics ticks..."));
+            worldPhysicsThread.startBenchmark(ticks).whenCompleteAsync((benchmark, throwable) -> {
+                if (throwable != null) {
+                    sender.sendMessage(new TextComponentString(throwable.getMessage()));
+                } else {
+                    sender.sendMessage(new TextComponentString(benchmark.toString()));
+                }
+            }, VSExecutors.forWorld((WorldServer) world));
+        }
+    }
+
+    @Command(name = "profile")
+    static class Profile implements Runnable {
+
+        @Inject
+        ICommandSender sender;
+
+        @Option(names = {"--world", "-w"}, completionCandidates = WorldAutocompleter.class)
+        World world;
+
+        @Option(names = {"--top", "-t"})
+        int slowestShips = 5;
+
+        @Option(names = {"--reset", "-r"})
+        boolean reset;
+
+        @Override
+        public void run() {
+            if (world == null) {
+                world = sender.getEntityWorld();
+            }
+
+            PhysicsProfiler profiler = ((WorldServerShipManager) ((IHasShipManager) world)
+                .getManager()).getPhysicsLoop().getProfiler();
+
+            if (reset) {
+                profiler.reset();
+                sender.sendMessage(new TextComponentString("The physics profiler has been reset"));
+                return;
+            }
+            for (String line : profiler.getReportLines(Math.max(0, slowestShips))) {
+                sender.sendMessage(new TextComponentString(line));
+            }
+        }
+    }
+
+    @Command(name = "ship-loading")
+    static class ShipLoading implements Runnable {
+
+        @Inject
+        ICommandSender sender;
+
+        @Option(names = {"--world", "-w"}, completionCandidates = WorldAutocompleter.class)
+        World world;
+
+        @Option(names = {"--reset", "-r"})
+        boolean reset;
+
+        @Override
+        public void run() {
+            if (world == null) {
+                world = sender.getEntityWorld();
+            }
+
+            WorldServerShipManager manager = ValkyrienUtils.getServerShipManager(world);
+            ShipLoadingProfiler profiler = manager.getLoadingProfiler();
+
+            if (reset) {
+                profiler.reset();
+                sender.sendMessage(new TextComponentString("The ship loading profiler has been reset"));
+                return;
+            }
+            sender.sendMessage(new TextComponentString(
+                String.format("%d ships are loading right now", manager.getLoadingShipCount())));
+            for (String line : profiler.getReportLines()) {
+                sender.sendMessage(new TextComponentString(line));
+            }
+        }
+    }
+
+    @Command(name = "ship-sleep")
+    static class ShipSleep implements Runnable {
+
+        @Inject
+        ICommandSender sender;
+
+        @Parameters(paramLabel = "name", index = "0", arity = "0..1",
+            completionCandidates = ShipNameAutocompleter.class)
+        ShipData shipData;
+
+        @Option(names = {"--wake", "-w"})
+        boolean wake;
+
+        @Override
+        public void run() {
+            final WorldServerShipManager world = ValkyrienUtils.getServerShipManager(sender.getEntityWorld());
+
+            if (shipData != null) {
+                final PhysicsObject obj = world.getPhysObjectFromUUID(shipData.getUuid());
+                if (obj == null) {
+                    sender.sendMessage(new TextComponentString("That ship is not loaded"));
+                } else if (wake) {
+                    obj.getSleepTracker().wakeUp();
+                    sender.sendMessage(new TextComponentString("That ship will be woken up"));
+                } else {
+                    sender.sendMessage(new TextComponentString(
+                        "That ship is " + (obj.getSleepTracker().isSleeping() ? "sleeping" : "awake")));
+                }
+                return;
+            }
+
+            int sleepingShips = 0;
+            int loadedShips = 0;
+            for (PhysicsObject obj : world.getAllLoadedPhysObj()) {
+                loadedShips++;
+                if (obj.getSleepTracker().isSleeping()) {
+                    sleepingShips++;
+                }
+                if (wake) {
+                    obj.getSleepTracker().wakeUp();
+                }
+            }
+            if (wake) {
+                sender.sendMessage(new TextComponentString(
+                    String.format("Waking up %d sleeping ships", sleepingShips)));
+            } else {
+                sender.sendMessage(new TextComponentString(
+                    String.format("%d of %d loaded ships are sleeping", sleepingShips, loadedShips)));
+            }
+        }
+    }
+
     @Command(name = "ship-physics")
     static class DisableShip implements Runnable {
 
@@ -77,6 +77,15 @@ public class VSConfig extends VSConfigTemplate {
     })
     public static int maxDetectedShipSize = 15000;
 
+    @Name("Ship Assembly Tick Budget")
+    @Comment({
+            "How many milliseconds per tick may be spent assembling ships made with a physics infuser.",
+            "Finding the blocks of a ship runs in the background, this only limits the work left for the game thread.",
+            "At least one ship assembly step runs every tick. Default is 5 milliseconds."
+    })
+    @RangeDouble(min = 0)
+    public static double shipAssemblyTickBudget = 5;
+
     @Name("Gravity Vector X")
     public static double gravityVecX = 0;
 
@@ -146,6 +155,91 @@ public class VSConfig extends VSConfigTemplate {
 
         public boolean multithreadCollisionCacheUpdate = true;
 
+        @Comment({
+                "If true, the entire physics tick of each ship runs as its own task on the physics threads,",
+                "instead of only the collision checks. Helps with many loaded ships, results are the same either way."
+        })
+        public boolean parallelShipPhysicsPipeline = false;
+
+        @Comment({
+                "How many background threads build the meshes of ship chunks on the client.",
+                "0 builds them on the render thread instead, which stalls the frame whenever a ship block changes.",
+                "Changing the number of threads takes a restart."
+        })
+        @RangeInt(min = 0, max = 16)
+        public int shipMeshingThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    }
+
+    @Name("Physics Settings")
+    @ShortName("physicsSettings")
+    @Comment("For advanced users only")
+    public static final PhysicsSettings PHYSICS_SETTINGS = new PhysicsSettings();
+
+    public static class PhysicsSettings {
+
+        @Name("Incremental Collision Cache")
+        @Comment({
+                "If true, ships only scan the terrain they moved into since the last collision cache update,",
+                "instead of rescanning all the terrain under them every update."
+        })
+        public boolean incrementalCollisionCache = true;
+
+        @Name("Max Catch Up Ticks")
+        @Comment({
+                "If the physics fall behind, up to this many ticks are run back to back to catch up.",
+                "Ticks past that are dropped, and the physics run in slow motion until they keep up again."
+        })
+        @RangeInt(min = 1)
+        public int maxCatchUpTicks = 5;
+
+        @Name("Adaptive Substeps")
+        @Comment({
+                "If true, fast moving ships are simulated in several smaller steps per physics tick,",
+                "and ships that are barely moving are only simulated every few physics ticks."
+        })
+        public boolean adaptiveSubsteps = false;
+
+        @Name("Max Substeps")
+        @Comment("The most steps a fast moving ship is split into per physics tick, when using adaptive substeps.")
+        @RangeInt(min = 1, max = 16)
+        public int maxSubsteps = 4;
+
+        @Name("Idle Tick Interval")
+        @Comment("How many physics ticks apart ships that are barely moving are simulated, when using adaptive substeps.")
+        @RangeInt(min = 1, max = 20)
+        public int idleTickInterval = 4;
+
+        @Name("Ship To Ship Collisions")
+        @Comment({
+                "If true, ships collide with each other as well as with the world.",
+                "Ships close to another ship are never simulated by the parallel ship physics pipeline."
+        })
+        public boolean shipToShipCollisions = true;
+
+        @Name("Ship Sleeping")
+        @Comment({
+                "If true, ships that have come to rest stop being simulated until something disturbs them,",
+                "like a block changing on them or under them, a player using them, or another ship hitting them.",
+                "Ships pushed by any of their force blocks or physics controllers never fall asleep."
+        })
+        public boolean shipSleeping = true;
+
+        @Name("Sleep Linear Speed")
+        @Comment("Ships moving slower than this many meters per second are considered to be resting.")
+        @RangeDouble(min = 0)
+        public double sleepLinearSpeed = .05;
+
+        @Name("Sleep Angular Speed")
+        @Comment("Ships rotating slower than this many radians per second are considered to be resting.")
+        @RangeDouble(min = 0)
+        public double sleepAngularSpeed = .02;
+
+        @Name("Ticks Before Sleeping")
+        @Comment("How many physics ticks in a row a ship has to be resting for before it falls asleep.")
+        @RangeInt(min = 1)
+        public int ticksBeforeSleeping = 100;
+
     }
 
     public static class ShipLoadingSettings {
@@ -170,6 +264,60 @@ public class VSConfig extends VSConfigTemplate {
         @Comment("If there are no players within this XZ distance of a ship, then if that ship is currently loaded, it will unload itself.")
         public double unloadDistance = 192;
 
+        @Name("Ship Load Tick Budget")
+        @Comment({
+                "How many milliseconds per tick may be spent creating ships that are being loaded.",
+                "The chunks of a ship are read in the background first, this only limits the work left for the game thread.",
+                "At least one ship is created every tick. Default is 5 milliseconds."
+        })
+        @RangeDouble(min = 0)
+        public double loadTickBudget = 5;
+
+        @Name("Ship Update Interval")
+        @Comment({
+                "How many ticks between the position updates of the ship a player is on, and of ships right next to them.",
+                "Higher values use less bandwidth, clients interpolate between the updates they receive.",
+                "Default is 1 tick."
+        })
+        @RangeInt(min = 1, max = 20)
+        public int updateInterval = 1;
+
+        @Name("Far Ship Update Interval")
+        @Comment({
+                "How many ticks between the position updates of ships at the edge of the watch distance.",
+                "Ships in between are updated at a rate in between, ships moving quickly relative to the player",
+                "are always updated every Ship Update Interval ticks. Default is 20 ticks."
+        })
+        @RangeInt(min = 1, max = 100)
+        public int farUpdateInterval = 20;
+
+        @Name("Ship Update Bandwidth Budget")
+        @Comment({
+                "How many bytes of ship position updates may be sent to each player per tick.",
+                "Updates that don't fit are sent the next tick, the ship the player is on is always sent.",
+                "Default is 2048 bytes, enough for about 30 ships per tick."
+        })
+        @RangeInt(min = 0)
+        public int updateBandwidthBudget = 2048;
+
+        @Name("Ship Chunks Sent Per Tick")
+        @Comment({
+                "How many ship chunks may be sent to each player per tick when they start watching ships.",
+                "Big ships are sent over several ticks, and only appear once all of their chunks were sent.",
+                "Default is 16 chunks."
+        })
+        @RangeInt(min = 1)
+        public int chunksSentPerTick = 16;
+
+        @Name("Ship Interpolation Delay")
+        @Comment({
+                "Client side, how many ticks behind the server ships are shown.",
+                "Longer delays keep ship movement smooth on connections with more jitter.",
+                "Ships the server updates less often than every tick are shown further behind. Default is 3 ticks."
+        })
+        @RangeDouble(min = 0, max = 40)
+        public double interpolationDelay = 3;
+
         @Name("Permanently loaded")
         @Comment("If ships should be permanently. Warning: may have unforseen consequences")
         public boolean permanentlyLoaded = false;
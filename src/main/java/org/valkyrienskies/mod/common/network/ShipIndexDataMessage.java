@@ -1,6 +1,5 @@
 package org.valkyrienskies.mod.common.network;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.netty.buffer.ByteBuf;
 import net.minecraft.network.PacketBuffer;
@@ -13,23 +12,46 @@ import java.util.*;
 
 /**
  * Sends ShipData updates to the client, also tells it which ShipData to convert load/unload as PhysicsObject.
+ * <p>
+ * The server adds ShipData and {@link ShipStateUpdate} data that has already been encoded, so that the encoding of a
+ * ship can be shared between every player watching it. The entire ShipData is only sent when a player starts
+ * watching a ship or when something other than the transform changed, otherwise only the ShipStateUpdate is sent.
  */
 public class ShipIndexDataMessage implements IMessage {
 
     private static final ObjectMapper serializer = VSJacksonUtil.getPacketMapper();
     final List<ShipData> indexedData;
+    final List<ShipStateUpdate> stateUpdates;
     final List<UUID> shipsToLoad, shipsToUnload;
     int dimensionID;
+    // The world time of the server when this was sent, so the client can play back ship movement at the right pace
+    long serverTick;
+    // Only used on the sending side
+    private final List<byte[]> encodedIndexedData, encodedStateUpdates;
 
     public ShipIndexDataMessage() {
         this.indexedData = new ArrayList<>();
+        this.stateUpdates = new ArrayList<>();
+        this.encodedIndexedData = new ArrayList<>();
+        this.encodedStateUpdates = new ArrayList<>();
         this.shipsToLoad = new ArrayList<>();
         this.shipsToUnload = new ArrayList<>();
         this.dimensionID = -1;
+        this.serverTick = 0;
     }
 
-    public void addData(Collection<ShipData> toSend) {
-        indexedData.addAll(toSend);
+    /**
+     * @param shipDataBytes A ShipData serialized by {@link VSJacksonUtil#getPacketMapper()}
+     */
+    public void addEncodedData(byte[] shipDataBytes) {
+        encodedIndexedData.add(shipDataBytes);
+    }
+
+    /**
+     * @param stateBytes A ShipData encoded by {@link ShipStateUpdate#encode(ShipData)}
+     */
+    public void addEncodedStateUpdate(byte[] stateBytes) {
+        encodedStateUpdates.add(stateBytes);
     }
 
     public void addLoadUUID(UUID toLoad) {
@@ -44,10 +66,15 @@ public class ShipIndexDataMessage implements IMessage {
         this.dimensionID = dimensionID;
     }
 
+    public void setServerTick(long serverTick) {
+        this.serverTick = serverTick;
+    }
+
     @Override
     public void fromBytes(ByteBuf buf) {
         PacketBuffer packetBuffer = new PacketBuffer(buf);
         int numberOfIndices = packetBuffer.readInt();
+        int numberOfStateUpdates = packetBuffer.readInt();
         int numberOfUUIDLoad = packetBuffer.readInt();
         int numberOfUUIDUnload = packetBuffer.readInt();
         for (int i = 0; i < numberOfIndices; i++) {
@@ -62,6 +89,9 @@ public class ShipIndexDataMessage implements IMessage {
                 e.printStackTrace();
             }
         }
+        for (int i = 0; i < numberOfStateUpdates; i++) {
+            stateUpdates.add(ShipStateUpdate.readData(packetBuffer));
+        }
         for (int i = 0; i < numberOfUUIDLoad; i++) {
             shipsToLoad.add(packetBuffer.readUniqueId());
         }
@@ -69,24 +99,24 @@ public class ShipIndexDataMessage implements IMessage {
             shipsToUnload.add(packetBuffer.readUniqueId());
         }
         dimensionID = packetBuffer.readInt();
+        serverTick = packetBuffer.readVarLong();
     }
 
     @Override
     public void toBytes(ByteBuf buf) {
         PacketBuffer packetBuffer = new PacketBuffer(buf);
-        packetBuffer.writeInt(indexedData.size());
+        packetBuffer.writeInt(encodedIndexedData.size());
+        packetBuffer.writeInt(encodedStateUpdates.size());
         packetBuffer.writeInt(shipsToLoad.size());
         packetBuffer.writeInt(shipsToUnload.size());
-        for (ShipData data : indexedData) {
+        for (byte[] dataBytes : encodedIndexedData) {
             // Write index data to the byte buffer.
-            try {
-                byte[] dataBytes = serializer.writeValueAsBytes(data);
-                int bytesSize = dataBytes.length;
-                packetBuffer.writeInt(bytesSize);
-                packetBuffer.writeBytes(dataBytes);
-            } catch (JsonProcessingException e) {
-                e.printStackTrace();
-            }
+            packetBuffer.writeInt(dataBytes.length);
+            packetBuffer.writeBytes(dataBytes);
+        }
+        for (byte[] stateBytes : encodedStateUpdates) {
+            // State updates know their own length
+            packetBuffer.writeBytes(stateBytes);
         }
         for (UUID toLoad : shipsToLoad) {
             packetBuffer.writeUniqueId(toLoad);
@@ -95,5 +125,6 @@ public class ShipIndexDataMessage implements IMessage {
             packetBuffer.writeUniqueId(toUnload);
         }
         packetBuffer.writeInt(dimensionID);
+        packetBuffer.writeVarLong(serverTick);
     }
 }
@@ -28,7 +28,11 @@ public class ShipIndexDataMessageHandler implements IMessageHandler<ShipIndexDat
                 IPhysObjectWorld physObjectWorld = ValkyrienUtils.getPhysObjWorld(world);
                 QueryableShipData worldData = QueryableShipData.get(world);
                 for (ShipData shipData : message.indexedData) {
-                    worldData.addOrUpdateShipPreservingPhysObj(shipData, world);
+                    worldData.addOrUpdateShipPreservingPhysObj(shipData, message.serverTick, world);
+                }
+                for (ShipStateUpdate stateUpdate : message.stateUpdates) {
+                    worldData.updateShipTransformPreservingPhysObj(stateUpdate.getShipID(),
+                        stateUpdate.getShipTransform(), stateUpdate.getShipBB(), message.serverTick, world);
                 }
                 for (UUID loadID : message.shipsToLoad) {
                     physObjectWorld.queueShipLoad(loadID);
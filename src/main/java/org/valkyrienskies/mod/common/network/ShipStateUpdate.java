@@ -0,0 +1,137 @@
+package org.valkyrienskies.mod.common.network;
+
+import io.netty.buffer.Unpooled;
+import lombok.Value;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.AxisAlignedBB;
+import org.joml.Quaterniond;
+import org.joml.Quaterniondc;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import valkyrienwarfare.api.TransformType;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * The parts of a {@link ShipData} that change every tick (the transform and the AABB), in a compact binary format.
+ * Used instead of sending the entire ShipData to players that already have it.
+ * <p>
+ * Positions are sent as fixed point numbers with 16 fractional bits, the rotation is sent using the "smallest three"
+ * quaternion encoding, and the AABB is sent as float offsets from the ship position.
+ */
+@Value
+public class ShipStateUpdate {
+
+    // 2^16, positions are accurate to about 0.00002 blocks
+    private static final double FIXED_POINT_SCALE = 65536;
+    // The smallest three components of a unit quaternion are always within [-1/sqrt(2), 1/sqrt(2)]
+    private static final double QUATERNION_COMPONENT_RANGE = Math.sqrt(.5);
+
+    @Nonnull
+    UUID shipID;
+    @Nonnull
+    ShipTransform shipTransform;
+    @Nonnull
+    AxisAlignedBB shipBB;
+
+    /**
+     * Encodes the current state of shipData, the result can be sent to any number of players.
+     */
+    public static byte[] encode(final ShipData shipData) {
+        final PacketBuffer packetBuffer = new PacketBuffer(Unpooled.buffer(96));
+        final ShipTransform transform = shipData.getShipTransform();
+        final AxisAlignedBB shipBB = shipData.getShipBB();
+
+        packetBuffer.writeUniqueId(shipData.getUuid());
+        writeFixedPoint(transform.getPosX(), packetBuffer);
+        writeFixedPoint(transform.getPosY(), packetBuffer);
+        writeFixedPoint(transform.getPosZ(), packetBuffer);
+        writeFixedPoint(transform.getCenterCoord().x(), packetBuffer);
+        writeFixedPoint(transform.getCenterCoord().y(), packetBuffer);
+        writeFixedPoint(transform.getCenterCoord().z(), packetBuffer);
+        writeRotation(transform.rotationQuaternion(TransformType.SUBSPACE_TO_GLOBAL), packetBuffer);
+        packetBuffer.writeFloat((float) (shipBB.minX - transform.getPosX()));
+        packetBuffer.writeFloat((float) (shipBB.minY - transform.getPosY()));
+        packetBuffer.writeFloat((float) (shipBB.minZ - transform.getPosZ()));
+        packetBuffer.writeFloat((float) (shipBB.maxX - transform.getPosX()));
+        packetBuffer.writeFloat((float) (shipBB.maxY - transform.getPosY()));
+        packetBuffer.writeFloat((float) (shipBB.maxZ - transform.getPosZ()));
+
+        return Arrays.copyOf(packetBuffer.array(), packetBuffer.writerIndex());
+    }
+
+    /**
+     * Reads data written by {@link #encode(ShipData)} from the data stream.
+     */
+    public static ShipStateUpdate readData(final PacketBuffer packetBuffer) {
+        final UUID shipID = packetBuffer.readUniqueId();
+        final double posX = readFixedPoint(packetBuffer);
+        final double posY = readFixedPoint(packetBuffer);
+        final double posZ = readFixedPoint(packetBuffer);
+        final Vector3dc centerCoord = new Vector3d(readFixedPoint(packetBuffer), readFixedPoint(packetBuffer),
+            readFixedPoint(packetBuffer));
+        final Quaterniondc rotation = readRotation(packetBuffer);
+        final AxisAlignedBB shipBB = new AxisAlignedBB(
+            posX + packetBuffer.readFloat(),
+            posY + packetBuffer.readFloat(),
+            posZ + packetBuffer.readFloat(),
+            posX + packetBuffer.readFloat(),
+            posY + packetBuffer.readFloat(),
+            posZ + packetBuffer.readFloat()
+        );
+        return new ShipStateUpdate(shipID, new ShipTransform(posX, posY, posZ, rotation, centerCoord), shipBB);
+    }
+
+    private static void writeFixedPoint(final double value, final PacketBuffer packetBuffer) {
+        final long fixedPoint = Math.round(value * FIXED_POINT_SCALE);
+        // Zig-zag encode so that small negative numbers are small var longs as well
+        packetBuffer.writeVarLong((fixedPoint << 1) ^ (fixedPoint >> 63));
+    }
+
+    private static double readFixedPoint(final PacketBuffer packetBuffer) {
+        final long zigZag = packetBuffer.readVarLong();
+        final long fixedPoint = (zigZag >>> 1) ^ -(zigZag & 1);
+        return fixedPoint / FIXED_POINT_SCALE;
+    }
+
+    /**
+     * Writes the index of the largest component followed by the other three components as shorts. The largest
+     * component is recomputed from the others when reading, q and -q are the same rotation so we always make it
+     * positive.
+     */
+    private static void writeRotation(final Quaterniondc rotation, final PacketBuffer packetBuffer) {
+        final double[] components = {rotation.x(), rotation.y(), rotation.z(), rotation.w()};
+        int largestIndex = 0;
+        for (int i = 1; i < 4; i++) {
+            if (Math.abs(components[i]) > Math.abs(components[largestIndex])) {
+                largestIndex = i;
+            }
+        }
+        final double sign = components[largestIndex] < 0 ? -1 : 1;
+        packetBuffer.writeByte(largestIndex);
+        for (int i = 0; i < 4; i++) {
+            if (i != largestIndex) {
+                final double normalized = sign * components[i] / QUATERNION_COMPONENT_RANGE;
+                packetBuffer.writeShort((int) Math.round(Math.max(-1, Math.min(normalized, 1)) * Short.MAX_VALUE));
+            }
+        }
+    }
+
+    private static Quaterniondc readRotation(final PacketBuffer packetBuffer) {
+        final int largestIndex = packetBuffer.readByte();
+        final double[] components = new double[4];
+        double sumOfSquares = 0;
+        for (int i = 0; i < 4; i++) {
+            if (i != largestIndex) {
+                components[i] = packetBuffer.readShort() * QUATERNION_COMPONENT_RANGE / Short.MAX_VALUE;
+                sumOfSquares += components[i] * components[i];
+            }
+        }
+        components[largestIndex] = Math.sqrt(Math.max(0, 1 - sumOfSquares));
+        return new Quaterniond(components[0], components[1], components[2], components[3]).normalize();
+    }
+}
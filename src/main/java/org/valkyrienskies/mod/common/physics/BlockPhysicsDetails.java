@@ -5,14 +5,9 @@ import net.minecraft.block.BlockLiquid;
 import net.minecraft.block.material.Material;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
-import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.World;
-import org.joml.Vector3d;
-import org.joml.Vector3dc;
 import org.valkyrienskies.mod.common.block.IBlockForceProvider;
 import org.valkyrienskies.mod.common.block.IBlockTorqueProvider;
 import org.valkyrienskies.mod.common.config.VSConfig;
-import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -132,26 +127,6 @@ public class BlockPhysicsDetails {
         }
     }
 
-    /**
-     * Assigns the output parameter of toSet to be the force Vector for the given IBlockState.
-     */
-    static void getForceFromState(IBlockState state, BlockPos pos, World world,
-        double secondsToApply,
-        PhysicsObject obj, Vector3d toSet) {
-        Block block = state.getBlock();
-        if (block instanceof IBlockForceProvider) {
-            Vector3dc forceVector = ((IBlockForceProvider) block).getBlockForceInWorldSpace(world, pos, state,
-                    obj, secondsToApply);
-            if (forceVector == null) {
-                toSet.zero();
-            } else {
-                toSet.x = forceVector.x();
-                toSet.y = forceVector.y();
-                toSet.z = forceVector.z();
-            }
-        }
-    }
-
     /**
      * Returns true if the given IBlockState can create force; otherwise it returns false.
      */
@@ -0,0 +1,150 @@
+package org.valkyrienskies.mod.common.physics;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import org.valkyrienskies.mod.common.block.IBlockForceProvider;
+import org.valkyrienskies.mod.common.block.IBlockTorqueProvider;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Everything on a ship that produces force or torque, for {@link PhysicsCalculations} to go through every physics
+ * tick.
+ * <p>
+ * Kept up to date by the game thread, as force blocks are placed and removed and physics controllers are added and
+ * removed. The physics thread only ever sees an immutable {@link Snapshot}, with every block already resolved to its
+ * provider and everything already sorted into the order it runs in, so a physics tick just walks a few arrays. Changes
+ * are published to the physics thread once per game tick by {@link #publishChanges()}.
+ */
+public class ForceProducerRegistry {
+
+    private static final Snapshot EMPTY_SNAPSHOT = new Snapshot(new BlockPos[0], new IBlockState[0],
+        new IBlockForceProvider[0], new BlockPos[0], new IBlockTorqueProvider[0], new IPhysicsBlockController[0]);
+
+    // Only used by the game thread
+    private final Map<BlockPos, IBlockState> forceBlocks;
+    private final Set<IPhysicsBlockController> physicsControllers;
+    private boolean hasChanges;
+    // Only replaced, never modified
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param physicsControllers The physics controllers of the ship, read whenever a new snapshot is published
+     */
+    public ForceProducerRegistry(@Nonnull Set<IPhysicsBlockController> physicsControllers) {
+        this.forceBlocks = new HashMap<>();
+        this.physicsControllers = physicsControllers;
+        this.hasChanges = false;
+        this.snapshot = EMPTY_SNAPSHOT;
+    }
+
+    /**
+     * Must be called from the game thread whenever a block of the ship changes.
+     */
+    public void onSetBlockState(@Nonnull BlockPos pos, @Nonnull IBlockState newState) {
+        if (BlockPhysicsDetails.isBlockProvidingForce(newState)) {
+            if (forceBlocks.put(pos.toImmutable(), newState) != newState) {
+                hasChanges = true;
+            }
+        } else if (forceBlocks.remove(pos) != null) {
+            hasChanges = true;
+        }
+    }
+
+    /**
+     * Must be called from the game thread whenever a physics controller is added to or removed from the ship.
+     */
+    public void onPhysicsControllersChanged() {
+        hasChanges = true;
+    }
+
+    /**
+     * Makes the changes since the last call visible to the physics thread. Must be called from the game thread.
+     */
+    public void publishChanges() {
+        if (!hasChanges) {
+            return;
+        }
+        hasChanges = false;
+
+        // Sorted by position so that the forces are always summed in the same order
+        List<Map.Entry<BlockPos, IBlockState>> forceEntries = new ArrayList<>();
+        List<Map.Entry<BlockPos, IBlockState>> torqueEntries = new ArrayList<>();
+        for (Map.Entry<BlockPos, IBlockState> entry : forceBlocks.entrySet()) {
+            Block block = entry.getValue().getBlock();
+            if (block instanceof IBlockForceProvider) {
+                forceEntries.add(entry);
+            } else if (block instanceof IBlockTorqueProvider) {
+                torqueEntries.add(entry);
+            }
+        }
+        forceEntries.sort(Map.Entry.comparingByKey());
+        // Torque providers run in the order of their sorting index, so the dampeners run after the stabilizers
+        torqueEntries.sort(Comparator.comparingInt(
+            (Map.Entry<BlockPos, IBlockState> entry) -> ((IBlockTorqueProvider) entry.getValue().getBlock())
+                .getBlockSortingIndex())
+            .thenComparing(Map.Entry.comparingByKey()));
+
+        BlockPos[] forcePositions = new BlockPos[forceEntries.size()];
+        IBlockState[] forceStates = new IBlockState[forceEntries.size()];
+        IBlockForceProvider[] forceProviders = new IBlockForceProvider[forceEntries.size()];
+        for (int i = 0; i < forceEntries.size(); i++) {
+            forcePositions[i] = forceEntries.get(i).getKey();
+            forceStates[i] = forceEntries.get(i).getValue();
+            forceProviders[i] = (IBlockForceProvider) forceStates[i].getBlock();
+        }
+        BlockPos[] torquePositions = new BlockPos[torqueEntries.size()];
+        IBlockTorqueProvider[] torqueProviders = new IBlockTorqueProvider[torqueEntries.size()];
+        for (int i = 0; i < torqueEntries.size(); i++) {
+            torquePositions[i] = torqueEntries.get(i).getKey();
+            torqueProviders[i] = (IBlockTorqueProvider) torqueEntries.get(i).getValue().getBlock();
+        }
+        // Controllers run in order of priority, their priority is only read here
+        IPhysicsBlockController[] controllers = physicsControllers.toArray(new IPhysicsBlockController[0]);
+        Arrays.sort(controllers);
+
+        this.snapshot = new Snapshot(forcePositions, forceStates, forceProviders, torquePositions, torqueProviders,
+            controllers);
+    }
+
+    /**
+     * @return The force producers as of the last {@link #publishChanges()}. Can be called from any thread.
+     */
+    Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * The force producers of a ship at one point in time. Elements with the same index in the force and torque arrays
+     * belong to the same block.
+     */
+    static final class Snapshot {
+
+        final BlockPos[] forcePositions;
+        final IBlockState[] forceStates;
+        final IBlockForceProvider[] forceProviders;
+        final BlockPos[] torquePositions;
+        final IBlockTorqueProvider[] torqueProviders;
+        // Sorted by priority
+        final IPhysicsBlockController[] controllers;
+
+        private Snapshot(BlockPos[] forcePositions, IBlockState[] forceStates, IBlockForceProvider[] forceProviders,
+            BlockPos[] torquePositions, IBlockTorqueProvider[] torqueProviders,
+            IPhysicsBlockController[] controllers) {
+            this.forcePositions = forcePositions;
+            this.forceStates = forceStates;
+            this.forceProviders = forceProviders;
+            this.torquePositions = torquePositions;
+            this.torqueProviders = torqueProviders;
+            this.controllers = controllers;
+        }
+    }
+}
@@ -1,13 +1,10 @@
 package org.valkyrienskies.mod.common.physics;
 
-import lombok.Getter;
-import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import org.joml.*;
 import org.valkyrienskies.mod.common.block.IBlockForceProvider;
-import org.valkyrienskies.mod.common.block.IBlockTorqueProvider;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.collision.WorldPhysicsCollider;
@@ -15,8 +12,24 @@ import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
 import valkyrienwarfare.api.TransformType;
 
 import java.lang.Math;
-import java.util.*;
 
+/**
+ * The physics of a ship. The position, rotation, velocities, mass and inertia of the ship are stored in a
+ * {@link RigidBodyStore}, shared with the other ships of the world once the physics thread has picked the ship up, and
+ * this is a view over them.
+ * <p>
+ * A step is split into the parts that have to run ship by ship, and the parts that run over the store. Ships stepped
+ * together run the store parts over the whole store at once, a ship stepped on its own runs them over its own body:
+ * <ol>
+ *     <li>{@link #prepareStep(double)} for every ship</li>
+ *     <li>{@link RigidBodyStore#updateWorldInertia(int, int)}, {@link RigidBodyStore#applyDrag(int, int)} and
+ *     {@link RigidBodyStore#applyGravity(Vector3dc, int, int)}</li>
+ *     <li>{@link #applyForces()} for every ship, followed by collisions</li>
+ *     <li>{@link #prepareIntegration()} for every ship</li>
+ *     <li>{@link RigidBodyStore#integrate(double, double, int, int)}</li>
+ *     <li>{@link #finishStep()} for every ship</li>
+ * </ol>
+ */
 public class PhysicsCalculations {
 
     public static final double DRAG_CONSTANT = .99D;
@@ -24,34 +37,39 @@ public class PhysicsCalculations {
 
     private final PhysicsObject parent;
     private final WorldPhysicsCollider worldCollision;
+    private final RigidBodyStore.BodyHandle body;
 
     public boolean actAsArchimedes = false;
     private Vector3dc physCenterOfMass;
     private Vector3d torque;
-    private double physTickMass;
     // TODO: Get this in one day
     // private double physMass;
     // The time occurring on each PhysTick
     private double physTickTimeDelta;
-    private Matrix3dc physMOITensor;
-    private Matrix3dc physInvMOITensor;
-    private Quaterniondc physRotation;
-    private double physX, physY, physZ;
-
-    @Getter
-    private final Vector3d linearVelocity;
-    @Getter
-    private final Vector3d angularVelocity;
+    // The game tick inertia tensor last copied into the store
+    private Matrix3dc physBodyMOITensor;
+    // Scratch vectors for calculateForces(), only used by the physics thread
+    private final Vector3d blockForce = new Vector3d();
+    private final Vector3d blockForcePosition = new Vector3d();
+    private final Vector3d crossVector = new Vector3d();
+    // The velocities before applyForces(), to tell if the physics controllers pushed the ship
+    private final Vector3d linearVelocityBeforeForces = new Vector3d();
+    private final Vector3d angularVelocityBeforeForces = new Vector3d();
+    // Whether any force producer had a non-zero output in the last step
+    private boolean forceProducersActive;
+    // How many physics ticks in a row this ship was skipped, see VSWorldPhysicsLoop
+    private int skippedTicks;
 
     public PhysicsCalculations(PhysicsObject parent) {
         this.parent = parent;
+        // Every ship starts out in a store of its own, until the physics thread moves it into the store of its world
+        this.body = new RigidBodyStore(1).add();
         this.worldCollision = new WorldPhysicsCollider(this);
 
-        this.physMOITensor = null;
-        this.physInvMOITensor = null;
+        this.physBodyMOITensor = null;
 
-        this.linearVelocity = new Vector3d(parent.getPhysicsData().getLinearVelocity());
-        this.angularVelocity = new Vector3d(parent.getPhysicsData().getAngularVelocity());
+        addLinearVelocity(parent.getPhysicsData().getLinearVelocity());
+        addAngularVelocity(parent.getPhysicsData().getAngularVelocity());
 
         this.physCenterOfMass = new Vector3d();
         this.torque = new Vector3d();
@@ -62,12 +80,19 @@ public class PhysicsCalculations {
     public void generatePhysicsTransform() {
         // Create a new physics transform.
         ShipTransform parentTransform = getParent().getShipData().getShipTransform();
-        physRotation = parentTransform.getSubspaceToGlobal().getNormalizedRotation(new Quaterniond());
-        physX = parentTransform.getPosX();
-        physY = parentTransform.getPosY();
-        physZ = parentTransform.getPosZ();
+        Quaterniondc physRotation = parentTransform.getSubspaceToGlobal().getNormalizedRotation(new Quaterniond());
+        final RigidBodyStore store = body.store;
+        final int i = body.index;
+        store.rotX[i] = physRotation.x();
+        store.rotY[i] = physRotation.y();
+        store.rotZ[i] = physRotation.z();
+        store.rotW[i] = physRotation.w();
+        store.posX[i] = parentTransform.getPosX();
+        store.posY[i] = parentTransform.getPosY();
+        store.posZ[i] = parentTransform.getPosZ();
         physCenterOfMass = parentTransform.getCenterCoord();
-        ShipTransform physicsTransform = new ShipTransform(physX, physY, physZ, physRotation, physCenterOfMass);
+        ShipTransform physicsTransform = new ShipTransform(store.posX[i], store.posY[i], store.posZ[i], physRotation,
+            physCenterOfMass);
         getParent().getShipTransformationManager()
                 .setCurrentPhysicsTransform(physicsTransform);
         // We're doing this afterwards to prevent from prevPhysicsTransform being null.
@@ -75,16 +100,30 @@ public class PhysicsCalculations {
                 .updatePreviousPhysicsTransform();
     }
 
-    public void rawPhysTickPreCol(double physTickTimeDelta) {
+    /**
+     * Updates the center of mass, mass and inertia of the ship, and marks it as being stepped by physTickTimeDelta
+     * seconds in its {@link RigidBodyStore}.
+     */
+    public void prepareStep(double physTickTimeDelta) {
         updatePhysSpeedAndIters(physTickTimeDelta);
         updatePhysCenterOfMass();
-        calculateFramedMOITensor();
+        updatePhysMassAndMOITensor();
+        // Ships that are deconstructing or acting as archimedes only have drag applied to them
+        final boolean applyGravity = VSConfig.doGravity && !parent.isShipAligningToGrid() && !actAsArchimedes;
+        body.store.prepareStep(body.index, physTickTimeDelta, getDragForPhysTick(),
+            applyGravity ? getMass() * physTickTimeDelta * getInvMass() : 0);
+    }
+
+    /**
+     * Applies the forces of the force blocks and physics controllers of the ship, or rotates the ship towards the grid
+     * if it's deconstructing. Drag and gravity must have been applied already.
+     */
+    public void applyForces() {
+        forceProducersActive = false;
         if (!parent.isShipAligningToGrid()) {
             // We are not marked for deconstruction, act normal.
             if (!actAsArchimedes) {
                 calculateForces();
-            } else {
-                calculateForcesArchimedes();
             }
         } else {
             // We are trying to deconstruct, try to rotate the ship to grid to align with the grid.
@@ -92,33 +131,83 @@ public class PhysicsCalculations {
         }
     }
 
-    public void rawPhysTickPostCol() {
-        if (!isPhysicsBroken()) {
-            // This wasn't implemented very well at all! Maybe in the future I'll try again.
-            // enforceStaticFriction();
-            integrateAngularVelocity();
-            integrateLinearVelocity();
-        } else {
+    /**
+     * @return True if any force block, torque block or physics controller of the ship pushed it in the last step, no
+     * matter how weakly. Such a ship must not fall asleep, nothing would notice the push once it's asleep.
+     */
+    public boolean areForceProducersActive() {
+        return forceProducersActive;
+    }
+
+    /**
+     * @return How many physics ticks in a row this ship was skipped before the current one.
+     */
+    public int getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    public void setSkippedTicks(int skippedTicks) {
+        this.skippedTicks = skippedTicks;
+    }
+
+    /**
+     * Stops the ship dead, for when it's put to sleep.
+     */
+    public void clearVelocities() {
+        final RigidBodyStore store = body.store;
+        final int i = body.index;
+        store.linearVelX[i] = store.linearVelY[i] = store.linearVelZ[i] = 0;
+        store.angularVelX[i] = store.angularVelY[i] = store.angularVelZ[i] = 0;
+        getParent().getShipData().getPhysicsData().setAngularVelocity(new Vector3d());
+        getParent().getShipData().getPhysicsData().setLinearVelocity(new Vector3d());
+    }
+
+    /**
+     * Freezes the ship instead of integrating its velocities if they've blown up.
+     */
+    public void prepareIntegration() {
+        if (isPhysicsBroken()) {
             getParent().getShipData().setPhysicsEnabled(false);
-            getLinearVelocity().zero();
-            getAngularVelocity().zero();
+            final RigidBodyStore store = body.store;
+            final int i = body.index;
+            store.linearVelX[i] = store.linearVelY[i] = store.linearVelZ[i] = 0;
+            store.angularVelX[i] = store.angularVelY[i] = store.angularVelZ[i] = 0;
+            store.endStep(i);
         }
+        // This wasn't implemented very well at all! Maybe in the future I'll try again.
+        // enforceStaticFriction();
+    }
 
-        ShipTransform finalPhysTransform = new ShipTransform(physX, physY, physZ, physRotation, physCenterOfMass);
+    /**
+     * Updates the physics transform and the velocities in ShipData to the ones in the {@link RigidBodyStore}, once
+     * the ship has been integrated.
+     */
+    public void finishStep() {
+        final RigidBodyStore store = body.store;
+        final int i = body.index;
+        Quaterniondc physRotation = new Quaterniond(store.rotX[i], store.rotY[i], store.rotZ[i], store.rotW[i]);
+        ShipTransform finalPhysTransform = new ShipTransform(store.posX[i], store.posY[i], store.posZ[i],
+            physRotation, physCenterOfMass);
+        store.endStep(i);
 
         getParent().getShipTransformationManager().updatePreviousPhysicsTransform();
         getParent().getShipTransformationManager().setCurrentPhysicsTransform(finalPhysTransform);
         // Save a copy of linear and angular velocity in parent's ShipData
-        getParent().getShipData().getPhysicsData().setAngularVelocity(new Vector3d(angularVelocity));
-        getParent().getShipData().getPhysicsData().setLinearVelocity(new Vector3d(linearVelocity));
+        getParent().getShipData().getPhysicsData().setAngularVelocity(getAngularVelocity(new Vector3d()));
+        getParent().getShipData().getPhysicsData().setLinearVelocity(getLinearVelocity(new Vector3d()));
     }
 
     // If the ship is moving at these speeds, its likely something in the physics
     // broke. This method helps detect that.
     private boolean isPhysicsBroken() {
-        if (getAngularVelocity().lengthSquared() > 50000
-                || getLinearVelocity().lengthSquared() > 50000 || !getAngularVelocity()
-                .isFinite() || !getLinearVelocity().isFinite()) {
+        final RigidBodyStore store = body.store;
+        final int i = body.index;
+        final double linearX = store.linearVelX[i], linearY = store.linearVelY[i], linearZ = store.linearVelZ[i];
+        final double angularX = store.angularVelX[i], angularY = store.angularVelY[i], angularZ = store.angularVelZ[i];
+        if (angularX * angularX + angularY * angularY + angularZ * angularZ > 50000
+                || linearX * linearX + linearY * linearY + linearZ * linearZ > 50000
+                || !Double.isFinite(angularX) || !Double.isFinite(angularY) || !Double.isFinite(angularZ)
+                || !Double.isFinite(linearX) || !Double.isFinite(linearY) || !Double.isFinite(linearZ)) {
             System.out.println("Ship tried moving too fast; freezing it and reseting velocities");
             return true;
         }
@@ -137,119 +226,90 @@ public class PhysicsCalculations {
             getParent().getShipTransformationManager().getCurrentPhysicsTransform()
                     .transformDirection(CMDif, TransformType.SUBSPACE_TO_GLOBAL);
 
-            physX += CMDif.x;
-            physY += CMDif.y;
-            physZ += CMDif.z;
+            body.store.posX[body.index] += CMDif.x;
+            body.store.posY[body.index] += CMDif.y;
+            body.store.posZ[body.index] += CMDif.z;
             physCenterOfMass = gameTickCM;
         }
     }
 
     /**
-     * Generates the rotated moment of inertia tensor with the body; uses the following formula: I'
-     * = R * I * R-transpose; where I' is the rotated inertia, I is un-rotated interim, and R is the
-     * rotation matrix.
-     * Reference: https://en.wikipedia.org/wiki/Moment_of_inertia#Inertia_matrix_in_different_reference_frames
+     * Copies the game tick mass and inertia tensor into the store. The store rotates the tensor into world space, see
+     * {@link RigidBodyStore#updateWorldInertia(int, int)}.
      */
-    private void calculateFramedMOITensor() {
-        // physCenterOfMass = new Vector(parent.getCenterCoord());
-        physTickMass = parent.getInertiaData().getGameTickMass();
-
-        // Copy the rotation matrix, ignore the translation and scaling parts.
-        Matrix3dc rotationMatrix = getParent().getShipTransformationManager()
-                .getCurrentPhysicsTransform().createRotationMatrix(TransformType.SUBSPACE_TO_GLOBAL);
-
+    private void updatePhysMassAndMOITensor() {
+        body.store.setMass(body.index, parent.getInertiaData().getGameTickMass());
         Matrix3dc inertiaBodyFrame = parent.getInertiaData().getGameMoITensor();
-
-
-        Matrix3d rotationMatrixTranspose = rotationMatrix.transpose(new Matrix3d());
-
-
-        Matrix3d finalInertia = new Matrix3d(rotationMatrix);
-        finalInertia.mul(inertiaBodyFrame);
-        finalInertia.mul(rotationMatrixTranspose);
-
-
-        physMOITensor = finalInertia;
-        physInvMOITensor = physMOITensor.invert(new Matrix3d());
+        // The game tick tensor is replaced rather than modified when it changes, so it only has to be inverted then
+        if (inertiaBodyFrame != physBodyMOITensor) {
+            body.store.setBodyInertia(body.index, inertiaBodyFrame);
+            physBodyMOITensor = inertiaBodyFrame;
+        }
     }
 
     private void calculateForces() {
-        applyAirDrag();
-        applyGravity();
-
-        Vector3d blockForce = new Vector3d();
-        Vector3d inBodyWO = new Vector3d();
-        Vector3d crossVector = new Vector3d();
-        World worldObj = getParent().getWorld();
-
         if (VSConfig.doPhysicsBlocks) {
-            // We want to loop through all the physics nodes in a sorted order. Priority Queue handles that.
-            Queue<IPhysicsBlockController> nodesPriorityQueue = new PriorityQueue<>(
-                    parent.getPhysicsControllersInShip());
-
-            while (nodesPriorityQueue.size() > 0) {
-                IPhysicsBlockController controller = nodesPriorityQueue.poll();
-                controller.onPhysicsTick(parent, this, this.getPhysicsTimeDeltaPerPhysTick());
+            final World worldObj = getParent().getWorld();
+            final double timeDelta = getPhysicsTimeDeltaPerPhysTick();
+            final ForceProducerRegistry.Snapshot forceProducers = parent.getForceProducerRegistry().getSnapshot();
+
+            // The controllers are already sorted by priority
+            getLinearVelocity(linearVelocityBeforeForces);
+            getAngularVelocity(angularVelocityBeforeForces);
+            for (IPhysicsBlockController controller : forceProducers.controllers) {
+                controller.onPhysicsTick(parent, this, timeDelta);
+            }
+            // Controllers push the ship through addForceAtPoint(), or by changing its velocities directly
+            if (torque.lengthSquared() != 0 || !linearVelocityBeforeForces.equals(getLinearVelocity(crossVector))
+                || !angularVelocityBeforeForces.equals(getAngularVelocity(crossVector))) {
+                forceProducersActive = true;
             }
 
-            SortedMap<IBlockTorqueProvider, List<BlockPos>> torqueProviders = new TreeMap<>();
-
-            BlockPos.MutableBlockPos mutablePos = new BlockPos.MutableBlockPos();
-            // Note that iterating over "activeForcePositions" is not thread safe, so this could lead to problems.
-            // However we're going to completely replace this code soon anyways, so its not a big deal.
-            parent.getShipData().activeForcePositions.forEachUnsafe((x, y, z) -> {
-                mutablePos.setPos(x, y, z);
-                IBlockState state = getParent().getChunkAt(mutablePos.getX() >> 4, mutablePos.getZ() >> 4).getBlockState(mutablePos);
-                Block blockAt = state.getBlock();
-
-                if (blockAt instanceof IBlockForceProvider) {
-                    try {
-                        BlockPhysicsDetails.getForceFromState(state, mutablePos, worldObj,
-                                getPhysicsTimeDeltaPerPhysTick(),
-                                getParent(), blockForce);
-
-                        Vector3dc otherPosition = ((IBlockForceProvider) blockAt)
-                                .getCustomBlockForcePosition(worldObj,
-                                        mutablePos, state, getParent(), getPhysicsTimeDeltaPerPhysTick());
-
-                        if (otherPosition != null) {
-                            inBodyWO.set(otherPosition);
-                            inBodyWO.sub(physCenterOfMass);
-                            getParent().getShipTransformationManager().getCurrentPhysicsTransform()
-                                    .transformDirection(inBodyWO, TransformType.SUBSPACE_TO_GLOBAL);
-                        } else {
-                            inBodyWO.set(mutablePos.getX() + .5, mutablePos.getY() + .5,
-                                    mutablePos.getZ() + .5);
-                            inBodyWO.sub(physCenterOfMass);
-                            getParent().getShipTransformationManager().getCurrentPhysicsTransform()
-                                    .transformDirection(inBodyWO, TransformType.SUBSPACE_TO_GLOBAL);
-                        }
-
-                        addForceAtPoint(inBodyWO, blockForce, crossVector);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+            for (int i = 0; i < forceProducers.forcePositions.length; i++) {
+                final BlockPos pos = forceProducers.forcePositions[i];
+                final IBlockState state = forceProducers.forceStates[i];
+                final IBlockForceProvider forceProvider = forceProducers.forceProviders[i];
+                try {
+                    Vector3dc forceVector = forceProvider.getBlockForceInWorldSpace(worldObj, pos, state, getParent(),
+                        timeDelta);
+                    if (forceVector == null) {
+                        blockForce.zero();
+                    } else {
+                        blockForce.set(forceVector);
+                    }
+                    if (blockForce.lengthSquared() != 0) {
+                        forceProducersActive = true;
                     }
-                } else if (blockAt instanceof IBlockTorqueProvider) {
-                    // Add it to the torque sorted map; we do this so the torque dampeners can run
-                    // after the gyroscope stabilizers.
-                    IBlockTorqueProvider torqueProviderBlock = (IBlockTorqueProvider) blockAt;
-                    if (!torqueProviders.containsKey(torqueProviderBlock)) {
-                        torqueProviders.put(torqueProviderBlock, new LinkedList<>());
+
+                    Vector3dc otherPosition = forceProvider.getCustomBlockForcePosition(worldObj, pos, state,
+                        getParent(), timeDelta);
+
+                    if (otherPosition != null) {
+                        blockForcePosition.set(otherPosition);
+                    } else {
+                        blockForcePosition.set(pos.getX() + .5, pos.getY() + .5, pos.getZ() + .5);
                     }
-                    torqueProviders.get(torqueProviderBlock).add(new BlockPos(x, y, z));
+                    blockForcePosition.sub(physCenterOfMass);
+                    getParent().getShipTransformationManager().getCurrentPhysicsTransform()
+                        .transformDirection(blockForcePosition, TransformType.SUBSPACE_TO_GLOBAL);
+
+                    addForceAtPoint(blockForcePosition, blockForce, crossVector);
+                } catch (Exception e) {
+                    e.printStackTrace();
                 }
-            });
-
-            // Now add the torque from the torque providers, in a sorted order!
-            for (IBlockTorqueProvider torqueProviderBlock : torqueProviders.keySet()) {
-                List<BlockPos> blockPositions = torqueProviders.get(torqueProviderBlock);
-                for (BlockPos pos : blockPositions) {
-                    this.convertTorqueToVelocity();
-                    Vector3dc torqueVector = torqueProviderBlock
-                            .getTorqueInGlobal(this, pos);
-                    if (torqueVector != null) {
-                        torque.add(torqueVector);
+            }
+
+            // Now add the torque from the torque providers, already sorted so the torque dampeners run after the
+            // gyroscope stabilizers.
+            for (int i = 0; i < forceProducers.torquePositions.length; i++) {
+                this.convertTorqueToVelocity();
+                Vector3dc torqueVector = forceProducers.torqueProviders[i]
+                    .getTorqueInGlobal(this, forceProducers.torquePositions[i]);
+                if (torqueVector != null) {
+                    if (torqueVector.lengthSquared() != 0) {
+                        forceProducersActive = true;
                     }
+                    torque.add(torqueVector);
                 }
             }
         }
@@ -257,20 +317,7 @@ public class PhysicsCalculations {
         convertTorqueToVelocity();
     }
 
-    private void applyGravity() {
-        if (VSConfig.doGravity) {
-            addForceAtPoint(new Vector3d(),
-                    VSConfig.gravity().mul(physTickMass * getPhysicsTimeDeltaPerPhysTick(), new Vector3d()));
-        }
-    }
-
-    private void calculateForcesArchimedes() {
-        applyAirDrag();
-    }
-
     private void calculateForcesDeconstruction(double physTickTimeDelta) {
-        applyAirDrag();
-
         Quaterniondc inverseCurrentRotation = parent.getShipTransformationManager()
                 .getCurrentPhysicsTransform()
                 .rotationQuaternion(TransformType.GLOBAL_TO_SUBSPACE);
@@ -303,19 +350,12 @@ public class PhysicsCalculations {
         // Larger values converge faster, but sacrifice collision accuracy
         angularVelocityDif.mul(physTickTimeDelta);
 
-        getAngularVelocity().add(angularVelocityDif);
-    }
-
-    private void applyAirDrag() {
-        double drag = getDragForPhysTick();
-        getLinearVelocity().mul(drag);
-        getAngularVelocity().mul(drag);
+        addAngularVelocity(angularVelocityDif);
     }
 
     private void convertTorqueToVelocity() {
-        Vector3d torqueTransformed = new Vector3d(torque);
-        getPhysInvMOITensor().transform(torqueTransformed);
-        getAngularVelocity().add(torqueTransformed.x, torqueTransformed.y, torqueTransformed.z);
+        body.store.transformByWorldInvInertia(body.index, torque);
+        addAngularVelocity(torque);
         torque.zero();
     }
 
@@ -329,7 +369,11 @@ public class PhysicsCalculations {
                                 Vector3d crossVector) {
         inBodyWO.cross(forceToApply, crossVector);
         torque.add(crossVector);
-        getLinearVelocity().add(forceToApply.x() * getInvMass(), forceToApply.y() * getInvMass(), forceToApply.z() * getInvMass());
+        final RigidBodyStore store = body.store;
+        final int i = body.index;
+        store.linearVelX[i] += forceToApply.x() * store.invMass[i];
+        store.linearVelY[i] += forceToApply.y() * store.invMass[i];
+        store.linearVelZ[i] += forceToApply.z() * store.invMass[i];
     }
 
     private void updatePhysSpeedAndIters(double newPhysSpeed) {
@@ -337,55 +381,69 @@ public class PhysicsCalculations {
     }
 
     /**
-     * Implementation is based on https://gafferongames.com/post/physics_in_3d/
+     * @return A copy of the linear velocity, in meters per second.
      */
-    private void integrateAngularVelocity() {
-        // The body angular velocity vector, in World coordinates
-        Vector3d angularVelocity = getAngularVelocity();
-        if (angularVelocity.lengthSquared() < .001) {
-            // Angular velocity is zero, so the rotation hasn't changed.
-            return;
-        }
+    public Vector3dc getLinearVelocity() {
+        return getLinearVelocity(new Vector3d());
+    }
 
-        Vector3dc angularVelInBody = new Vector3d(angularVelocity);
+    public Vector3d getLinearVelocity(Vector3d dest) {
+        return dest.set(body.store.linearVelX[body.index], body.store.linearVelY[body.index],
+            body.store.linearVelZ[body.index]);
+    }
 
-        AxisAngle4d axisAngle4d = new AxisAngle4d(angularVelInBody.length() * getPhysicsTimeDeltaPerPhysTick(), angularVelInBody.x(), angularVelInBody.y(), angularVelInBody.z());
-        axisAngle4d.normalize();
+    /**
+     * @return A copy of the angular velocity, in radians per second, in world coordinates.
+     */
+    public Vector3dc getAngularVelocity() {
+        return getAngularVelocity(new Vector3d());
+    }
 
-        // Take the product of the current rotation with the change in rotation that results from
-        // the angular velocity. Then change our pitch/yaw/roll based on the result.
-        Quaterniondc rotationQuat = new Quaterniond(axisAngle4d);
+    public Vector3d getAngularVelocity(Vector3d dest) {
+        return dest.set(body.store.angularVelX[body.index], body.store.angularVelY[body.index],
+            body.store.angularVelZ[body.index]);
+    }
 
-        physRotation = physRotation.premul(rotationQuat, new Quaterniond()).normalize();
+    public void addLinearVelocity(Vector3dc toAdd) {
+        body.store.linearVelX[body.index] += toAdd.x();
+        body.store.linearVelY[body.index] += toAdd.y();
+        body.store.linearVelZ[body.index] += toAdd.z();
     }
 
-    /**
-     * Only run ONCE per phys tick!
-     */
-    private void integrateLinearVelocity() {
-        physX += getLinearVelocity().x() * getPhysicsTimeDeltaPerPhysTick();
-        physY += getLinearVelocity().y() * getPhysicsTimeDeltaPerPhysTick();
-        physZ += getLinearVelocity().z() * getPhysicsTimeDeltaPerPhysTick();
-        physY = Math.min(Math.max(physY, VSConfig.shipLowerLimit), VSConfig.shipUpperLimit);
+    public void addAngularVelocity(Vector3dc toAdd) {
+        body.store.angularVelX[body.index] += toAdd.x();
+        body.store.angularVelY[body.index] += toAdd.y();
+        body.store.angularVelZ[body.index] += toAdd.z();
     }
 
     public Vector3d getVelocityAtPoint(
             Vector3dc inBodyWO) {
-        Vector3d speed = getAngularVelocity().cross(inBodyWO, new Vector3d());
-        speed.x += getLinearVelocity().x();
-        speed.y += getLinearVelocity().y();
-        speed.z += getLinearVelocity().z();
-        return speed;
+        return getVelocityAtPoint(inBodyWO, new Vector3d());
+    }
+
+    /**
+     * Same as {@link #getVelocityAtPoint(Vector3dc)}, but stores the result in dest instead of allocating a new
+     * vector.
+     */
+    public Vector3d getVelocityAtPoint(Vector3dc inBodyWO, Vector3d dest) {
+        final RigidBodyStore store = body.store;
+        final int i = body.index;
+        final double x = inBodyWO.x(), y = inBodyWO.y(), z = inBodyWO.z();
+        final double angularX = store.angularVelX[i], angularY = store.angularVelY[i], angularZ = store.angularVelZ[i];
+        return dest.set(
+            angularY * z - angularZ * y + store.linearVelX[i],
+            angularZ * x - angularX * z + store.linearVelY[i],
+            angularX * y - angularY * x + store.linearVelZ[i]);
     }
 
     // These getter methods guarantee that only code within this class can modify
     // the mass, preventing outside code from breaking things
     public double getMass() {
-        return physTickMass;
+        return body.store.mass[body.index];
     }
 
     public double getInvMass() {
-        return 1.0 / physTickMass;
+        return body.store.invMass[body.index];
     }
 
     public double getPhysicsTimeDeltaPerPhysTick() {
@@ -397,26 +455,33 @@ public class PhysicsCalculations {
     }
 
     /**
-     * @return The inverse moment of inertia tensor with local translation (0 vector is at the
+     * @return A copy of the inverse moment of inertia tensor with local translation (0 vector is at the
      * center of mass), but rotated into world coordinates.
      */
     public Matrix3dc getPhysInvMOITensor() {
-        return physInvMOITensor;
+        return body.store.getWorldInvInertia(body.index, new Matrix3d());
     }
 
     /**
-     * @param physInvMOITensor the physInvMOITensor to set
+     * Multiplies vector by {@link #getPhysInvMOITensor()}, without copying the tensor.
      */
-    private void setPhysInvMOITensor(Matrix3dc physInvMOITensor) {
-        this.physInvMOITensor = physInvMOITensor;
+    public Vector3d transformByPhysInvMOITensor(Vector3d vector) {
+        return body.store.transformByWorldInvInertia(body.index, vector);
     }
 
     /**
-     * @return The moment of inertia tensor with local translation (0 vector is at the center of
+     * @return A copy of the moment of inertia tensor with local translation (0 vector is at the center of
      * mass), but rotated into world coordinates.
      */
     public Matrix3dc getPhysMOITensor() {
-        return this.physMOITensor;
+        return body.store.getWorldInertia(body.index, new Matrix3d());
+    }
+
+    /**
+     * @return The body of this ship in the {@link RigidBodyStore}.
+     */
+    public RigidBodyStore.BodyHandle getBody() {
+        return body;
     }
 
     /**
@@ -434,9 +499,16 @@ public class PhysicsCalculations {
     }
 
     public double getInertiaAlongRotationAxis() {
-        Vector3d rotationAxis = new Vector3d(getAngularVelocity());
+        return getInertiaAlongRotationAxis(new Vector3d());
+    }
+
+    /**
+     * Same as {@link #getInertiaAlongRotationAxis()}, but uses temp as scratch space instead of allocating.
+     */
+    public double getInertiaAlongRotationAxis(Vector3d temp) {
+        Vector3d rotationAxis = getAngularVelocity(temp);
         rotationAxis.normalize();
-        getPhysMOITensor().transform(rotationAxis);
+        body.store.transformByWorldInertia(body.index, rotationAxis);
         return rotationAxis.length();
     }
 
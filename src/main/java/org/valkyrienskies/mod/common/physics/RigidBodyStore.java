@@ -0,0 +1,463 @@
+package org.valkyrienskies.mod.common.physics;
+
+import org.joml.Matrix3d;
+import org.joml.Matrix3dc;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rigid body state of every ship in a world, stored as one primitive array per component instead of a few JOML
+ * objects per ship. Drag, gravity, inertia tensors and integration are run over a range of bodies at a time, in plain
+ * loops over the arrays that the JIT can unroll and vectorize.
+ * <p>
+ * Every body is referred to by a {@link BodyHandle}. Bodies are kept packed at the start of the arrays, so removing a
+ * body moves the last body into its place and updates the handle of the moved body. {@link PhysicsCalculations} is a
+ * view over the body of its ship.
+ * <p>
+ * A body is only stepped when its step time is greater than 0, so batched operations can run over every body of the
+ * store even when only some of them are being stepped. {@link #beginStep()} resets every body to not being stepped.
+ * <p>
+ * Not thread safe, except that operations on different bodies can run at the same time. Bodies are only added and
+ * removed by the physics thread, between physics ticks.
+ */
+public class RigidBodyStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    // Rotations slower than this aren't integrated, squared, in radians per second
+    private static final double MIN_ANGULAR_VELOCITY_SQ = .001D;
+
+    private int size;
+    private BodyHandle[] handles;
+    // Used by syncBodies() to find the bodies that aren't in the list
+    private int[] syncStamps;
+    private int syncGeneration;
+
+    // Position of the center of mass
+    double[] posX, posY, posZ;
+    // Rotation from the ship to the world, always normalized
+    double[] rotX, rotY, rotZ, rotW;
+    double[] linearVelX, linearVelY, linearVelZ;
+    double[] angularVelX, angularVelY, angularVelZ;
+    double[] mass, invMass;
+    // The seconds simulated by the current step of each body, 0 if the body isn't being stepped
+    double[] stepTime;
+    // What the velocities of each body are multiplied by in the current step
+    double[] dragFactor;
+    // What the gravity vector is multiplied by to get the change in velocity of each body in the current step
+    double[] gravityScale;
+    // The inertia tensors are stored as 9 arrays each, with the element in column c and row r in array 3 * c + r
+    double[][] bodyInertia, bodyInvInertia;
+    // The body tensors rotated into world space by updateWorldInertia()
+    double[][] worldInertia, worldInvInertia;
+
+    public RigidBodyStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public RigidBodyStore(int initialCapacity) {
+        this.size = 0;
+        this.handles = new BodyHandle[0];
+        this.syncStamps = new int[0];
+        this.syncGeneration = 0;
+        this.posX = this.posY = this.posZ = new double[0];
+        this.rotX = this.rotY = this.rotZ = this.rotW = new double[0];
+        this.linearVelX = this.linearVelY = this.linearVelZ = new double[0];
+        this.angularVelX = this.angularVelY = this.angularVelZ = new double[0];
+        this.mass = this.invMass = new double[0];
+        this.stepTime = this.dragFactor = this.gravityScale = new double[0];
+        this.bodyInertia = new double[9][0];
+        this.bodyInvInertia = new double[9][0];
+        this.worldInertia = new double[9][0];
+        this.worldInvInertia = new double[9][0];
+        setCapacity(Math.max(1, initialCapacity));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a body at rest at the origin, with no rotation, no mass, and identity inertia tensors.
+     */
+    public BodyHandle add() {
+        if (size == handles.length) {
+            setCapacity(handles.length * 2);
+        }
+        BodyHandle handle = new BodyHandle(this, size++);
+        handles[handle.index] = handle;
+        clear(handle.index);
+        return handle;
+    }
+
+    /**
+     * Removes the body of handle from this store. The handle is no longer usable afterwards.
+     */
+    public void remove(BodyHandle handle) {
+        if (handle.store != this) {
+            throw new IllegalArgumentException("Body isn't in this store");
+        }
+        int last = --size;
+        if (handle.index != last) {
+            copy(this, last, this, handle.index);
+            handles[handle.index] = handles[last];
+            handles[handle.index].index = handle.index;
+        }
+        handles[last] = null;
+        handle.store = null;
+        handle.index = -1;
+    }
+
+    /**
+     * Moves the body of handle into this store, keeping all of its state and updating the handle.
+     */
+    public void moveFrom(BodyHandle handle) {
+        if (handle.store == this) {
+            return;
+        }
+        RigidBodyStore from = handle.store;
+        BodyHandle added = add();
+        copy(from, handle.index, this, added.index);
+        from.remove(handle);
+        handle.store = this;
+        handle.index = added.index;
+        handles[added.index] = handle;
+    }
+
+    /**
+     * Makes this store contain exactly the bodies of handles. Bodies from other stores are moved into this one, and
+     * bodies of this store that aren't in handles are moved out into a store of their own, so that their handles
+     * stay usable.
+     */
+    public void syncBodies(List<BodyHandle> handles) {
+        syncGeneration++;
+        for (BodyHandle handle : handles) {
+            moveFrom(handle);
+            syncStamps[handle.index] = syncGeneration;
+        }
+        // Backwards, so that the bodies moved into the holes have already been checked
+        for (int i = size - 1; i >= 0; i--) {
+            if (syncStamps[i] != syncGeneration) {
+                new RigidBodyStore(1).moveFrom(this.handles[i]);
+            }
+        }
+    }
+
+    /**
+     * Marks every body as not being stepped, see {@link #prepareStep(int, double, double, double)}.
+     */
+    public void beginStep() {
+        Arrays.fill(stepTime, 0, size, 0);
+        Arrays.fill(dragFactor, 0, size, 1);
+        Arrays.fill(gravityScale, 0, size, 0);
+    }
+
+    /**
+     * Marks a body as being stepped.
+     *
+     * @param dragFactor   What the velocities are multiplied by when drag is applied
+     * @param gravityScale What the gravity vector is multiplied by when gravity is applied, usually the step time
+     */
+    public void prepareStep(int index, double stepTime, double dragFactor, double gravityScale) {
+        this.stepTime[index] = stepTime;
+        this.dragFactor[index] = dragFactor;
+        this.gravityScale[index] = gravityScale;
+    }
+
+    /**
+     * Marks a body as no longer being stepped.
+     */
+    public void endStep(int index) {
+        prepareStep(index, 0, 1, 0);
+    }
+
+    public void setMass(int index, double mass) {
+        this.mass[index] = mass;
+        this.invMass[index] = 1.0 / mass;
+    }
+
+    /**
+     * Sets the inertia tensor of a body in its own frame, and its inverse.
+     */
+    public void setBodyInertia(int index, Matrix3dc tensor) {
+        Matrix3dc inverse = tensor.invert(new Matrix3d());
+        setTensor(bodyInertia, index, tensor);
+        setTensor(bodyInvInertia, index, inverse);
+    }
+
+    /**
+     * Rotates the body inertia tensors into world space, with I' = R * I * R^T.
+     * Reference: https://en.wikipedia.org/wiki/Moment_of_inertia#Inertia_matrix_in_different_reference_frames
+     */
+    public void updateWorldInertia(int from, int to) {
+        for (int i = from; i < to; i++) {
+            final double x = rotX[i], y = rotY[i], z = rotZ[i], w = rotW[i];
+            // The rotation matrix of the quaternion, rRC is the element in row R and column C
+            final double r00 = 1 - 2 * (y * y + z * z);
+            final double r01 = 2 * (x * y - z * w);
+            final double r02 = 2 * (x * z + y * w);
+            final double r10 = 2 * (x * y + z * w);
+            final double r11 = 1 - 2 * (x * x + z * z);
+            final double r12 = 2 * (y * z - x * w);
+            final double r20 = 2 * (x * z - y * w);
+            final double r21 = 2 * (y * z + x * w);
+            final double r22 = 1 - 2 * (x * x + y * y);
+            rotateTensor(bodyInertia, worldInertia, i, r00, r01, r02, r10, r11, r12, r20, r21, r22);
+            rotateTensor(bodyInvInertia, worldInvInertia, i, r00, r01, r02, r10, r11, r12, r20, r21, r22);
+        }
+    }
+
+    private static void rotateTensor(double[][] body, double[][] world, int i,
+        double r00, double r01, double r02,
+        double r10, double r11, double r12,
+        double r20, double r21, double r22) {
+        final double b00 = body[0][i], b10 = body[1][i], b20 = body[2][i];
+        final double b01 = body[3][i], b11 = body[4][i], b21 = body[5][i];
+        final double b02 = body[6][i], b12 = body[7][i], b22 = body[8][i];
+        // T = R * B
+        final double t00 = r00 * b00 + r01 * b10 + r02 * b20;
+        final double t01 = r00 * b01 + r01 * b11 + r02 * b21;
+        final double t02 = r00 * b02 + r01 * b12 + r02 * b22;
+        final double t10 = r10 * b00 + r11 * b10 + r12 * b20;
+        final double t11 = r10 * b01 + r11 * b11 + r12 * b21;
+        final double t12 = r10 * b02 + r11 * b12 + r12 * b22;
+        final double t20 = r20 * b00 + r21 * b10 + r22 * b20;
+        final double t21 = r20 * b01 + r21 * b11 + r22 * b21;
+        final double t22 = r20 * b02 + r21 * b12 + r22 * b22;
+        // W = T * R^T
+        world[0][i] = t00 * r00 + t01 * r01 + t02 * r02;
+        world[1][i] = t10 * r00 + t11 * r01 + t12 * r02;
+        world[2][i] = t20 * r00 + t21 * r01 + t22 * r02;
+        world[3][i] = t00 * r10 + t01 * r11 + t02 * r12;
+        world[4][i] = t10 * r10 + t11 * r11 + t12 * r12;
+        world[5][i] = t20 * r10 + t21 * r11 + t22 * r12;
+        world[6][i] = t00 * r20 + t01 * r21 + t02 * r22;
+        world[7][i] = t10 * r20 + t11 * r21 + t12 * r22;
+        world[8][i] = t20 * r20 + t21 * r21 + t22 * r22;
+    }
+
+    public void applyDrag(int from, int to) {
+        final double[] dragFactor = this.dragFactor;
+        final double[] linearVelX = this.linearVelX, linearVelY = this.linearVelY, linearVelZ = this.linearVelZ;
+        final double[] angularVelX = this.angularVelX, angularVelY = this.angularVelY,
+            angularVelZ = this.angularVelZ;
+        for (int i = from; i < to; i++) {
+            final double drag = dragFactor[i];
+            linearVelX[i] *= drag;
+            linearVelY[i] *= drag;
+            linearVelZ[i] *= drag;
+            angularVelX[i] *= drag;
+            angularVelY[i] *= drag;
+            angularVelZ[i] *= drag;
+        }
+    }
+
+    public void applyGravity(Vector3dc gravity, int from, int to) {
+        final double gravityX = gravity.x(), gravityY = gravity.y(), gravityZ = gravity.z();
+        final double[] gravityScale = this.gravityScale;
+        final double[] linearVelX = this.linearVelX, linearVelY = this.linearVelY, linearVelZ = this.linearVelZ;
+        for (int i = from; i < to; i++) {
+            final double scale = gravityScale[i];
+            linearVelX[i] += gravityX * scale;
+            linearVelY[i] += gravityY * scale;
+            linearVelZ[i] += gravityZ * scale;
+        }
+    }
+
+    /**
+     * Moves and rotates the bodies being stepped by their velocities. The y position is clamped between minY and
+     * maxY.
+     * <p>
+     * The rotation is based on https://gafferongames.com/post/physics_in_3d/
+     */
+    public void integrate(double minY, double maxY, int from, int to) {
+        final double[] stepTime = this.stepTime;
+        final double[] posX = this.posX, posY = this.posY, posZ = this.posZ;
+        final double[] linearVelX = this.linearVelX, linearVelY = this.linearVelY, linearVelZ = this.linearVelZ;
+        for (int i = from; i < to; i++) {
+            final double dt = stepTime[i];
+            posX[i] += linearVelX[i] * dt;
+            posZ[i] += linearVelZ[i] * dt;
+            // Bodies that aren't being stepped keep whatever y they have
+            final double y = posY[i] + linearVelY[i] * dt;
+            posY[i] = dt > 0 ? Math.min(Math.max(y, minY), maxY) : y;
+        }
+
+        final double[] rotX = this.rotX, rotY = this.rotY, rotZ = this.rotZ, rotW = this.rotW;
+        final double[] angularVelX = this.angularVelX, angularVelY = this.angularVelY,
+            angularVelZ = this.angularVelZ;
+        for (int i = from; i < to; i++) {
+            final double dt = stepTime[i];
+            final double wx = angularVelX[i], wy = angularVelY[i], wz = angularVelZ[i];
+            final double speedSq = wx * wx + wy * wy + wz * wz;
+            if (dt <= 0 || speedSq < MIN_ANGULAR_VELOCITY_SQ) {
+                // Angular velocity is zero, so the rotation hasn't changed.
+                continue;
+            }
+            final double speed = Math.sqrt(speedSq);
+            // The rotation of this step, as a quaternion of the axis of the angular velocity
+            final double halfAngle = speed * dt * .5D;
+            final double axisScale = Math.sin(halfAngle) / speed;
+            final double dx = wx * axisScale, dy = wy * axisScale, dz = wz * axisScale, dw = Math.cos(halfAngle);
+            // The rotation of this step followed by the current rotation
+            final double x = rotX[i], y = rotY[i], z = rotZ[i], w = rotW[i];
+            final double nx = dw * x + dx * w + dy * z - dz * y;
+            final double ny = dw * y - dx * z + dy * w + dz * x;
+            final double nz = dw * z + dx * y - dy * x + dz * w;
+            final double nw = dw * w - dx * x - dy * y - dz * z;
+            final double invLength = 1 / Math.sqrt(nx * nx + ny * ny + nz * nz + nw * nw);
+            rotX[i] = nx * invLength;
+            rotY[i] = ny * invLength;
+            rotZ[i] = nz * invLength;
+            rotW[i] = nw * invLength;
+        }
+    }
+
+    /**
+     * Multiplies vector by the world space inertia tensor of a body.
+     */
+    public Vector3d transformByWorldInertia(int index, Vector3d vector) {
+        return transform(worldInertia, index, vector);
+    }
+
+    /**
+     * Multiplies vector by the world space inverse inertia tensor of a body.
+     */
+    public Vector3d transformByWorldInvInertia(int index, Vector3d vector) {
+        return transform(worldInvInertia, index, vector);
+    }
+
+    public Matrix3d getWorldInertia(int index, Matrix3d dest) {
+        return getTensor(worldInertia, index, dest);
+    }
+
+    public Matrix3d getWorldInvInertia(int index, Matrix3d dest) {
+        return getTensor(worldInvInertia, index, dest);
+    }
+
+    private static Vector3d transform(double[][] tensor, int i, Vector3d vector) {
+        final double x = vector.x, y = vector.y, z = vector.z;
+        return vector.set(
+            tensor[0][i] * x + tensor[3][i] * y + tensor[6][i] * z,
+            tensor[1][i] * x + tensor[4][i] * y + tensor[7][i] * z,
+            tensor[2][i] * x + tensor[5][i] * y + tensor[8][i] * z);
+    }
+
+    private static Matrix3d getTensor(double[][] tensor, int i, Matrix3d dest) {
+        return dest.set(
+            tensor[0][i], tensor[1][i], tensor[2][i],
+            tensor[3][i], tensor[4][i], tensor[5][i],
+            tensor[6][i], tensor[7][i], tensor[8][i]);
+    }
+
+    private static void setTensor(double[][] tensor, int i, Matrix3dc value) {
+        tensor[0][i] = value.m00();
+        tensor[1][i] = value.m01();
+        tensor[2][i] = value.m02();
+        tensor[3][i] = value.m10();
+        tensor[4][i] = value.m11();
+        tensor[5][i] = value.m12();
+        tensor[6][i] = value.m20();
+        tensor[7][i] = value.m21();
+        tensor[8][i] = value.m22();
+    }
+
+    private void clear(int i) {
+        posX[i] = posY[i] = posZ[i] = 0;
+        rotX[i] = rotY[i] = rotZ[i] = 0;
+        rotW[i] = 1;
+        linearVelX[i] = linearVelY[i] = linearVelZ[i] = 0;
+        angularVelX[i] = angularVelY[i] = angularVelZ[i] = 0;
+        mass[i] = 0;
+        invMass[i] = Double.POSITIVE_INFINITY;
+        stepTime[i] = 0;
+        dragFactor[i] = 1;
+        gravityScale[i] = 0;
+        for (int k = 0; k < 9; k++) {
+            // The diagonal is k = 0, 4 and 8
+            double identity = k % 4 == 0 ? 1 : 0;
+            bodyInertia[k][i] = bodyInvInertia[k][i] = worldInertia[k][i] = worldInvInertia[k][i] = identity;
+        }
+    }
+
+    private static void copy(RigidBodyStore from, int fromIndex, RigidBodyStore to, int toIndex) {
+        to.posX[toIndex] = from.posX[fromIndex];
+        to.posY[toIndex] = from.posY[fromIndex];
+        to.posZ[toIndex] = from.posZ[fromIndex];
+        to.rotX[toIndex] = from.rotX[fromIndex];
+        to.rotY[toIndex] = from.rotY[fromIndex];
+        to.rotZ[toIndex] = from.rotZ[fromIndex];
+        to.rotW[toIndex] = from.rotW[fromIndex];
+        to.linearVelX[toIndex] = from.linearVelX[fromIndex];
+        to.linearVelY[toIndex] = from.linearVelY[fromIndex];
+        to.linearVelZ[toIndex] = from.linearVelZ[fromIndex];
+        to.angularVelX[toIndex] = from.angularVelX[fromIndex];
+        to.angularVelY[toIndex] = from.angularVelY[fromIndex];
+        to.angularVelZ[toIndex] = from.angularVelZ[fromIndex];
+        to.mass[toIndex] = from.mass[fromIndex];
+        to.invMass[toIndex] = from.invMass[fromIndex];
+        to.stepTime[toIndex] = from.stepTime[fromIndex];
+        to.dragFactor[toIndex] = from.dragFactor[fromIndex];
+        to.gravityScale[toIndex] = from.gravityScale[fromIndex];
+        for (int k = 0; k < 9; k++) {
+            to.bodyInertia[k][toIndex] = from.bodyInertia[k][fromIndex];
+            to.bodyInvInertia[k][toIndex] = from.bodyInvInertia[k][fromIndex];
+            to.worldInertia[k][toIndex] = from.worldInertia[k][fromIndex];
+            to.worldInvInertia[k][toIndex] = from.worldInvInertia[k][fromIndex];
+        }
+    }
+
+    private void setCapacity(int capacity) {
+        handles = Arrays.copyOf(handles, capacity);
+        syncStamps = Arrays.copyOf(syncStamps, capacity);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        posZ = Arrays.copyOf(posZ, capacity);
+        rotX = Arrays.copyOf(rotX, capacity);
+        rotY = Arrays.copyOf(rotY, capacity);
+        rotZ = Arrays.copyOf(rotZ, capacity);
+        rotW = Arrays.copyOf(rotW, capacity);
+        linearVelX = Arrays.copyOf(linearVelX, capacity);
+        linearVelY = Arrays.copyOf(linearVelY, capacity);
+        linearVelZ = Arrays.copyOf(linearVelZ, capacity);
+        angularVelX = Arrays.copyOf(angularVelX, capacity);
+        angularVelY = Arrays.copyOf(angularVelY, capacity);
+        angularVelZ = Arrays.copyOf(angularVelZ, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        invMass = Arrays.copyOf(invMass, capacity);
+        stepTime = Arrays.copyOf(stepTime, capacity);
+        dragFactor = Arrays.copyOf(dragFactor, capacity);
+        gravityScale = Arrays.copyOf(gravityScale, capacity);
+        for (int k = 0; k < 9; k++) {
+            bodyInertia[k] = Arrays.copyOf(bodyInertia[k], capacity);
+            bodyInvInertia[k] = Arrays.copyOf(bodyInvInertia[k], capacity);
+            worldInertia[k] = Arrays.copyOf(worldInertia[k], capacity);
+            worldInvInertia[k] = Arrays.copyOf(worldInvInertia[k], capacity);
+        }
+    }
+
+    /**
+     * Refers to a body of a {@link RigidBodyStore}, which store and index can change when bodies are removed or moved
+     * between stores.
+     */
+    public static final class BodyHandle {
+
+        RigidBodyStore store;
+        int index;
+
+        private BodyHandle(RigidBodyStore store, int index) {
+            this.store = store;
+            this.index = index;
+        }
+
+        public RigidBodyStore getStore() {
+            return store;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.valkyrienskies.mod.common.physics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps track of whether a ship is asleep. A sleeping ship has come to rest, so the physics thread stops simulating
+ * it and stops updating its collision cache until something wakes it up again.
+ * <p>
+ * Anything can ask the ship to wake up with {@link #wakeUp()}, from any thread. The request is picked up by the
+ * physics thread at the start of its next tick with {@link #pollWakeRequest()}. Everything else is only called by
+ * the physics thread, except for {@link #isSleeping()}.
+ */
+public class ShipSleepTracker {
+
+    private final AtomicBoolean wakeRequested;
+    // Written by the physics thread, read by commands
+    private volatile boolean sleeping;
+    // The number of physics ticks in a row the ship has been resting for, only used by the physics thread
+    private int restingTicks;
+
+    public ShipSleepTracker() {
+        this.wakeRequested = new AtomicBoolean(false);
+        this.sleeping = false;
+        this.restingTicks = 0;
+    }
+
+    /**
+     * Thread safe way to wake the ship up, or keep it awake if it isn't sleeping. Takes effect on the next physics
+     * tick.
+     */
+    public void wakeUp() {
+        wakeRequested.set(true);
+    }
+
+    /**
+     * Wakes the ship up if {@link #wakeUp()} was called since the last poll.
+     *
+     * @return True if the ship was woken up by this call.
+     */
+    public boolean pollWakeRequest() {
+        if (wakeRequested.getAndSet(false)) {
+            boolean wasSleeping = sleeping;
+            wake();
+            return wasSleeping;
+        }
+        return false;
+    }
+
+    /**
+     * Wakes the ship up immediately, and starts counting the ticks it's been resting for from zero.
+     */
+    public void wake() {
+        sleeping = false;
+        restingTicks = 0;
+    }
+
+    /**
+     * Records a physics tick of the ship. The ship is resting if its speeds are below their thresholds and none of its
+     * force producers pushed it. A ship pushed by its engines is never resting, however weak the push is compared to
+     * its mass, because nothing would notice the engines anymore once it's asleep.
+     *
+     * @param linearSpeed          In meters per second
+     * @param angularSpeed         In radians per second
+     * @param forceProducersActive True if any force producer of the ship had a non-zero output this tick
+     * @return The number of physics ticks in a row the ship has been resting for
+     */
+    public int recordTick(double linearSpeed, double angularSpeed, boolean forceProducersActive,
+        double linearThreshold, double angularThreshold) {
+        if (linearSpeed < linearThreshold && angularSpeed < angularThreshold && !forceProducersActive) {
+            // Don't let it overflow on ships that are never allowed to sleep
+            if (restingTicks < Integer.MAX_VALUE) {
+                restingTicks++;
+            }
+        } else {
+            restingTicks = 0;
+        }
+        return restingTicks;
+    }
+
+    /**
+     * @return True if the ship has been resting for at least ticksToSleep physics ticks in a row.
+     */
+    public boolean isReadyToSleep(int ticksToSleep) {
+        return restingTicks >= ticksToSleep;
+    }
+
+    /**
+     * Puts the ship to sleep. It stays asleep until it's woken up.
+     */
+    public void fallAsleep() {
+        sleeping = true;
+    }
+
+    /**
+     * Thread safe.
+     */
+    public boolean isSleeping() {
+        return sleeping;
+    }
+}
@@ -5,14 +5,20 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableList;
 import com.googlecode.cqengine.query.Query;
 import com.googlecode.cqengine.resultset.ResultSet;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import lombok.extern.log4j.Log4j2;
 import mcp.MethodsReturnNonnullByDefault;
+import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
 import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.network.ShipStateUpdate;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
 
 import org.valkyrienskies.mod.common.ships.interpolation.ITransformInterpolator;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.ships.ship_world.IPhysObjectWorld;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
 import org.valkyrienskies.mod.common.util.ValkyrienUtils;
@@ -22,6 +28,7 @@ import org.valkyrienskies.mod.common.util.cqengine.UpdatableUniqueIndex;
 
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
@@ -38,6 +45,10 @@ public class QueryableShipData implements Iterable<ShipData> {
     // Where every ship data instance is stored, regardless if the corresponding PhysicsObject is
     // loaded in the World or not.
     private ConcurrentUpdatableIndexedCollection<ShipData> allShips;
+    // Same as the CHUNKS index of allShips, but without the overhead of a CQEngine query. getShipFromChunk() is called
+    // for nearly every block update, so this needs to be fast. Kept in sync by listeners on allShips.
+    private final TLongObjectHashMap<ShipData> chunkToShip;
+    private final StampedLock chunkToShipLock;
 
     public QueryableShipData() {
         this(new ConcurrentUpdatableIndexedCollection<>());
@@ -72,6 +83,40 @@ public class QueryableShipData implements Iterable<ShipData> {
         this.allShips.addIndex(UpdatableUniqueIndex.onAttribute(ShipData.UUID));
         this.allShips.addIndex(UpdatableUniqueIndex.onAttribute(ShipData.CHUNKS));
 
+        this.chunkToShip = new TLongObjectHashMap<>();
+        this.chunkToShipLock = new StampedLock();
+        this.allShips.forEach(this::addShipChunks);
+        this.allShips.registerAddListener(added -> added.forEach(this::addShipChunks));
+        this.allShips.registerRemoveListener(removed -> removed.forEach(this::removeShipChunks));
+    }
+
+    private void addShipChunks(ShipData ship) {
+        long stamp = chunkToShipLock.writeLock();
+        try {
+            for (long chunkLong : ship.getChunkClaim().getClaimedChunks()) {
+                ShipData previous = chunkToShip.put(chunkLong, ship);
+                if (previous != null && previous != ship) {
+                    throw new IllegalStateException(
+                        "How the heck did we get 2 or more ships both managing the chunk at " + chunkLong);
+                }
+            }
+        } finally {
+            chunkToShipLock.unlockWrite(stamp);
+        }
+    }
+
+    private void removeShipChunks(ShipData ship) {
+        long stamp = chunkToShipLock.writeLock();
+        try {
+            for (long chunkLong : ship.getChunkClaim().getClaimedChunks()) {
+                // Don't remove chunks that another ship claims, if this one was never actually added
+                if (chunkToShip.get(chunkLong) == ship) {
+                    chunkToShip.remove(chunkLong);
+                }
+            }
+        } finally {
+            chunkToShipLock.unlockWrite(stamp);
+        }
     }
 
     /**
@@ -105,18 +150,15 @@ public class QueryableShipData implements Iterable<ShipData> {
     }
 
     public Optional<ShipData> getShipFromChunk(long chunkLong) {
-        Query<ShipData> query = equal(ShipData.CHUNKS, chunkLong);
-        try (ResultSet<ShipData> resultSet = allShips.retrieve(query)) {
-            if (resultSet.size() > 1) {
-                throw new IllegalStateException(
-                    "How the heck did we get 2 or more ships both managing the chunk at "
-                        + chunkLong);
-            }
-            if (resultSet.isEmpty()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(resultSet.uniqueResult());
-            }
+        // Almost every chunk isn't in the shipyard, don't bother with the lock for those
+        if (!ShipChunkAllocator.isChunkInShipyard((int) chunkLong, (int) (chunkLong >> 32))) {
+            return Optional.empty();
+        }
+        long stamp = chunkToShipLock.readLock();
+        try {
+            return Optional.ofNullable(chunkToShip.get(chunkLong));
+        } finally {
+            chunkToShipLock.unlockRead(stamp);
         }
     }
 
@@ -160,22 +202,30 @@ public class QueryableShipData implements Iterable<ShipData> {
     /**
      * Adds the ShipData if it doesn't exist, or updates the values of the old ShipData to match the input.
      *
+     * @param serverTick The world time of the server when the ShipData was sent.
      * @return reference to the "real" ShipData object used by {@link IPhysObjectWorld} and {@link PhysicsObject}.
      */
-    public ShipData addOrUpdateShipPreservingPhysObj(ShipData ship, World world) {
+    public ShipData addOrUpdateShipPreservingPhysObj(ShipData ship, long serverTick, World world) {
         Optional<ShipData> old = getShip(ship.getUuid());
         if (old.isPresent()) {
             PhysicsObject physicsObject = ValkyrienUtils.getPhysObjWorld(world).getPhysObjectFromUUID(ship.getUuid());
             if (physicsObject != null) {
                 // Do not update the transform in ShipData, that will be done by PhysicsObject.tick()
                 ITransformInterpolator interpolator = physicsObject.getTransformInterpolator();
-                interpolator.onNewTransformPacket(ship.getShipTransform(), ship.getShipBB());
+                interpolator.onNewTransformPacket(ship.getShipTransform(), ship.getShipBB(), serverTick);
             } else {
                 old.get().setShipTransform(ship.getShipTransform());
                 old.get().setPrevTickShipTransform(ship.getPrevTickShipTransform());
                 old.get().setShipBB(ship.getShipBB());
             }
 
+            // Ship claims grow when blocks are placed in new chunks
+            for (long chunkLong : ship.getChunkClaim().getClaimedChunks()) {
+                if (!old.get().getChunkClaim().getClaimedChunks().contains(chunkLong)) {
+                    addChunkClaimClient(old.get(), chunkLong, world);
+                }
+            }
+
             // old.get().setName(ship.getName());
             old.get().setPhysicsEnabled(ship.isPhysicsEnabled());
             // Update inertia data
@@ -189,6 +239,54 @@ public class QueryableShipData implements Iterable<ShipData> {
         }
     }
 
+    /**
+     * Adds a chunk to the claim of ship. The ship is removed and re-added to the collection so that the chunk index
+     * stays correct.
+     */
+    public void addChunkClaim(ShipData ship, int chunkX, int chunkZ) {
+        boolean wasPresent = allShips.remove(ship);
+        ship.getChunkClaim().addChunkClaim(chunkX, chunkZ);
+        if (wasPresent) {
+            allShips.add(ship);
+        }
+    }
+
+    /**
+     * The server already sent us the chunk before the updated ShipData, so give it to the PhysicsObject if it
+     * arrived.
+     */
+    private void addChunkClaimClient(ShipData ship, long chunkLong, World world) {
+        int chunkX = (int) chunkLong;
+        int chunkZ = (int) (chunkLong >> 32);
+        addChunkClaim(ship, chunkX, chunkZ);
+        PhysicsObject physicsObject = ValkyrienUtils.getPhysObjWorld(world).getPhysObjectFromUUID(ship.getUuid());
+        Chunk chunk = world.getChunkProvider().getLoadedChunk(chunkX, chunkZ);
+        if (physicsObject != null && chunk != null) {
+            physicsObject.updateChunk(chunk);
+        }
+    }
+
+    /**
+     * Updates the transform of a ship we already have the ShipData of, used for {@link ShipStateUpdate}. Does nothing
+     * if we don't know about the ship.
+     */
+    public void updateShipTransformPreservingPhysObj(UUID shipID, ShipTransform shipTransform,
+        AxisAlignedBB shipBB, long serverTick, World world) {
+        Optional<ShipData> old = getShip(shipID);
+        if (!old.isPresent()) {
+            return;
+        }
+        PhysicsObject physicsObject = ValkyrienUtils.getPhysObjWorld(world).getPhysObjectFromUUID(shipID);
+        if (physicsObject != null) {
+            // Do not update the transform in ShipData, that will be done by PhysicsObject.tick()
+            physicsObject.getTransformInterpolator().onNewTransformPacket(shipTransform, shipBB, serverTick);
+        } else {
+            old.get().setPrevTickShipTransform(old.get().getShipTransform());
+            old.get().setShipTransform(shipTransform);
+            old.get().setShipBB(shipBB);
+        }
+    }
+
     public void registerUpdateListener(
         BiConsumer<Iterable<ShipData>, Iterable<ShipData>> updateListener) {
         allShips.registerUpdateListener(updateListener);
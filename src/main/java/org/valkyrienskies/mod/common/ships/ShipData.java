@@ -22,6 +22,7 @@ import org.valkyrienskies.mod.common.util.jackson.annotations.PacketIgnore;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 
@@ -71,19 +72,15 @@ public class ShipData {
     @JsonDeserialize(as = SmallBlockPosSet.class)
     public IBlockPosSet activeForcePositions;
 
-    @Setter
     private ShipTransform shipTransform;
 
-    @Setter
     private ShipTransform prevTickShipTransform;
 
-    @Setter
     private AxisAlignedBB shipBB;
 
     /**
      * Whether or not physics are enabled on this physo
      */
-    @Setter
     private boolean physicsEnabled;
 
     /**
@@ -122,6 +119,27 @@ public class ShipData {
         this.activeForcePositions = new SmallBlockPosSet(chunkClaim.getCenterPos().getXStart(), chunkClaim.getCenterPos().getZStart());
     }
 
+    private ShipData(ShipData toCopy) {
+        this.owner = null;
+        this.physicsData = new ShipPhysicsData(toCopy.physicsData.getLinearVelocity(),
+            toCopy.physicsData.getAngularVelocity());
+        this.inertiaData = new ShipInertiaData();
+        this.inertiaData.setGameTickMass(toCopy.inertiaData.getGameTickMass());
+        this.inertiaData.setGameMoITensor(toCopy.inertiaData.getGameMoITensor());
+        this.inertiaData.setGameTickCenterOfMass(toCopy.inertiaData.getGameTickCenterOfMass());
+        this.blockPositions = toCopy.blockPositions == null ? null
+            : ((SmallBlockPosSetAABB) toCopy.blockPositions).copy();
+        this.activeForcePositions = toCopy.activeForcePositions == null ? null
+            : ((SmallBlockPosSet) toCopy.activeForcePositions).copy();
+        this.shipTransform = toCopy.shipTransform;
+        this.prevTickShipTransform = toCopy.prevTickShipTransform;
+        this.shipBB = toCopy.shipBB;
+        this.physicsEnabled = toCopy.physicsEnabled;
+        this.chunkClaim = toCopy.chunkClaim.copy();
+        this.uuid = toCopy.uuid;
+        this.name = toCopy.name;
+    }
+
     public static ShipData createData(ConcurrentUpdatableIndexedCollection<ShipData> owner,
         String name, VSChunkClaim chunkClaim, UUID shipID,
         ShipTransform shipTransform,
@@ -136,11 +154,60 @@ public class ShipData {
     public ShipData setName(String name) {
         this.name = name;
         owner.updateObjectIndices(this, NAME);
+        markUpdated();
         return this;
     }
 
+    public void setShipTransform(ShipTransform shipTransform) {
+        // Loaded ships set their transform every tick, even when they haven't moved
+        if (!Objects.equals(shipTransform, this.shipTransform)) {
+            this.shipTransform = shipTransform;
+            markUpdated();
+        }
+    }
+
+    public void setPrevTickShipTransform(ShipTransform prevTickShipTransform) {
+        if (!Objects.equals(prevTickShipTransform, this.prevTickShipTransform)) {
+            this.prevTickShipTransform = prevTickShipTransform;
+            markUpdated();
+        }
+    }
+
+    public void setShipBB(AxisAlignedBB shipBB) {
+        if (!Objects.equals(shipBB, this.shipBB)) {
+            this.shipBB = shipBB;
+            markUpdated();
+        }
+    }
+
+    public void setPhysicsEnabled(boolean physicsEnabled) {
+        if (physicsEnabled != this.physicsEnabled) {
+            this.physicsEnabled = physicsEnabled;
+            markUpdated();
+        }
+    }
+
+    /**
+     * Tells the update listeners of the owner that this changed, so it gets saved. Has to be called after anything
+     * that isn't a setter of this class changes this, like {@link ShipDataMethods#onSetBlockState}.
+     */
+    void markUpdated() {
+        // Ships the client gets from the server don't have an owner
+        if (owner != null) {
+            owner.notifyUpdated(this);
+        }
+    }
+
     // endregion
 
+    /**
+     * @return A copy of this that doesn't change when this does, so it can be saved on another thread. The copy
+     * doesn't belong to any {@link QueryableShipData}.
+     */
+    public ShipData copyForSaving() {
+        return new ShipData(this);
+    }
+
     // region Attributes
 
     public static final Attribute<ShipData, String> NAME = nullableAttribute(ShipData::getName);
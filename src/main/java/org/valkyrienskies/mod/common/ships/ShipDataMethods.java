@@ -43,5 +43,6 @@ public class ShipDataMethods {
         }
 
         centerOfMassProvider.onSetBlockState(shipData.getInertiaData(), pos, oldState, newState);
+        shipData.markUpdated();
     }
 }
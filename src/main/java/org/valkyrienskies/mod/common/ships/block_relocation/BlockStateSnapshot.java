@@ -0,0 +1,203 @@
+package org.valkyrienskies.mod.common.ships.block_relocation;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Biomes;
+import net.minecraft.init.Blocks;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.valkyrienskies.mod.common.util.SectionKeys;
+
+import java.util.Arrays;
+
+/**
+ * A copy of the block states of some chunk sections of a world, so that a {@link SpatialDetector} can run on another
+ * thread while the world keeps ticking.
+ * <p>
+ * Sections are only copied when asked for with {@link #copySection(int, int, int)}. Reading a block of a section that
+ * hasn't been copied yet returns air, and remembers the section in {@link #getMissingSections()}, so the caller can
+ * copy those sections. Detectors check {@link #isCopied(int, int, int)} first, skip the blocks that aren't, and are
+ * resumed once the sections are copied. Like the {@link net.minecraft.world.ChunkCache} it replaces, blocks
+ * more than {@link SpatialDetector#maxRangeHalved} blocks away from the center on the x or z axis are always air.
+ * <p>
+ * Only block states are copied. Tile entities, light, biomes and redstone power read like those of an empty plains
+ * world, so blocks that look at them while checking their state still work, they just don't see the real values.
+ * <p>
+ * Not thread safe. Sections are copied on the game thread, then the snapshot is handed to a single worker thread, and
+ * back again.
+ */
+public class BlockStateSnapshot implements IBlockAccess {
+
+    // Index of a block in a section is y << 8 | z << 4 | x, the same as in a BlockStateContainer
+    private static final IBlockState[] EMPTY_SECTION = new IBlockState[4096];
+
+    static {
+        Arrays.fill(EMPTY_SECTION, Blocks.AIR.getDefaultState());
+    }
+
+    private final World world;
+    private final int minChunkX, maxChunkX, minChunkZ, maxChunkZ;
+    private final TLongObjectHashMap<IBlockState[]> sections;
+    private final TLongHashSet missingSections;
+    // The section read last, detectors read along rows so most reads are from the same section as the last one
+    private long lastSectionKey;
+    private IBlockState[] lastSection;
+
+    public BlockStateSnapshot(World world, BlockPos center) {
+        this.world = world;
+        this.minChunkX = (center.getX() - SpatialDetector.maxRangeHalved) >> 4;
+        this.maxChunkX = (center.getX() + SpatialDetector.maxRangeHalved) >> 4;
+        this.minChunkZ = (center.getZ() - SpatialDetector.maxRangeHalved) >> 4;
+        this.maxChunkZ = (center.getZ() + SpatialDetector.maxRangeHalved) >> 4;
+        this.sections = new TLongObjectHashMap<>();
+        this.missingSections = new TLongHashSet();
+        this.lastSectionKey = 0;
+        this.lastSection = null;
+    }
+
+    /**
+     * Copies a section of the world into this snapshot, loading its chunk if needed. Must be called from the game
+     * thread.
+     */
+    public void copySection(int sectionX, int sectionY, int sectionZ) {
+        long key = SectionKeys.getSectionKey(sectionX, sectionY, sectionZ);
+        missingSections.remove(key);
+        lastSection = null;
+        Chunk chunk = world.getChunk(sectionX, sectionZ);
+        ExtendedBlockStorage storage = chunk.storageArrays[sectionY];
+        if (storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty()) {
+            sections.put(key, EMPTY_SECTION);
+            return;
+        }
+        IBlockState[] states = new IBlockState[4096];
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    states[y << 8 | z << 4 | x] = storage.get(x, y, z);
+                }
+            }
+        }
+        sections.put(key, states);
+    }
+
+    /**
+     * @return The {@link SectionKeys} of the sections that were read by {@link #getBlockState(BlockPos)} but haven't
+     * been copied.
+     */
+    public TLongHashSet getMissingSections() {
+        return missingSections;
+    }
+
+    /**
+     * @return False if the block is in a section that hasn't been copied yet, which is then remembered in
+     * {@link #getMissingSections()}. Blocks that are always air count as copied.
+     */
+    public boolean isCopied(int x, int y, int z) {
+        if (isOutOfRange(x, y, z)) {
+            return true;
+        }
+        long key = SectionKeys.getSectionKey(x >> 4, y >> 4, z >> 4);
+        if ((key == lastSectionKey && lastSection != null) || sections.containsKey(key)) {
+            return true;
+        }
+        missingSections.add(key);
+        return false;
+    }
+
+    public IBlockState getBlockState(int x, int y, int z) {
+        if (isOutOfRange(x, y, z)) {
+            return Blocks.AIR.getDefaultState();
+        }
+        long key = SectionKeys.getSectionKey(x >> 4, y >> 4, z >> 4);
+        IBlockState[] states;
+        if (key == lastSectionKey && lastSection != null) {
+            states = lastSection;
+        } else {
+            states = sections.get(key);
+            if (states == null) {
+                missingSections.add(key);
+                return Blocks.AIR.getDefaultState();
+            }
+            lastSectionKey = key;
+            lastSection = states;
+        }
+        return states[(y & 15) << 8 | (z & 15) << 4 | (x & 15)];
+    }
+
+    private boolean isOutOfRange(int x, int y, int z) {
+        int chunkX = x >> 4;
+        int chunkZ = z >> 4;
+        return y < 0 || y >= 256 || chunkX < minChunkX || chunkX > maxChunkX || chunkZ < minChunkZ
+            || chunkZ > maxChunkZ;
+    }
+
+    @Override
+    public IBlockState getBlockState(BlockPos pos) {
+        return getBlockState(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    @Override
+    public boolean isAirBlock(BlockPos pos) {
+        IBlockState state = getBlockState(pos);
+        return state.getBlock().isAir(state, this, pos);
+    }
+
+    // region Not part of the snapshot, these return what an empty world would
+
+    /**
+     * @return Always null, tile entities aren't part of the snapshot.
+     */
+    @Override
+    public TileEntity getTileEntity(BlockPos pos) {
+        return null;
+    }
+
+    /**
+     * @return Always 0, light isn't part of the snapshot.
+     */
+    @Override
+    @SideOnly(Side.CLIENT)
+    public int getCombinedLight(BlockPos pos, int lightValue) {
+        return 0;
+    }
+
+    /**
+     * @return Always plains, biomes aren't part of the snapshot.
+     */
+    @Override
+    @SideOnly(Side.CLIENT)
+    public Biome getBiome(BlockPos pos) {
+        return Biomes.PLAINS;
+    }
+
+    /**
+     * @return Always 0, redstone power isn't part of the snapshot.
+     */
+    @Override
+    public int getStrongPower(BlockPos pos, EnumFacing direction) {
+        return 0;
+    }
+
+    @Override
+    @SideOnly(Side.CLIENT)
+    public WorldType getWorldType() {
+        return world.getWorldType();
+    }
+
+    @Override
+    public boolean isSideSolid(BlockPos pos, EnumFacing side, boolean _default) {
+        return getBlockState(pos).isSideSolid(this, pos, side);
+    }
+
+    // endregion
+}
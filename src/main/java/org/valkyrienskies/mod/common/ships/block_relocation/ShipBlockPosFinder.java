@@ -2,6 +2,7 @@ package org.valkyrienskies.mod.common.ships.block_relocation;
 
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
 import org.valkyrienskies.mod.common.physics.BlockPhysicsDetails;
 
@@ -14,6 +15,12 @@ public class ShipBlockPosFinder extends SpatialDetector {
         startDetection();
     }
 
+    public ShipBlockPosFinder(BlockPos start, World worldIn, IBlockAccess blockAccess, int maximum,
+        boolean checkCorners) {
+        super(start, worldIn, blockAccess, maximum, checkCorners);
+        startDetection();
+    }
+
     @Override
     public boolean isValidExpansion(int x, int y, int z) {
         mutablePos.setPos(x, y, z);
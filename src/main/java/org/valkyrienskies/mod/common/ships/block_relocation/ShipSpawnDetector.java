@@ -8,6 +8,7 @@ import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
 import org.valkyrienskies.mod.common.config.VSConfig;
 
@@ -41,6 +42,12 @@ public class ShipSpawnDetector extends SpatialDetector {
         startDetection();
     }
 
+    ShipSpawnDetector(BlockPos start, World worldIn, IBlockAccess blockAccess, int maximum,
+        boolean checkCorners) {
+        super(start, worldIn, blockAccess, maximum, checkCorners);
+        startDetection();
+    }
+
     @Override
     public boolean isValidExpansion(int x, int y, int z) {
         mutablePos.setPos(x, y, z);
@@ -1,6 +1,7 @@
 package org.valkyrienskies.mod.common.ships.block_relocation;
 
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
 
 /**
@@ -15,6 +16,12 @@ public class SingleBlockPosDetector extends SpatialDetector {
         startDetection();
     }
 
+    public SingleBlockPosDetector(BlockPos start, World worldIn, IBlockAccess blockAccess, int maximum,
+        boolean checkCorners) {
+        super(start, worldIn, blockAccess, maximum, false);
+        startDetection();
+    }
+
     @Override
     public boolean isValidExpansion(int x, int y, int z) {
         return x == firstBlock.getX() && y == firstBlock.getY() && z == firstBlock.getZ();
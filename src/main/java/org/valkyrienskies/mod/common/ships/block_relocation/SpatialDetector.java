@@ -1,17 +1,20 @@
 package org.valkyrienskies.mod.common.ships.block_relocation;
 
 import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntPredicate;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.BlockPos.MutableBlockPos;
 import net.minecraft.world.ChunkCache;
+import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
 
 /**
- * Used to efficiently detect a connected set of blocks TODO: Incorporate a scanline technique to
- * improve detection speed
+ * Used to efficiently detect a connected set of blocks
  *
  * @author thebest108
  */
@@ -20,25 +23,49 @@ public abstract class SpatialDetector {
     public static final int maxRange = 512;
     public static final int maxRangeHalved = maxRange / 2;
     public static final int maxRangeSquared = maxRange * maxRange;
+    // A hash is y + maxRange * x + maxRangeSquared * z, 9 bits each
+    private static final int X_SHIFT = 9;
+    private static final int Z_SHIFT = 18;
+    private static final int HASH_MASK = maxRange - 1;
     public final TIntHashSet foundSet = new TIntHashSet(250);
     public final BlockPos firstBlock;
     public final MutableBlockPos tempPos = new MutableBlockPos();
-    public final ChunkCache cache;
+    public final IBlockAccess cache;
     public final World worldObj;
     public final int maxSize;
     public final boolean corners;
-    public TIntHashSet nextQueue = new TIntHashSet();
     // public int totalCalls = 0;
     public boolean cleanHouse = false;
+    // The state of the scanline fill, kept so that resumeDetection() can carry on where it stopped. Blocks found,
+    // blocks checked, and blocks that were valid when checked, all indexed by hash. Null until the fill starts.
+    private HashBitSet found, checked, valid;
+    private int[] stack;
+    private int stackSize;
+    // The blocks next to found blocks that weren't available yet, see isBlockAvailable()
+    private HashBitSet deferred;
+    private final TIntArrayList deferredHashes = new TIntArrayList();
 
     public SpatialDetector(BlockPos start, World worldIn, int maximum, boolean checkCorners) {
+        this(start, worldIn, createChunkCache(start, worldIn), maximum, checkCorners);
+    }
+
+    /**
+     * @param blockAccess Where the blocks are read from, may be a {@link BlockStateSnapshot} of worldIn so that this can
+     *                    run off of the game thread.
+     */
+    public SpatialDetector(BlockPos start, World worldIn, IBlockAccess blockAccess, int maximum,
+        boolean checkCorners) {
         firstBlock = start;
         worldObj = worldIn;
         maxSize = maximum;
         corners = checkCorners;
+        cache = blockAccess;
+    }
+
+    private static ChunkCache createChunkCache(BlockPos start, World worldIn) {
         BlockPos minPos = new BlockPos(start.getX() - 128, 0, start.getZ() - 128);
         BlockPos maxPos = new BlockPos(start.getX() + 128, 255, start.getZ() + 128);
-        cache = new ChunkCache(worldIn, minPos, maxPos, 0);
+        return new ChunkCache(worldIn, minPos, maxPos, 0);
     }
 
     public static int getHashWithRespectTo(int realX, int realY, int realZ, BlockPos start) {
@@ -72,6 +99,40 @@ public abstract class SpatialDetector {
         }
     }
 
+    /**
+     * @return True if the detection skipped blocks that weren't available, see {@link #isBlockAvailable(int, int,
+     * int)}. The blocks found so far are connected to {@link #firstBlock}, but there may be more.
+     */
+    public boolean isIncomplete() {
+        return !deferredHashes.isEmpty() && !cleanHouse && foundSet.size() < maxSize;
+    }
+
+    /**
+     * Carries on with a detection that {@link #isIncomplete()}, once the blocks it skipped are available. Ends up with
+     * the same blocks as a detection that had every block available from the start.
+     */
+    public final void resumeDetection() {
+        final int[] toRetry = deferredHashes.toArray();
+        deferredHashes.resetQuick();
+        for (int hash : toRetry) {
+            deferred.clear(hash);
+            if (isUnfoundValidBlock(hash)) {
+                push(hash);
+            }
+        }
+        startDetection();
+    }
+
+    /**
+     * Calls action with the hash of every block the detection read, which is every block found and every block next to
+     * them. The blocks found would be the same in any world where those blocks are the same.
+     *
+     * @return False if action returned false, which stops the iteration.
+     */
+    public boolean forEachCheckedBlock(IntPredicate action) {
+        return checked == null || checked.forEach(action);
+    }
+
     public List<BlockPos> getBlockPosArrayList() {
         List<BlockPos> detectedBlockPos = new ArrayList<BlockPos>(foundSet.size());
         TIntIterator intIter = foundSet.iterator();
@@ -87,107 +148,188 @@ public abstract class SpatialDetector {
         return detectedBlockPos;
     }
 
+    /**
+     * Finds the blocks connected to {@link #firstBlock} with a scanline fill. Every block popped off of the stack is
+     * stretched into the longest run of blocks along the x axis it's part of, and then the rows next to that run are
+     * scanned for runs to push on the stack, one block per run. Each block is only checked with
+     * {@link #isValidExpansion(int, int, int)} once, and every block next to a found block is checked, so unless
+     * {@link #maxSize} is reached this finds the same blocks as a breadth first search.
+     * <p>
+     * Stops once {@link #maxSize} blocks were found, or {@link #cleanHouse} is set. Blocks that aren't available are
+     * skipped, see {@link #isIncomplete()}. Called again, this carries on with the blocks left on the stack.
+     */
     protected void calculateSpatialOccupation() {
-        nextQueue
-            .add(firstBlock.getY() + maxRange * maxRangeHalved + maxRangeSquared * maxRangeHalved);
-        MutableBlockPos inRealWorld = new MutableBlockPos();
-        int hash;
-        while (!nextQueue.isEmpty() && !cleanHouse) {
-            TIntIterator queueIter = nextQueue.iterator();
-            foundSet.addAll(nextQueue);
-            nextQueue = new TIntHashSet();
-            while (queueIter.hasNext()) {
-                hash = queueIter.next();
-                setPosWithRespectTo(hash, firstBlock, inRealWorld);
-                if (corners) {
-                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() - 1,
-                        inRealWorld.getZ() - 1,
-                        hash - maxRange - 1 - maxRangeSquared);
-                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() - 1, inRealWorld.getZ(),
-                        hash - maxRange - 1);
-                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() - 1,
-                        inRealWorld.getZ() + 1,
-                        hash - maxRange - 1 + maxRangeSquared);
-                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY(), inRealWorld.getZ() - 1,
-                        hash - maxRange - maxRangeSquared);
-                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY(), inRealWorld.getZ(),
-                        hash - maxRange);
-                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY(), inRealWorld.getZ() + 1,
-                        hash - maxRange + maxRangeSquared);
-                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() + 1,
-                        inRealWorld.getZ() - 1,
-                        hash - maxRange + 1 - maxRangeSquared);
-                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() + 1, inRealWorld.getZ(),
-                        hash - maxRange + 1);
-                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() + 1,
-                        inRealWorld.getZ() + 1,
-                        hash - maxRange + 1 + maxRangeSquared);
-
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() - 1, inRealWorld.getZ() - 1,
-                        hash - 1 - maxRangeSquared);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() - 1, inRealWorld.getZ(),
-                        hash - 1);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() - 1, inRealWorld.getZ() + 1,
-                        hash - 1 + maxRangeSquared);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY(), inRealWorld.getZ() - 1,
-                        hash - maxRangeSquared);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY(), inRealWorld.getZ() + 1,
-                        hash + maxRangeSquared);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() + 1, inRealWorld.getZ() - 1,
-                        hash + 1 - maxRangeSquared);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() + 1, inRealWorld.getZ(),
-                        hash + 1);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() + 1, inRealWorld.getZ() + 1,
-                        hash + 1 + maxRangeSquared);
-
-                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() - 1,
-                        inRealWorld.getZ() - 1,
-                        hash + maxRange - 1 - maxRangeSquared);
-                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() - 1, inRealWorld.getZ(),
-                        hash + maxRange - 1);
-                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() - 1,
-                        inRealWorld.getZ() + 1,
-                        hash + maxRange - 1 + maxRangeSquared);
-                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY(), inRealWorld.getZ() - 1,
-                        hash + maxRange - maxRangeSquared);
-                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY(), inRealWorld.getZ(),
-                        hash + maxRange);
-                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY(), inRealWorld.getZ() + 1,
-                        hash + maxRange + maxRangeSquared);
-                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() + 1,
-                        inRealWorld.getZ() - 1,
-                        hash + maxRange + 1 - maxRangeSquared);
-                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() + 1, inRealWorld.getZ(),
-                        hash + maxRange + 1);
-                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() + 1,
-                        inRealWorld.getZ() + 1,
-                        hash + maxRange + 1 + maxRangeSquared);
-                } else {
-                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY(), inRealWorld.getZ(),
-                        hash + maxRange);
-                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY(), inRealWorld.getZ(),
-                        hash - maxRange);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() + 1, inRealWorld.getZ(),
-                        hash + 1);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() - 1, inRealWorld.getZ(),
-                        hash - 1);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY(), inRealWorld.getZ() + 1,
-                        hash + maxRangeSquared);
-                    tryExpanding(inRealWorld.getX(), inRealWorld.getY(), inRealWorld.getZ() - 1,
-                        hash - maxRangeSquared);
+        if (found == null) {
+            found = new HashBitSet();
+            checked = new HashBitSet();
+            valid = new HashBitSet();
+            deferred = new HashBitSet();
+            stack = new int[64];
+            stackSize = 0;
+            // The first block is always part of the set, without checking it
+            final int firstHash = getHashWithRespectTo(firstBlock.getX(), firstBlock.getY(), firstBlock.getZ(),
+                firstBlock);
+            checked.set(firstHash);
+            valid.set(firstHash);
+            push(firstHash);
+        }
+
+        while (stackSize > 0 && !cleanHouse && foundSet.size() < maxSize) {
+            final int seed = stack[--stackSize];
+            if (found.get(seed)) {
+                continue;
+            }
+            final int seedX = (seed >> X_SHIFT) & HASH_MASK;
+            final int rowHash = seed - (seedX << X_SHIFT);
+            int minX = seedX;
+            int maxX = seedX;
+            while (minX > 0 && isUnfoundValidBlock(rowHash + ((minX - 1) << X_SHIFT))) {
+                minX--;
+            }
+            while (maxX < HASH_MASK && isUnfoundValidBlock(rowHash + ((maxX + 1) << X_SHIFT))) {
+                maxX++;
+            }
+            for (int x = minX; x <= maxX && foundSet.size() < maxSize; x++) {
+                final int hash = rowHash + (x << X_SHIFT);
+                found.set(hash);
+                foundSet.add(hash);
+            }
+            if (cleanHouse) {
+                return;
+            }
+
+            // The rows next to this one, the ones diagonal to it too when checking corners
+            final int rowY = rowHash & HASH_MASK;
+            final int rowZ = rowHash >> Z_SHIFT;
+            final int scanMinX = corners ? Math.max(0, minX - 1) : minX;
+            final int scanMaxX = corners ? Math.min(HASH_MASK, maxX + 1) : maxX;
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    if ((dy == 0 && dz == 0) || (!corners && dy != 0 && dz != 0)) {
+                        continue;
+                    }
+                    final int y = rowY + dy;
+                    final int z = rowZ + dz;
+                    if (y < 0 || y > HASH_MASK || z < 0 || z > HASH_MASK) {
+                        continue;
+                    }
+                    final int neighborRowHash = y + (z << Z_SHIFT);
+                    boolean inRun = false;
+                    for (int x = scanMinX; x <= scanMaxX; x++) {
+                        final int hash = neighborRowHash + (x << X_SHIFT);
+                        if (isUnfoundValidBlock(hash)) {
+                            if (!inRun) {
+                                push(hash);
+                            }
+                            inRun = true;
+                        } else {
+                            inRun = false;
+                        }
+                    }
+                    if (cleanHouse) {
+                        return;
+                    }
                 }
             }
         }
     }
 
-    protected void tryExpanding(int x, int y, int z, int hash) {
-        if (isValidExpansion(x, y, z)) {
-            // totalCalls++;
-            if (!foundSet.contains(hash) && (foundSet.size() + nextQueue.size() < maxSize)) {
-                nextQueue.add(hash);
+    private void push(int hash) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = hash;
+    }
+
+    private boolean isUnfoundValidBlock(int hash) {
+        if (found.get(hash)) {
+            return false;
+        }
+        if (checked.get(hash)) {
+            return valid.get(hash);
+        }
+        final int x = ((hash >> X_SHIFT) & HASH_MASK) - maxRangeHalved + firstBlock.getX();
+        final int y = hash & HASH_MASK;
+        final int z = (hash >> Z_SHIFT) - maxRangeHalved + firstBlock.getZ();
+        if (!isBlockAvailable(x, y, z)) {
+            // Checked once resumeDetection() is called
+            if (!deferred.get(hash)) {
+                deferred.set(hash);
+                deferredHashes.add(hash);
             }
+            return false;
         }
+        checked.set(hash);
+        if (isValidExpansion(x, y, z)) {
+            valid.set(hash);
+            return true;
+        }
+        return false;
     }
 
     public abstract boolean isValidExpansion(int x, int y, int z);
-}
\ No newline at end of file
+
+    /**
+     * @return False if the block can't be read yet. The detection then goes on without it, and
+     * {@link #isIncomplete()} tells the caller to make it available and call {@link #resumeDetection()}. Only blocks
+     * in sections that a {@link BlockStateSnapshot} doesn't have yet aren't available.
+     */
+    protected boolean isBlockAvailable(int x, int y, int z) {
+        return !(cache instanceof BlockStateSnapshot) || ((BlockStateSnapshot) cache).isCopied(x, y, z);
+    }
+
+    /**
+     * A set of hashes, as a bit set split into pages that are only allocated once a hash in them is added. A plain
+     * bit set over every hash would be 16 megabytes, most ships only touch a few pages.
+     */
+    private static final class HashBitSet {
+
+        // 4096 hashes per page, which is 8 columns of blocks along the y axis
+        private static final int PAGE_SHIFT = 12;
+        private final long[][] pages = new long[1 << (3 * X_SHIFT - PAGE_SHIFT)][];
+
+        boolean get(int hash) {
+            final long[] page = pages[hash >>> PAGE_SHIFT];
+            return page != null && (page[(hash >> 6) & 63] & (1L << hash)) != 0;
+        }
+
+        void set(int hash) {
+            long[] page = pages[hash >>> PAGE_SHIFT];
+            if (page == null) {
+                page = new long[1 << (PAGE_SHIFT - 6)];
+                pages[hash >>> PAGE_SHIFT] = page;
+            }
+            page[(hash >> 6) & 63] |= 1L << hash;
+        }
+
+        void clear(int hash) {
+            final long[] page = pages[hash >>> PAGE_SHIFT];
+            if (page != null) {
+                page[(hash >> 6) & 63] &= ~(1L << hash);
+            }
+        }
+
+        /**
+         * @return False if action returned false for a hash, which stops the iteration.
+         */
+        boolean forEach(IntPredicate action) {
+            for (int pageIndex = 0; pageIndex < pages.length; pageIndex++) {
+                final long[] page = pages[pageIndex];
+                if (page == null) {
+                    continue;
+                }
+                for (int wordIndex = 0; wordIndex < page.length; wordIndex++) {
+                    long word = page[wordIndex];
+                    while (word != 0) {
+                        final int bit = Long.numberOfTrailingZeros(word);
+                        if (!action.test(pageIndex << PAGE_SHIFT | wordIndex << 6 | bit)) {
+                            return false;
+                        }
+                        word &= word - 1;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
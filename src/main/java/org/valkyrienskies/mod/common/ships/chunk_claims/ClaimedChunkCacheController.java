@@ -15,6 +15,7 @@ import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
 
 import javax.annotation.Nonnull;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The ClaimedChunkCacheController is a chunk cache controller used by the {@link PhysicsObject}. It
@@ -39,7 +40,8 @@ public class ClaimedChunkCacheController implements Iterable<Chunk> {
     public ClaimedChunkCacheController(PhysicsObject parent) {
         this.world = parent.getWorld();
         this.parent = parent;
-        this.claimedChunks = new HashMap<>();
+        // Chunks are added to the claim on demand while the physics thread is reading it
+        this.claimedChunks = new ConcurrentHashMap<>();
         loadChunksIntoCache();
     }
 
@@ -105,21 +107,7 @@ public class ClaimedChunkCacheController implements Iterable<Chunk> {
                     }
                 }
 
-                // Do this to get it re-integrated into the world
-                if (!world.isRemote) {
-                    // Inject the entry into the player chunk map.
-                    PlayerChunkMap map = ((WorldServer) world).getPlayerChunkMap();
-                    PlayerChunkMapEntry entry = map.getOrCreateEntry(x, z);
-                    // Very important! We must update the chunk field of the entry to prevent old chunk objects from living on.
-                    // If this entry already existed and we forget, then we will corrupt the entry by having different chunks
-                    // in the world vs in the entries!
-                    entry.chunk = chunk;
-                    entry.sentToPlayers = true;
-                    entry.players = parent.getWatchingPlayers();
-                }
-
-                chunk.tileEntities.forEach(parent::onSetTileEntity);
-
+                integrateChunk(chunk);
                 setChunkAt(x, z, chunk);
             } catch (Exception e) {
                 e.printStackTrace();
@@ -127,6 +115,32 @@ public class ClaimedChunkCacheController implements Iterable<Chunk> {
         });
     }
 
+    /**
+     * Adds a chunk that is about to be added to the claim of the ship. Must be called <i>before</i> the chunk is
+     * added to the claim, so that other threads never see a claimed chunk that isn't in this cache.
+     */
+    public void addNewlyClaimedChunk(@Nonnull Chunk chunk) {
+        integrateChunk(chunk);
+        claimedChunks.put(ChunkPos.asLong(chunk.x, chunk.z), chunk);
+    }
+
+    private void integrateChunk(Chunk chunk) {
+        // Do this to get it re-integrated into the world
+        if (!world.isRemote) {
+            // Inject the entry into the player chunk map.
+            PlayerChunkMap map = ((WorldServer) world).getPlayerChunkMap();
+            PlayerChunkMapEntry entry = map.getOrCreateEntry(chunk.x, chunk.z);
+            // Very important! We must update the chunk field of the entry to prevent old chunk objects from living on.
+            // If this entry already existed and we forget, then we will corrupt the entry by having different chunks
+            // in the world vs in the entries!
+            entry.chunk = chunk;
+            entry.sentToPlayers = true;
+            entry.players = parent.getWatchingPlayers();
+        }
+
+        chunk.tileEntities.forEach(parent::onSetTileEntity);
+    }
+
     public void deleteShipChunksFromWorld() {
         PlayerChunkMap map = ((WorldServer) world).getPlayerChunkMap();
 
@@ -6,6 +6,8 @@ import lombok.extern.log4j.Log4j2;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 
+import javax.annotation.Nullable;
+
 /**
  * <p />
  * This class allocates chunks for usage in ships. Chunks in these ship chunks, (oftentimes referred
@@ -65,6 +67,27 @@ public class ShipChunkAllocator {
         return isChunkInShipyard(pos.getX() >> 4, pos.getZ() >> 4);
     }
 
+    /**
+     * Ships only claim the chunks they have blocks in, but every ship owns the region of radius
+     * {@link #MAX_CHUNK_RADIUS} around the center of its claim. This finds the center of the region containing a chunk,
+     * so that the chunk can be claimed by the ship owning that region.
+     *
+     * @return The center of the region containing the chunk, or null if the chunk isn't in any ship region
+     */
+    @Nullable
+    public static ChunkPos getRegionCenter(int chunkX, int chunkZ) {
+        if (!isChunkInShipyard(chunkX, chunkZ)) {
+            return null;
+        }
+        int regionIndex = Math.round((chunkZ - CHUNK_Z_START) / (float) MAX_CHUNK_LENGTH);
+        int centerX = CHUNK_X_START;
+        int centerZ = CHUNK_Z_START + regionIndex * MAX_CHUNK_LENGTH;
+        if (Math.abs(chunkX - centerX) > MAX_CHUNK_RADIUS || Math.abs(chunkZ - centerZ) > MAX_CHUNK_RADIUS) {
+            return null;
+        }
+        return new ChunkPos(centerX, centerZ);
+    }
+
     /**
      * This finds the next empty chunkSet for use, currently only increases the xPos to get new
      * positions
@@ -0,0 +1,118 @@
+package org.valkyrienskies.mod.common.ships.chunk_claims;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.minecraft.network.play.server.SPacketChunkData;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.Chunk;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Keeps the chunk data packets of the claimed chunks of a ship, so that a chunk is only encoded once no matter how many
+ * players start watching the ship. A {@link SPacketChunkData} is never changed after it's created, so the same packet
+ * object can be sent to any number of players.
+ * <p>
+ * A packet is thrown away when a block in or near its chunk changes, because the light of a chunk depends on the blocks
+ * around it, or when a block update is sent for its chunk, because that's how tile entities tell players about their
+ * changes. Tile entities only marking their chunk dirty don't throw the packet away, ticking ones do that every tick.
+ * Packets that haven't been sent for {@link #EXPIRY_TICKS} are thrown away too, so a ship doesn't keep a second copy
+ * of its chunks around.
+ * <p>
+ * Every chunk also has a version that goes up whenever a block in it changes or a block update is sent for it, so
+ * that a player that got the chunk while not watching the ship yet knows to get it again, see
+ * {@link #getVersion(int, int)}.
+ * <p>
+ * Only the server thread may use this class.
+ */
+public class ShipChunkPacketCache {
+
+    private static final long EXPIRY_TICKS = 600;
+    // Changing a block can change the light up to 15 blocks away
+    private static final int LIGHT_RANGE = 15;
+    // The same mask that PlayerChunkMapEntry uses for entire chunks
+    private static final int ALL_SECTIONS = 65535;
+
+    private final TLongObjectMap<Entry> entries;
+
+    public ShipChunkPacketCache() {
+        this.entries = new TLongObjectHashMap<>();
+    }
+
+    /**
+     * @return The packet with all of chunk, encoded now if it isn't cached.
+     */
+    @Nonnull
+    public SPacketChunkData getPacket(@Nonnull Chunk chunk, long worldTime) {
+        final Entry entry = getEntry(chunk.x, chunk.z);
+        if (entry.packet == null) {
+            entry.packet = new SPacketChunkData(chunk, ALL_SECTIONS);
+        }
+        entry.lastUsedTick = worldTime;
+        return entry.packet;
+    }
+
+    /**
+     * @return A number that changes whenever the chunk changes in a way players have to be sent.
+     */
+    public int getVersion(int chunkX, int chunkZ) {
+        final Entry entry = entries.get(ChunkPos.asLong(chunkX, chunkZ));
+        return entry == null ? 0 : entry.version;
+    }
+
+    public void onSetBlockState(@Nonnull BlockPos pos) {
+        getEntry(pos.getX() >> 4, pos.getZ() >> 4).version++;
+        for (int chunkX = (pos.getX() - LIGHT_RANGE) >> 4; chunkX <= (pos.getX() + LIGHT_RANGE) >> 4; chunkX++) {
+            for (int chunkZ = (pos.getZ() - LIGHT_RANGE) >> 4; chunkZ <= (pos.getZ() + LIGHT_RANGE) >> 4; chunkZ++) {
+                forgetPacket(chunkX, chunkZ);
+            }
+        }
+    }
+
+    /**
+     * Called when a block update is sent to the players watching the chunk of pos, like the ones tile entities send
+     * when they change. Players that got the chunk without watching it have to get it again.
+     */
+    public void onBlockUpdate(@Nonnull BlockPos pos) {
+        final Entry entry = getEntry(pos.getX() >> 4, pos.getZ() >> 4);
+        entry.version++;
+        entry.packet = null;
+    }
+
+    private void forgetPacket(int chunkX, int chunkZ) {
+        final Entry entry = entries.get(ChunkPos.asLong(chunkX, chunkZ));
+        if (entry != null) {
+            entry.packet = null;
+        }
+    }
+
+    /**
+     * Forgets the packets that weren't sent for a while. The versions are kept.
+     */
+    public void evictUnused(long worldTime) {
+        entries.forEachValue(entry -> {
+            if (worldTime - entry.lastUsedTick > EXPIRY_TICKS) {
+                entry.packet = null;
+            }
+            return true;
+        });
+    }
+
+    private Entry getEntry(int chunkX, int chunkZ) {
+        final long key = ChunkPos.asLong(chunkX, chunkZ);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private static class Entry {
+
+        SPacketChunkData packet = null;
+        int version = 0;
+        long lastUsedTick = 0;
+    }
+}
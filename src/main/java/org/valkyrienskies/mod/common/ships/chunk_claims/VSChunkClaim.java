@@ -10,10 +10,10 @@ import net.minecraft.util.math.ChunkPos;
 
 import javax.annotation.concurrent.Immutable;
 import java.beans.ConstructorProperties;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
@@ -32,7 +32,8 @@ public final class VSChunkClaim implements Iterable<ChunkPos> {
 
     public VSChunkClaim(ChunkPos centerPos) {
         this.centerPos = centerPos;
-        this.claimedChunks = new HashSet<>();
+        // Claims grow while the physics thread is reading them
+        this.claimedChunks = ConcurrentHashMap.newKeySet();
     }
 
     @JsonCreator // This annotation tells Jackson to use this constructor for the class
@@ -40,7 +41,15 @@ public final class VSChunkClaim implements Iterable<ChunkPos> {
     @ConstructorProperties({"centerPos", "claimedChunks"})
     private VSChunkClaim(ChunkPos centerPos, Set<Long> claimedChunks) {
         this.centerPos = centerPos;
-        this.claimedChunks = claimedChunks;
+        this.claimedChunks = ConcurrentHashMap.newKeySet();
+        this.claimedChunks.addAll(claimedChunks);
+    }
+
+    /**
+     * @return A copy of this claim that doesn't grow when this one does
+     */
+    public VSChunkClaim copy() {
+        return new VSChunkClaim(centerPos, claimedChunks);
     }
 
     public void writeToNBT(NBTTagCompound toSave) {
@@ -477,12 +477,9 @@ public class EntityCollisionInjector {
                     // This is too big, something went wrong here
                     break;
                 }
-                List<AxisAlignedBB> collidingBBs = entity.world.getCollisionBoxes(entity, bb);
-
-                // TODO: Fix the performance of this!
-                if (entity.world.isRemote || entity instanceof EntityPlayer) {
-                    VSMath.mergeAABBList(collidingBBs);
-                }
+                // Full blocks come out of the cache already merged into large boxes
+                List<AxisAlignedBB> collidingBBs = new ArrayList<>();
+                wrapper.getCollisionBoxCache().getCollisionBoxes(entity, bb, collidingBBs);
 
                 for (AxisAlignedBB inLocal : collidingBBs) {
                     ShipPolygon poly = new ShipPolygon(inLocal,
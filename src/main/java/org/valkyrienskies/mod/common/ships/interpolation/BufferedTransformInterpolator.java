@@ -0,0 +1,157 @@
+package org.valkyrienskies.mod.common.ships.interpolation;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import org.joml.Quaterniond;
+import org.joml.Quaterniondc;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import valkyrienwarfare.api.TransformType;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Plays back the transforms received from the server a few ticks late, interpolating between the two snapshots
+ * around the playback time, see {@link SnapshotTimeline}. Unlike {@link SimpleEMATransformInterpolator} the ship moves
+ * at the speed it moved on the server even when updates arrive unevenly, or not every tick.
+ * <p>
+ * The snapshots are kept in a flat array, and interpolating doesn't allocate anything except for the new
+ * {@link ShipTransform} and AABB, and only when the ship actually moved.
+ */
+public class BufferedTransformInterpolator implements ITransformInterpolator {
+
+    private static final int CAPACITY = 32;
+    // Extrapolating for longer than this is more likely to be wrong than right
+    private static final double MAX_EXTRAPOLATION_TICKS = 3;
+
+    // Layout of a snapshot in the snapshots array
+    private static final int POS = 0, ROT = 3, CENTER = 7, MIN = 10, MAX = 13, STRIDE = 16;
+
+    private final SnapshotTimeline timeline;
+    private final double[] snapshots;
+    @Nonnull
+    private ShipTransform curTickTransform;
+    @Nonnull
+    private AxisAlignedBB curAABB;
+    // Scratch space
+    private final Quaterniond fromRotation, toRotation;
+    // The rotation of curTickTransform, to tell whether it changed without asking it for a new quaternion
+    private final Quaterniond curRotation;
+    private final Vector3d fromPosition, centerOffset;
+
+    /**
+     * @param delayTicks How many ticks behind the server the ship is shown. Should be more than the time between
+     *                   updates plus the usual network jitter.
+     */
+    public BufferedTransformInterpolator(@Nonnull ShipTransform initial, @Nonnull AxisAlignedBB initialAABB,
+        double delayTicks) {
+        this.timeline = new SnapshotTimeline(CAPACITY, delayTicks, MAX_EXTRAPOLATION_TICKS);
+        this.snapshots = new double[CAPACITY * STRIDE];
+        this.curTickTransform = initial;
+        this.curAABB = initialAABB;
+        this.fromRotation = new Quaterniond();
+        this.toRotation = new Quaterniond();
+        this.curRotation = initial.rotationQuaternion(TransformType.SUBSPACE_TO_GLOBAL);
+        this.fromPosition = new Vector3d();
+        this.centerOffset = new Vector3d();
+    }
+
+    @Override
+    public void onNewTransformPacket(@Nonnull ShipTransform newTransform, @Nonnull AxisAlignedBB newAABB,
+        long serverTick) {
+        final int slot = timeline.add(serverTick);
+        if (slot == -1) {
+            return;
+        }
+        final int offset = slot * STRIDE;
+        snapshots[offset + POS] = newTransform.getPosX();
+        snapshots[offset + POS + 1] = newTransform.getPosY();
+        snapshots[offset + POS + 2] = newTransform.getPosZ();
+        final Quaterniondc rotation = newTransform.rotationQuaternion(TransformType.SUBSPACE_TO_GLOBAL);
+        snapshots[offset + ROT] = rotation.x();
+        snapshots[offset + ROT + 1] = rotation.y();
+        snapshots[offset + ROT + 2] = rotation.z();
+        snapshots[offset + ROT + 3] = rotation.w();
+        snapshots[offset + CENTER] = newTransform.getCenterCoord().x();
+        snapshots[offset + CENTER + 1] = newTransform.getCenterCoord().y();
+        snapshots[offset + CENTER + 2] = newTransform.getCenterCoord().z();
+        snapshots[offset + MIN] = newAABB.minX;
+        snapshots[offset + MIN + 1] = newAABB.minY;
+        snapshots[offset + MIN + 2] = newAABB.minZ;
+        snapshots[offset + MAX] = newAABB.maxX;
+        snapshots[offset + MAX + 1] = newAABB.maxY;
+        snapshots[offset + MAX + 2] = newAABB.maxZ;
+    }
+
+    @Override
+    public void tickTransformInterpolator() {
+        timeline.tick();
+        if (!timeline.sample()) {
+            return;
+        }
+        final int from = timeline.getFromSlot() * STRIDE;
+        final int to = timeline.getToSlot() * STRIDE;
+        final double alpha = timeline.getAlpha();
+
+        fromRotation.set(snapshots[from + ROT], snapshots[from + ROT + 1], snapshots[from + ROT + 2],
+            snapshots[from + ROT + 3]);
+        toRotation.set(snapshots[to + ROT], snapshots[to + ROT + 1], snapshots[to + ROT + 2],
+            snapshots[to + ROT + 3]);
+
+        // The position is the position of the center coord. If the center coord changed between the snapshots, move
+        // the older position to where the new center coord was back then.
+        fromPosition.set(snapshots[from + POS], snapshots[from + POS + 1], snapshots[from + POS + 2]);
+        centerOffset.set(snapshots[to + CENTER] - snapshots[from + CENTER],
+            snapshots[to + CENTER + 1] - snapshots[from + CENTER + 1],
+            snapshots[to + CENTER + 2] - snapshots[from + CENTER + 2]);
+        if (centerOffset.lengthSquared() != 0) {
+            fromRotation.transform(centerOffset);
+            fromPosition.add(centerOffset);
+        }
+
+        final double posX = lerp(fromPosition.x, snapshots[to + POS], alpha);
+        final double posY = lerp(fromPosition.y, snapshots[to + POS + 1], alpha);
+        final double posZ = lerp(fromPosition.z, snapshots[to + POS + 2], alpha);
+        // Slerp with an alpha over 1 keeps rotating at the same rate, which is what we want when extrapolating
+        fromRotation.slerp(toRotation, alpha).normalize();
+
+        final Vector3dc curCenter = curTickTransform.getCenterCoord();
+        final boolean centerChanged = curCenter.x() != snapshots[to + CENTER]
+            || curCenter.y() != snapshots[to + CENTER + 1] || curCenter.z() != snapshots[to + CENTER + 2];
+        if (centerChanged || posX != curTickTransform.getPosX() || posY != curTickTransform.getPosY()
+            || posZ != curTickTransform.getPosZ()
+            || !fromRotation.equals(curRotation)) {
+            final Vector3dc center = centerChanged ? new Vector3d(snapshots[to + CENTER], snapshots[to + CENTER + 1],
+                snapshots[to + CENTER + 2]) : curCenter;
+            curTickTransform = new ShipTransform(posX, posY, posZ, fromRotation, center);
+            curRotation.set(fromRotation);
+        }
+
+        final double minX = lerp(snapshots[from + MIN], snapshots[to + MIN], alpha);
+        final double minY = lerp(snapshots[from + MIN + 1], snapshots[to + MIN + 1], alpha);
+        final double minZ = lerp(snapshots[from + MIN + 2], snapshots[to + MIN + 2], alpha);
+        final double maxX = lerp(snapshots[from + MAX], snapshots[to + MAX], alpha);
+        final double maxY = lerp(snapshots[from + MAX + 1], snapshots[to + MAX + 1], alpha);
+        final double maxZ = lerp(snapshots[from + MAX + 2], snapshots[to + MAX + 2], alpha);
+        if (minX != curAABB.minX || minY != curAABB.minY || minZ != curAABB.minZ || maxX != curAABB.maxX
+            || maxY != curAABB.maxY || maxZ != curAABB.maxZ) {
+            curAABB = new AxisAlignedBB(minX, minY, minZ, maxX, maxY, maxZ);
+        }
+    }
+
+    private static double lerp(double from, double to, double alpha) {
+        return from + (to - from) * alpha;
+    }
+
+    @Override
+    @Nonnull
+    public ShipTransform getCurrentTickTransform() {
+        return curTickTransform;
+    }
+
+    @Override
+    @Nonnull
+    public AxisAlignedBB getCurrentAABB() {
+        return curAABB;
+    }
+}
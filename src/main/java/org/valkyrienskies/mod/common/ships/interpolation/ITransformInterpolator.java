@@ -12,8 +12,10 @@ public interface ITransformInterpolator {
 
     /**
      * Sends the latest transform and AABB to the interpolator.
+     *
+     * @param serverTick The world time of the server when the transform was sent.
      */
-    void onNewTransformPacket(@Nonnull ShipTransform newTransform, @Nonnull AxisAlignedBB newAABB);
+    void onNewTransformPacket(@Nonnull ShipTransform newTransform, @Nonnull AxisAlignedBB newAABB, long serverTick);
 
     /**
      * Moves the interpolator up 1 tick, moving the current transform closer to the latest transform.
@@ -35,7 +35,8 @@ public class SimpleEMATransformInterpolator implements ITransformInterpolator {
     }
 
     @Override
-    public void onNewTransformPacket(@Nonnull ShipTransform newTransform, @Nonnull AxisAlignedBB newAABB) {
+    public void onNewTransformPacket(@Nonnull ShipTransform newTransform, @Nonnull AxisAlignedBB newAABB,
+        long serverTick) {
         this.latestReceivedTransform = newTransform;
         this.latestRecievedAABB = newAABB;
     }
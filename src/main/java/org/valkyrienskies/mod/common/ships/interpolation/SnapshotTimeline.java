@@ -0,0 +1,179 @@
+package org.valkyrienskies.mod.common.ships.interpolation;
+
+import lombok.Getter;
+
+/**
+ * Decides which of the snapshots received from the server should be shown, and when. Keeps the server tick of the
+ * last {@link #getCapacity()} snapshots in a ring buffer, the snapshots themselves are kept by the user of this class
+ * in the slots returned by {@link #add(long)}.
+ * <p>
+ * The snapshots are played back {@link #getDelayTicks()} behind the server, so that there's usually a snapshot on both
+ * sides of the playback time even if packets arrive late. If the server doesn't send a snapshot every tick, the
+ * average time between snapshots is added to the delay. The server tick is
+ * estimated from the newest snapshot, and slowly drifts back so that a burst of late packets doesn't add to the delay
+ * forever. Playback speeds up or slows down by at most {@link #MAX_RATE_CHANGE} to follow the estimate, so it never
+ * goes backwards or jumps, unless it falls more than {@link #SNAP_TICKS} behind.
+ * <p>
+ * If the newest snapshot is older than the playback time the motion between the two newest snapshots is continued, but
+ * for no more than the extrapolation limit.
+ * <p>
+ * All times are in server ticks. Doesn't allocate after construction. Not thread safe.
+ */
+public class SnapshotTimeline {
+
+    // How much the server tick estimate drifts back each tick
+    static final double DRIFT = .01;
+    // How quickly playback corrects the difference to the estimate
+    static final double CATCH_UP = .1;
+    static final double MAX_RATE_CHANGE = .25;
+    static final double SNAP_TICKS = 20;
+    // How quickly the average time between snapshots follows changes
+    static final double INTERVAL_SMOOTHING = .1;
+
+    private final long[] ticks;
+    @Getter
+    private final double delayTicks;
+    @Getter
+    private final double maxExtrapolationTicks;
+    // Index of the oldest snapshot, and how many there are
+    private int head;
+    private int size;
+    private double estimatedServerTick;
+    // Average server ticks between snapshots
+    @Getter
+    private double averageIntervalTicks;
+    @Getter
+    private double playbackTick;
+
+    // The result of the last call to sample()
+    @Getter
+    private int fromSlot;
+    @Getter
+    private int toSlot;
+    @Getter
+    private double alpha;
+
+    public SnapshotTimeline(int capacity, double delayTicks, double maxExtrapolationTicks) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Need room for at least 2 snapshots, got " + capacity);
+        }
+        this.ticks = new long[capacity];
+        this.delayTicks = delayTicks;
+        this.maxExtrapolationTicks = maxExtrapolationTicks;
+        this.head = 0;
+        this.size = 0;
+        this.averageIntervalTicks = 1;
+    }
+
+    public int getCapacity() {
+        return ticks.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds the snapshot of serverTick, overwriting the oldest one if full.
+     *
+     * @return The slot to store the snapshot in, or -1 if it's older than the newest snapshot and should be ignored.
+     */
+    public int add(long serverTick) {
+        if (size == 0) {
+            estimatedServerTick = serverTick;
+            playbackTick = serverTick - delayTicks;
+        } else {
+            final int newestSlot = getSlot(size - 1);
+            if (serverTick < ticks[newestSlot]) {
+                return -1;
+            }
+            if (serverTick == ticks[newestSlot]) {
+                // Sent twice in the same tick, the newer one wins
+                return newestSlot;
+            }
+            estimatedServerTick = Math.max(estimatedServerTick, serverTick);
+            final long interval = serverTick - ticks[newestSlot];
+            if (size == 1) {
+                averageIntervalTicks = interval;
+            } else {
+                averageIntervalTicks += (interval - averageIntervalTicks) * INTERVAL_SMOOTHING;
+            }
+        }
+        final int slot;
+        if (size == ticks.length) {
+            slot = head;
+            head = (head + 1) % ticks.length;
+        } else {
+            slot = getSlot(size);
+            size++;
+        }
+        ticks[slot] = serverTick;
+        return slot;
+    }
+
+    /**
+     * Moves playback forward by one client tick.
+     */
+    public void tick() {
+        if (size == 0) {
+            return;
+        }
+        estimatedServerTick += 1 - DRIFT;
+        // A snapshot every tick needs no extra delay
+        final double target = estimatedServerTick - delayTicks - (averageIntervalTicks - 1);
+        final double error = target - playbackTick;
+        if (Math.abs(error) > SNAP_TICKS) {
+            playbackTick = target;
+        } else {
+            playbackTick += 1 + Math.max(-MAX_RATE_CHANGE, Math.min(error * CATCH_UP, MAX_RATE_CHANGE));
+        }
+    }
+
+    /**
+     * Finds the snapshots to interpolate between at the current playback time. The result is the snapshot in
+     * {@link #getFromSlot()} moved towards the one in {@link #getToSlot()} by {@link #getAlpha()}. Alpha is more than
+     * 1 when extrapolating.
+     *
+     * @return False if there aren't any snapshots.
+     */
+    public boolean sample() {
+        if (size == 0) {
+            return false;
+        }
+        final int oldestSlot = getSlot(0);
+        final int newestSlot = getSlot(size - 1);
+        if (size == 1 || playbackTick <= ticks[oldestSlot]) {
+            // Nothing older to interpolate from
+            setResult(oldestSlot, oldestSlot, 0);
+            return true;
+        }
+        if (playbackTick >= ticks[newestSlot]) {
+            final int previousSlot = getSlot(size - 2);
+            final double time = Math.min(playbackTick, ticks[newestSlot] + maxExtrapolationTicks);
+            setResult(previousSlot, newestSlot,
+                (time - ticks[previousSlot]) / (ticks[newestSlot] - ticks[previousSlot]));
+            return true;
+        }
+        // Playback is usually near the newest snapshots, so search from there
+        for (int i = size - 2; i >= 0; i--) {
+            final int slot = getSlot(i);
+            if (ticks[slot] <= playbackTick) {
+                final int nextSlot = getSlot(i + 1);
+                setResult(slot, nextSlot, (playbackTick - ticks[slot]) / (ticks[nextSlot] - ticks[slot]));
+                return true;
+            }
+        }
+        throw new IllegalStateException("Unreachable, playback is after the oldest snapshot");
+    }
+
+    private void setResult(int fromSlot, int toSlot, double alpha) {
+        this.fromSlot = fromSlot;
+        this.toSlot = toSlot;
+        this.alpha = alpha;
+    }
+
+    // The slot of the index'th oldest snapshot
+    private int getSlot(int index) {
+        return (head + index) % ticks.length;
+    }
+}
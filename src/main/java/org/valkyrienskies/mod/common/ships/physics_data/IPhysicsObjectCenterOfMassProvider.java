@@ -2,7 +2,6 @@ package org.valkyrienskies.mod.common.ships.physics_data;
 
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.BlockPos;
-import org.valkyrienskies.mod.common.ships.physics_data.ShipInertiaData;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -14,4 +13,14 @@ public interface IPhysicsObjectCenterOfMassProvider {
     @ParametersAreNonnullByDefault
     void onSetBlockState(ShipInertiaData data, BlockPos pos, IBlockState oldState, IBlockState newState);
 
+    /**
+     * Same as {@link #onSetBlockState(ShipInertiaData, BlockPos, IBlockState, IBlockState)}, but only adds the change
+     * to accumulator. Used to change many blocks at once, by writing the accumulator to the ShipInertiaData afterwards.
+     *
+     * @return True if the change affected the mass of the ship.
+     */
+    @ParametersAreNonnullByDefault
+    boolean onSetBlockState(InertiaMomentAccumulator accumulator, BlockPos pos, IBlockState oldState,
+        IBlockState newState);
+
 }
@@ -0,0 +1,140 @@
+package org.valkyrienskies.mod.common.ships.physics_data;
+
+import org.joml.Matrix3d;
+import org.joml.Matrix3dc;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+
+/**
+ * Builds the mass, center of mass and inertia tensor of a ship by summing the raw moments of its point masses (sum of
+ * m, sum of m * x, sum of m * x * x, sum of m * x * y, ...), and only turning those into a center of mass and tensor
+ * when {@link #writeTo(ShipInertiaData)} is called. Adding a mass is a handful of multiply adds, unlike moving the
+ * center of mass and applying the parallel axis theorem for every mass added. Negative masses remove mass.
+ * <p>
+ * Positions are stored relative to a reference point near the ship, because ships are thousands of kilometers away
+ * from the origin in the shipyard, and summing squares of numbers that large would lose most of the precision.
+ */
+public class InertiaMomentAccumulator {
+
+    // The same as BasicCenterOfMassProvider used to do, in case anything was relying on it
+    private static final double MIN_MASS = .0001D;
+
+    private boolean hasReference;
+    private double refX, refY, refZ;
+    // Sum of m
+    private double mass;
+    // Sum of m * r, where r is relative to the reference point
+    private double mx, my, mz;
+    // Sum of m * r * r^T
+    private double mxx, myy, mzz, mxy, mxz, myz;
+
+    /**
+     * Creates an empty accumulator, the reference point is the first mass added.
+     */
+    public InertiaMomentAccumulator() {
+        this.hasReference = false;
+    }
+
+    /**
+     * Creates an accumulator that starts with the mass and inertia tensor of inertiaData, using its center of mass as
+     * the reference point.
+     * <p>
+     * If inertiaData has no mass its tensor is still kept, and is added on top of the tensor of the masses added. Ships
+     * start out with an identity tensor, and the old point by point updates kept it, so every ship has always had one
+     * extra unit of inertia on each axis.
+     */
+    public static InertiaMomentAccumulator fromInertiaData(ShipInertiaData inertiaData) {
+        InertiaMomentAccumulator accumulator = new InertiaMomentAccumulator();
+        if (inertiaData.getGameTickMass() >= MIN_MASS) {
+            Vector3dc centerOfMass = inertiaData.getGameTickCenterOfMass();
+            accumulator.hasReference = true;
+            accumulator.refX = centerOfMass.x();
+            accumulator.refY = centerOfMass.y();
+            accumulator.refZ = centerOfMass.z();
+            accumulator.mass = inertiaData.getGameTickMass();
+        }
+        Matrix3dc tensor = inertiaData.getGameMoITensor();
+        // The moments about the center of mass, from Ixx = sum of m * (y * y + z * z) and Ixy = -(sum of m * x * y)
+        double halfTrace = (tensor.m00() + tensor.m11() + tensor.m22()) / 2;
+        accumulator.mxx = halfTrace - tensor.m00();
+        accumulator.myy = halfTrace - tensor.m11();
+        accumulator.mzz = halfTrace - tensor.m22();
+        accumulator.mxy = -tensor.m10();
+        accumulator.mxz = -tensor.m20();
+        accumulator.myz = -tensor.m21();
+        return accumulator;
+    }
+
+    public void addPointMass(double x, double y, double z, double addedMass) {
+        if (!hasReference) {
+            hasReference = true;
+            refX = x;
+            refY = y;
+            refZ = z;
+        }
+        double rx = x - refX;
+        double ry = y - refY;
+        double rz = z - refZ;
+        mass += addedMass;
+        mx += rx * addedMass;
+        my += ry * addedMass;
+        mz += rz * addedMass;
+        mxx += rx * rx * addedMass;
+        myy += ry * ry * addedMass;
+        mzz += rz * rz * addedMass;
+        mxy += rx * ry * addedMass;
+        mxz += rx * rz * addedMass;
+        myz += ry * rz * addedMass;
+    }
+
+    /**
+     * Adds addedMass split evenly between the center of a box and its 8 corners, which are offset from the center by
+     * cornerOffset on every axis. The corners are symmetric around the center, so on top of a point mass at the center
+     * they only add 8/9 * addedMass * cornerOffset^2 to each of the sums of m * x * x, m * y * y and m * z * z.
+     */
+    public void addBoxMass(double x, double y, double z, double cornerOffset, double addedMass) {
+        addPointMass(x, y, z, addedMass);
+        double cornerMoment = addedMass * 8 / 9 * cornerOffset * cornerOffset;
+        mxx += cornerMoment;
+        myy += cornerMoment;
+        mzz += cornerMoment;
+    }
+
+    public double getMass() {
+        return mass;
+    }
+
+    /**
+     * Sets the mass, center of mass and inertia tensor of inertiaData to the ones of the masses added so far. If there
+     * is no mass left, the mass is zeroed, the tensor goes back to what it started as, and the center of mass is left
+     * alone.
+     */
+    public void writeTo(ShipInertiaData inertiaData) {
+        if (mass < MIN_MASS) {
+            inertiaData.setGameTickMass(0);
+            inertiaData.setGameMoITensor(new Matrix3d(
+                myy + mzz, -mxy, -mxz,
+                -mxy, mxx + mzz, -myz,
+                -mxz, -myz, mxx + myy));
+            return;
+        }
+        // The center of mass relative to the reference point
+        double cx = mx / mass;
+        double cy = my / mass;
+        double cz = mz / mass;
+        // Moving the moments from the reference point to the center of mass
+        double cxx = mxx - cx * cx * mass;
+        double cyy = myy - cy * cy * mass;
+        double czz = mzz - cz * cz * mass;
+        double cxy = mxy - cx * cy * mass;
+        double cxz = mxz - cx * cz * mass;
+        double cyz = myz - cy * cz * mass;
+
+        inertiaData.setGameTickMass(mass);
+        inertiaData.setGameTickCenterOfMass(new Vector3d(refX + cx, refY + cy, refZ + cz));
+        inertiaData.setGameMoITensor(new Matrix3d(
+            cyy + czz, -cxy, -cxz,
+            -cxy, cxx + czz, -cyz,
+            -cxz, -cyz, cxx + cyy));
+    }
+}
@@ -3,6 +3,7 @@ package org.valkyrienskies.mod.common.ships.ship_world;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Delegate;
+import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.multiplayer.ChunkProviderClient;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.play.server.SPacketUnloadChunk;
@@ -22,16 +23,25 @@ import org.joml.Quaterniondc;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
 import org.valkyrienskies.mod.client.render.PhysObjectRenderManager;
+import org.valkyrienskies.mod.common.collision.ShipCollisionBoxCache;
+import org.valkyrienskies.mod.common.collision.ShipCollisionTask;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.physics.ForceProducerRegistry;
 import org.valkyrienskies.mod.common.physics.IPhysicsBlockController;
 import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
+import org.valkyrienskies.mod.common.physics.RigidBodyStore;
+import org.valkyrienskies.mod.common.physics.ShipSleepTracker;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.block_relocation.MoveBlocks;
 import org.valkyrienskies.mod.common.ships.chunk_claims.ClaimedChunkCacheController;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkPacketCache;
 import org.valkyrienskies.mod.common.ships.chunk_claims.SurroundingChunkCacheController;
+import org.valkyrienskies.mod.common.ships.interpolation.BufferedTransformInterpolator;
 import org.valkyrienskies.mod.common.ships.interpolation.ITransformInterpolator;
-import org.valkyrienskies.mod.common.ships.interpolation.SimpleEMATransformInterpolator;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransformationManager;
+import org.valkyrienskies.mod.common.util.multithreaded.IPhysicsPipelineShip;
+import org.valkyrienskies.mod.common.util.multithreaded.ShipPhysicsProfile;
 import valkyrienwarfare.api.IPhysicsEntity;
 import valkyrienwarfare.api.TransformType;
 
@@ -47,7 +57,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * The heart and soul of this mod, and now its broken lol.
  */
 
-public class PhysicsObject implements IPhysicsEntity {
+public class PhysicsObject implements IPhysicsEntity, IPhysicsPipelineShip<ShipCollisionTask> {
 
     // region Fields
 
@@ -55,6 +65,9 @@ public class PhysicsObject implements IPhysicsEntity {
     private final List<EntityPlayerMP> watchingPlayers;
     private final Set<IPhysicsBlockController> physicsControllers;
     private final Set<IPhysicsBlockController> physicsControllersImmutable;
+    // The force blocks and physics controllers of this ship, as seen by the physics thread
+    @Getter
+    private final ForceProducerRegistry forceProducerRegistry;
     // Used to iterate over the ship blocks extremely quickly by taking advantage of the cache
     @Getter
     private final PhysObjectRenderManager shipRenderer;
@@ -77,6 +90,11 @@ public class PhysicsObject implements IPhysicsEntity {
      */
     @Getter
     private final ClaimedChunkCacheController claimedChunkCache;
+    /**
+     * The collision boxes of the blocks of this ship, for entity collision
+     */
+    @Getter
+    private final ShipCollisionBoxCache collisionBoxCache;
     /**
      * If this PhysicsObject needs to update the collision cache immediately
      */
@@ -101,6 +119,24 @@ public class PhysicsObject implements IPhysicsEntity {
     @Getter
     private final ITransformInterpolator transformInterpolator;
 
+    /**
+     * How long the physics of this ship take, only exists on the server.
+     */
+    @Getter
+    private final ShipPhysicsProfile physicsProfile;
+
+    /**
+     * The chunk data packets sent to players that start watching this ship, only exists on the server.
+     */
+    @Getter
+    private final ShipChunkPacketCache chunkPacketCache;
+
+    /**
+     * Whether the physics thread has put this ship to sleep, and how to wake it up.
+     */
+    @Getter
+    private final ShipSleepTracker sleepTracker;
+
     /**
      * If true, this ship will slowly realign itself with the world, ignoring the normal rules of physics
      */
@@ -134,28 +170,44 @@ public class PhysicsObject implements IPhysicsEntity {
         this.watchingPlayers = new ArrayList<>();
         this.physicsControllers = ConcurrentHashMap.newKeySet();
         this.physicsControllersImmutable = Collections.unmodifiableSet(this.physicsControllers);
+        // Loading the claimed chunks adds their physics controllers, so the registry has to exist first
+        this.forceProducerRegistry = new ForceProducerRegistry(physicsControllersImmutable);
         this.claimedChunkCache = new ClaimedChunkCacheController(this);
+        this.collisionBoxCache = new ShipCollisionBoxCache(this);
         this.cachedSurroundingChunks = new SurroundingChunkCacheController(this);
         this.shipTransformationManager = new ShipTransformationManager(this,
             getShipData().getShipTransform());
         this.physicsCalculations = new PhysicsCalculations(this);
+        this.sleepTracker = new ShipSleepTracker();
         this.shipAligningToGrid = false;
         this.deconstructState = DeconstructState.NOT_DECONSTRUCTING;
         this.needsCollisionCacheUpdate = true;
         // Note how this is last.
         if (world.isRemote) {
             this.shipRenderer = new PhysObjectRenderManager(this, referenceBlockPos);
-            this.transformInterpolator = new SimpleEMATransformInterpolator(initial.getShipTransform(), initial.getShipBB(), .75);
+            this.transformInterpolator = new BufferedTransformInterpolator(initial.getShipTransform(),
+                initial.getShipBB(), VSConfig.SHIP_LOADING_SETTINGS.interpolationDelay);
+            this.physicsProfile = null;
+            this.chunkPacketCache = null;
         } else {
             this.shipRenderer = null;
+            this.physicsProfile = new ShipPhysicsProfile();
+            this.chunkPacketCache = new ShipChunkPacketCache();
             this.getShipTransformationManager()
                 .updateAllTransforms(this.getShipData().getShipTransform(), true, true);
             this.transformInterpolator = null;
+            for (BlockPos forcePos : getShipData().activeForcePositions) {
+                IBlockState forceState = claimedChunkCache.getChunkAt(forcePos.getX() >> 4, forcePos.getZ() >> 4)
+                    .getBlockState(forcePos);
+                forceProducerRegistry.onSetBlockState(forcePos, forceState);
+            }
+            forceProducerRegistry.publishChanges();
         }
     }
 
     void onTick() {
         if (!world.isRemote) {
+            forceProducerRegistry.publishChanges();
             cachedSurroundingChunks.updateChunkCache();
             this.setNeedsCollisionCacheUpdate(true);
 
@@ -203,11 +255,14 @@ public class PhysicsObject implements IPhysicsEntity {
     public void onSetTileEntity(BlockPos pos, TileEntity tileentity) {
         if (tileentity instanceof IPhysicsBlockController) {
             physicsControllers.add((IPhysicsBlockController) tileentity);
+            forceProducerRegistry.onPhysicsControllersChanged();
         }
     }
 
     public void onRemoveTileEntity(BlockPos pos) {
-        physicsControllers.removeIf(next -> next.getNodePos().equals(pos));
+        if (physicsControllers.removeIf(next -> next.getNodePos().equals(pos))) {
+            forceProducerRegistry.onPhysicsControllersChanged();
+        }
     }
 
     // Do not allow anything external to modify the physics controllers Set.
@@ -371,6 +426,46 @@ public class PhysicsObject implements IPhysicsEntity {
         }
     }
 
+    // region Physics Pipeline
+
+    @Override
+    public RigidBodyStore.BodyHandle getBody() {
+        return physicsCalculations.getBody();
+    }
+
+    @Override
+    public void prepareStep(double timeStep) {
+        physicsCalculations.prepareStep(timeStep);
+    }
+
+    @Override
+    public void applyForces() {
+        physicsCalculations.applyForces();
+    }
+
+    @Override
+    public void splitIntoCollisionTasks(List<ShipCollisionTask> toAdd) {
+        physicsCalculations.getWorldCollision().tickUpdatingTheCollisionCache();
+        physicsCalculations.getWorldCollision().splitIntoCollisionTasks(toAdd);
+    }
+
+    @Override
+    public void processCollisionTask(ShipCollisionTask task) {
+        physicsCalculations.getWorldCollision().processCollisionTask(task);
+    }
+
+    @Override
+    public void prepareIntegration() {
+        physicsCalculations.prepareIntegration();
+    }
+
+    @Override
+    public void finishStep() {
+        physicsCalculations.finishStep();
+    }
+
+    // endregion
+
     @Getter
     public enum DeconstructState {
         NOT_DECONSTRUCTING(false, false, false),
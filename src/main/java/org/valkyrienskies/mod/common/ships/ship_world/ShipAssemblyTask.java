@@ -0,0 +1,377 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import lombok.Getter;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.network.play.server.SPacketChunkData;
+import net.minecraft.server.management.PlayerChunkMapEntry;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.physics.BlockPhysicsDetails;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.block_relocation.BlockFinder;
+import org.valkyrienskies.mod.common.ships.block_relocation.BlockStateSnapshot;
+import org.valkyrienskies.mod.common.ships.block_relocation.IRelocationAwareTile;
+import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
+import org.valkyrienskies.mod.common.ships.physics_data.BasicCenterOfMassProvider;
+import org.valkyrienskies.mod.common.ships.physics_data.IPhysicsObjectCenterOfMassProvider;
+import org.valkyrienskies.mod.common.ships.physics_data.InertiaMomentAccumulator;
+import org.valkyrienskies.mod.common.util.SectionKeys;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Turns the blocks connected to a physics infuser into a ship, over as many ticks as it takes.
+ * <p>
+ * Finding the blocks and building the ship chunk sections runs on a worker thread, against a {@link BlockStateSnapshot}
+ * of the world. The snapshot starts out with the sections around the infuser. The detector skips the blocks of
+ * sections that aren't in the snapshot yet, then the game thread copies those sections and the detector carries on
+ * from where it stopped. Only copying sections and the final commit run on the game thread. The commit is never split
+ * across ticks, so players never see a half moved ship. If any block the detector read changed since it was copied,
+ * the blocks found are stale, and the task starts over with a new snapshot.
+ * <p>
+ * Only {@link #tick()} may be called, and only from the game thread.
+ */
+class ShipAssemblyTask {
+
+    // How many times the world may change under the task before giving up
+    private static final int MAX_ATTEMPTS = 3;
+    // Detections run here rather than on the common pool, which parallel streams and other mods use too
+    private static ExecutorService executor = null;
+
+    private final WorldServerShipManager manager;
+    private final WorldServer world;
+    private final BlockPos physicsInfuserPos;
+    @Getter
+    private final ShipData toSpawn;
+    private final BlockFinder.BlockFinderType blockFinderType;
+    private BlockStateSnapshot snapshot;
+    // The detection running on the worker thread, null if there isn't one
+    private CompletableFuture<DetectionResult> detection;
+    private int attempts;
+
+    ShipAssemblyTask(@Nonnull WorldServerShipManager manager, @Nonnull ShipData toSpawn,
+        @Nonnull BlockPos physicsInfuserPos, @Nonnull BlockFinder.BlockFinderType blockFinderType) {
+        this.manager = manager;
+        this.world = manager.getWorld();
+        this.physicsInfuserPos = physicsInfuserPos;
+        this.toSpawn = toSpawn;
+        this.blockFinderType = blockFinderType;
+        this.snapshot = null;
+        this.detection = null;
+        this.attempts = 0;
+    }
+
+    enum Status {
+        RUNNING, FAILED, ASSEMBLED
+    }
+
+    /**
+     * Does the game thread work of this task, if there's any to do.
+     *
+     * @return ASSEMBLED once the blocks have been moved into the ship chunks, and the ship is ready to be loaded.
+     */
+    Status tick() {
+        if (snapshot == null) {
+            // Start with the sections around the infuser, small ships never need more than that
+            snapshot = new BlockStateSnapshot(world, physicsInfuserPos);
+            int sectionX = physicsInfuserPos.getX() >> 4;
+            int sectionY = physicsInfuserPos.getY() >> 4;
+            int sectionZ = physicsInfuserPos.getZ() >> 4;
+            for (int y = Math.max(0, sectionY - 1); y <= Math.min(15, sectionY + 1); y++) {
+                for (int x = sectionX - 1; x <= sectionX + 1; x++) {
+                    for (int z = sectionZ - 1; z <= sectionZ + 1; z++) {
+                        snapshot.copySection(x, y, z);
+                    }
+                }
+            }
+            startDetection(null);
+            return Status.RUNNING;
+        }
+        if (!detection.isDone()) {
+            return Status.RUNNING;
+        }
+
+        final DetectionResult result;
+        try {
+            result = detection.join();
+        } catch (Exception e) {
+            System.err.println("Failed to assemble " + toSpawn);
+            e.printStackTrace();
+            return Status.FAILED;
+        }
+        detection = null;
+
+        if (result.shipInvalid) {
+            System.err.println("Ship too big or bedrock detected!");
+            return Status.FAILED;
+        }
+        if (result.missingSections != null) {
+            // The detector got to the edge of the snapshot, copy what it needs and let it carry on
+            for (long sectionKey : result.missingSections) {
+                snapshot.copySection(SectionKeys.getSectionX(sectionKey),
+                    SectionKeys.getSectionY(sectionKey), SectionKeys.getSectionZ(sectionKey));
+            }
+            startDetection(result.detector);
+            return Status.RUNNING;
+        }
+        if (!isSnapshotStillValid(result.detector)) {
+            attempts++;
+            if (attempts >= MAX_ATTEMPTS) {
+                System.err.println("Gave up assembling " + toSpawn + ", its blocks keep changing");
+                return Status.FAILED;
+            }
+            snapshot = null;
+            return Status.RUNNING;
+        }
+        commit(result);
+        return Status.ASSEMBLED;
+    }
+
+    /**
+     * @param toResume The detector to carry on with, null to start a new one.
+     */
+    private void startDetection(@Nullable SpatialDetector toResume) {
+        // Everything the worker reads has to be read now, on the game thread
+        final BlockStateSnapshot detectionSnapshot = snapshot;
+        final BlockPos centerDifference = toSpawn.getChunkClaim().getRegionCenter().subtract(physicsInfuserPos);
+        final InertiaMomentAccumulator inertiaAccumulator =
+            InertiaMomentAccumulator.fromInertiaData(toSpawn.getInertiaData());
+        if (VSConfig.showAnnoyingDebugOutput) {
+            System.out.println("Attempting to spawn " + toSpawn + " on the thread " + Thread.currentThread().getName());
+        }
+        detection = CompletableFuture.supplyAsync(
+            () -> detect(detectionSnapshot, toResume, centerDifference, inertiaAccumulator), getExecutor());
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "VS Ship Assembler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Runs on the worker thread, must not touch the world.
+     */
+    private DetectionResult detect(BlockStateSnapshot detectionSnapshot, @Nullable SpatialDetector toResume,
+        BlockPos centerDifference, InertiaMomentAccumulator inertiaAccumulator) {
+        final SpatialDetector detector;
+        if (toResume == null) {
+            detector = BlockFinder.getBlockFinderFor(blockFinderType, physicsInfuserPos, world, detectionSnapshot,
+                VSConfig.maxDetectedShipSize + 1, true);
+        } else {
+            detector = toResume;
+            detector.resumeDetection();
+        }
+
+        final DetectionResult result = new DetectionResult();
+        result.detector = detector;
+        // Bedrock or too many blocks stay that way no matter how much more of the world the detector gets to see
+        if (detector.foundSet.size() > VSConfig.maxDetectedShipSize || detector.cleanHouse) {
+            result.shipInvalid = true;
+            return result;
+        }
+        if (detector.isIncomplete()) {
+            result.missingSections = detectionSnapshot.getMissingSections().toArray();
+            return result;
+        }
+
+        result.foundHashes = detector.foundSet.toArray();
+        result.foundStates = new IBlockState[result.foundHashes.length];
+        result.centerDifference = centerDifference;
+        result.shipSections = new TLongObjectHashMap<>();
+        result.activeForcePositions = new ArrayList<>();
+        result.inertiaAccumulator = inertiaAccumulator;
+
+        final IPhysicsObjectCenterOfMassProvider centerOfMassProvider = new BasicCenterOfMassProvider();
+        final MutableBlockPos srcLocationPos = new MutableBlockPos();
+        final MutableBlockPos pasteLocationPos = new MutableBlockPos();
+        for (int i = 0; i < result.foundHashes.length; i++) {
+            SpatialDetector.setPosWithRespectTo(result.foundHashes[i], physicsInfuserPos, srcLocationPos);
+            pasteLocationPos.setPos(srcLocationPos.getX() + centerDifference.getX(),
+                srcLocationPos.getY() + centerDifference.getY(), srcLocationPos.getZ() + centerDifference.getZ());
+            IBlockState srcState = detectionSnapshot.getBlockState(srcLocationPos);
+            result.foundStates[i] = srcState;
+
+            // The Chunk itself can't be made here, creating one fires a forge event. The sections can.
+            long newChunkPosLong = ChunkPos.asLong(pasteLocationPos.getX() >> 4, pasteLocationPos.getZ() >> 4);
+            ExtendedBlockStorage[] newChunkSections = result.shipSections.get(newChunkPosLong);
+            if (newChunkSections == null) {
+                newChunkSections = new ExtendedBlockStorage[16];
+                result.shipSections.put(newChunkPosLong, newChunkSections);
+            }
+            int newChunkStorageIndex = pasteLocationPos.getY() >> 4;
+            if (newChunkSections[newChunkStorageIndex] == Chunk.NULL_BLOCK_STORAGE) {
+                newChunkSections[newChunkStorageIndex] = new ExtendedBlockStorage(newChunkStorageIndex << 4, true);
+            }
+            newChunkSections[newChunkStorageIndex]
+                .set(pasteLocationPos.getX() & 15, pasteLocationPos.getY() & 15, pasteLocationPos.getZ() & 15,
+                    srcState);
+
+            if (BlockPhysicsDetails.isBlockProvidingForce(srcState)) {
+                result.activeForcePositions.add(pasteLocationPos.toImmutable());
+            }
+            centerOfMassProvider.onSetBlockState(inertiaAccumulator, pasteLocationPos, Blocks.AIR.getDefaultState(),
+                srcState);
+        }
+        return result;
+    }
+
+    /**
+     * @return True if every block the detector read, the blocks found as well as the blocks next to them, still has
+     * the same state in the world as it had in the snapshot. A block placed next to the ship since it was copied
+     * would otherwise be left behind.
+     */
+    private boolean isSnapshotStillValid(SpatialDetector detector) {
+        final MutableBlockPos srcLocationPos = new MutableBlockPos();
+        return detector.forEachCheckedBlock(hash -> {
+            SpatialDetector.setPosWithRespectTo(hash, physicsInfuserPos, srcLocationPos);
+            Chunk chunk = world.getChunk(srcLocationPos);
+            ExtendedBlockStorage storage = chunk.storageArrays[srcLocationPos.getY() >> 4];
+            IBlockState worldState = storage == Chunk.NULL_BLOCK_STORAGE ? Blocks.AIR.getDefaultState()
+                : storage.get(srcLocationPos.getX() & 15, srcLocationPos.getY() & 15, srcLocationPos.getZ() & 15);
+            return worldState == snapshot.getBlockState(srcLocationPos);
+        });
+    }
+
+    /**
+     * Moves the blocks found into the ship chunks, all in this tick.
+     */
+    private void commit(DetectionResult result) {
+        // Only the chunks that end up with ship blocks in them are claimed, more are claimed on demand by
+        // claimChunkOnDemand() when blocks are placed in them. Always claim the center, it's how we find the ship
+        // that owns a region of the shipyard.
+        ChunkPos centerPos = toSpawn.getChunkClaim().getCenterPos();
+        toSpawn.getChunkClaim().addChunkClaim(centerPos.x, centerPos.z);
+
+        // First, put the sections built by the worker into new chunks
+        TLongObjectHashMap<Chunk> copiedChunksMap = new TLongObjectHashMap<>();
+        TLongObjectIterator<ExtendedBlockStorage[]> sectionsIterator = result.shipSections.iterator();
+        while (sectionsIterator.hasNext()) {
+            sectionsIterator.advance();
+            int newChunkX = (int) sectionsIterator.key();
+            int newChunkZ = (int) (sectionsIterator.key() >> 32);
+            Chunk newChunk = new Chunk(world, newChunkX, newChunkZ);
+            ExtendedBlockStorage[] newChunkSections = sectionsIterator.value();
+            for (int i = 0; i < newChunkSections.length; i++) {
+                if (newChunkSections[i] != Chunk.NULL_BLOCK_STORAGE) {
+                    newChunk.storageArrays[i] = newChunkSections[i];
+                }
+            }
+            copiedChunksMap.put(sectionsIterator.key(), newChunk);
+            toSpawn.getChunkClaim().addChunkClaim(newChunkX, newChunkZ);
+        }
+
+        // Then copy the tiles and delete the copied blocks from the old chunks. The sections that changed in every
+        // old chunk are sent to the players at the end, instead of sending them every block that changed.
+        TLongIntHashMap changedSectionMasks = new TLongIntHashMap();
+        MutableBlockPos srcLocationPos = new MutableBlockPos();
+        MutableBlockPos pasteLocationPos = new MutableBlockPos();
+        BlockPos centerDifference = result.centerDifference;
+        for (int i = 0; i < result.foundHashes.length; i++) {
+            SpatialDetector.setPosWithRespectTo(result.foundHashes[i], physicsInfuserPos, srcLocationPos);
+            pasteLocationPos.setPos(srcLocationPos.getX() + centerDifference.getX(),
+                srcLocationPos.getY() + centerDifference.getY(), srcLocationPos.getZ() + centerDifference.getZ());
+            IBlockState srcState = result.foundStates[i];
+
+            toSpawn.blockPositions.add(pasteLocationPos.getX(), pasteLocationPos.getY(), pasteLocationPos.getZ());
+
+            boolean hasTile = srcState.getBlock().hasTileEntity(srcState);
+            if (hasTile) {
+                TileEntity srcTile = world.getTileEntity(srcLocationPos);
+                if (srcTile != null) {
+                    TileEntity pasteTile;
+                    if (srcTile instanceof IRelocationAwareTile) {
+                        pasteTile = ((IRelocationAwareTile) srcTile).createRelocatedTile(pasteLocationPos, toSpawn);
+                    } else {
+                        NBTTagCompound tileEntNBT = srcTile.writeToNBT(new NBTTagCompound());
+                        // Change the block position to be inside of the Ship
+                        tileEntNBT.setInteger("x", pasteLocationPos.getX());
+                        tileEntNBT.setInteger("y", pasteLocationPos.getY());
+                        tileEntNBT.setInteger("z", pasteLocationPos.getZ());
+                        pasteTile = TileEntity.create(world, tileEntNBT);
+                    }
+                    copiedChunksMap.get(ChunkPos.asLong(pasteLocationPos.getX() >> 4, pasteLocationPos.getZ() >> 4))
+                        .addTileEntity(pasteTile);
+                }
+            }
+
+            Chunk chunkToSet = world.getChunk(srcLocationPos);
+            int storageIndex = srcLocationPos.getY() >> 4;
+            chunkToSet.storageArrays[storageIndex]
+                .set(srcLocationPos.getX() & 15, srcLocationPos.getY() & 15, srcLocationPos.getZ() & 15,
+                    Blocks.AIR.getDefaultState());
+            if (hasTile) {
+                world.removeTileEntity(srcLocationPos);
+                // A chunk data packet doesn't remove the tile entities the client already has, a block change does
+                world.notifyBlockUpdate(srcLocationPos, srcState, Blocks.AIR.getDefaultState(), 3);
+            }
+            long chunkPosLong = ChunkPos.asLong(chunkToSet.x, chunkToSet.z);
+            changedSectionMasks.put(chunkPosLong, changedSectionMasks.get(chunkPosLong) | (1 << storageIndex));
+        }
+
+        TLongIntIterator masksIterator = changedSectionMasks.iterator();
+        while (masksIterator.hasNext()) {
+            masksIterator.advance();
+            int chunkX = (int) masksIterator.key();
+            int chunkZ = (int) (masksIterator.key() >> 32);
+            Chunk chunk = world.getChunk(chunkX, chunkZ);
+            chunk.markDirty();
+            PlayerChunkMapEntry entry = world.getPlayerChunkMap().getEntry(chunkX, chunkZ);
+            if (entry != null) {
+                entry.sendPacket(new SPacketChunkData(chunk, masksIterator.value()));
+            }
+        }
+
+        for (BlockPos forcePos : result.activeForcePositions) {
+            toSpawn.activeForcePositions.add(forcePos);
+        }
+        result.inertiaAccumulator.writeTo(toSpawn.getInertiaData());
+
+        // Then inject the ship chunks into the world
+        toSpawn.getChunkClaim().forEach((x, z) -> {
+            Chunk chunk = copiedChunksMap.get(ChunkPos.asLong(x, z));
+            manager.injectChunkIntoWorldServer(chunk != null ? chunk : new Chunk(world, x, z), x, z);
+        });
+    }
+
+    private static class DetectionResult {
+
+        // Handed back and forth between the game thread and the worker, which carries on with it
+        SpatialDetector detector;
+        // The ship can't be made, because it's too big or touches bedrock
+        boolean shipInvalid;
+        // The sections the detector skipped because they weren't in the snapshot, null if there weren't any
+        long[] missingSections;
+        // The blocks found, as SpatialDetector hashes, and their states in the snapshot
+        int[] foundHashes;
+        IBlockState[] foundStates;
+        BlockPos centerDifference;
+        // The sections of the new ship chunks, by chunk position
+        TLongObjectHashMap<ExtendedBlockStorage[]> shipSections;
+        List<BlockPos> activeForcePositions;
+        InertiaMomentAccumulator inertiaAccumulator;
+    }
+}
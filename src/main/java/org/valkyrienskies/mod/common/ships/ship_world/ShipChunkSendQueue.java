@@ -0,0 +1,169 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.play.server.SPacketUnloadChunk;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.network.ShipIndexDataMessage;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkPacketCache;
+
+import java.util.*;
+
+/**
+ * Sends the chunks of ships to the players that started watching them, a few chunks per player per tick, using the
+ * packets in {@link ShipChunkPacketCache}. Each player gets their ships one after the other, and is only told to load
+ * a ship once they have all of its chunks.
+ * <p>
+ * Players aren't in {@link PhysicsObject#getWatchingPlayers()} until their ship is loaded, so they don't get block
+ * updates for chunks they don't have. Instead, right before telling a player to load a ship, every chunk that changed
+ * since it was sent to them is sent again.
+ */
+class ShipChunkSendQueue {
+
+    private final WorldServer world;
+    private final Map<EntityPlayerMP, Deque<PendingShip>> playerQueues;
+
+    ShipChunkSendQueue(WorldServer world) {
+        this.world = world;
+        this.playerQueues = new HashMap<>();
+    }
+
+    void queueShip(EntityPlayerMP player, PhysicsObject ship) {
+        playerQueues.computeIfAbsent(player, k -> new ArrayDeque<>()).add(new PendingShip(ship));
+    }
+
+    /**
+     * @return True if player is still waiting for the chunks of ship.
+     */
+    boolean isPending(EntityPlayerMP player, ShipData ship) {
+        Deque<PendingShip> queue = playerQueues.get(player);
+        if (queue == null) {
+            return false;
+        }
+        for (PendingShip pending : queue) {
+            if (pending.ship.getShipData() == ship) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops sending ship to player, and unloads the chunks they already got.
+     *
+     * @return True if the ship was pending, in which case the player was never told to load it.
+     */
+    boolean cancel(EntityPlayerMP player, ShipData ship) {
+        Deque<PendingShip> queue = playerQueues.get(player);
+        if (queue == null) {
+            return false;
+        }
+        Iterator<PendingShip> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            PendingShip pending = iterator.next();
+            if (pending.ship.getShipData() == ship) {
+                iterator.remove();
+                pending.sentVersions.forEachKey(chunkLong -> {
+                    player.connection.sendPacket(new SPacketUnloadChunk((int) chunkLong, (int) (chunkLong >> 32)));
+                    return true;
+                });
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends this tick's chunks, and adds the ships players now have all the chunks of to their packet. Players that
+     * aren't in packets anymore are forgotten.
+     */
+    void sendChunks(Map<EntityPlayerMP, ShipIndexDataMessage> packets) {
+        playerQueues.keySet().retainAll(packets.keySet());
+        final long worldTime = world.getTotalWorldTime();
+        for (Map.Entry<EntityPlayerMP, Deque<PendingShip>> entry : playerQueues.entrySet()) {
+            final EntityPlayerMP player = entry.getKey();
+            final Deque<PendingShip> queue = entry.getValue();
+            int budget = VSConfig.SHIP_LOADING_SETTINGS.chunksSentPerTick;
+            while (!queue.isEmpty()) {
+                final PendingShip pending = queue.peek();
+                if (pending.toSend.isEmpty()) {
+                    pending.findChunksToSend();
+                }
+                budget -= pending.sendChunks(player, budget, worldTime);
+                if (!pending.toSend.isEmpty()) {
+                    break;
+                }
+                // Nothing can change between sending the last chunk and this check, unless the claim grew
+                pending.findChunksToSend();
+                if (!pending.toSend.isEmpty()) {
+                    break;
+                }
+                queue.poll();
+                packets.get(player).addLoadUUID(pending.ship.getShipData().getUuid());
+            }
+        }
+        playerQueues.values().removeIf(Collection::isEmpty);
+    }
+
+    private class PendingShip {
+
+        final PhysicsObject ship;
+        // The version of each chunk when it was sent
+        final TLongIntMap sentVersions;
+        final TLongList toSend;
+
+        PendingShip(PhysicsObject ship) {
+            this.ship = ship;
+            this.sentVersions = new TLongIntHashMap();
+            this.toSend = new TLongArrayList();
+        }
+
+        /**
+         * Finds the claimed chunks that weren't sent yet, or that changed since they were sent.
+         */
+        void findChunksToSend() {
+            final ShipChunkPacketCache packetCache = ship.getChunkPacketCache();
+            for (Chunk chunk : ship.getClaimedChunkCache()) {
+                final long chunkLong = ChunkPos.asLong(chunk.x, chunk.z);
+                if (!sentVersions.containsKey(chunkLong)
+                    || sentVersions.get(chunkLong) != packetCache.getVersion(chunk.x, chunk.z)) {
+                    toSend.add(chunkLong);
+                }
+            }
+        }
+
+        /**
+         * Sends up to maxChunks of toSend.
+         *
+         * @return How many chunks were sent
+         */
+        int sendChunks(EntityPlayerMP player, int maxChunks, long worldTime) {
+            final ShipChunkPacketCache packetCache = ship.getChunkPacketCache();
+            int sent = 0;
+            while (!toSend.isEmpty() && sent < maxChunks) {
+                final long chunkLong = toSend.removeAt(toSend.size() - 1);
+                final int chunkX = (int) chunkLong;
+                final int chunkZ = (int) (chunkLong >> 32);
+                if (!ship.getChunkClaim().containsChunk(chunkX, chunkZ)) {
+                    continue;
+                }
+                final Chunk chunk = ship.getClaimedChunkCache().getChunkAt(chunkX, chunkZ);
+                if (chunk == null) {
+                    continue;
+                }
+                player.connection.sendPacket(packetCache.getPacket(chunk, worldTime));
+                world.getEntityTracker().sendLeashedEntitiesInChunk(player, chunk);
+                sentVersions.put(chunkLong, packetCache.getVersion(chunkX, chunkZ));
+                sent++;
+            }
+            return sent;
+        }
+    }
+}
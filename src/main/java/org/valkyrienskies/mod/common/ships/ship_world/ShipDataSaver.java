@@ -0,0 +1,151 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+import org.valkyrienskies.mod.common.ships.QueryableShipData;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.util.cqengine.ConcurrentUpdatableIndexedCollection;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Saves the ships of a world to a {@link ShipRecordFile}, one record per ship.
+ * <p>
+ * Ships are marked dirty by the update listeners of {@link QueryableShipData}, which run when a ship is added,
+ * removed or changed. Saving only copies the dirty ships on the game thread, and the copies are encoded and written
+ * by a background thread. Ships that haven't changed since the last save aren't encoded or written at all.
+ */
+@Log4j2
+public class ShipDataSaver {
+
+    // Shared by every world, so saves of all worlds are written one after another
+    private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "VS Ship Saving Thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final QueryableShipData ships;
+    // Only used by the save thread once saving starts
+    private final ShipRecordFile recordFile;
+    private final ObjectMapper mapper;
+    private final Set<UUID> dirtyShips;
+    // Only used by the game thread
+    private CompletableFuture<Void> lastSave;
+
+    public ShipDataSaver(@Nonnull QueryableShipData ships, @Nonnull ShipRecordFile recordFile,
+        @Nonnull ObjectMapper mapper) {
+        this.ships = ships;
+        this.recordFile = recordFile;
+        this.mapper = mapper;
+        this.dirtyShips = ConcurrentHashMap.newKeySet();
+        this.lastSave = CompletableFuture.completedFuture(null);
+
+        ships.registerUpdateListener((removed, added) -> {
+            removed.forEach(ship -> dirtyShips.add(ship.getUuid()));
+            added.forEach(ship -> dirtyShips.add(ship.getUuid()));
+        });
+    }
+
+    /**
+     * Reads every ship in recordFile.
+     *
+     * @throws IOException If the file is corrupt, or a ship can't be decoded.
+     */
+    @Nonnull
+    public static QueryableShipData load(@Nonnull ShipRecordFile recordFile, @Nonnull ObjectMapper mapper)
+        throws IOException {
+        final Map<UUID, byte[]> records = recordFile.readAll();
+        final List<ShipData> loaded = new ArrayList<>(records.size());
+        for (byte[] record : records.values()) {
+            loaded.add(mapper.readValue(record, ShipData.class));
+        }
+        final ConcurrentUpdatableIndexedCollection<ShipData> allShips = new ConcurrentUpdatableIndexedCollection<>();
+        allShips.addAll(loaded, true);
+        return new QueryableShipData(allShips);
+    }
+
+    /**
+     * Makes the next save write every ship, and remove every ship in the record file that isn't in the world. Used
+     * when the record file may not match the ships, like the first time a world is saved in this format.
+     */
+    public void markAllDirty() {
+        waitForSaves();
+        ships.forEach(ship -> dirtyShips.add(ship.getUuid()));
+        dirtyShips.addAll(recordFile.getShipIds());
+    }
+
+    /**
+     * Copies the ships that changed since the last save, and saves the copies on the save thread. Must be called on
+     * the game thread.
+     */
+    public void save() {
+        if (dirtyShips.isEmpty()) {
+            return;
+        }
+        final long startTime = System.nanoTime();
+        final List<UUID> saved = new ArrayList<>(dirtyShips.size());
+        final Map<UUID, ShipData> changed = new HashMap<>();
+        final List<UUID> removed = new ArrayList<>();
+        // Ships can still be marked dirty while we do this, those just get saved next time
+        final Iterator<UUID> iterator = dirtyShips.iterator();
+        while (iterator.hasNext()) {
+            final UUID uuid = iterator.next();
+            iterator.remove();
+            saved.add(uuid);
+            final Optional<ShipData> ship = ships.getShip(uuid);
+            if (ship.isPresent()) {
+                changed.put(uuid, ship.get().copyForSaving());
+            } else {
+                removed.add(uuid);
+            }
+        }
+        log.debug("Copied {} changed ships for saving in {} ms, {} ships were removed", changed.size(),
+            (System.nanoTime() - startTime) / 1e6, removed.size());
+
+        lastSave = lastSave.thenRunAsync(() -> write(changed, removed), SAVE_EXECUTOR)
+            .exceptionally(throwable -> {
+                log.error("Failed to save " + saved.size() + " ships, trying again next save", throwable);
+                dirtyShips.addAll(saved);
+                return null;
+            });
+    }
+
+    private void write(Map<UUID, ShipData> changed, List<UUID> removed) {
+        final long startTime = System.nanoTime();
+        final Map<UUID, byte[]> encoded = new HashMap<>();
+        long bytes = 0;
+        try {
+            for (Map.Entry<UUID, ShipData> entry : changed.entrySet()) {
+                final byte[] record = mapper.writeValueAsBytes(entry.getValue());
+                encoded.put(entry.getKey(), record);
+                bytes += record.length;
+            }
+            recordFile.write(encoded, removed);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.debug("Saving {} ships took {} ms. Wrote {} KB, the ship file is now {} KB.", changed.size(),
+            (System.nanoTime() - startTime) / 1e6, bytes / 1024, recordFile.getFileLength() / 1024);
+    }
+
+    /**
+     * Blocks until everything saved so far is on disk. Must be called on the game thread.
+     */
+    public void waitForSaves() {
+        lastSave.join();
+    }
+}
@@ -0,0 +1,105 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import lombok.Getter;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.gen.ChunkProviderServer;
+import org.valkyrienskies.mod.common.ships.ShipData;
+
+import javax.annotation.Nonnull;
+import java.util.UUID;
+
+/**
+ * Loads the claimed chunks of a ship ahead of creating its {@link PhysicsObject}, so the game thread doesn't have to
+ * read them from disk all at once.
+ * <p>
+ * The chunks are requested through {@link ChunkProviderServer#loadChunk(int, int, Runnable)}, which reads and decodes
+ * them on the Forge chunk IO thread. Forge runs the callbacks on the game thread once each chunk has been added to the
+ * world, or right away if the chunk was already loaded or has never been saved. The ship is ready once every callback
+ * has run.
+ * <p>
+ * Only the game thread may use this class.
+ */
+class ShipLoadTask {
+
+    // Forge always runs the callbacks, but give up waiting on them eventually. Creating the PhysicsObject loads any
+    // chunk that's still missing.
+    private static final int MAX_WAIT_TICKS = 200;
+
+    @Getter
+    private final UUID shipID;
+    private final long startNanos;
+    private int chunksLoading;
+    // Nanos when the ship was first required, or -1 if it's only being loaded in the background
+    private long requiredNanos;
+    private int ticksRequired;
+    // Cleared before every tick, the task is dropped if it wasn't requested again
+    private boolean requested;
+
+    ShipLoadTask(@Nonnull ChunkProviderServer chunkProvider, @Nonnull ShipData toLoad) {
+        this.shipID = toLoad.getUuid();
+        this.startNanos = System.nanoTime();
+        this.requiredNanos = -1;
+        this.ticksRequired = 0;
+        this.requested = true;
+        this.chunksLoading = toLoad.getChunkClaim().getClaimedChunks().size();
+        for (ChunkPos chunkPos : toLoad.getChunkClaim()) {
+            chunkProvider.loadChunk(chunkPos.x, chunkPos.z, () -> chunksLoading--);
+        }
+    }
+
+    /**
+     * Marks this ship as needed this tick. Required ships are created as soon as their chunks are loaded, background
+     * ones only keep their chunks loaded.
+     */
+    void request(boolean required) {
+        requested = true;
+        if (required && requiredNanos == -1) {
+            requiredNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called once every tick, before the ships are requested.
+     *
+     * @return True if this task wasn't requested last tick, and should be cancelled.
+     */
+    boolean startTick() {
+        if (!requested) {
+            return true;
+        }
+        requested = false;
+        if (requiredNanos != -1) {
+            ticksRequired++;
+        }
+        return false;
+    }
+
+    boolean isRequired() {
+        return requiredNanos != -1;
+    }
+
+    /**
+     * @return True if this ship is required and every claimed chunk is in the world, or waited on for too long.
+     */
+    boolean isReadyToFinish() {
+        return isRequired() && (chunksLoading <= 0 || ticksRequired > MAX_WAIT_TICKS);
+    }
+
+    boolean isMissingChunks() {
+        return chunksLoading > 0;
+    }
+
+    /**
+     * @return How long the ship has been required for, the load latency players see.
+     */
+    long getRequiredNanos(long now) {
+        return now - requiredNanos;
+    }
+
+    /**
+     * @return How long since the chunks of the ship started loading, including any time spent in the background.
+     */
+    long getTotalNanos(long now) {
+        return now - startNanos;
+    }
+}
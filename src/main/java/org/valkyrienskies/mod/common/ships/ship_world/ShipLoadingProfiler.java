@@ -0,0 +1,85 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import lombok.Getter;
+import org.valkyrienskies.mod.common.util.datastructures.TimeHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps histograms of how long it takes {@link WorldServerShipManager} to load ships. Only the game thread may use
+ * this class.
+ */
+public class ShipLoadingProfiler {
+
+    // From when a player got close enough to need the ship, until its PhysicsObject was created
+    @Getter
+    private final TimeHistogram latencyHistogram;
+    // From when the chunks of the ship started loading, which may have been in the background
+    @Getter
+    private final TimeHistogram totalHistogram;
+    // The time the game thread spent creating the PhysicsObject
+    @Getter
+    private final TimeHistogram finishHistogram;
+    // How many times a ship that was ready to be created had to wait for the next tick because of the budget
+    @Getter
+    private long deferredCount;
+    // How many ships were created before all their chunks were loaded
+    @Getter
+    private long timedOutCount;
+    @Getter
+    private long cancelledCount;
+
+    public ShipLoadingProfiler() {
+        this.latencyHistogram = new TimeHistogram();
+        this.totalHistogram = new TimeHistogram();
+        this.finishHistogram = new TimeHistogram();
+        reset();
+    }
+
+    void recordLoad(long latencyNanos, long totalNanos, long finishNanos, boolean timedOut) {
+        latencyHistogram.record(latencyNanos);
+        totalHistogram.record(totalNanos);
+        finishHistogram.record(finishNanos);
+        if (timedOut) {
+            timedOutCount++;
+        }
+    }
+
+    void recordDeferred(int ships) {
+        deferredCount += ships;
+    }
+
+    void recordCancelled() {
+        cancelledCount++;
+    }
+
+    public void reset() {
+        latencyHistogram.reset();
+        totalHistogram.reset();
+        finishHistogram.reset();
+        deferredCount = 0;
+        timedOutCount = 0;
+        cancelledCount = 0;
+    }
+
+    /**
+     * @return A human readable report, one line per list element.
+     */
+    public List<String> getReportLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("Ships loaded: %d, cancelled: %d, created before their chunks loaded: %d",
+            latencyHistogram.getCount(), cancelledCount, timedOutCount));
+        lines.add("  Load latency: " + formatHistogram(latencyHistogram));
+        lines.add("  Including background loading: " + formatHistogram(totalHistogram));
+        lines.add("  Game thread time: " + formatHistogram(finishHistogram));
+        lines.add(String.format("Ship loads deferred to the next tick: %d", deferredCount));
+        return lines;
+    }
+
+    private static String formatHistogram(TimeHistogram histogram) {
+        return String.format("mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms", histogram.getMeanNanos() / 1E6,
+            histogram.getPercentileNanos(50) / 1E6, histogram.getPercentileNanos(99) / 1E6,
+            histogram.getMaxNanos() / 1E6);
+    }
+}
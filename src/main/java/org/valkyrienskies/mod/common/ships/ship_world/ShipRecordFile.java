@@ -0,0 +1,502 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import lombok.extern.log4j.Log4j2;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the encoded data of every ship in a world as separate records, so saving only has to write the ships that
+ * changed instead of every ship.
+ * <p>
+ * The data file is append only. Changing a ship appends a new record for it and removing a ship appends an empty
+ * record, so the last record of a ship is the one that counts. Once more than half of the file is old records, the
+ * next write compacts it into a new data file with only the latest records. The index file has the location of the
+ * latest record of each ship. It's rewritten after every write, but it's only a shortcut: records appended after it
+ * was written are found by reading the rest of the data file, and if it's missing, broken or was written for another
+ * data file, the whole data file is read instead.
+ * <pre>
+ * Data file:
+ *     int    DATA_MAGIC
+ *     int    FORMAT_VERSION
+ *     long   random id of this data file, compacting makes a new one
+ *     For each record:
+ *         long   most significant bits of the ship UUID
+ *         long   least significant bits of the ship UUID
+ *         int    length of the ship data, or -1 if the ship was removed
+ *         byte[] the ship data
+ *         int    CRC32 of everything above in the record
+ *
+ * Index file:
+ *     int    INDEX_MAGIC
+ *     int    FORMAT_VERSION
+ *     long   id of the data file
+ *     long   length of the data file when the index was written
+ *     int    number of ships
+ *     For each ship:
+ *         long   most significant bits of the ship UUID
+ *         long   least significant bits of the ship UUID
+ *         long   offset of its latest record in the data file
+ *         int    length of its data
+ *     int    CRC32 of everything above
+ * </pre>
+ * Not thread safe, only one thread at a time should use this.
+ */
+@Log4j2
+public class ShipRecordFile {
+
+    public static final int FORMAT_VERSION = 1;
+    private static final int DATA_MAGIC = 0x56535244; // VSRD
+    private static final int INDEX_MAGIC = 0x56535249; // VSRI
+    private static final int DATA_HEADER_SIZE = 4 + 4 + 8;
+    private static final int RECORD_HEADER_SIZE = 8 + 8 + 4;
+    private static final int RECORD_OVERHEAD = RECORD_HEADER_SIZE + 4;
+    private static final int INDEX_HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int INDEX_ENTRY_SIZE = 8 + 8 + 8 + 4;
+    private static final int REMOVED = -1;
+    // Don't bother compacting files smaller than this, no matter how much of them is old records
+    private static final long MIN_COMPACT_SIZE = 1 << 20;
+
+    private final File dataFile;
+    private final File indexFile;
+    private final Map<UUID, RecordLocation> locations;
+    private long fileId;
+    private long fileLength;
+    // The part of fileLength that is the latest record of some ship, everything else is garbage
+    private long liveBytes;
+
+    /**
+     * Opens the record file in directory, or creates it once something is written if there isn't one.
+     *
+     * @throws IOException If the data file exists but can't be read.
+     */
+    public ShipRecordFile(@Nonnull File directory) throws IOException {
+        this.dataFile = new File(directory, "ships.dat");
+        this.indexFile = new File(directory, "ships.idx");
+        this.locations = new HashMap<>();
+        this.fileId = 0;
+        this.fileLength = 0;
+        this.liveBytes = 0;
+        if (dataFile.isFile()) {
+            openExisting();
+        }
+    }
+
+    private void openExisting() throws IOException {
+        final long actualLength = dataFile.length();
+        long offset;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile)))) {
+            if (actualLength < DATA_HEADER_SIZE || in.readInt() != DATA_MAGIC) {
+                throw new IOException("Not a ship record file: " + dataFile);
+            }
+            final int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unknown ship record file version " + version);
+            }
+            fileId = in.readLong();
+
+            // Pick up the records written after the index, all of them if there's no index
+            offset = readIndex(actualLength) ? fileLength : DATA_HEADER_SIZE;
+            skipFully(in, offset - DATA_HEADER_SIZE);
+            while (offset < actualLength) {
+                final Record record;
+                try {
+                    record = readRecord(in);
+                } catch (EOFException e) {
+                    log.warn("Ignoring the incomplete ship record at the end of {}", dataFile);
+                    break;
+                }
+                if (record == null) {
+                    log.warn("Ignoring the corrupt ship records at the end of {}", dataFile);
+                    break;
+                }
+                forgetRecord(record.uuid);
+                final int dataLength = record.data == null ? 0 : record.data.length;
+                if (record.data != null) {
+                    locations.put(record.uuid, new RecordLocation(offset, dataLength));
+                    liveBytes += recordSize(dataLength);
+                }
+                offset += recordSize(dataLength);
+            }
+        }
+        // Cut off whatever a crash left behind, so new records don't get appended after garbage
+        if (offset < actualLength) {
+            try (RandomAccessFile file = new RandomAccessFile(dataFile, "rw")) {
+                file.setLength(offset);
+            }
+        }
+        fileLength = offset;
+    }
+
+    /**
+     * Reads the index into locations, fileLength and liveBytes.
+     *
+     * @return False if there's no usable index, in which case nothing was read.
+     */
+    private boolean readIndex(long actualDataLength) {
+        if (!indexFile.isFile()) {
+            return false;
+        }
+        try {
+            final byte[] bytes = Files.readAllBytes(indexFile.toPath());
+            if (bytes.length < INDEX_HEADER_SIZE + 4) {
+                return false;
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 4);
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != FORMAT_VERSION || in.readLong() != fileId) {
+                return false;
+            }
+            final long indexedLength = in.readLong();
+            final int count = in.readInt();
+            if (count < 0 || bytes.length != INDEX_HEADER_SIZE + count * (long) INDEX_ENTRY_SIZE + 4
+                || indexedLength < DATA_HEADER_SIZE || indexedLength > actualDataLength) {
+                return false;
+            }
+            final Map<UUID, RecordLocation> indexed = new HashMap<>();
+            long indexedLiveBytes = 0;
+            for (int i = 0; i < count; i++) {
+                final UUID uuid = new UUID(in.readLong(), in.readLong());
+                final RecordLocation location = new RecordLocation(in.readLong(), in.readInt());
+                indexed.put(uuid, location);
+                indexedLiveBytes += recordSize(location.dataLength);
+            }
+            if ((int) crc.getValue() != in.readInt()) {
+                return false;
+            }
+            locations.putAll(indexed);
+            fileLength = indexedLength;
+            liveBytes = indexedLiveBytes;
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to read the ship record index, reading the whole record file instead", e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the latest record of every ship.
+     *
+     * @return The data of every ship, in the order it's in in the data file
+     * @throws IOException If the file can't be read, or a record is corrupt.
+     */
+    @Nonnull
+    public Map<UUID, byte[]> readAll() throws IOException {
+        final Map<UUID, byte[]> ships = new LinkedHashMap<>();
+        if (locations.isEmpty()) {
+            return ships;
+        }
+        final List<Map.Entry<UUID, RecordLocation>> entries = new ArrayList<>(locations.entrySet());
+        entries.sort((a, b) -> Long.compare(a.getValue().offset, b.getValue().offset));
+        try (RandomAccessFile file = new RandomAccessFile(dataFile, "r")) {
+            for (Map.Entry<UUID, RecordLocation> entry : entries) {
+                file.seek(entry.getValue().offset);
+                final Record record = readRecord(file);
+                if (record == null || record.data == null || !record.uuid.equals(entry.getKey())) {
+                    throw new IOException("Corrupt ship record for " + entry.getKey() + " in " + dataFile);
+                }
+                ships.put(record.uuid, record.data);
+            }
+        }
+        return ships;
+    }
+
+    /**
+     * Writes the new data of changed ships and forgets removed ships. Returns once the data is on disk.
+     *
+     * @param changed The data of every ship that was added or changed since the last write
+     * @param removed Every ship that was removed since the last write. Ships that aren't in the file are ignored.
+     */
+    public void write(@Nonnull Map<UUID, byte[]> changed, @Nonnull Collection<UUID> removed) throws IOException {
+        long garbage = fileLength - liveBytes;
+        for (UUID uuid : changed.keySet()) {
+            final RecordLocation location = locations.get(uuid);
+            if (location != null) {
+                garbage += recordSize(location.dataLength);
+            }
+        }
+        for (UUID uuid : removed) {
+            final RecordLocation location = locations.get(uuid);
+            if (location != null) {
+                garbage += recordSize(location.dataLength);
+            }
+        }
+        if (garbage > MIN_COMPACT_SIZE && garbage > fileLength / 2) {
+            compact(changed, removed);
+        } else {
+            append(changed, removed);
+        }
+        writeIndex();
+    }
+
+    private void append(Map<UUID, byte[]> changed, Collection<UUID> removed) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final boolean newFile = fileLength == 0;
+        final long newFileId = newFile ? new Random().nextLong() : fileId;
+        if (newFile) {
+            writeDataHeader(out, newFileId);
+        }
+        long offset = newFile ? DATA_HEADER_SIZE : fileLength;
+        final Map<UUID, RecordLocation> newLocations = new HashMap<>();
+        for (Map.Entry<UUID, byte[]> entry : changed.entrySet()) {
+            writeRecord(out, entry.getKey(), entry.getValue());
+            newLocations.put(entry.getKey(), new RecordLocation(offset, entry.getValue().length));
+            offset += recordSize(entry.getValue().length);
+        }
+        final List<UUID> removedShips = new ArrayList<>();
+        for (UUID uuid : removed) {
+            if (locations.containsKey(uuid) && !changed.containsKey(uuid)) {
+                writeRecord(out, uuid, null);
+                removedShips.add(uuid);
+                offset += recordSize(0);
+            }
+        }
+
+        try {
+            writeToDataFile(newFile ? 0 : fileLength, bytes.toByteArray());
+        } catch (IOException e) {
+            // Complete records of a failed write would otherwise be picked up the next time the file is opened
+            try {
+                if (newFile) {
+                    Files.deleteIfExists(dataFile.toPath());
+                } else {
+                    try (RandomAccessFile file = new RandomAccessFile(dataFile, "rw")) {
+                        file.setLength(fileLength);
+                    }
+                }
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        // Nothing changes until the records are on disk, so a failed write leaves this as it was
+        fileId = newFileId;
+        for (UUID uuid : removedShips) {
+            forgetRecord(uuid);
+        }
+        for (Map.Entry<UUID, RecordLocation> entry : newLocations.entrySet()) {
+            forgetRecord(entry.getKey());
+            locations.put(entry.getKey(), entry.getValue());
+            liveBytes += recordSize(entry.getValue().dataLength);
+        }
+        fileLength = offset;
+    }
+
+    /**
+     * Cuts the data file off at position and writes bytes there. Returns once they're on disk.
+     */
+    void writeToDataFile(long position, byte[] bytes) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(dataFile, "rw")) {
+            file.setLength(position);
+            file.seek(position);
+            file.write(bytes);
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * Writes every ship into a new data file, which then replaces the old one.
+     */
+    private void compact(Map<UUID, byte[]> changed, Collection<UUID> removed) throws IOException {
+        final Map<UUID, byte[]> ships = readAll();
+        ships.keySet().removeAll(removed);
+        ships.putAll(changed);
+
+        final long newFileId = new Random().nextLong();
+        final Map<UUID, RecordLocation> newLocations = new HashMap<>();
+        final File tempFile = new File(dataFile.getPath() + ".tmp");
+        long offset = DATA_HEADER_SIZE;
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+            writeDataHeader(out, newFileId);
+            for (Map.Entry<UUID, byte[]> entry : ships.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+                newLocations.put(entry.getKey(), new RecordLocation(offset, entry.getValue().length));
+                offset += recordSize(entry.getValue().length);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Compacted {} from {} KB to {} KB", dataFile, fileLength / 1024, offset / 1024);
+
+        fileId = newFileId;
+        locations.clear();
+        locations.putAll(newLocations);
+        fileLength = offset;
+        liveBytes = offset - DATA_HEADER_SIZE;
+    }
+
+    private void writeIndex() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+            INDEX_HEADER_SIZE + locations.size() * INDEX_ENTRY_SIZE + 4);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(INDEX_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(fileId);
+        out.writeLong(fileLength);
+        out.writeInt(locations.size());
+        for (Map.Entry<UUID, RecordLocation> entry : locations.entrySet()) {
+            out.writeLong(entry.getKey().getMostSignificantBits());
+            out.writeLong(entry.getKey().getLeastSignificantBits());
+            out.writeLong(entry.getValue().offset);
+            out.writeInt(entry.getValue().dataLength);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        final File tempFile = new File(indexFile.getPath() + ".tmp");
+        Files.write(tempFile.toPath(), bytes.toByteArray());
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The number of ships in the file
+     */
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * @return The UUIDs of the ships in the file
+     */
+    @Nonnull
+    public Set<UUID> getShipIds() {
+        return new HashSet<>(locations.keySet());
+    }
+
+    /**
+     * @return The length of the data file, including old records that haven't been compacted away yet
+     */
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    private void forgetRecord(UUID uuid) {
+        final RecordLocation location = locations.remove(uuid);
+        if (location != null) {
+            liveBytes -= recordSize(location.dataLength);
+        }
+    }
+
+    private static void writeDataHeader(DataOutputStream out, long fileId) throws IOException {
+        out.writeInt(DATA_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(fileId);
+    }
+
+    private static long recordSize(int dataLength) {
+        return RECORD_OVERHEAD + (long) dataLength;
+    }
+
+    private static void writeRecord(DataOutputStream out, UUID uuid, @Nullable byte[] data) throws IOException {
+        final ByteBuffer header = recordHeader(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(),
+            data == null ? REMOVED : data.length);
+        final CRC32 crc = new CRC32();
+        crc.update(header.array());
+        out.write(header.array());
+        if (data != null) {
+            crc.update(data);
+            out.write(data);
+        }
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * @return The record, or null if it's corrupt
+     * @throws EOFException If the input ends before the record does
+     */
+    @Nullable
+    private static Record readRecord(DataInput in) throws IOException {
+        final long most = in.readLong();
+        final long least = in.readLong();
+        final int length = in.readInt();
+        if (length < REMOVED) {
+            return null;
+        }
+        final byte[] data = length == REMOVED ? null : new byte[length];
+        if (data != null) {
+            in.readFully(data);
+        }
+        final int storedCrc = in.readInt();
+
+        final CRC32 crc = new CRC32();
+        crc.update(recordHeader(most, least, length).array());
+        if (data != null) {
+            crc.update(data);
+        }
+        if ((int) crc.getValue() != storedCrc) {
+            return null;
+        }
+        return new Record(new UUID(most, least), data);
+    }
+
+    private static ByteBuffer recordHeader(long most, long least, int length) {
+        return ByteBuffer.allocate(RECORD_HEADER_SIZE).putLong(most).putLong(least).putInt(length);
+    }
+
+    private static void skipFully(DataInputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            final long skipped = in.skip(bytes);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            bytes -= skipped;
+        }
+    }
+
+    private static class RecordLocation {
+        final long offset;
+        final int dataLength;
+
+        RecordLocation(long offset, int dataLength) {
+            this.offset = offset;
+            this.dataLength = dataLength;
+        }
+    }
+
+    private static class Record {
+        final UUID uuid;
+        // Null if the ship was removed
+        @Nullable
+        final byte[] data;
+
+        Record(UUID uuid, @Nullable byte[] data) {
+            this.uuid = uuid;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.joml.Matrix3d;
+import org.joml.Matrix3dc;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.network.ShipStateUpdate;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.physics_data.ShipInertiaData;
+import org.valkyrienskies.mod.common.util.jackson.VSJacksonUtil;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Encodes the update packet data of every loaded ship once per tick, so that the same bytes can be sent to every
+ * player watching that ship.
+ * <p>
+ * Also keeps track of the parts of each ShipData that aren't sent by {@link ShipStateUpdate}, so that we know when the
+ * entire ShipData has to be sent again.
+ */
+class ShipUpdateEncoder {
+
+    private static final ObjectMapper serializer = VSJacksonUtil.getPacketMapper();
+    private final Map<UUID, StaticShipData> lastStaticData;
+
+    ShipUpdateEncoder() {
+        this.lastStaticData = new HashMap<>();
+    }
+
+    /**
+     * Encodes the current state of shipData. Should be called once per tick for every loaded ship.
+     */
+    EncodedShipUpdate encode(ShipData shipData) {
+        StaticShipData previous = lastStaticData.get(shipData.getUuid());
+        boolean staticDataChanged = previous == null || !previous.matches(shipData);
+        if (staticDataChanged) {
+            lastStaticData.put(shipData.getUuid(), new StaticShipData(shipData));
+        }
+        return new EncodedShipUpdate(shipData, ShipStateUpdate.encode(shipData), staticDataChanged);
+    }
+
+    /**
+     * Forgets about every ship that isn't in loadedShips.
+     */
+    void retainShips(Collection<ShipData> loadedShips) {
+        Set<UUID> loadedIDs = new HashSet<>();
+        for (ShipData shipData : loadedShips) {
+            loadedIDs.add(shipData.getUuid());
+        }
+        lastStaticData.keySet().retainAll(loadedIDs);
+    }
+
+    static class EncodedShipUpdate {
+
+        private final ShipData shipData;
+        @Getter
+        private final byte[] stateUpdateBytes;
+        /**
+         * True if something other than the transform and AABB changed since the last tick, in which case every
+         * watcher needs the entire ShipData.
+         */
+        @Getter
+        private final boolean staticDataChanged;
+        private byte[] shipDataBytes;
+
+        private EncodedShipUpdate(ShipData shipData, byte[] stateUpdateBytes, boolean staticDataChanged) {
+            this.shipData = shipData;
+            this.stateUpdateBytes = stateUpdateBytes;
+            this.staticDataChanged = staticDataChanged;
+            this.shipDataBytes = null;
+        }
+
+        /**
+         * The entire ShipData, only serialized if a player needs it.
+         *
+         * @return Null if the ShipData couldn't be serialized
+         */
+        @Nullable
+        byte[] getShipDataBytes() {
+            if (shipDataBytes == null) {
+                try {
+                    shipDataBytes = serializer.writeValueAsBytes(shipData);
+                } catch (JsonProcessingException e) {
+                    e.printStackTrace();
+                }
+            }
+            return shipDataBytes;
+        }
+    }
+
+    /**
+     * A copy of the fields of ShipData that the client uses, other than the transform and AABB.
+     */
+    private static class StaticShipData {
+
+        private final boolean physicsEnabled;
+        private final String name;
+        private final double gameTickMass;
+        private final Vector3dc gameTickCenterOfMass;
+        private final Matrix3dc gameMoITensor;
+        private final int claimedChunksCount;
+
+        StaticShipData(ShipData shipData) {
+            ShipInertiaData inertiaData = shipData.getInertiaData();
+            this.physicsEnabled = shipData.isPhysicsEnabled();
+            this.name = shipData.getName();
+            this.gameTickMass = inertiaData.getGameTickMass();
+            this.gameTickCenterOfMass = new Vector3d(inertiaData.getGameTickCenterOfMass());
+            this.gameMoITensor = new Matrix3d(inertiaData.getGameMoITensor());
+            this.claimedChunksCount = shipData.getChunkClaim().getClaimedChunks().size();
+        }
+
+        boolean matches(ShipData shipData) {
+            ShipInertiaData inertiaData = shipData.getInertiaData();
+            return physicsEnabled == shipData.isPhysicsEnabled()
+                && Objects.equals(name, shipData.getName())
+                && gameTickMass == inertiaData.getGameTickMass()
+                && gameTickCenterOfMass.equals(inertiaData.getGameTickCenterOfMass())
+                && gameMoITensor.equals(inertiaData.getGameMoITensor())
+                && claimedChunksCount == shipData.getChunkClaim().getClaimedChunks().size();
+        }
+    }
+}
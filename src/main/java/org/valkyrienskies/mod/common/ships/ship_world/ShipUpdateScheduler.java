@@ -0,0 +1,164 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import gnu.trove.map.TObjectDoubleMap;
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+import net.minecraft.entity.player.EntityPlayerMP;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.network.ShipIndexDataMessage;
+import org.valkyrienskies.mod.common.network.ShipStateUpdate;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.entity_interaction.EntityShipMountData;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.ValkyrienUtils;
+
+import java.util.*;
+
+/**
+ * Decides which {@link ShipStateUpdate}s each player gets every tick.
+ * <p>
+ * Every ship a player watches has a priority accumulator, which grows every tick by the rate that ship should be
+ * updated at for that player. The ship the player is on is updated every {@code Ship Update Interval} ticks. Other
+ * ships are updated less often the farther away they are, down to every {@code Far Ship Update Interval} ticks at the
+ * edge of the watch distance, unless they move quickly relative to the player. Once an accumulator reaches 1 the ship
+ * is due, and due ships are sent highest accumulator first until the player's bandwidth budget for the tick runs out.
+ * Ships that didn't fit keep accumulating, so they're first in line next tick.
+ */
+class ShipUpdateScheduler {
+
+    // Relative speed in blocks per tick at which a ship is updated at the full rate no matter how far away it is
+    private static final double FULL_RATE_SPEED = .5;
+    // Accumulators a hair under 1 because of rounding still count as due
+    private static final double DUE_THRESHOLD = 1 - 1e-6;
+
+    private final Map<EntityPlayerMP, PlayerSchedule> playerSchedules;
+
+    ShipUpdateScheduler() {
+        this.playerSchedules = new HashMap<>();
+    }
+
+    /**
+     * Tells the scheduler that player got the entire ShipData of ship this tick, which includes the transform.
+     */
+    void onShipDataSent(EntityPlayerMP player, ShipData ship, int bytes) {
+        PlayerSchedule schedule = getSchedule(player);
+        schedule.bytesSent += bytes;
+        schedule.nextAccumulators.put(ship.getUuid(), 0);
+    }
+
+    /**
+     * Offers the state update of a ship watched by player. Whether it's sent is decided in {@link #sendDueUpdates}.
+     */
+    void offerStateUpdate(EntityPlayerMP player, PhysicsObject ship, byte[] stateUpdateBytes) {
+        PlayerSchedule schedule = getSchedule(player);
+        ShipData shipData = ship.getShipData();
+        boolean aboard = isPlayerAboard(player, ship);
+        double accumulator = schedule.accumulators.get(shipData.getUuid()) + getUpdateRate(player, shipData, aboard);
+        schedule.candidates.add(new Candidate(shipData.getUuid(), stateUpdateBytes, accumulator, aboard));
+    }
+
+    /**
+     * Adds the due state updates of every player to their packet, within their bandwidth budget, and gets ready for
+     * the next tick. Players that aren't in packets anymore are forgotten.
+     */
+    void sendDueUpdates(Map<EntityPlayerMP, ShipIndexDataMessage> packets) {
+        playerSchedules.keySet().retainAll(packets.keySet());
+        final int budget = VSConfig.SHIP_LOADING_SETTINGS.updateBandwidthBudget;
+        for (Map.Entry<EntityPlayerMP, PlayerSchedule> entry : playerSchedules.entrySet()) {
+            final PlayerSchedule schedule = entry.getValue();
+            final ShipIndexDataMessage packet = packets.get(entry.getKey());
+            schedule.candidates.sort(Candidate.SEND_ORDER);
+            for (Candidate candidate : schedule.candidates) {
+                boolean due = candidate.accumulator >= DUE_THRESHOLD;
+                // The ship the player is on is always sent when due, it's the one they'd notice lagging behind
+                boolean fits = candidate.aboard || schedule.bytesSent + candidate.bytes.length <= budget;
+                if (due && fits) {
+                    packet.addEncodedStateUpdate(candidate.bytes);
+                    schedule.bytesSent += candidate.bytes.length;
+                    schedule.nextAccumulators.put(candidate.shipID, 0);
+                } else {
+                    schedule.nextAccumulators.put(candidate.shipID, candidate.accumulator);
+                }
+            }
+            schedule.nextTick();
+        }
+    }
+
+    /**
+     * @return How many times per tick ship should be updated for player, at most 1.
+     */
+    private static double getUpdateRate(EntityPlayerMP player, ShipData ship, boolean aboard) {
+        final int nearInterval = VSConfig.SHIP_LOADING_SETTINGS.updateInterval;
+        if (aboard) {
+            return 1.0 / nearInterval;
+        }
+        final int farInterval = Math.max(VSConfig.SHIP_LOADING_SETTINGS.farUpdateInterval, nearInterval);
+        final ShipTransform transform = ship.getShipTransform();
+        final ShipTransform prevTransform = ship.getPrevTickShipTransform();
+
+        final double xDif = player.posX - transform.getPosX();
+        final double zDif = player.posZ - transform.getPosZ();
+        final double distance = Math.sqrt(xDif * xDif + zDif * zDif);
+        final double closeness = 1 - Math.min(distance / VSConfig.SHIP_LOADING_SETTINGS.watchDistance, 1);
+
+        double relativeSpeed = 0;
+        if (prevTransform != null) {
+            final double velX = (transform.getPosX() - prevTransform.getPosX()) - (player.posX - player.lastTickPosX);
+            final double velY = (transform.getPosY() - prevTransform.getPosY()) - (player.posY - player.lastTickPosY);
+            final double velZ = (transform.getPosZ() - prevTransform.getPosZ()) - (player.posZ - player.lastTickPosZ);
+            relativeSpeed = Math.sqrt(velX * velX + velY * velY + velZ * velZ);
+        }
+
+        final double urgency = Math.min(Math.max(closeness, relativeSpeed / FULL_RATE_SPEED), 1);
+        return 1 / (farInterval - (farInterval - nearInterval) * urgency);
+    }
+
+    private static boolean isPlayerAboard(EntityPlayerMP player, PhysicsObject ship) {
+        if (ValkyrienUtils.getLastShipTouchedByEntity(player) == ship.getShipData()) {
+            return true;
+        }
+        EntityShipMountData mountData = ValkyrienUtils.getMountedShipAndPos(player);
+        return mountData.isMounted() && mountData.getMountedShip() == ship;
+    }
+
+    private PlayerSchedule getSchedule(EntityPlayerMP player) {
+        return playerSchedules.computeIfAbsent(player, k -> new PlayerSchedule());
+    }
+
+    private static class PlayerSchedule {
+
+        // The accumulators of the ships the player watched last tick, the rest are at 0
+        TObjectDoubleMap<UUID> accumulators = new TObjectDoubleHashMap<>();
+        TObjectDoubleMap<UUID> nextAccumulators = new TObjectDoubleHashMap<>();
+        final List<Candidate> candidates = new ArrayList<>();
+        int bytesSent = 0;
+
+        void nextTick() {
+            // Ships that weren't offered this tick aren't watched anymore, so they're dropped here
+            TObjectDoubleMap<UUID> swap = accumulators;
+            accumulators = nextAccumulators;
+            nextAccumulators = swap;
+            nextAccumulators.clear();
+            candidates.clear();
+            bytesSent = 0;
+        }
+    }
+
+    private static class Candidate {
+
+        // Ships the player is on first, then the ones that waited the longest
+        static final Comparator<Candidate> SEND_ORDER = Comparator.comparing((Candidate c) -> !c.aboard)
+            .thenComparingDouble(c -> -c.accumulator);
+
+        final UUID shipID;
+        final byte[] bytes;
+        final double accumulator;
+        final boolean aboard;
+
+        Candidate(UUID shipID, byte[] bytes, double accumulator, boolean aboard) {
+            this.shipID = shipID;
+            this.bytes = bytes;
+            this.accumulator = accumulator;
+            this.aboard = aboard;
+        }
+    }
+}
@@ -35,7 +35,9 @@ public class VSWorldEventListener implements IWorldEventListener {
 
     @Override
     public void notifyBlockUpdate(World worldIn, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
-
+        if (!worldObj.isRemote) {
+            ((WorldServerShipManager) ValkyrienUtils.getPhysObjWorld(worldObj)).wakeUpShipsNear(pos);
+        }
     }
 
     @Override
@@ -1,36 +1,28 @@
 package org.valkyrienskies.mod.common.ships.ship_world;
 
 import com.google.common.collect.ImmutableList;
-import gnu.trove.iterator.TIntIterator;
 import lombok.Getter;
-import net.minecraft.block.state.IBlockState;
-import net.minecraft.init.Blocks;
-import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.tileentity.TileEntity;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.play.server.SPacketChunkData;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.BlockPos.MutableBlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
 import net.minecraft.world.chunk.Chunk;
-import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import net.minecraft.world.gen.ChunkProviderServer;
-import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.valkyrienskies.mod.common.config.VSConfig;
-import org.valkyrienskies.mod.common.physics.BlockPhysicsDetails;
 import org.valkyrienskies.mod.common.ships.QueryableShipData;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.block_relocation.BlockFinder;
-import org.valkyrienskies.mod.common.ships.block_relocation.IRelocationAwareTile;
-import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
-import org.valkyrienskies.mod.common.ships.physics_data.BasicCenterOfMassProvider;
-import org.valkyrienskies.mod.common.ships.physics_data.IPhysicsObjectCenterOfMassProvider;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
+import org.valkyrienskies.mod.common.util.datastructures.StaticAABBTree;
 import org.valkyrienskies.mod.common.util.multithreaded.CalledFromWrongThreadException;
 import org.valkyrienskies.mod.common.util.multithreaded.VSWorldPhysicsLoop;
 
 import javax.annotation.Nonnull;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class WorldServerShipManager implements IPhysObjectWorld {
 
@@ -41,23 +33,33 @@ public class WorldServerShipManager implements IPhysObjectWorld {
     private final Thread physicsThread;
     private final WorldShipLoadingController loadingController;
     private final Map<UUID, PhysicsObject> loadedShips;
-    // Use LinkedHashSet as a queue because it preserves order and doesn't allow duplicates
-    private final LinkedHashSet<ImmutableTriple<BlockPos, ShipData, BlockFinder.BlockFinderType>> spawnQueue;
+    // Ships being assembled, by ship ID. LinkedHashMap because it preserves order and doesn't allow duplicates.
+    private final LinkedHashMap<UUID, ShipAssemblyTask> assemblyTasks;
     private final LinkedHashSet<UUID> loadQueue, unloadQueue, backgroundLoadQueue;
-    private final Set<UUID> loadingInBackground;
+    // Ships whose chunks are loading, by ship ID. LinkedHashMap so the ships requested first are created first.
+    private final LinkedHashMap<UUID, ShipLoadTask> loadTasks;
+    @Getter
+    private final ShipLoadingProfiler loadingProfiler;
     private ImmutableList<PhysicsObject> threadSafeLoadedShips;
+    // Spatial index of threadSafeLoadedShips, rebuilt along with it at the end of every tick
+    private StaticAABBTree<PhysicsObject> threadSafeShipsTree;
+    // Ship AABBs change while ticking, threadSafeShipsTree can't be used until they're done changing
+    private boolean isTicking;
 
     public WorldServerShipManager(World world) {
         this.world = (WorldServer) world;
         this.physicsLoop = new VSWorldPhysicsLoop(world);
         this.loadingController = new WorldShipLoadingController(this);
         this.loadedShips = new HashMap<>();
-        this.spawnQueue = new LinkedHashSet<>();
+        this.assemblyTasks = new LinkedHashMap<>();
         this.loadQueue = new LinkedHashSet<>();
         this.unloadQueue = new LinkedHashSet<>();
         this.backgroundLoadQueue = new LinkedHashSet<>();
-        this.loadingInBackground = new HashSet<>();
+        this.loadTasks = new LinkedHashMap<>();
+        this.loadingProfiler = new ShipLoadingProfiler();
         this.threadSafeLoadedShips = ImmutableList.of();
+        this.threadSafeShipsTree = new StaticAABBTree<>(threadSafeLoadedShips, PhysicsObject::getShipBB);
+        this.isTicking = false;
 
         this.physicsThread = new Thread(physicsLoop);
         this.physicsThread.start();
@@ -85,15 +87,50 @@ public class WorldServerShipManager implements IPhysObjectWorld {
     public List<PhysicsObject> getPhysObjectsInAABB(@Nonnull AxisAlignedBB toCheck) throws CalledFromWrongThreadException {
         enforceGameThread();
         List<PhysicsObject> nearby = new ArrayList<>();
-        for (PhysicsObject ship : getAllLoadedPhysObj()) {
-            if (toCheck.intersects(ship.getShipBB())) {
-                nearby.add(ship);
+        if (isTicking) {
+            // Ships are being loaded or moved, so the tree may be out of date
+            for (PhysicsObject ship : getAllLoadedPhysObj()) {
+                if (toCheck.intersects(ship.getShipBB())) {
+                    nearby.add(ship);
+                }
             }
+        } else {
+            threadSafeShipsTree.getIntersecting(toCheck, nearby);
         }
         return nearby;
     }
 
+    /**
+     * Same as {@link #getPhysObjectsInAABB(AxisAlignedBB)}, but can be called from any thread. Uses the ships and ship
+     * AABBs from the end of the last tick, the same ships as {@link #getAllLoadedThreadSafe()}.
+     */
+    @Nonnull
+    public List<PhysicsObject> getPhysObjectsInAABBThreadSafe(@Nonnull AxisAlignedBB toCheck) {
+        List<PhysicsObject> nearby = new ArrayList<>();
+        threadSafeShipsTree.getIntersecting(toCheck, nearby);
+        return nearby;
+    }
+
+    /**
+     * Wakes up the ships that a changed block at pos might be holding up, or might now be in the way of. Can be called
+     * from any thread.
+     */
+    public void wakeUpShipsNear(@Nonnull BlockPos pos) {
+        final StaticAABBTree<PhysicsObject> shipsTree = threadSafeShipsTree;
+        // Nearly every block update is nowhere near a ship, those don't allocate anything
+        if (!shipsTree.mayIntersect(pos.getX() - 1, pos.getY() - 1, pos.getZ() - 1,
+            pos.getX() + 2, pos.getY() + 2, pos.getZ() + 2)) {
+            return;
+        }
+        final List<PhysicsObject> nearbyShips = new ArrayList<>();
+        shipsTree.getIntersecting(new AxisAlignedBB(pos).grow(1), nearbyShips);
+        for (PhysicsObject ship : nearbyShips) {
+            ship.getSleepTracker().wakeUp();
+        }
+    }
+
     public void tick() {
+        isTicking = true;
         // First destroy any ships that want to be destroyed (copy blocks from ship to world, and then unload)
         Iterator<Map.Entry<UUID, PhysicsObject>> iterator = loadedShips.entrySet().iterator();
         while (iterator.hasNext()) {
@@ -126,201 +163,117 @@ public class WorldServerShipManager implements IPhysObjectWorld {
 
         // And then update the thread safe ship list.
         this.threadSafeLoadedShips = ImmutableList.copyOf(loadedShips.values());
+        this.threadSafeShipsTree = new StaticAABBTree<>(threadSafeLoadedShips, PhysicsObject::getShipBB);
+        isTicking = false;
     }
 
     private void spawnNewShips() {
-        for (final ImmutableTriple<BlockPos, ShipData, BlockFinder.BlockFinderType> spawnData : spawnQueue) {
-            final BlockPos physicsInfuserPos = spawnData.getLeft();
-            final ShipData toSpawn = spawnData.getMiddle();
-            final BlockFinder.BlockFinderType blockBlockFinderType = spawnData.getRight();
+        // Finding the blocks of a ship happens in the background, only the steps left for the game thread count
+        // towards the budget. Always step the oldest task, so that a slow server still assembles ships.
+        final long deadline = System.nanoTime() + (long) (VSConfig.shipAssemblyTickBudget * 1e6);
+        boolean isFirstTask = true;
+        Iterator<ShipAssemblyTask> tasksIterator = assemblyTasks.values().iterator();
+        while (tasksIterator.hasNext() && (isFirstTask || System.nanoTime() < deadline)) {
+            isFirstTask = false;
+            final ShipAssemblyTask task = tasksIterator.next();
+            final ShipData toSpawn = task.getToSpawn();
 
             if (loadedShips.containsKey(toSpawn.getUuid())) {
                 throw new IllegalStateException("Tried spawning a ShipData that was already loaded?\n" + toSpawn);
             }
 
-            final SpatialDetector detector = BlockFinder.getBlockFinderFor(
-                    blockBlockFinderType,
-                    physicsInfuserPos,
-                    world,
-                    VSConfig.maxDetectedShipSize + 1,
-                    true
-            );
-
-            if (VSConfig.showAnnoyingDebugOutput) {
-                System.out.println("Attempting to spawn " + toSpawn + " on the thread " + Thread.currentThread().getName());
-            }
-            if (detector.foundSet.size() > VSConfig.maxDetectedShipSize || detector.cleanHouse) {
-                System.err.println("Ship too big or bedrock detected!");
-
-                /*
-                if (creator != null) {
-                    creator.sendMessage(new TextComponentString(
-                            "Ship construction canceled because its exceeding the ship size limit; "
-                                    +
-                                    "or because it's attached to bedrock. " +
-                                    "Raise it with /physsettings maxshipsize [number]"));
-                }
-
-                 */
-                continue; // Skip ship construction
-            }
-
-            // Fill the chunk claims
-            int radius = 7;
-
-            // TEMP CODE
-            // Eventually want to create mechanisms that control how many chunks are allocated to a ship
-            // But for now, lets just give them a bunch of chunks.
-            ChunkPos centerPos = toSpawn.getChunkClaim().getCenterPos();
-            for (int chunkX = -radius; chunkX <= radius; chunkX++) {
-                for (int chunkZ = -radius; chunkZ <= radius; chunkZ++) {
-                    toSpawn.getChunkClaim().addChunkClaim(centerPos.x + chunkX, centerPos.z + chunkZ);
-                }
-            }
-
-            // When copying the ship chunks we want to keep track of the inertia and center of mass.
-            IPhysicsObjectCenterOfMassProvider centerOfMassProvider = new BasicCenterOfMassProvider();
-
-            // Then create the ship chunks
-            MutableBlockPos srcLocationPos = new MutableBlockPos();
-            BlockPos centerDifference = toSpawn.getChunkClaim().getRegionCenter().subtract(physicsInfuserPos);
-
-            MutableBlockPos pasteLocationPos = new MutableBlockPos();
-
-            Map<Long, Chunk> copiedChunksMap = new HashMap<>();
-
-            // First, copy the blocks and tiles to the new chunks
-            TIntIterator blocksIterator = detector.foundSet.iterator();
-            while (blocksIterator.hasNext()) {
-                int hashedPos = blocksIterator.next();
-                SpatialDetector.setPosWithRespectTo(hashedPos, detector.firstBlock, srcLocationPos);
-                // Get the BlockPos from the hashedPos
-                pasteLocationPos.setPos(srcLocationPos.getX() + centerDifference.getX(), srcLocationPos.getY() + centerDifference.getY(), srcLocationPos.getZ() + centerDifference.getZ());
-
-                // Then add it to the ShipData block positions set
-                toSpawn.blockPositions.add(pasteLocationPos.getX(), pasteLocationPos.getY(), pasteLocationPos.getZ());
-
-                // Then create a chunk to accommodate this block (if one does not already exist).
-                int newChunkX = pasteLocationPos.getX() >> 4;
-                int newChunkZ = pasteLocationPos.getZ() >> 4;
-
-                long newChunkPosLong = ChunkPos.asLong(newChunkX, newChunkZ);
-
-                if (!copiedChunksMap.containsKey(newChunkPosLong)) {
-                    Chunk chunk = new Chunk(world, newChunkX, newChunkZ);
-                    copiedChunksMap.put(newChunkPosLong, chunk);
-                }
-
-                // Then copy the IBlockState & TileEntity to the new Chunk
-                // Get the old world Chunk
-                Chunk chunkToSet = world.getChunk(srcLocationPos);
-
-                // Get the new Chunk
-                Chunk newChunk = copiedChunksMap.get(newChunkPosLong);
-
-                // Then get the old IBlockState, as efficiently as possible
-                int storageIndex = srcLocationPos.getY() >> 4;
-                // Check that we're placing the block in a valid position
-                if (storageIndex < 0 || storageIndex >= chunkToSet.storageArrays.length) {
-                    // Invalid position, abort!
-                    throw new IllegalStateException("Incorrect block copy!\n" + srcLocationPos);
-                }
-
-                IBlockState srcState = chunkToSet.storageArrays[storageIndex]
-                        .get(srcLocationPos.getX() & 15, srcLocationPos.getY() & 15, srcLocationPos.getZ() & 15);
-
-                // Then paste that IBlockState into the new ship chunk
-                int newChunkStorageIndex = pasteLocationPos.getY() >> 4;
-
-                if (newChunk.storageArrays[newChunkStorageIndex] == Chunk.NULL_BLOCK_STORAGE) {
-                    newChunk.storageArrays[newChunkStorageIndex] = new ExtendedBlockStorage(newChunkStorageIndex << 4,
-                            true);
-                }
-                newChunk.storageArrays[newChunkStorageIndex]
-                        .set(pasteLocationPos.getX() & 15, pasteLocationPos.getY() & 15, pasteLocationPos.getZ() & 15, srcState);
-
-                // If this block is force block, then add it to the activeForcePositions list of the ship.
-                if (BlockPhysicsDetails.isBlockProvidingForce(srcState)) {
-                    toSpawn.activeForcePositions.add(pasteLocationPos);
-                }
-
-                // Also update the center of mass and inertia provider
-                centerOfMassProvider.onSetBlockState(toSpawn.getInertiaData(), pasteLocationPos, Blocks.AIR.getDefaultState(), srcState);
-
-                // Then copy the TileEntity (if there is one)
-                TileEntity srcTile = world.getTileEntity(srcLocationPos);
-                if (srcTile != null) {
-                    TileEntity pasteTile;
-                    if (srcTile instanceof IRelocationAwareTile) {
-                        pasteTile = ((IRelocationAwareTile) srcTile).createRelocatedTile(pasteLocationPos, toSpawn);
-                    } else {
-                        NBTTagCompound tileEntNBT = srcTile.writeToNBT(new NBTTagCompound());
-                        // Change the block position to be inside of the Ship
-                        tileEntNBT.setInteger("x", pasteLocationPos.getX());
-                        tileEntNBT.setInteger("y", pasteLocationPos.getY());
-                        tileEntNBT.setInteger("z", pasteLocationPos.getZ());
-                        pasteTile = TileEntity.create(world, tileEntNBT);
+            switch (task.tick()) {
+                case RUNNING:
+                    continue;
+                case FAILED:
+                    /*
+                    if (creator != null) {
+                        creator.sendMessage(new TextComponentString(
+                                "Ship construction canceled because its exceeding the ship size limit; "
+                                        +
+                                        "or because it's attached to bedrock. " +
+                                        "Raise it with /physsettings maxshipsize [number]"));
                     }
 
-                    // Finally, add the new TileEntity to the new ship chunk.
-                    newChunk.addTileEntity(pasteTile);
-                }
-            }
-
-            // Then delete the copied blocks from the old chunks
-            blocksIterator = detector.foundSet.iterator();
-            while (blocksIterator.hasNext()) {
-                int hashedPos = blocksIterator.next();
-                SpatialDetector.setPosWithRespectTo(hashedPos, detector.firstBlock, srcLocationPos);
-
-                Chunk chunkToSet = world.getChunk(srcLocationPos);
-
-                // Then get the old IBlockState, as efficiently as possible
-                int storageIndex = srcLocationPos.getY() >> 4;
-                // Check that we're placing the block in a valid position
-                if (storageIndex < 0 || storageIndex >= chunkToSet.storageArrays.length) {
-                    // Invalid position, abort!
-                    throw new IllegalStateException("Incorrect block copy!\n" + srcLocationPos);
-                }
-
-                IBlockState srcState = chunkToSet.storageArrays[storageIndex]
-                        .get(srcLocationPos.getX() & 15, srcLocationPos.getY() & 15, srcLocationPos.getZ() & 15);
-
-                // THIS IS TEMP because its extremely inefficient.
-                // Come up with a clever way to let clients figure this out in the future.
-                world.notifyBlockUpdate(srcLocationPos, srcState, Blocks.AIR.getDefaultState(), 3);
-
-                // Finally, delete the old IBlockState and TileEntity from the old Chunk
-                chunkToSet.storageArrays[storageIndex]
-                        .set(srcLocationPos.getX() & 15, srcLocationPos.getY() & 15, srcLocationPos.getZ() & 15, Blocks.AIR.getDefaultState());
-
-                // Delete the TileEntity at this pos (if there is one)
-                world.removeTileEntity(srcLocationPos);
-
-                chunkToSet.markDirty();
+                     */
+                    tasksIterator.remove();
+                    continue;
+                case ASSEMBLED:
+                    tasksIterator.remove();
+                    // Add shipData to the ShipData storage
+                    QueryableShipData.get(world).addShip(toSpawn);
+
+                    // Finally, instantiate the PhysicsObject representation of this ShipData
+                    PhysicsObject physicsObject = new PhysicsObject(world, toSpawn);
+                    loadedShips.put(toSpawn.getUuid(), physicsObject);
             }
+        }
+    }
 
-            // Then inject the ship chunks into the world
-            toSpawn.getChunkClaim().forEach((x, z) -> {
-                long chunkLong = ChunkPos.asLong(x, z);
-                if (copiedChunksMap.containsKey(chunkLong)) {
-                    injectChunkIntoWorldServer(copiedChunksMap.get(chunkLong), x, z);
-                } else {
-                    injectChunkIntoWorldServer(new Chunk(world, x, z), x, z);
+    /**
+     * Claims chunk for the ship that owns the region of the shipyard it's in. Called when a block is placed in an
+     * unclaimed shipyard chunk, because ships only claim the chunks they have blocks in.
+     *
+     * @return The ShipData that now claims the chunk, or empty if no ship owns that region of the shipyard.
+     */
+    public Optional<ShipData> claimChunkOnDemand(@Nonnull Chunk chunk) {
+        enforceGameThread();
+        Optional<ShipData> shipDataOptional = claimChunkForRegionOwner(QueryableShipData.get(world), chunk.x, chunk.z,
+            shipData -> {
+                chunk.setTerrainPopulated(true);
+                chunk.setLightPopulated(true);
+                chunk.markDirty();
+
+                PhysicsObject physicsObject = loadedShips.get(shipData.getUuid());
+                if (physicsObject != null) {
+                    // Add it to the cache first, the physics thread assumes every claimed chunk is in the cache
+                    physicsObject.getClaimedChunkCache().addNewlyClaimedChunk(chunk);
                 }
             });
+        if (!shipDataOptional.isPresent()) {
+            return Optional.empty();
+        }
+        ShipData shipData = shipDataOptional.get();
+
+        PhysicsObject physicsObject = loadedShips.get(shipData.getUuid());
+        if (physicsObject != null) {
+            // The players watching the ship need the new chunk. The updated ShipData is sent with the next update.
+            SPacketChunkData chunkData = new SPacketChunkData(chunk, 65535);
+            for (EntityPlayerMP player : physicsObject.getWatchingPlayers()) {
+                player.connection.sendPacket(chunkData);
+            }
+        }
+        if (VSConfig.showAnnoyingDebugOutput) {
+            System.out.println("Claimed chunk (" + chunk.x + "," + chunk.z + ") for " + shipData);
+        }
+        return shipDataOptional;
+    }
 
-            // Add shipData to the ShipData storage
-            QueryableShipData.get(world).addShip(toSpawn);
-
-            // Finally, instantiate the PhysicsObject representation of this ShipData
-            PhysicsObject physicsObject = new PhysicsObject(world, toSpawn);
-            loadedShips.put(toSpawn.getUuid(), physicsObject);
+    /**
+     * Adds the chunk at (chunkX, chunkZ) to the claim of the ship that owns the region of the shipyard it's in, the
+     * part of {@link #claimChunkOnDemand(Chunk)} that doesn't need a world.
+     *
+     * @param beforeClaim Called with the owner of the region right before the chunk is added to its claim, so the
+     *                    chunk can be cached before any other thread can see it in the claim.
+     * @return The ShipData that now claims the chunk, or empty if no ship owns that region of the shipyard.
+     */
+    static Optional<ShipData> claimChunkForRegionOwner(QueryableShipData queryableShipData, int chunkX, int chunkZ,
+        Consumer<ShipData> beforeClaim) {
+        ChunkPos regionCenter = ShipChunkAllocator.getRegionCenter(chunkX, chunkZ);
+        if (regionCenter == null) {
+            return Optional.empty();
         }
-        spawnQueue.clear();
+        Optional<ShipData> shipDataOptional = queryableShipData.getShipFromChunk(regionCenter.x, regionCenter.z);
+        if (!shipDataOptional.isPresent()) {
+            return Optional.empty();
+        }
+        ShipData shipData = shipDataOptional.get();
+        beforeClaim.accept(shipData);
+        queryableShipData.addChunkClaim(shipData, chunkX, chunkZ);
+        return shipDataOptional;
     }
 
-    private void injectChunkIntoWorldServer(@Nonnull Chunk chunk, int x, int z) {
+    void injectChunkIntoWorldServer(@Nonnull Chunk chunk, int x, int z) {
         ChunkProviderServer provider = world.getChunkProvider();
         chunk.dirty = true;
         chunk.setTerrainPopulated(true);
@@ -332,68 +285,28 @@ public class WorldServerShipManager implements IPhysObjectWorld {
 
     private void loadAndUnloadShips() {
         QueryableShipData queryableShipData = QueryableShipData.get(world);
-        // Load the ships that are required immediately.
-        for (final UUID toLoadID : loadQueue) {
-            Optional<ShipData> toLoadOptional = queryableShipData.getShip(toLoadID);
-            if (!toLoadOptional.isPresent()) {
-                throw new IllegalStateException("No ship found for ID:\n" + toLoadID);
-            }
-            ShipData toLoad = toLoadOptional.get();
-            if (loadedShips.containsKey(toLoadID)) {
-                throw new IllegalStateException("Tried loading a ShipData that was already loaded?\n" + toLoad);
+        // Ships are requested again every tick they're in range, drop the loads nobody needs anymore.
+        Iterator<ShipLoadTask> loadTasksIterator = loadTasks.values().iterator();
+        while (loadTasksIterator.hasNext()) {
+            if (loadTasksIterator.next().startTick()) {
+                loadTasksIterator.remove();
+                loadingProfiler.recordCancelled();
             }
+        }
 
-            // Remove this ship from the background loading set, if it is in it.
-            loadingInBackground.remove(toLoadID);
-            // Finally, load the ship.
-            if (VSConfig.showAnnoyingDebugOutput) {
-                System.out.println("Attempting to load ship " + toLoad);
-            }
-            PhysicsObject physicsObject = new PhysicsObject(world, toLoad);
-            PhysicsObject old = loadedShips.put(toLoad.getUuid(), physicsObject);
-            if (old != null) {
-                throw new IllegalStateException("How did we already have a ship loaded for " + toLoad);
-            }
+        // Start loading the chunks of the ships that are required immediately, and of the ships that will probably be
+        // required soon. The PhysicsObject is only created once its chunks are in the world.
+        for (final UUID toLoadID : loadQueue) {
+            requestShipLoad(queryableShipData, toLoadID, true);
         }
         loadQueue.clear();
-
-        // Load ships that aren't required immediately in the background.
         for (final UUID toLoadID : backgroundLoadQueue) {
-            // Skip if this ship is already being loaded in the background,.
-            if (loadingInBackground.contains(toLoadID)) {
-                continue; // Already loading this ship in the background
-            }
-
-            // Make sure there isn't an already loaded ship with this UUID.
-            if (loadedShips.containsKey(toLoadID)) {
-                // continue; // temp, need to fix WorldShipLoadingController.determineLoadAndUnload()
-                throw new IllegalStateException("Tried loading a ShipData that was already loaded? Ship ID is\n"
-                        + toLoadID);
-            }
-            // Then try getting the ShipData for this UUID.
-            Optional<ShipData> toLoadOptional = queryableShipData.getShip(toLoadID);
-            if (!toLoadOptional.isPresent()) {
-                throw new IllegalStateException("No ship found for ID:\n" + toLoadID);
-            }
-
-            ShipData toLoad = toLoadOptional.get();
-            loadingInBackground.add(toLoadID);
-
-            if (VSConfig.showAnnoyingDebugOutput) {
-                System.out.println("Attempting to load " + toLoad + " in the background.");
-            }
-            ChunkProviderServer chunkProviderServer = world.getChunkProvider();
-            for (ChunkPos chunkPos : toLoad.getChunkClaim()) {
-                @Nonnull Runnable returnTask = () -> {
-                    if (VSConfig.showAnnoyingDebugOutput) {
-                        System.out.println("Loaded ship chunk " + chunkPos);
-                    }
-                };
-                chunkProviderServer.loadChunk(chunkPos.x, chunkPos.z, returnTask);
-            }
+            requestShipLoad(queryableShipData, toLoadID, false);
         }
         backgroundLoadQueue.clear();
 
+        finishShipLoads(queryableShipData);
+
         // Unload far away ships immediately.
         for (final UUID toUnloadID : unloadQueue) {
             // Make sure we have a ship with this ID that can be unloaded
@@ -417,6 +330,72 @@ public class WorldServerShipManager implements IPhysObjectWorld {
         unloadQueue.clear();
     }
 
+    private void requestShipLoad(QueryableShipData queryableShipData, UUID toLoadID, boolean required) {
+        // Make sure there isn't an already loaded ship with this UUID.
+        if (loadedShips.containsKey(toLoadID)) {
+            throw new IllegalStateException("Tried loading a ShipData that was already loaded? Ship ID is\n"
+                    + toLoadID);
+        }
+        ShipLoadTask task = loadTasks.get(toLoadID);
+        if (task == null) {
+            Optional<ShipData> toLoadOptional = queryableShipData.getShip(toLoadID);
+            if (!toLoadOptional.isPresent()) {
+                throw new IllegalStateException("No ship found for ID:\n" + toLoadID);
+            }
+            if (VSConfig.showAnnoyingDebugOutput) {
+                System.out.println("Loading the chunks of " + toLoadOptional.get()
+                    + (required ? "" : " in the background"));
+            }
+            task = new ShipLoadTask(world.getChunkProvider(), toLoadOptional.get());
+            loadTasks.put(toLoadID, task);
+        }
+        task.request(required);
+    }
+
+    /**
+     * Creates the PhysicsObjects of the required ships whose chunks are loaded. Always creates the oldest ready ship,
+     * then more as long as there's time left in {@link VSConfig.ShipLoadingSettings#loadTickBudget}.
+     */
+    private void finishShipLoads(QueryableShipData queryableShipData) {
+        final long deadline = System.nanoTime() + (long) (VSConfig.SHIP_LOADING_SETTINGS.loadTickBudget * 1e6);
+        boolean isFirstShip = true;
+        int deferred = 0;
+        Iterator<ShipLoadTask> tasksIterator = loadTasks.values().iterator();
+        while (tasksIterator.hasNext()) {
+            final ShipLoadTask task = tasksIterator.next();
+            if (!task.isReadyToFinish()) {
+                continue;
+            }
+            final long start = System.nanoTime();
+            if (!isFirstShip && start >= deadline) {
+                deferred++;
+                continue;
+            }
+            isFirstShip = false;
+            tasksIterator.remove();
+
+            Optional<ShipData> toLoadOptional = queryableShipData.getShip(task.getShipID());
+            if (!toLoadOptional.isPresent()) {
+                // Deleted while its chunks were loading
+                loadingProfiler.recordCancelled();
+                continue;
+            }
+            ShipData toLoad = toLoadOptional.get();
+            if (VSConfig.showAnnoyingDebugOutput) {
+                System.out.println("Attempting to load ship " + toLoad);
+            }
+            PhysicsObject physicsObject = new PhysicsObject(world, toLoad);
+            PhysicsObject old = loadedShips.put(toLoad.getUuid(), physicsObject);
+            if (old != null) {
+                throw new IllegalStateException("How did we already have a ship loaded for " + toLoad);
+            }
+            final long end = System.nanoTime();
+            loadingProfiler.recordLoad(task.getRequiredNanos(end), task.getTotalNanos(end), end - start,
+                task.isMissingChunks());
+        }
+        loadingProfiler.recordDeferred(deferred);
+    }
+
     @Nonnull
     @Override
     public Iterable<PhysicsObject> getAllLoadedPhysObj() throws CalledFromWrongThreadException {
@@ -435,9 +414,12 @@ public class WorldServerShipManager implements IPhysObjectWorld {
      */
     public void queueShipSpawn(@Nonnull ShipData data, @Nonnull BlockPos spawnPos, @Nonnull BlockFinder.BlockFinderType blockFinderType) {
         enforceGameThread();
-        this.spawnQueue.add(ImmutableTriple.of(spawnPos, data, blockFinderType));
+        this.assemblyTasks.putIfAbsent(data.getUuid(), new ShipAssemblyTask(this, data, spawnPos, blockFinderType));
     }
 
+    /**
+     * The ship is created once its chunks are loaded, as long as it keeps getting queued every tick until then.
+     */
     @Override
     public void queueShipLoad(@Nonnull UUID shipID) {
         enforceGameThread();
@@ -459,18 +441,25 @@ public class WorldServerShipManager implements IPhysObjectWorld {
     }
 
     /**
-     * Used to prevent the world from unloading the chunks of ships loading in background.
+     * @return How many ships have their chunks loading, either because they're required or in the background.
+     */
+    public int getLoadingShipCount() {
+        enforceGameThread();
+        return loadTasks.size();
+    }
+
+    /**
+     * Used to prevent the world from unloading the chunks of ships that are loading, before their PhysicsObject is
+     * created.
      */
     public Iterable<Long> getBackgroundShipChunks() throws CalledFromWrongThreadException {
         enforceGameThread();
         List<Long> backgroundChunks = new ArrayList<>();
         QueryableShipData queryableShipData = QueryableShipData.get(world);
-        for (UUID shipID : loadingInBackground) {
-            Optional<ShipData> shipDataOptional = queryableShipData.getShip(shipID);
-            if (!shipDataOptional.isPresent()) {
-                throw new IllegalStateException("Ship data not present for:\n" + shipID);
-            }
-            backgroundChunks.addAll(shipDataOptional.get().getChunkClaim().getClaimedChunks());
+        for (UUID shipID : loadTasks.keySet()) {
+            // The ship may have been deleted since, then the task is dropped next tick
+            queryableShipData.getShip(shipID)
+                .ifPresent(shipData -> backgroundChunks.addAll(shipData.getChunkClaim().getClaimedChunks()));
         }
         return backgroundChunks;
     }
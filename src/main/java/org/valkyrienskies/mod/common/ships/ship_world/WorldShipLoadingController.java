@@ -2,53 +2,76 @@ package org.valkyrienskies.mod.common.ships.ship_world;
 
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
-import net.minecraft.network.play.server.SPacketChunkData;
 import net.minecraft.util.math.Vec3d;
-import net.minecraft.world.World;
-import net.minecraft.world.chunk.Chunk;
 import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.network.ShipIndexDataMessage;
 import org.valkyrienskies.mod.common.ships.QueryableShipData;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.datastructures.XZSpatialGrid;
 
 import java.util.*;
 
 /**
  * This class is responsible determining which ships will be loaded/unloaded.
  *
- * It also keeps track of which players are watching a ship, and sending update packets to players.
+ * It also keeps track of which players are watching a ship, and sending update packets to players. Players are put in
+ * a spatial grid once per tick, so that finding the players near a ship doesn't look at every player in the world.
  */
 class WorldShipLoadingController {
 
+    // Large enough that the players within the watch distance of a ship are only in a few cells
+    private static final double PLAYER_GRID_CELL_SIZE = 64;
+    private static final int CHUNK_PACKET_EVICTION_INTERVAL = 20;
+
     private final WorldServerShipManager shipManager;
     private Map<ShipData, Set<EntityPlayerMP>> shipToWatchingPlayers;
+    private final ShipUpdateEncoder updateEncoder;
+    private final ShipUpdateScheduler updateScheduler;
+    private final ShipChunkSendQueue chunkSendQueue;
+    private final XZSpatialGrid<EntityPlayerMP> playerGrid;
+    // Scratch space for grid queries
+    private final List<EntityPlayerMP> nearbyPlayers;
 
     WorldShipLoadingController(WorldServerShipManager shipManager) {
         this.shipManager = shipManager;
         this.shipToWatchingPlayers = new HashMap<>();
+        this.updateEncoder = new ShipUpdateEncoder();
+        this.updateScheduler = new ShipUpdateScheduler();
+        this.chunkSendQueue = new ShipChunkSendQueue(shipManager.getWorld());
+        this.playerGrid = new XZSpatialGrid<>(PLAYER_GRID_CELL_SIZE);
+        this.nearbyPlayers = new ArrayList<>();
+    }
+
+    private void updatePlayerGrid() {
+        playerGrid.clear();
+        for (EntityPlayer player : shipManager.getWorld().playerEntities) {
+            playerGrid.add((EntityPlayerMP) player, player.posX, player.posZ);
+        }
     }
 
     /**
-     * Tells the WorldServerShipManager which ships to load/unload/load in background.
+     * Tells the WorldServerShipManager which ships to load/unload/load in background. Runs first every tick, so this is
+     * where the player grid is built.
      */
     void determineLoadAndUnload() {
+        updatePlayerGrid();
         for (ShipData data : QueryableShipData.get(shipManager.getWorld())) {
             ShipTransform transform = data.getShipTransform();
             Vec3d shipPos = transform.getShipPositionVec3d();
             if (shipManager.getPhysObjectFromUUID(data.getUuid()) == null) {
-                if (existsPlayerWithinDistanceXZ(shipManager.getWorld(), shipPos, VSConfig.SHIP_LOADING_SETTINGS.loadDistance)) {
+                if (existsPlayerWithinDistanceXZ(shipPos, VSConfig.SHIP_LOADING_SETTINGS.loadDistance)) {
                     shipManager.queueShipLoad(data.getUuid());
                 } else {
                     if (VSConfig.SHIP_LOADING_SETTINGS.permanentlyLoaded ||
-                        existsPlayerWithinDistanceXZ(shipManager.getWorld(), shipPos, VSConfig.SHIP_LOADING_SETTINGS.loadBackgroundDistance)) {
+                        existsPlayerWithinDistanceXZ(shipPos, VSConfig.SHIP_LOADING_SETTINGS.loadBackgroundDistance)) {
                         shipManager.queueShipLoadBackground(data.getUuid());
                     }
                 }
             } else {
                 if (!VSConfig.SHIP_LOADING_SETTINGS.permanentlyLoaded &&
-                    !existsPlayerWithinDistanceXZ(shipManager.getWorld(), shipPos, VSConfig.SHIP_LOADING_SETTINGS.unloadDistance)) {
+                    !existsPlayerWithinDistanceXZ(shipPos, VSConfig.SHIP_LOADING_SETTINGS.unloadDistance)) {
                     shipManager.queueShipUnload(data.getUuid());
                 }
             }
@@ -59,56 +82,53 @@ class WorldShipLoadingController {
      * Send ship updates to clients.
      */
     void sendUpdatesToPlayers() {
+        // The player grid was built by determineLoadAndUnload() earlier this tick
         // First get an updated watching players map
         Map<ShipData, Set<EntityPlayerMP>> newWatching = updateWatchingPlayers();
         // Then send updates to players based on the old watching map and new watching map
         sendUpdatesPackets(shipToWatchingPlayers, newWatching);
         // Then update the watching map
         shipToWatchingPlayers = newWatching;
-        // Then update the watching player map of the ship chunks
+        // Then update the watching player map of the ship chunks. Players still getting the chunks of a ship would be
+        // sent updates of chunks they don't have, they get the changed chunks again once they have the rest instead.
         for (PhysicsObject ship : shipManager.getAllLoadedPhysObj()) {
             ship.getWatchingPlayers().clear();
-            ship.getWatchingPlayers().addAll(shipToWatchingPlayers.get(ship.getShipData()));
+            for (EntityPlayerMP player : shipToWatchingPlayers.get(ship.getShipData())) {
+                if (!chunkSendQueue.isPending(player, ship.getShipData())) {
+                    ship.getWatchingPlayers().add(player);
+                }
+            }
         }
     }
 
     /**
-     * Determine which ships are watched by which players.
+     * Determine which ships are watched by which players. Players start watching ships within the watch distance, and
+     * keep watching them until they're past the unwatch distance. Players that left the world aren't in the grid, so
+     * they stop watching everything.
      */
     private Map<ShipData, Set<EntityPlayerMP>> updateWatchingPlayers() {
         Map<ShipData, Set<EntityPlayerMP>> newWatching = new HashMap<>();
-        // Copy the old watching to the new, making sure not to copy data from ships that got unloaded.
+        final double watchDistance = VSConfig.SHIP_LOADING_SETTINGS.watchDistance;
+        final double unwatchDistance = VSConfig.SHIP_LOADING_SETTINGS.unwatchDistance;
         for (PhysicsObject ship : shipManager.getAllLoadedPhysObj()) {
             ShipData shipData = ship.getShipData();
-            if (shipToWatchingPlayers.containsKey(shipData)) {
-                Set<EntityPlayerMP> oldWatchingPlayers = shipToWatchingPlayers.get(shipData);
-                Set<EntityPlayerMP> newWatchingPlayers = new HashSet<>();
-                // Do this to prevent players who left the game from propagating to future watching maps.
-                for (EntityPlayer player : shipManager.getWorld().playerEntities) {
-                    if (oldWatchingPlayers.contains(player)) {
-                        newWatchingPlayers.add((EntityPlayerMP) player);
-                    }
-                }
-                newWatching.put(shipData, newWatchingPlayers);
-            } else {
-                newWatching.put(shipData, new HashSet<>());
-            }
-        }
-
-        // Remove players that aren't watching anymore, and add new watching players
-        for (PhysicsObject ship : shipManager.getAllLoadedPhysObj()) {
             Vec3d shipPos = ship.getShipTransform().getShipPositionVec3d();
-            // Remove players further than the unwatch distance
-            newWatching.get(ship.getShipData()).removeIf(watcher -> !isPlayerWithinDistanceXZ(watcher, shipPos, VSConfig.SHIP_LOADING_SETTINGS.unwatchDistance));
-
-            // Add players closer than the watch distance
-            for (EntityPlayer player : shipManager.getWorld().playerEntities) {
-                if (isPlayerWithinDistanceXZ(player, shipPos, VSConfig.SHIP_LOADING_SETTINGS.watchDistance)) {
-                    newWatching.get(ship.getShipData()).add((EntityPlayerMP) player);
+            Set<EntityPlayerMP> oldWatchingPlayers = shipToWatchingPlayers.getOrDefault(shipData,
+                Collections.emptySet());
+            Set<EntityPlayerMP> newWatchingPlayers = new HashSet<>();
+
+            nearbyPlayers.clear();
+            playerGrid.getWithinDistance(shipPos.x, shipPos.z, Math.max(watchDistance, unwatchDistance),
+                nearbyPlayers);
+            for (EntityPlayerMP player : nearbyPlayers) {
+                if (isPlayerWithinDistanceXZ(player, shipPos, watchDistance)
+                    || (oldWatchingPlayers.contains(player)
+                    && isPlayerWithinDistanceXZ(player, shipPos, unwatchDistance))) {
+                    newWatchingPlayers.add(player);
                 }
             }
+            newWatching.put(shipData, newWatchingPlayers);
         }
-
         return newWatching;
     }
 
@@ -117,46 +137,57 @@ class WorldShipLoadingController {
      */
     private void sendUpdatesPackets(Map<ShipData, Set<EntityPlayerMP>> oldWatching, Map<ShipData, Set<EntityPlayerMP>> newWatching) {
         // First send the update packets
-        // Create a map for every player to the ship data updates it will receive
-        Map<EntityPlayerMP, List<ShipData>> updatesMap = new HashMap<>();
-        shipManager.getWorld().playerEntities.forEach((player) -> updatesMap.put((EntityPlayerMP) player, new ArrayList<>()));
+        // Create the packet every player will receive
+        Map<EntityPlayerMP, ShipIndexDataMessage> playerPacketMap = new HashMap<>();
+        final long worldTime = shipManager.getWorld().getTotalWorldTime();
+        shipManager.getWorld().playerEntities.forEach((player) -> {
+            ShipIndexDataMessage indexDataMessage = new ShipIndexDataMessage();
+            indexDataMessage.setDimensionID(shipManager.getWorld().provider.getDimension());
+            indexDataMessage.setServerTick(worldTime);
+            playerPacketMap.put((EntityPlayerMP) player, indexDataMessage);
+        });
 
+        // Then add the ship updates. Each ship is only encoded once, and every watcher gets the same bytes. Which
+        // transform updates each player gets this tick is up to the update scheduler.
+        List<ShipData> loadedShips = new ArrayList<>();
         for (PhysicsObject ship : shipManager.getAllLoadedPhysObj()) {
             ShipData shipData = ship.getShipData();
+            loadedShips.add(shipData);
             Set<EntityPlayerMP> currentWatchers = newWatching.get(shipData);
-            currentWatchers.forEach((player) -> updatesMap.get(player).add(shipData));
-        }
-
-        Map<EntityPlayerMP, ShipIndexDataMessage> playerPacketMap = new HashMap<>();
-
-        // Then send those updates
-        updatesMap.forEach((player, updates) -> {
-            ShipIndexDataMessage indexDataMessage = new ShipIndexDataMessage();
-            indexDataMessage.setDimensionID(shipManager.getWorld().provider.getDimension());
-            if (!updates.isEmpty()) {
-                indexDataMessage.addData(updates);
+            if (currentWatchers.isEmpty()) {
+                continue;
             }
-            playerPacketMap.put(player, indexDataMessage);
-        });
+            ShipUpdateEncoder.EncodedShipUpdate encodedUpdate = updateEncoder.encode(shipData);
+            Set<EntityPlayerMP> previousWatchers = oldWatching.getOrDefault(shipData, Collections.emptySet());
+            for (EntityPlayerMP player : currentWatchers) {
+                if (encodedUpdate.isStaticDataChanged() || !previousWatchers.contains(player)) {
+                    // New watchers don't have the ShipData yet, so they need all of it
+                    byte[] shipDataBytes = encodedUpdate.getShipDataBytes();
+                    if (shipDataBytes != null) {
+                        playerPacketMap.get(player).addEncodedData(shipDataBytes);
+                        updateScheduler.onShipDataSent(player, shipData, shipDataBytes.length);
+                    }
+                } else {
+                    updateScheduler.offerStateUpdate(player, ship, encodedUpdate.getStateUpdateBytes());
+                }
+            }
+        }
+        updateEncoder.retainShips(loadedShips);
+        updateScheduler.sendDueUpdates(playerPacketMap);
 
-        // Then send ship loads to the packets
+        // Then queue the ship chunks for the new watchers. Ship loads are added to the packets once a player has all
+        // the chunks of a ship, which may take a few ticks for big ships.
         for (PhysicsObject ship : shipManager.getAllLoadedPhysObj()) {
             ShipData shipData = ship.getShipData();
             Set<EntityPlayerMP> newWatchers = new HashSet<>(newWatching.get(shipData));
             if (oldWatching.containsKey(shipData)) {
                 newWatchers.removeAll(oldWatching.get(shipData));
             }
-            if (!newWatchers.isEmpty()) {
-                // First send the ship chunks to the new watchers
-                for (Chunk chunk : ship.getClaimedChunkCache()) {
-                    SPacketChunkData data = new SPacketChunkData(chunk, 65535);
-                    for (EntityPlayerMP player : newWatchers) {
-                        player.connection.sendPacket(data);
-                        shipManager.getWorld().getEntityTracker().sendLeashedEntitiesInChunk(player, chunk);
-                    }
-                }
-
-                newWatchers.forEach(player -> playerPacketMap.get(player).addLoadUUID(shipData.getUuid()));
+            for (EntityPlayerMP player : newWatchers) {
+                chunkSendQueue.queueShip(player, ship);
+            }
+            if (worldTime % CHUNK_PACKET_EVICTION_INTERVAL == 0) {
+                ship.getChunkPacketCache().evictUnused(worldTime);
             }
         }
 
@@ -167,16 +198,23 @@ class WorldShipLoadingController {
                 removedWatchers.removeAll(newWatching.get(shipData));
             }
             for (EntityPlayerMP player : removedWatchers) {
+                if (chunkSendQueue.cancel(player, shipData)) {
+                    // The player was never told to load this ship
+                    continue;
+                }
                 // Handles the case of players who left the world/dimension. Basically just prevents crashes with
                 // BetterPortals.
                 if (!playerPacketMap.containsKey(player)) {
                     playerPacketMap.put(player, new ShipIndexDataMessage());
                     playerPacketMap.get(player).setDimensionID(shipManager.getWorld().provider.getDimension());
+                    playerPacketMap.get(player).setServerTick(worldTime);
                 }
                 playerPacketMap.get(player).addUnloadUUID(shipData.getUuid());
             }
         }
 
+        chunkSendQueue.sendChunks(playerPacketMap);
+
         // Finally, send each player their update packet
         playerPacketMap.forEach((player, packet) -> {
             if (!player.hasDisconnected()) {
@@ -195,15 +233,10 @@ class WorldShipLoadingController {
     }
 
     /**
-     * Returns true if there exists a player within world that is within distance of pos, only using XZ coordinates.
+     * Returns true if there exists a player in the world that is within distance of pos, only using XZ coordinates.
      */
-    private static boolean existsPlayerWithinDistanceXZ(World world, Vec3d pos, double distance) {
-        for (EntityPlayer player : world.playerEntities) {
-            if (isPlayerWithinDistanceXZ(player, pos, distance)) {
-                return true;
-            }
-        }
-        return false;
+    private boolean existsPlayerWithinDistanceXZ(Vec3d pos, double distance) {
+        return playerGrid.anyWithinDistance(pos.x, pos.z, distance);
     }
 
 }
@@ -146,8 +146,8 @@ public class TileEntityCaptainsChair extends TileEntityPilotableImpl {
         linearMomentumDif.mul(lerpFactor);
         angularVelocityDif.mul(lerpFactor);
 
-        controlledShip.getPhysicsCalculations().getLinearVelocity().sub(linearMomentumDif);
-        controlledShip.getPhysicsCalculations().getAngularVelocity().sub(angularVelocityDif);
+        controlledShip.getPhysicsCalculations().addLinearVelocity(linearMomentumDif.negate());
+        controlledShip.getPhysicsCalculations().addAngularVelocity(angularVelocityDif.negate());
     }
 
 }
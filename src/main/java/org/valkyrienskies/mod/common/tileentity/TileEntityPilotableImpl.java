@@ -40,6 +40,11 @@ public abstract class TileEntityPilotableImpl extends TileEntity implements
     public final void onPilotControlsMessage(PilotControlsMessage message, EntityPlayerMP sender) {
         if (sender.getUniqueID().equals(pilotPlayerEntity)) {
             processControlMessage(message, sender);
+            // The pilot is steering the ship, so it shouldn't be asleep
+            PhysicsObject parent = getParentPhysicsEntity();
+            if (parent != null) {
+                parent.getSleepTracker().wakeUp();
+            }
         }
     }
 
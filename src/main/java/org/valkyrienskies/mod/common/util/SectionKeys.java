@@ -0,0 +1,29 @@
+package org.valkyrienskies.mod.common.util;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Packs the coordinates of a chunk section into a long, to key the maps and sets of sections by. Every section of a
+ * world has its own key.
+ */
+@UtilityClass
+public class SectionKeys {
+
+    public static long getSectionKey(int sectionX, int sectionY, int sectionZ) {
+        // 26 bits is enough for every chunk coordinate in a 30 million block world
+        return ((long) sectionX & 0x3FFFFFF) | (((long) sectionZ & 0x3FFFFFF) << 26)
+            | ((long) (sectionY & 0xFFF) << 52);
+    }
+
+    public static int getSectionX(long sectionKey) {
+        return (int) (sectionKey << 38 >> 38);
+    }
+
+    public static int getSectionY(long sectionKey) {
+        return (int) (sectionKey >>> 52);
+    }
+
+    public static int getSectionZ(long sectionKey) {
+        return (int) (sectionKey << 12 >> 38);
+    }
+}
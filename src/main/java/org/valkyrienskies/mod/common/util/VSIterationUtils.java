@@ -248,6 +248,13 @@ public class VSIterationUtils {
 
     }
 
+    @FunctionalInterface
+    public interface IntTernaryPredicate {
+
+        boolean test(int x, int y, int z);
+
+    }
+
     @FunctionalInterface
     public interface IntBinaryConsumer {
 
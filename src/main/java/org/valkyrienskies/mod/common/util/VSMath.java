@@ -2,7 +2,6 @@ package org.valkyrienskies.mod.common.util;
 
 import lombok.experimental.UtilityClass;
 import net.minecraft.util.Tuple;
-import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.Vec3i;
 import org.joml.*;
@@ -19,7 +18,6 @@ import java.util.List;
 @UtilityClass
 public class VSMath {
 
-    public static final int AABB_MERGE_PASSES = 5;
     public static final double STANDING_TOLERANCE = .42D;
 
     public Vector3d toVector3d(Vec3i vec) {
@@ -176,106 +174,6 @@ public class VSMath {
         return radius < STANDING_TOLERANCE;
     }
 
-    /**
-     * Takes an arrayList of AABB's and merges them into larger AABB's
-     */
-    public static void mergeAABBList(List<AxisAlignedBB> toFuse) {
-        boolean changed = true;
-        int passes = 0;
-        while (changed && passes < AABB_MERGE_PASSES) {
-            changed = false;
-            passes++;
-            for (int i = 0; i < toFuse.size(); i++) {
-                AxisAlignedBB bb = toFuse.get(i);
-                for (int j = i + 1; j < toFuse.size(); j++) {
-                    AxisAlignedBB nextOne = toFuse.get(j);
-                    if (connected(bb, nextOne)) {
-                        AxisAlignedBB fused = getFusedBoundingBox(bb, nextOne);
-                        toFuse.remove(j);
-                        toFuse.remove(i);
-                        toFuse.add(fused);
-                        j = toFuse.size();
-                        changed = true;
-                    }
-                }
-            }
-        }
-    }
-
-    private static AxisAlignedBB getFusedBoundingBox(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        double mnX = bb1.minX;
-        double mnY = bb1.minY;
-        double mnZ = bb1.minZ;
-        double mxX = bb1.maxX;
-        double mxY = bb1.maxY;
-        double mxZ = bb1.maxZ;
-        if (bb2.minX < mnX) {
-            mnX = bb2.minX;
-        }
-        if (bb2.minY < mnY) {
-            mnY = bb2.minY;
-        }
-        if (bb2.minZ < mnZ) {
-            mnZ = bb2.minZ;
-        }
-        if (bb2.maxX > mxX) {
-            mxX = bb2.maxX;
-        }
-        if (bb2.maxY > mxY) {
-            mxY = bb2.maxY;
-        }
-        if (bb2.maxZ > mxZ) {
-            mxZ = bb2.maxZ;
-        }
-        return new AxisAlignedBB(mnX, mnY, mnZ, mxX, mxY, mxZ);
-    }
-
-    private static boolean connected(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        return (connectedInX(bb1, bb2) || connectedInY(bb1, bb2) || connectedInZ(bb1, bb2));
-    }
-
-    private static boolean connectedInX(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        return (intersectInX(bb1, bb2)) && (areXAligned(bb1, bb2));
-    }
-
-    private static boolean connectedInY(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        return (intersectInY(bb1, bb2)) && (areYAligned(bb1, bb2));
-    }
-
-    private static boolean connectedInZ(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        return (intersectInZ(bb1, bb2)) && (areZAligned(bb1, bb2));
-    }
-
-    private static boolean intersectInX(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        return ((bb1.maxX >= bb2.minX) && (bb1.maxX < bb2.maxX)) || ((bb1.minX > bb2.minX) && (
-            bb1.minX <= bb2.maxX));
-    }
-
-    private static boolean intersectInY(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        return ((bb1.maxY >= bb2.minY) && (bb1.maxY < bb2.maxY)) || ((bb1.minY > bb2.minY) && (
-            bb1.minY <= bb2.maxY));
-    }
-
-    private static boolean intersectInZ(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        return ((bb1.maxZ >= bb2.minZ) && (bb1.maxZ < bb2.maxZ)) || ((bb1.minZ > bb2.minZ) && (
-            bb1.minZ <= bb2.maxZ));
-    }
-
-    private static boolean areXAligned(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        return (bb1.minY == bb2.minY) && (bb1.minZ == bb2.minZ) && (bb1.maxY == bb2.maxY) && (
-            bb1.maxZ == bb2.maxZ);
-    }
-
-    private static boolean areYAligned(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        return (bb1.minX == bb2.minX) && (bb1.minZ == bb2.minZ) && (bb1.maxX == bb2.maxX) && (
-            bb1.maxZ == bb2.maxZ);
-    }
-
-    private static boolean areZAligned(AxisAlignedBB bb1, AxisAlignedBB bb2) {
-        return (bb1.minX == bb2.minX) && (bb1.minY == bb2.minY) && (bb1.maxX == bb2.maxX) && (
-            bb1.maxY == bb2.maxY);
-    }
-
     /**
      * Interpolates between 2 circular numbers by assuming the shortest path taken.
      *
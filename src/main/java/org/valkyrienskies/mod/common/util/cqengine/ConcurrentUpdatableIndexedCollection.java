@@ -20,9 +20,11 @@ import com.googlecode.cqengine.query.option.FlagsEnabled;
 import com.googlecode.cqengine.query.option.QueryOptions;
 import com.googlecode.cqengine.resultset.ResultSet;
 import com.googlecode.cqengine.resultset.closeable.CloseableResultSet;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -39,7 +41,7 @@ public class ConcurrentUpdatableIndexedCollection<O> implements IndexedCollectio
 
 
     /**
-     * @param addListener To be executed whenever {@link #add} is called. Does not trigger if the
+     * @param addListener To be executed whenever {@link #add} or {@link #update} is called. Does not trigger if the
      *                    collection was not modified (e.g. duplicate item)
      */
     public void registerAddListener(Consumer<Collection<O>> addListener) {
@@ -47,7 +49,7 @@ public class ConcurrentUpdatableIndexedCollection<O> implements IndexedCollectio
     }
 
     /**
-     * @param addListener To be executed whenever {@link #remove} is called. Does not trigger if the
+     * @param addListener To be executed whenever {@link #remove} or {@link #update} is called. Does not trigger if the
      *                    collection was not modified (e.g. duplicate item)
      */
     public void registerRemoveListener(Consumer<Collection<O>> addListener) {
@@ -86,6 +88,15 @@ public class ConcurrentUpdatableIndexedCollection<O> implements IndexedCollectio
         this.updateObjectIndices(Collections.singleton(object), attribute);
     }
 
+    /**
+     * Runs the update listeners for an object that was changed in place, rather than replaced. Its indices are left
+     * alone, use {@link #updateObjectIndices(Object, Attribute)} if an indexed attribute changed.
+     */
+    public void notifyUpdated(O object) {
+        Set<O> oSet = singleton(object);
+        updateListeners.forEach(consumer -> consumer.accept(oSet, oSet));
+    }
+
     // region == Old stuff below ==
 
     /**
@@ -169,8 +180,22 @@ public class ConcurrentUpdatableIndexedCollection<O> implements IndexedCollectio
         Iterable<O> objectsToRemove, Iterable<O> objectsToAdd, QueryOptions queryOptions) {
         queryOptions = openRequestScopeResourcesIfNecessary(queryOptions);
         try {
-            boolean modified = doRemoveAll(objectsToRemove, queryOptions);
-            return doAddAll(objectsToAdd, queryOptions) || modified;
+            boolean removed = doRemoveAll(objectsToRemove, queryOptions);
+            boolean added = doAddAll(objectsToAdd, queryOptions);
+
+            if (removed) {
+                Collection<O> removedObjects = toCollection(objectsToRemove);
+                removeListeners.forEach(consumer -> consumer.accept(removedObjects));
+            }
+            if (added) {
+                Collection<O> addedObjects = toCollection(objectsToAdd);
+                addListeners.forEach(consumer -> consumer.accept(addedObjects));
+            }
+            if (removed || added) {
+                updateListeners.forEach(consumer -> consumer.accept(objectsToRemove, objectsToAdd));
+            }
+
+            return removed || added;
         } finally {
             closeRequestScopeResourcesIfNecessary(queryOptions);
         }
@@ -513,6 +538,16 @@ public class ConcurrentUpdatableIndexedCollection<O> implements IndexedCollectio
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static <O> Collection<O> toCollection(Iterable<O> objects) {
+        if (objects instanceof Collection) {
+            return (Collection<O>) objects;
+        }
+        List<O> list = new ArrayList<>();
+        objects.forEach(list::add);
+        return list;
+    }
+
     protected boolean doAddAll(Iterable<O> objects, QueryOptions queryOptions) {
         if (objects instanceof Collection) {
             Collection<O> c = (Collection<O>) objects;
@@ -42,6 +42,17 @@ public class FastMinMaxMap {
         clear();
     }
 
+    /**
+     * Creates a map with the same entries as toCopy.
+     */
+    public FastMinMaxMap(FastMinMaxMap toCopy) {
+        this.backing = toCopy.backing.clone();
+        this.capacity = toCopy.capacity;
+        this.front = toCopy.front;
+        this.back = toCopy.back;
+        this.size = toCopy.size;
+    }
+
     public void increment(int key) throws IllegalArgumentException {
         int curValue = getValue(key);
         // Update the pointers
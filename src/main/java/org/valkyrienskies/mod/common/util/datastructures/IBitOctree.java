@@ -19,4 +19,10 @@ public interface IBitOctree {
     int getOctreeLevelTwoIndex(int levelThreeIndex, int offset);
 
     int getOctreeLevelThreeIndex(int offset);
+
+    /**
+     * @return A counter that is incremented every time a bit in this octree changes. Used by caches built on top of
+     * this octree to detect that they've gone stale.
+     */
+    int getModificationCount();
 }
\ No newline at end of file
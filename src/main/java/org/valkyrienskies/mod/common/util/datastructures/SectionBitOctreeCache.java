@@ -0,0 +1,122 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the {@link IBitOctree} of a 16x16x16 block section up to date, for physics threads that read it while the game
+ * thread writes blocks.
+ * <p>
+ * An octree is never changed after {@link #get()} returned it. Block writes are only recorded, and the next get()
+ * applies them to a copy of the octree, which is published once it's complete. Readers still holding the old octree
+ * keep seeing the section as it was. Up to {@link #MAX_PENDING_WRITES} writes are applied one block at a time, after
+ * that the copy is filled from all 4096 blocks instead.
+ * <p>
+ * An octree that hasn't been read for {@link #IDLE_NANOS} is dropped by the next block write in its section, see
+ * {@link #onBlockSet(int)}.
+ */
+public class SectionBitOctreeCache {
+
+    static final int MAX_PENDING_WRITES = 64;
+    static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    // Tests whether the block at an index of the section is solid, indices are y << 8 | z << 4 | x
+    private final IntPredicate isSolid;
+    private final LongSupplier clock;
+    // Null until the first get()
+    private volatile SimpleBitOctree octree;
+    private volatile boolean hasPendingWrites;
+    private volatile long lastReadTime;
+    // Only used while holding the lock of this
+    private final short[] pendingWrites;
+    private int pendingWriteCount;
+    private boolean needsRefill;
+
+    public SectionBitOctreeCache(IntPredicate isSolid) {
+        this(isSolid, System::nanoTime);
+    }
+
+    SectionBitOctreeCache(IntPredicate isSolid, LongSupplier clock) {
+        this.isSolid = isSolid;
+        this.clock = clock;
+        this.octree = null;
+        this.hasPendingWrites = false;
+        this.lastReadTime = clock.getAsLong();
+        this.pendingWrites = new short[MAX_PENDING_WRITES];
+        this.pendingWriteCount = 0;
+        this.needsRefill = false;
+    }
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return An octree of the section that includes every write recorded before this call.
+     */
+    public IBitOctree get() {
+        lastReadTime = clock.getAsLong();
+        final SimpleBitOctree current = octree;
+        if (current != null && !hasPendingWrites) {
+            return current;
+        }
+        synchronized (this) {
+            SimpleBitOctree updated = octree;
+            if (updated == null) {
+                updated = new SimpleBitOctree();
+                fill(updated);
+            } else if (hasPendingWrites) {
+                updated = new SimpleBitOctree(updated);
+                if (needsRefill) {
+                    fill(updated);
+                } else {
+                    for (int i = 0; i < pendingWriteCount; i++) {
+                        update(updated, pendingWrites[i]);
+                    }
+                }
+            }
+            pendingWriteCount = 0;
+            needsRefill = false;
+            hasPendingWrites = false;
+            // Only published once it's complete
+            octree = updated;
+            return updated;
+        }
+    }
+
+    /**
+     * Records that the block at index changed, must be called after the block is written. Only one thread may write
+     * blocks at a time.
+     *
+     * @return False if the octree wasn't read for a while, in which case this cache should be thrown away and a new one
+     * created the next time the octree is needed.
+     */
+    public synchronized boolean onBlockSet(int index) {
+        if (clock.getAsLong() - lastReadTime > IDLE_NANOS) {
+            return false;
+        }
+        if (octree == null) {
+            // The first get() reads every block anyway
+            return true;
+        }
+        if (pendingWriteCount < MAX_PENDING_WRITES) {
+            pendingWrites[pendingWriteCount++] = (short) index;
+        } else {
+            needsRefill = true;
+        }
+        hasPendingWrites = true;
+        return true;
+    }
+
+    private void fill(SimpleBitOctree toFill) {
+        for (int index = 0; index < IBitOctree.BLOCKS_TOTAL; index++) {
+            update(toFill, index);
+        }
+    }
+
+    private void update(SimpleBitOctree toUpdate, int index) {
+        int x = index & 0xF;
+        int z = (index & 0xF0) >> 4;
+        int y = (index & 0xF00) >> 8;
+        toUpdate.set(x, y, z, isSolid.test(index));
+    }
+}
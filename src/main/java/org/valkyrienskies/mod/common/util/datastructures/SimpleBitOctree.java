@@ -2,12 +2,21 @@ package org.valkyrienskies.mod.common.util.datastructures;
 
 public class SimpleBitOctree implements IBitOctree {
 
-    private final IBitSet bitbuffer;
+    private final SmallBitSet bitbuffer;
+    private volatile int modificationCount;
 
     public SimpleBitOctree() {
         bitbuffer = new SmallBitSet(BITS_TOTAL);
     }
 
+    /**
+     * Creates a copy of other, with the same modification count.
+     */
+    public SimpleBitOctree(SimpleBitOctree other) {
+        bitbuffer = new SmallBitSet(other.bitbuffer);
+        modificationCount = other.modificationCount;
+    }
+
     @Override
     public void set(int x, int y, int z, boolean bit) {
         int index = getBlockIndex(x, y, z);
@@ -15,6 +24,7 @@ public class SimpleBitOctree implements IBitOctree {
         if (bitbuffer.get(index) != bit) {
             bitbuffer.set(index, bit);
             updateOctrees(x, y, z, bit);
+            modificationCount++;
         }
     }
 
@@ -44,6 +54,11 @@ public class SimpleBitOctree implements IBitOctree {
         return BLOCKS_TOTAL + (73 * offset);
     }
 
+    @Override
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
     // If something tried calling code outside of the buffer size, throw an
     // IllegalArgumentException its way.
     private void ensureCapacity(int index) {
@@ -17,6 +17,13 @@ public class SmallBitSet implements IBitSet {
         data = new int[(size >> 5) + 1];
     }
 
+    /**
+     * Creates a copy of other.
+     */
+    public SmallBitSet(SmallBitSet other) {
+        data = other.data.clone();
+    }
+
     @Override
     public void set(int index) {
         data[index >> 5] |= 1 << (index & 0x1F);
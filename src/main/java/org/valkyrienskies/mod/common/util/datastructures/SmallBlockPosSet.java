@@ -25,6 +25,7 @@ import org.valkyrienskies.mod.common.util.datastructures.SmallBlockPosSet.SmallB
 import org.valkyrienskies.mod.common.util.VSIterationUtils;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.Iterator;
 
@@ -44,8 +45,9 @@ public class SmallBlockPosSet implements IBlockPosSet {
 
     @Nonnull
     private final TIntList compressedBlockPosList;
-    @Nonnull
-    private final TIntIntMap listValueToIndex;
+    // Only built once it's needed, see getListValueToIndex()
+    @Nullable
+    private TIntIntMap listValueToIndex;
     @Getter
     private final int centerX, centerZ;
 
@@ -56,12 +58,39 @@ public class SmallBlockPosSet implements IBlockPosSet {
         this.centerZ = centerZ;
     }
 
+    /**
+     * Creates a set from positions that are already compressed, without hashing them. The index of the positions is
+     * only built by the first operation that needs it, so sets that are loaded and never queried or changed never pay
+     * for it.
+     *
+     * @param compressedPositions Must not have duplicates
+     */
+    private SmallBlockPosSet(int centerX, int centerZ, TIntList compressedPositions) {
+        this.compressedBlockPosList = compressedPositions;
+        this.listValueToIndex = null;
+        this.centerX = centerX;
+        this.centerZ = centerZ;
+    }
+
+    @Nonnull
+    private TIntIntMap getListValueToIndex() {
+        if (listValueToIndex == null) {
+            TIntIntMap index = new TIntIntHashMap(Math.max(10, compressedBlockPosList.size()));
+            for (int i = 0; i < compressedBlockPosList.size(); i++) {
+                index.put(compressedBlockPosList.get(i), i);
+            }
+            listValueToIndex = index;
+        }
+        return listValueToIndex;
+    }
+
     @Override
     public boolean add(int x, int y, int z) throws IllegalArgumentException {
         if (!canStore(x, y, z)) {
             throw new IllegalArgumentException("Cannot store block position at <" + x + "," + y + "," + z + ">");
         }
         int compressedPos = compress(x, y, z);
+        TIntIntMap listValueToIndex = getListValueToIndex();
         if (listValueToIndex.containsKey(compressedPos)) {
             return false;
         }
@@ -76,6 +105,7 @@ public class SmallBlockPosSet implements IBlockPosSet {
             throw new IllegalArgumentException("Cannot remove block position at <" + x + "," + y + "," + z + ">");
         }
         int compressedPos = compress(x, y, z);
+        TIntIntMap listValueToIndex = getListValueToIndex();
         if (!listValueToIndex.containsKey(compressedPos)) {
             return false;
         }
@@ -102,7 +132,7 @@ public class SmallBlockPosSet implements IBlockPosSet {
             // This pos cannot exist in this set
             return false;
         }
-        return listValueToIndex.containsKey(compress(x, y, z));
+        return getListValueToIndex().containsKey(compress(x, y, z));
     }
 
     @Override
@@ -138,10 +168,19 @@ public class SmallBlockPosSet implements IBlockPosSet {
         }
     }
 
+    /**
+     * @return A copy of this set that doesn't change when this one does. Only the positions are copied, the copy
+     * builds its own index if it needs one.
+     */
+    @Nonnull
+    public SmallBlockPosSet copy() {
+        return new SmallBlockPosSet(centerX, centerZ, new TIntArrayList(compressedBlockPosList));
+    }
+
     @Override
     public void clear() {
         compressedBlockPosList.clear();
-        listValueToIndex.clear();
+        listValueToIndex = new TIntIntHashMap();
     }
 
     @Nonnull
@@ -220,15 +259,8 @@ public class SmallBlockPosSet implements IBlockPosSet {
 
             gen.writeStartObject();
 
-            gen.writeFieldName("positions");
-            gen.writeStartArray(value.compressedBlockPosList.size());
-            TIntIterator iter = value.compressedBlockPosList.iterator();
-
-            while (iter.hasNext()) {
-                gen.writeNumber(iter.next());
-            }
-            gen.writeEndArray();
-
+            gen.writeBinaryField("sections",
+                SmallBlockPosSetCodec.encode(value.compressedBlockPosList, true));
             gen.writeNumberField("centerX", value.centerX);
             gen.writeNumberField("centerZ", value.centerZ);
 
@@ -251,15 +283,19 @@ public class SmallBlockPosSet implements IBlockPosSet {
             int centerX = node.get("centerX").asInt();
             int centerZ = node.get("centerZ").asInt();
 
-            SmallBlockPosSet set = new SmallBlockPosSet(centerX, centerZ);
-
-            for (JsonNode elem : node.get("positions")) {
-                int positionInt = elem.asInt();
-                set.compressedBlockPosList.add(positionInt);
-                set.listValueToIndex.put(positionInt, set.compressedBlockPosList.size() - 1);
+            TIntList positions;
+            if (node.has("sections")) {
+                positions = new TIntArrayList(SmallBlockPosSetCodec.decode(node.get("sections").binaryValue()));
+            } else {
+                // Saved before the positions were stored by section
+                JsonNode positionsNode = node.get("positions");
+                positions = new TIntArrayList(positionsNode.size());
+                for (JsonNode elem : positionsNode) {
+                    positions.add(elem.asInt());
+                }
             }
 
-            return set;
+            return new SmallBlockPosSet(centerX, centerZ, positions);
         }
     }
 }
@@ -51,6 +51,27 @@ public class SmallBlockPosSetAABB implements IBlockPosSetAABB {
         this.zMap = new FastMinMaxMap(zSize);
     }
 
+    private SmallBlockPosSetAABB(SmallBlockPosSetAABB toCopy) {
+        this.blockPosSet = toCopy.blockPosSet.copy();
+        this.centerX = toCopy.centerX;
+        this.centerY = toCopy.centerY;
+        this.centerZ = toCopy.centerZ;
+        this.xSize = toCopy.xSize;
+        this.ySize = toCopy.ySize;
+        this.zSize = toCopy.zSize;
+        this.xMap = new FastMinMaxMap(toCopy.xMap);
+        this.yMap = new FastMinMaxMap(toCopy.yMap);
+        this.zMap = new FastMinMaxMap(toCopy.zMap);
+    }
+
+    /**
+     * @return A copy of this set that doesn't change when this one does.
+     */
+    @Nonnull
+    public SmallBlockPosSetAABB copy() {
+        return new SmallBlockPosSetAABB(this);
+    }
+
     @Nullable
     @Override
     public AxisAlignedBB makeAABB() {
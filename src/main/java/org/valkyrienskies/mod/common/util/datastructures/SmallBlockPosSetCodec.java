@@ -0,0 +1,247 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import gnu.trove.list.TIntList;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The binary format of the positions of a {@link SmallBlockPosSet}, grouped by the 16x16x16 section they're in.
+ * <p>
+ * Sections with few positions are written as a list of 12 bit indices within the section, and sections with many as
+ * a 4096 bit bitmap, whichever is smaller. The sections can optionally be deflated. Positions are read and written
+ * in the compressed form of {@link SmallBlockPosSet}, relative to the center of the set, and decoding produces them
+ * in an array without ever hashing them.
+ * <pre>
+ * byte   FORMAT_VERSION
+ * byte   flags, FLAG_DEFLATED if everything past the header is deflated
+ * int    the number of positions
+ * int    the number of sections
+ * For each section, in increasing order of section key:
+ *     int    section key, see toSortKey()
+ *     short  the number of positions in the section, 1 to 4096
+ *     If that number is above SPARSE_SECTION_LIMIT, 64 longs of bitmap.
+ *     Otherwise, a short for each position, the index within the section in increasing order.
+ * </pre>
+ */
+public final class SmallBlockPosSetCodec {
+
+    public static final int FORMAT_VERSION = 1;
+    private static final int FLAG_DEFLATED = 1;
+    private static final int SECTION_VOLUME = 16 * 16 * 16;
+    // Sections with more positions than this take less space as a bitmap than as a list of shorts
+    private static final int SPARSE_SECTION_LIMIT = SECTION_VOLUME / 16;
+
+    private SmallBlockPosSetCodec() {
+    }
+
+    /**
+     * @param compressedPositions The positions, compressed as in {@link SmallBlockPosSet}. Must not have duplicates.
+     * @param deflate             If true, the sections are deflated as well
+     */
+    @Nonnull
+    public static byte[] encode(@Nonnull TIntList compressedPositions, boolean deflate) {
+        // Sort by section and then by position within the section, so each section is a single run
+        final int[] sortKeys = compressedPositions.toArray();
+        for (int i = 0; i < sortKeys.length; i++) {
+            sortKeys[i] = toSortKey(sortKeys[i]);
+        }
+        radixSortUnsigned(sortKeys);
+        int sectionCount = 0;
+        for (int i = 0; i < sortKeys.length; i++) {
+            if (i == 0 || sortKeys[i] >>> 12 != sortKeys[i - 1] >>> 12) {
+                sectionCount++;
+            }
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(sortKeys.length + 64);
+        final Deflater deflater = deflate ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            DataOutputStream header = new DataOutputStream(bytes);
+            header.writeByte(FORMAT_VERSION);
+            header.writeByte(deflate ? FLAG_DEFLATED : 0);
+            header.writeInt(sortKeys.length);
+            header.writeInt(sectionCount);
+            header.flush();
+
+            OutputStream bodyStream = deflate ? new DeflaterOutputStream(bytes, deflater, 8192) : bytes;
+            DataOutputStream body = new DataOutputStream(bodyStream);
+            final long[] bitmap = new long[SECTION_VOLUME / 64];
+            int sectionStart = 0;
+            while (sectionStart < sortKeys.length) {
+                final int sectionKey = sortKeys[sectionStart] >>> 12;
+                int sectionEnd = sectionStart + 1;
+                while (sectionEnd < sortKeys.length && sortKeys[sectionEnd] >>> 12 == sectionKey) {
+                    sectionEnd++;
+                }
+                final int count = sectionEnd - sectionStart;
+                body.writeInt(sectionKey);
+                body.writeShort(count);
+                if (count > SPARSE_SECTION_LIMIT) {
+                    Arrays.fill(bitmap, 0);
+                    for (int i = sectionStart; i < sectionEnd; i++) {
+                        final int index = sortKeys[i] & 0xFFF;
+                        bitmap[index >>> 6] |= 1L << (index & 63);
+                    }
+                    for (long word : bitmap) {
+                        body.writeLong(word);
+                    }
+                } else {
+                    for (int i = sectionStart; i < sectionEnd; i++) {
+                        body.writeShort(sortKeys[i] & 0xFFF);
+                    }
+                }
+                sectionStart = sectionEnd;
+            }
+            body.close();
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return The positions, compressed as in {@link SmallBlockPosSet}, ordered by section.
+     * @throws IOException If the data is corrupt, or was written by a newer version.
+     */
+    @Nonnull
+    public static int[] decode(@Nonnull byte[] data) throws IOException {
+        final ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+        final DataInputStream header = new DataInputStream(bytes);
+        final int version = header.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown block position format version " + version);
+        }
+        final int flags = header.readUnsignedByte();
+        final int positionCount = header.readInt();
+        final int sectionCount = header.readInt();
+        if (positionCount < 0 || sectionCount < 0 || sectionCount > positionCount
+            || positionCount > (long) sectionCount * SECTION_VOLUME) {
+            throw new IOException("Corrupt block position header");
+        }
+
+        final Inflater inflater = (flags & FLAG_DEFLATED) != 0 ? new Inflater() : null;
+        try {
+            InputStream bodyStream = inflater != null ? new InflaterInputStream(bytes, inflater, 8192) : bytes;
+            DataInputStream body = new DataInputStream(bodyStream);
+            final int[] positions = new int[positionCount];
+            int positionIndex = 0;
+            int lastSectionKey = -1;
+            for (int section = 0; section < sectionCount; section++) {
+                final int sectionKey = body.readInt();
+                final int count = body.readUnsignedShort();
+                if (sectionKey <= lastSectionKey || sectionKey >>> 20 != 0 || count == 0 || count > SECTION_VOLUME
+                    || count > positionCount - positionIndex) {
+                    throw new IOException("Corrupt block position section");
+                }
+                lastSectionKey = sectionKey;
+                if (count > SPARSE_SECTION_LIMIT) {
+                    int found = 0;
+                    for (int word = 0; word < SECTION_VOLUME / 64; word++) {
+                        long bits = body.readLong();
+                        found += Long.bitCount(bits);
+                        if (found > count) {
+                            throw new IOException("Corrupt block position bitmap");
+                        }
+                        while (bits != 0) {
+                            final int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                            positions[positionIndex++] = fromSortKey((sectionKey << 12) | index);
+                            bits &= bits - 1;
+                        }
+                    }
+                    if (found != count) {
+                        throw new IOException("Corrupt block position bitmap");
+                    }
+                } else {
+                    int lastIndex = -1;
+                    for (int i = 0; i < count; i++) {
+                        final int index = body.readUnsignedShort();
+                        if (index <= lastIndex || index >= SECTION_VOLUME) {
+                            throw new IOException("Corrupt block position list");
+                        }
+                        lastIndex = index;
+                        positions[positionIndex++] = fromSortKey((sectionKey << 12) | index);
+                    }
+                }
+            }
+            if (positionIndex != positionCount) {
+                throw new IOException("Expected " + positionCount + " block positions, found " + positionIndex);
+            }
+            return positions;
+        } catch (EOFException e) {
+            throw new IOException("Block position data ended early", e);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Sorts the values as unsigned ints, a byte at a time. Much faster than {@link Arrays#sort(int[])} for the
+     * millions of positions of a big ship, which are in no particular order.
+     */
+    private static void radixSortUnsigned(int[] values) {
+        int[] source = values;
+        int[] dest = new int[values.length];
+        final int[] counts = new int[256];
+        for (int shift = 0; shift < 32; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int value : source) {
+                counts[(value >>> shift) & 0xFF]++;
+            }
+            int start = 0;
+            for (int digit = 0; digit < 256; digit++) {
+                final int count = counts[digit];
+                counts[digit] = start;
+                start += count;
+            }
+            for (int value : source) {
+                dest[counts[(value >>> shift) & 0xFF]++] = value;
+            }
+            final int[] temp = source;
+            source = dest;
+            dest = temp;
+        }
+        // After an even number of passes the sorted values are back in the original array
+    }
+
+    /**
+     * Rearranges the bits of a compressed position so the section key is in the top 20 bits, and the index within the
+     * section in the bottom 12. The section key is the top 8 bits of x, then the top 4 bits of y, then the top 8 bits
+     * of z, and the index within the section is the bottom 4 bits of x, then of y, then of z.
+     */
+    private static int toSortKey(int compressed) {
+        // Compressed positions are x in bits 0 to 11, y in 12 to 19 and z in 20 to 31
+        final int x = compressed & 0xFFF;
+        final int y = (compressed >>> 12) & 0xFF;
+        final int z = compressed >>> 20;
+        final int sectionKey = ((x >>> 4) << 12) | ((y >>> 4) << 8) | (z >>> 4);
+        final int index = ((x & 15) << 8) | ((y & 15) << 4) | (z & 15);
+        return (sectionKey << 12) | index;
+    }
+
+    private static int fromSortKey(int sortKey) {
+        final int x = ((sortKey >>> 24) << 4) | ((sortKey >>> 8) & 15);
+        final int y = (((sortKey >>> 20) & 15) << 4) | ((sortKey >>> 4) & 15);
+        final int z = (((sortKey >>> 12) & 0xFF) << 4) | (sortKey & 15);
+        return x | (y << 12) | (z << 20);
+    }
+}
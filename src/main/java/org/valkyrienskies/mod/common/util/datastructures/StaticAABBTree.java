@@ -0,0 +1,174 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import net.minecraft.util.math.AxisAlignedBB;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * An immutable bounding volume hierarchy over a collection of objects with AxisAlignedBBs. The tree copies the
+ * AxisAlignedBBs when it's built, and never changes afterwards, so it can be queried from any thread.
+ * <p>
+ * Cheap enough to rebuild every tick for a few thousand objects, which is simpler and just as fast as refitting a
+ * dynamic tree when nearly every object moves every tick.
+ */
+public class StaticAABBTree<T> {
+
+    // Nodes with this many objects or less aren't split any further
+    private static final int MAX_LEAF_SIZE = 4;
+
+    private final Object[] objects;
+    // The AxisAlignedBB of objects[i] is objectBounds[6 * i] to objectBounds[6 * i + 5], ordered minX, minY, minZ,
+    // maxX, maxY, maxZ.
+    private final double[] objectBounds;
+    // Same layout as objectBounds.
+    private final double[] nodeBounds;
+    // The objects in node i are objects[nodeStart[i]] to objects[nodeEnd[i] - 1]. The left child of node i is i + 1.
+    private final int[] nodeStart, nodeEnd, nodeRightChild;
+    private final int maxDepth;
+    private int nodeCount;
+
+    public StaticAABBTree(@Nonnull Collection<T> toIndex, @Nonnull Function<T, AxisAlignedBB> aabbGetter) {
+        int size = toIndex.size();
+        Object[] unsortedObjects = toIndex.toArray();
+        double[] unsortedBounds = new double[size * 6];
+        for (int i = 0; i < size; i++) {
+            @SuppressWarnings("unchecked")
+            AxisAlignedBB aabb = aabbGetter.apply((T) unsortedObjects[i]);
+            unsortedBounds[i * 6] = aabb.minX;
+            unsortedBounds[i * 6 + 1] = aabb.minY;
+            unsortedBounds[i * 6 + 2] = aabb.minZ;
+            unsortedBounds[i * 6 + 3] = aabb.maxX;
+            unsortedBounds[i * 6 + 4] = aabb.maxY;
+            unsortedBounds[i * 6 + 5] = aabb.maxZ;
+        }
+
+        // A binary tree with leaves of at least 1 object has less than 2 * size nodes
+        int maxNodes = Math.max(1, 2 * size);
+        this.nodeBounds = new double[maxNodes * 6];
+        this.nodeStart = new int[maxNodes];
+        this.nodeEnd = new int[maxNodes];
+        this.nodeRightChild = new int[maxNodes];
+        this.nodeCount = 0;
+
+        // Build the tree over a permutation of the objects, then put the objects in tree order.
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        this.maxDepth = buildNode(order, unsortedBounds, 0, size, 0);
+
+        this.objects = new Object[size];
+        this.objectBounds = new double[size * 6];
+        for (int i = 0; i < size; i++) {
+            objects[i] = unsortedObjects[order[i]];
+            System.arraycopy(unsortedBounds, order[i] * 6, objectBounds, i * 6, 6);
+        }
+    }
+
+    /**
+     * Adds every object whose AxisAlignedBB intersects toCheck to dest, using the same test as
+     * {@link AxisAlignedBB#intersects(AxisAlignedBB)}. Uses the AxisAlignedBBs from when the tree was built.
+     */
+    @SuppressWarnings("unchecked")
+    public void getIntersecting(@Nonnull AxisAlignedBB toCheck, @Nonnull List<? super T> dest) {
+        if (objects.length == 0) {
+            return;
+        }
+        int[] stack = new int[maxDepth + 1];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if (!intersects(nodeBounds, node, toCheck)) {
+                continue;
+            }
+            if (nodeRightChild[node] == -1) {
+                for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                    if (intersects(objectBounds, i, toCheck)) {
+                        dest.add((T) objects[i]);
+                    }
+                }
+            } else {
+                stack[stackSize++] = nodeRightChild[node];
+                stack[stackSize++] = node + 1;
+            }
+        }
+    }
+
+    /**
+     * A check that doesn't allocate anything, for callers that usually query far away from every object.
+     *
+     * @return False if no object can intersect the given box, see {@link #getIntersecting}.
+     */
+    public boolean mayIntersect(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        return objects.length != 0
+            && minX < nodeBounds[3] && maxX > nodeBounds[0]
+            && minY < nodeBounds[4] && maxY > nodeBounds[1]
+            && minZ < nodeBounds[5] && maxZ > nodeBounds[2];
+    }
+
+    public int size() {
+        return objects.length;
+    }
+
+    /**
+     * Creates the node containing order[start] to order[end - 1], and its children.
+     *
+     * @return The depth of the deepest leaf under this node
+     */
+    private int buildNode(Integer[] order, double[] bounds, int start, int end, int depth) {
+        int node = nodeCount++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeRightChild[node] = -1;
+
+        // Compute the bounds of this node
+        double[] enclosing = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = start; i < end; i++) {
+            int objectOffset = order[i] * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                enclosing[axis] = Math.min(enclosing[axis], bounds[objectOffset + axis]);
+                enclosing[axis + 3] = Math.max(enclosing[axis + 3], bounds[objectOffset + axis + 3]);
+            }
+        }
+        System.arraycopy(enclosing, 0, nodeBounds, node * 6, 6);
+
+        if (end - start <= MAX_LEAF_SIZE) {
+            return depth;
+        }
+
+        // Split along the longest axis of the node at the median object center
+        int splitAxis = 0;
+        for (int axis = 1; axis < 3; axis++) {
+            if (enclosing[axis + 3] - enclosing[axis] > enclosing[splitAxis + 3] - enclosing[splitAxis]) {
+                splitAxis = axis;
+            }
+        }
+        final int sortAxis = splitAxis;
+        Arrays.sort(order, start, end, (a, b) -> Double.compare(
+            bounds[a * 6 + sortAxis] + bounds[a * 6 + sortAxis + 3],
+            bounds[b * 6 + sortAxis] + bounds[b * 6 + sortAxis + 3]));
+
+        int middle = (start + end) >>> 1;
+        int leftDepth = buildNode(order, bounds, start, middle, depth + 1);
+        nodeRightChild[node] = nodeCount;
+        int rightDepth = buildNode(order, bounds, middle, end, depth + 1);
+        return Math.max(leftDepth, rightDepth);
+    }
+
+    /**
+     * Same as {@link AxisAlignedBB#intersects(AxisAlignedBB)}. Because that test is strict, a node that fails it can't
+     * contain an object that passes it.
+     */
+    private static boolean intersects(double[] bounds, int index, AxisAlignedBB toCheck) {
+        int offset = index * 6;
+        return toCheck.minX < bounds[offset + 3] && toCheck.maxX > bounds[offset]
+            && toCheck.minY < bounds[offset + 4] && toCheck.maxY > bounds[offset + 1]
+            && toCheck.minZ < bounds[offset + 5] && toCheck.maxZ > bounds[offset + 2];
+    }
+}
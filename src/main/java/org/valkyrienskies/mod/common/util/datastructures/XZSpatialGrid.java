@@ -0,0 +1,140 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Buckets objects by their XZ position into square cells, so that finding the objects near a position only looks at
+ * the cells around it instead of every object. Meant to be rebuilt every tick: {@link #clear()} keeps the cells that
+ * were used, so rebuilding with objects that barely moved doesn't allocate.
+ * <p>
+ * Distances are only measured on the X and Z axes. Not thread safe.
+ */
+public class XZSpatialGrid<T> {
+
+    private final double cellSize;
+    private final TLongObjectMap<List<Entry<T>>> cells;
+    // Entries are pooled so that rebuilding the grid every tick doesn't allocate
+    private final List<Entry<T>> entries;
+    private int size;
+
+    public XZSpatialGrid(double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive, got " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.cells = new TLongObjectHashMap<>();
+        this.entries = new ArrayList<>();
+        this.size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every object. Cells that were empty before this call are thrown away, the rest are kept for reuse.
+     */
+    public void clear() {
+        cells.retainEntries((key, cell) -> {
+            boolean used = !cell.isEmpty();
+            cell.clear();
+            return used;
+        });
+        for (int i = 0; i < size; i++) {
+            entries.get(i).value = null;
+        }
+        size = 0;
+    }
+
+    public void add(T value, double x, double z) {
+        if (size == entries.size()) {
+            entries.add(new Entry<>());
+        }
+        final Entry<T> entry = entries.get(size++);
+        entry.value = value;
+        entry.x = x;
+        entry.z = z;
+        final long key = getCellKey(getCell(x), getCell(z));
+        List<Entry<T>> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ArrayList<>();
+            cells.put(key, cell);
+        }
+        cell.add(entry);
+    }
+
+    /**
+     * Adds every object closer than distance to (x, z) to out.
+     */
+    public void getWithinDistance(double x, double z, double distance, Collection<? super T> out) {
+        final double distanceSq = distance * distance;
+        final int minCellX = getCell(x - distance);
+        final int maxCellX = getCell(x + distance);
+        final int minCellZ = getCell(z - distance);
+        final int maxCellZ = getCell(z + distance);
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                final List<Entry<T>> cell = cells.get(getCellKey(cellX, cellZ));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    final Entry<T> entry = cell.get(i);
+                    if (entry.isWithinDistanceSq(x, z, distanceSq)) {
+                        out.add(entry.value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if any object is closer than distance to (x, z).
+     */
+    public boolean anyWithinDistance(double x, double z, double distance) {
+        final double distanceSq = distance * distance;
+        final int minCellX = getCell(x - distance);
+        final int maxCellX = getCell(x + distance);
+        final int minCellZ = getCell(z - distance);
+        final int maxCellZ = getCell(z + distance);
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                final List<Entry<T>> cell = cells.get(getCellKey(cellX, cellZ));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    if (cell.get(i).isWithinDistanceSq(x, z, distanceSq)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private int getCell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long getCellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    private static class Entry<T> {
+
+        T value;
+        double x, z;
+
+        boolean isWithinDistanceSq(double otherX, double otherZ, double distanceSq) {
+            final double xDif = x - otherX;
+            final double zDif = z - otherZ;
+            return xDif * xDif + zDif * zDif < distanceSq;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import org.valkyrienskies.mod.common.physics.RigidBodyStore;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A ship stepped by a {@link ShipPhysicsPipeline}. The pipeline applies drag and gravity to the body of the ship and
+ * integrates it, everything else is done by the ship, in the order of the methods below.
+ *
+ * @param <T> The type of the narrow phase tasks of the ship
+ */
+public interface IPhysicsPipelineShip<T extends Callable<Void>> {
+
+    /**
+     * @return The body of the ship, in the {@link RigidBodyStore} of the pipeline.
+     */
+    RigidBodyStore.BodyHandle getBody();
+
+    /**
+     * Marks the body of the ship as being stepped by timeStep seconds, and updates its mass and inertia.
+     */
+    void prepareStep(double timeStep);
+
+    /**
+     * Applies the forces of the ship, once drag and gravity have been applied.
+     */
+    void applyForces();
+
+    /**
+     * Updates the collision cache of the ship if needed, and adds the narrow phase tasks of this step to toAdd.
+     */
+    void splitIntoCollisionTasks(List<T> toAdd);
+
+    /**
+     * Applies the contacts found by one of the tasks of this step. Called for every task after all of them finished
+     * running, in the order they were added in.
+     */
+    void processCollisionTask(T task);
+
+    /**
+     * Called once every contact of the step has been applied, right before the body is integrated.
+     */
+    void prepareIntegration();
+
+    /**
+     * Called once the body has been integrated.
+     */
+    void finishStep();
+
+    ShipPhysicsProfile getPhysicsProfile();
+}
@@ -0,0 +1,29 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import org.valkyrienskies.mod.common.collision.ShipPairCollisionTask;
+
+import java.util.List;
+
+/**
+ * Finds and resolves the collisions between the ships stepped by a {@link ShipPhysicsPipeline}.
+ *
+ * @param <S> The type of the ships
+ */
+public interface IShipPairCollider<S> {
+
+    /**
+     * @return True if ship might touch another ship this tick. Such ships can't be stepped on their own.
+     */
+    boolean isColliding(S ship);
+
+    /**
+     * Adds the collision tasks between the ships of the step that might touch each other to toAdd.
+     */
+    void splitIntoCollisionTasks(List<S> shipsInStep, List<ShipPairCollisionTask> toAdd);
+
+    /**
+     * Applies the contacts found by the tasks of the last {@link #splitIntoCollisionTasks(List, List)}, after the
+     * contacts of every ship with the world.
+     */
+    void processCollisionTasks();
+}
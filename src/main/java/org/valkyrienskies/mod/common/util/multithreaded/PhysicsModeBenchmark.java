@@ -0,0 +1,77 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compares the serial and the per-ship parallel physics pipelines of a {@link VSWorldPhysicsLoop} on the ships that
+ * are actually loaded. The physics loop runs ticksPerMode ticks with the serial pipeline, then ticksPerMode ticks with
+ * the parallel pipeline, and records how long the physics work took (not including the time spent waiting for the
+ * next tick).
+ * <p>
+ * Both pipelines of {@link ShipPhysicsPipeline} produce bit for bit identical results, see ShipPhysicsPipelineTest,
+ * so this doesn't disturb the simulation; it only forces which pipeline is used while the benchmark is running.
+ */
+public class PhysicsModeBenchmark {
+
+    private final int ticksPerMode;
+    private final long[] totalNanos;
+    private final long[] totalShips;
+    private int ticksRecorded;
+    @Getter
+    private final CompletableFuture<PhysicsModeBenchmark> result;
+
+    public PhysicsModeBenchmark(int ticksPerMode) {
+        if (ticksPerMode <= 0) {
+            throw new IllegalArgumentException("ticksPerMode must be positive, got " + ticksPerMode);
+        }
+        this.ticksPerMode = ticksPerMode;
+        this.totalNanos = new long[2];
+        this.totalShips = new long[2];
+        this.ticksRecorded = 0;
+        this.result = new CompletableFuture<>();
+    }
+
+    /**
+     * @return True if the physics loop should run the parallel pipeline for the next tick.
+     */
+    boolean isParallelTick() {
+        return ticksRecorded >= ticksPerMode;
+    }
+
+    /**
+     * Records a physics tick, run by the physics loop after every tick while this benchmark is active.
+     *
+     * @return True if the benchmark is finished.
+     */
+    boolean recordTick(long workNanos, int shipCount) {
+        int mode = isParallelTick() ? 1 : 0;
+        totalNanos[mode] += workNanos;
+        totalShips[mode] += shipCount;
+        ticksRecorded++;
+        if (ticksRecorded >= ticksPerMode * 2) {
+            result.complete(this);
+            return true;
+        }
+        return false;
+    }
+
+    public double getAverageSerialTickMillis() {
+        return totalNanos[0] / (ticksPerMode * 1E6);
+    }
+
+    public double getAverageParallelTickMillis() {
+        return totalNanos[1] / (ticksPerMode * 1E6);
+    }
+
+    public double getAverageShipCount() {
+        return (totalShips[0] + totalShips[1]) / (ticksPerMode * 2D);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f ships with physics: serial %.3f ms/tick, parallel %.3f ms/tick (%d ticks each)",
+            getAverageShipCount(), getAverageSerialTickMillis(), getAverageParallelTickMillis(), ticksPerMode);
+    }
+}
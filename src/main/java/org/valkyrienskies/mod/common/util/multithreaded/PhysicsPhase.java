@@ -0,0 +1,51 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+/**
+ * The steps of a physics tick measured by {@link PhysicsProfiler}.
+ */
+public enum PhysicsPhase {
+
+    /**
+     * Forces, inertia and center of mass, {@link IPhysicsPipelineShip#prepareStep(double)} to
+     * {@link IPhysicsPipelineShip#applyForces()}.
+     */
+    PRE_COLLISION("pre-collision"),
+    /**
+     * Updating the world collision cache and splitting it into collision tasks.
+     */
+    COLLISION_CACHE("collision cache"),
+    /**
+     * Running the collision tasks, summed over every thread that ran them.
+     */
+    NARROW_PHASE("narrow phase"),
+    /**
+     * Applying the contacts found by the collision tasks.
+     */
+    IMPULSE_RESOLUTION("impulse resolution"),
+    /**
+     * Integrating velocity and updating the transform, {@link IPhysicsPipelineShip#prepareIntegration()} to
+     * {@link IPhysicsPipelineShip#finishStep()}.
+     */
+    POST_COLLISION("post-collision"),
+    /**
+     * Tasks queued on the physics thread. Not part of any ship.
+     */
+    QUEUED_TASKS("queued tasks");
+
+    /**
+     * The phases that are measured per ship.
+     */
+    public static final PhysicsPhase[] SHIP_PHASES = {PRE_COLLISION, COLLISION_CACHE, NARROW_PHASE,
+        IMPULSE_RESOLUTION, POST_COLLISION};
+
+    private final String displayName;
+
+    PhysicsPhase(String displayName) {
+        this.displayName = displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
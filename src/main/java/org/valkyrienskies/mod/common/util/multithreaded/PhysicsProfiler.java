@@ -0,0 +1,291 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import com.google.common.collect.ImmutableList;
+import lombok.extern.log4j.Log4j2;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.util.datastructures.TimeHistogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Keeps histograms of how long the physics ticks of a {@link VSWorldPhysicsLoop} take, broken down by
+ * {@link PhysicsPhase}. The per ship breakdown is kept by the {@link ShipPhysicsProfile} of each ship.
+ * <p>
+ * Only the physics thread records ticks, and recording doesn't allocate. Reports can be made from any thread.
+ */
+@Log4j2
+public class PhysicsProfiler implements PhysicsProfilerMXBean {
+
+    private static final int DEFAULT_SLOWEST_SHIPS = 10;
+
+    // The time each tick took, not including the time spent waiting for the next tick
+    private final TimeHistogram tickHistogram;
+    private final TimeHistogram[] phaseHistograms;
+    // How late each tick started compared to when it was scheduled
+    private final TimeHistogram jitterHistogram;
+    private long catchUpTickCount;
+    private long droppedTickCount;
+    // Scratch space for the time of each phase summed over the ships of a tick
+    private final long[] tickPhaseNanos;
+    private volatile boolean resetRequested;
+    // The ships of the last tick, for the per ship reports
+    private volatile List<PhysicsObject> lastTickShips;
+    private ObjectName registeredName;
+
+    public PhysicsProfiler() {
+        this.tickHistogram = new TimeHistogram();
+        this.phaseHistograms = new TimeHistogram[PhysicsPhase.values().length];
+        for (int i = 0; i < phaseHistograms.length; i++) {
+            phaseHistograms[i] = new TimeHistogram();
+        }
+        this.jitterHistogram = new TimeHistogram();
+        this.catchUpTickCount = 0;
+        this.droppedTickCount = 0;
+        this.tickPhaseNanos = new long[PhysicsPhase.values().length];
+        this.resetRequested = false;
+        this.lastTickShips = ImmutableList.of();
+    }
+
+    /**
+     * Records how well the physics thread kept to its schedule, called by the physics thread every time it wakes up to
+     * run ticks.
+     *
+     * @param latenessNanos How long after the first due tick was scheduled it actually started
+     * @param ticksRun      How many ticks are being run back to back
+     * @param ticksDropped  How many ticks were dropped because they were past the catch up budget
+     */
+    void recordSchedule(long latenessNanos, int ticksRun, int ticksDropped) {
+        jitterHistogram.record(latenessNanos);
+        catchUpTickCount += ticksRun - 1;
+        droppedTickCount += ticksDropped;
+    }
+
+    /**
+     * Records a physics tick, called by the physics thread once every ship is done.
+     *
+     * @param tickNanos       The time the whole tick took
+     * @param queuedTaskNanos The time spent running tasks queued on the physics thread
+     * @param ships           The ships that were ticked, must not be modified afterwards
+     */
+    void recordTick(long tickNanos, long queuedTaskNanos, List<PhysicsObject> ships) {
+        if (resetRequested) {
+            resetRequested = false;
+            tickHistogram.reset();
+            jitterHistogram.reset();
+            catchUpTickCount = 0;
+            droppedTickCount = 0;
+            for (TimeHistogram phaseHistogram : phaseHistograms) {
+                phaseHistogram.reset();
+            }
+            for (PhysicsObject ship : ships) {
+                ship.getPhysicsProfile().reset();
+            }
+        }
+
+        for (int i = 0; i < tickPhaseNanos.length; i++) {
+            tickPhaseNanos[i] = 0;
+        }
+        tickPhaseNanos[PhysicsPhase.QUEUED_TASKS.ordinal()] = queuedTaskNanos;
+        for (PhysicsObject ship : ships) {
+            ship.getPhysicsProfile().endTick(tickPhaseNanos);
+        }
+        for (int i = 0; i < tickPhaseNanos.length; i++) {
+            phaseHistograms[i].record(tickPhaseNanos[i]);
+        }
+        tickHistogram.record(tickNanos);
+        lastTickShips = ships;
+    }
+
+    /**
+     * Thread safe, clears every histogram before the next tick is recorded.
+     */
+    @Override
+    public void reset() {
+        resetRequested = true;
+    }
+
+    public TimeHistogram getTickHistogram() {
+        return tickHistogram;
+    }
+
+    public TimeHistogram getJitterHistogram() {
+        return jitterHistogram;
+    }
+
+    /**
+     * The time of phase summed over every ship, per tick.
+     */
+    public TimeHistogram getPhaseHistogram(PhysicsPhase phase) {
+        return phaseHistograms[phase.ordinal()];
+    }
+
+    /**
+     * @return The ships of the last tick that took the longest on average, slowest first.
+     */
+    public List<PhysicsObject> getSlowestShips(int count) {
+        List<PhysicsObject> ships = new ArrayList<>(lastTickShips);
+        ships.sort(Comparator.comparingDouble(
+            (ToDoubleFunction<PhysicsObject>) ship -> ship.getPhysicsProfile().getTickHistogram().getMeanNanos())
+            .reversed());
+        return ships.subList(0, Math.min(count, ships.size()));
+    }
+
+    /**
+     * @return A human readable report, one line per list element.
+     */
+    public List<String> getReportLines(int slowestShipCount) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("Physics ticks: %d, %s", tickHistogram.getCount(), formatHistogram(tickHistogram)));
+        for (PhysicsPhase phase : PhysicsPhase.values()) {
+            lines.add(String.format("  %s: %s", phase, formatHistogram(getPhaseHistogram(phase))));
+        }
+        lines.add(String.format("Tick start jitter: %s", formatHistogram(jitterHistogram)));
+        lines.add(String.format("Catch up ticks: %d, dropped ticks: %d", catchUpTickCount, droppedTickCount));
+        List<PhysicsObject> slowestShips = getSlowestShips(slowestShipCount);
+        if (!slowestShips.isEmpty()) {
+            lines.add("Slowest ships:");
+            for (PhysicsObject ship : slowestShips) {
+                lines.add("  " + formatShip(ship));
+            }
+        }
+        return lines;
+    }
+
+    private static String formatShip(PhysicsObject ship) {
+        ShipPhysicsProfile profile = ship.getPhysicsProfile();
+        PhysicsPhase slowestPhase = PhysicsPhase.SHIP_PHASES[0];
+        for (PhysicsPhase phase : PhysicsPhase.SHIP_PHASES) {
+            if (profile.getPhaseHistogram(phase).getMeanNanos()
+                > profile.getPhaseHistogram(slowestPhase).getMeanNanos()) {
+                slowestPhase = phase;
+            }
+        }
+        return String.format("%s: %s, mostly %s (mean %.3f ms)", ship.getShipData().getName(),
+            formatHistogram(profile.getTickHistogram()), slowestPhase,
+            profile.getPhaseHistogram(slowestPhase).getMeanNanos() / 1E6);
+    }
+
+    private static String formatHistogram(TimeHistogram histogram) {
+        return String.format("mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms", histogram.getMeanNanos() / 1E6,
+            histogram.getPercentileNanos(50) / 1E6, histogram.getPercentileNanos(99) / 1E6,
+            histogram.getMaxNanos() / 1E6);
+    }
+
+    // region JMX
+
+    /**
+     * Registers this profiler with the platform MBeanServer. Failing to do so isn't fatal, the profiler just won't be
+     * visible over JMX.
+     */
+    void registerMBean(String loopName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(
+                "org.valkyrienskies:type=PhysicsProfiler,name=" + ObjectName.quote(loopName));
+            server.registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException | SecurityException e) {
+            log.warn("Could not register the physics profiler of " + loopName + " with JMX", e);
+        }
+    }
+
+    void unregisterMBean() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException | SecurityException e) {
+            log.warn("Could not unregister the physics profiler " + registeredName, e);
+        }
+        registeredName = null;
+    }
+
+    @Override
+    public long getTickCount() {
+        return tickHistogram.getCount();
+    }
+
+    @Override
+    public double getMeanTickMillis() {
+        return tickHistogram.getMeanNanos() / 1E6;
+    }
+
+    @Override
+    public double getP99TickMillis() {
+        return tickHistogram.getPercentileNanos(99) / 1E6;
+    }
+
+    @Override
+    public double getMaxTickMillis() {
+        return tickHistogram.getMaxNanos() / 1E6;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMeanMillis() {
+        Map<String, Double> phaseMeans = new LinkedHashMap<>();
+        for (PhysicsPhase phase : PhysicsPhase.values()) {
+            phaseMeans.put(phase.toString(), getPhaseHistogram(phase).getMeanNanos() / 1E6);
+        }
+        return phaseMeans;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseP99Millis() {
+        Map<String, Double> phaseP99s = new LinkedHashMap<>();
+        for (PhysicsPhase phase : PhysicsPhase.values()) {
+            phaseP99s.put(phase.toString(), getPhaseHistogram(phase).getPercentileNanos(99) / 1E6);
+        }
+        return phaseP99s;
+    }
+
+    @Override
+    public double getMeanJitterMillis() {
+        return jitterHistogram.getMeanNanos() / 1E6;
+    }
+
+    @Override
+    public double getP99JitterMillis() {
+        return jitterHistogram.getPercentileNanos(99) / 1E6;
+    }
+
+    @Override
+    public double getMaxJitterMillis() {
+        return jitterHistogram.getMaxNanos() / 1E6;
+    }
+
+    @Override
+    public long getCatchUpTickCount() {
+        return catchUpTickCount;
+    }
+
+    @Override
+    public long getDroppedTickCount() {
+        return droppedTickCount;
+    }
+
+    @Override
+    public List<String> getSlowestShips() {
+        List<String> ships = new ArrayList<>();
+        for (PhysicsObject ship : getSlowestShips(DEFAULT_SLOWEST_SHIPS)) {
+            ships.add(formatShip(ship));
+        }
+        return ships;
+    }
+
+    @Override
+    public String getReport() {
+        return String.join("\n", getReportLines(DEFAULT_SLOWEST_SHIPS));
+    }
+
+    // endregion
+}
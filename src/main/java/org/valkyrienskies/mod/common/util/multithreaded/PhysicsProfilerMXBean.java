@@ -0,0 +1,39 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JMX view of a {@link PhysicsProfiler}, registered as
+ * <code>org.valkyrienskies:type=PhysicsProfiler,name=&lt;physics loop name&gt;</code>.
+ */
+public interface PhysicsProfilerMXBean {
+
+    long getTickCount();
+
+    double getMeanTickMillis();
+
+    double getP99TickMillis();
+
+    double getMaxTickMillis();
+
+    Map<String, Double> getPhaseMeanMillis();
+
+    Map<String, Double> getPhaseP99Millis();
+
+    double getMeanJitterMillis();
+
+    double getP99JitterMillis();
+
+    double getMaxJitterMillis();
+
+    long getCatchUpTickCount();
+
+    long getDroppedTickCount();
+
+    List<String> getSlowestShips();
+
+    String getReport();
+
+    void reset();
+}
@@ -0,0 +1,105 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides when a {@link VSWorldPhysicsLoop} runs its ticks. Ticks are due at fixed deadlines one tick length apart,
+ * measured from when the scheduler started, so a tick that runs long or a thread that wakes up late doesn't shift every
+ * tick after it. When the loop falls behind it runs the missed ticks back to back, up to a catch up budget. Ticks past
+ * that budget are dropped, which makes the physics run in slow motion instead of locking up trying to catch up.
+ * <p>
+ * Only meant to be used by one thread. Time is passed in rather than read, so that this can be tested.
+ */
+public class PhysicsTickScheduler {
+
+    // LockSupport.parkNanos() tends to oversleep by tens of microseconds, so the end of each wait is spent yielding.
+    private static final long SPIN_NANOS = 200_000;
+
+    private boolean started;
+    // When the next tick should start, in System.nanoTime() time
+    private long nextTickTime;
+    // How late the last pollDueTicks() was compared to the deadline it was due at
+    private long lastLatenessNanos;
+    private int lastDroppedTicks;
+
+    public PhysicsTickScheduler() {
+        reset();
+    }
+
+    /**
+     * Forgets the deadlines, for when the physics were paused. The next call to {@link #pollDueTicks(long, long, int)}
+     * starts a new schedule.
+     */
+    public void reset() {
+        this.started = false;
+        this.nextTickTime = 0;
+        this.lastLatenessNanos = 0;
+        this.lastDroppedTicks = 0;
+    }
+
+    /**
+     * Takes every tick due at time now off of the schedule.
+     *
+     * @param now             The current time in nanoseconds
+     * @param tickNanos       The length of a tick in nanoseconds, may change between calls
+     * @param maxCatchUpTicks The most ticks that may be run back to back, ticks past that are dropped
+     * @return The number of ticks to run right now, 0 if the next tick isn't due yet
+     */
+    public int pollDueTicks(long now, long tickNanos, int maxCatchUpTicks) {
+        if (!started) {
+            started = true;
+            nextTickTime = now;
+        }
+        if (now - nextTickTime < 0) {
+            lastLatenessNanos = 0;
+            lastDroppedTicks = 0;
+            return 0;
+        }
+        lastLatenessNanos = now - nextTickTime;
+        final long dueTicks = lastLatenessNanos / tickNanos + 1;
+        final int ticksToRun = (int) Math.min(dueTicks, Math.max(1, maxCatchUpTicks));
+        lastDroppedTicks = (int) Math.min(Integer.MAX_VALUE, dueTicks - ticksToRun);
+        // Dropped ticks are skipped over too, so the next deadline is always in the future
+        nextTickTime += dueTicks * tickNanos;
+        return ticksToRun;
+    }
+
+    /**
+     * @return The time the next tick is due at, in System.nanoTime() time.
+     */
+    public long getNextTickTime() {
+        return nextTickTime;
+    }
+
+    /**
+     * @return How many nanoseconds after its deadline the last poll that returned ticks happened.
+     */
+    public long getLastLatenessNanos() {
+        return lastLatenessNanos;
+    }
+
+    /**
+     * @return How many ticks the last poll dropped because they were past the catch up budget.
+     */
+    public int getLastDroppedTicks() {
+        return lastDroppedTicks;
+    }
+
+    /**
+     * Blocks the current thread until System.nanoTime() reaches deadline. Parks for most of the wait and yields for the
+     * rest, which is accurate to well under a millisecond without spinning a whole core.
+     */
+    public static void waitUntil(long deadline) {
+        while (true) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+}
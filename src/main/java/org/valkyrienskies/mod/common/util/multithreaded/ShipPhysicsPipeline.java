@@ -0,0 +1,262 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import org.valkyrienskies.mod.common.collision.ShipPairCollisionTask;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.physics.RigidBodyStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The two ways {@link VSWorldPhysicsLoop} steps its ships. {@link #tickSerial(List, int[], double[])} runs every
+ * phase for all of the ships at once, with the narrow phase of every ship in a single batch.
+ * {@link #tickParallel(List, int[], double[])} runs the entire pipeline of each ship as its own fork join task. Both
+ * give exactly the same result.
+ *
+ * @param <S> The type of the ships
+ * @param <T> The type of the narrow phase tasks of the ships
+ */
+class ShipPhysicsPipeline<S extends IPhysicsPipelineShip<T>, T extends Callable<Void>> {
+
+    // Holds the bodies of every ship passed in
+    private final RigidBodyStore store;
+    private final IShipPairCollider<S> pairCollider;
+    private final ForkJoinPool threadPool;
+
+    ShipPhysicsPipeline(RigidBodyStore store, IShipPairCollider<S> pairCollider, ForkJoinPool threadPool) {
+        this.store = store;
+        this.pairCollider = pairCollider;
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Ticks physics and collision for the List of ships passed in. Ships with several steps are stepped over several
+     * rounds. Two ships only collide with each other in the rounds they both take part in.
+     *
+     * @param stepCounts The number of steps of each ship, 0 if the ship is skipped this tick
+     * @param stepTimes  The number of seconds simulated by each step of each ship
+     */
+    void tickSerial(List<S> ships, int[] stepCounts, double[] stepTimes) {
+        int maxSteps = 0;
+        for (int stepCount : stepCounts) {
+            maxSteps = Math.max(maxSteps, stepCount);
+        }
+        for (int step = 0; step < maxSteps; step++) {
+            List<S> shipsInStep = new ArrayList<>(ships.size());
+            double[] timeSteps = new double[ships.size()];
+            for (int i = 0; i < ships.size(); i++) {
+                if (stepCounts[i] > step) {
+                    timeSteps[shipsInStep.size()] = stepTimes[i];
+                    shipsInStep.add(ships.get(i));
+                }
+            }
+            tickSerialStep(shipsInStep, timeSteps);
+        }
+    }
+
+    /**
+     * Runs a single step of every ship passed in, the step of ships.get(i) simulating timeSteps[i] seconds. Drag,
+     * gravity and integration run over every body of the store at once, the time they take is split evenly between
+     * the ships of the step.
+     */
+    private void tickSerialStep(List<S> ships, double[] timeSteps) {
+        final long sharedTimeDivisor = Math.max(1, ships.size());
+        store.beginStep();
+        for (int i = 0; i < ships.size(); i++) {
+            final S ship = ships.get(i);
+            try {
+                final long startTime = System.nanoTime();
+                ship.prepareStep(timeSteps[i]);
+                ship.getPhysicsProfile().addTime(PhysicsPhase.PRE_COLLISION, System.nanoTime() - startTime);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        final long batchStartTime = System.nanoTime();
+        store.updateWorldInertia(0, store.size());
+        store.applyDrag(0, store.size());
+        store.applyGravity(VSConfig.gravity(), 0, store.size());
+        final long batchPreCollisionTime = (System.nanoTime() - batchStartTime) / sharedTimeDivisor;
+
+        List<T> collisionTasks = new ArrayList<>(ships.size() * 2);
+        // The tasks of ships.get(i) end at collisionTasks.get(taskEnds[i] - 1)
+        int[] taskEnds = new int[ships.size()];
+        List<ShipPairCollisionTask> pairCollisionTasks = new ArrayList<>();
+        for (int i = 0; i < ships.size(); i++) {
+            final S ship = ships.get(i);
+            try {
+                final long startTime = System.nanoTime();
+                ship.applyForces();
+                final long preCollisionEndTime = System.nanoTime();
+                ship.getPhysicsProfile().addTime(PhysicsPhase.PRE_COLLISION,
+                    preCollisionEndTime - startTime + batchPreCollisionTime);
+                // Take the big collision and split into tiny ones
+                ship.splitIntoCollisionTasks(collisionTasks);
+                ship.getPhysicsProfile().addTime(PhysicsPhase.COLLISION_CACHE,
+                    System.nanoTime() - preCollisionEndTime);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            taskEnds[i] = collisionTasks.size();
+        }
+
+        // Then the collisions between ships, every ship of the step has already been moved by its forces
+        pairCollider.splitIntoCollisionTasks(ships, pairCollisionTasks);
+
+        try {
+            // The individual collision tasks will sort through a lot of data to find
+            // collision points
+            List<Callable<Void>> narrowPhaseTasks = new ArrayList<>(
+                collisionTasks.size() + pairCollisionTasks.size());
+            narrowPhaseTasks.addAll(collisionTasks);
+            narrowPhaseTasks.addAll(pairCollisionTasks);
+            threadPool.invokeAll(narrowPhaseTasks);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        // Then those collision points have to be processed sequentially afterwards, all in
+        // this thread. Thankfully this step is not cpu intensive.
+        int taskIndex = 0;
+        for (int i = 0; i < ships.size(); i++) {
+            final S ship = ships.get(i);
+            for (; taskIndex < taskEnds[i]; taskIndex++) {
+                final long startTime = System.nanoTime();
+                ship.processCollisionTask(collisionTasks.get(taskIndex));
+                ship.getPhysicsProfile().addTime(PhysicsPhase.IMPULSE_RESOLUTION, System.nanoTime() - startTime);
+            }
+        }
+        // Then the contacts between ships, once every ship has been pushed out of the world
+        pairCollider.processCollisionTasks();
+
+        for (S ship : ships) {
+            try {
+                final long startTime = System.nanoTime();
+                ship.prepareIntegration();
+                ship.getPhysicsProfile().addTime(PhysicsPhase.POST_COLLISION, System.nanoTime() - startTime);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        final long integrationStartTime = System.nanoTime();
+        store.integrate(VSConfig.shipLowerLimit, VSConfig.shipUpperLimit, 0, store.size());
+        final long batchPostCollisionTime = (System.nanoTime() - integrationStartTime) / sharedTimeDivisor;
+
+        for (S ship : ships) {
+            try {
+                final long startTime = System.nanoTime();
+                ship.finishStep();
+                ship.getPhysicsProfile().addTime(PhysicsPhase.POST_COLLISION,
+                    System.nanoTime() - startTime + batchPostCollisionTime);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Ticks physics and collision for the List of ships passed in, running the entire pipeline of each ship as its
+     * own fork join task.
+     * <p>
+     * Ships that aren't near any other ship only collide with the world, so each pipeline only modifies its own ship.
+     * Within a pipeline the collision tasks are joined and processed in the same order as
+     * {@link #tickSerialStep(List, double[])}, and each ship runs the same steps as
+     * {@link #tickSerial(List, int[], double[])}, so the result is identical to the serial version. Ships that might
+     * touch another ship modify each other, so they're ticked by the serial version afterwards.
+     */
+    void tickParallel(List<S> ships, int[] stepCounts, double[] stepTimes) {
+        List<Callable<Void>> shipPipelines = new ArrayList<>(ships.size());
+        List<S> collidingShips = new ArrayList<>();
+        int[] collidingStepCounts = new int[ships.size()];
+        double[] collidingStepTimes = new double[ships.size()];
+        for (int i = 0; i < ships.size(); i++) {
+            final S ship = ships.get(i);
+            final int stepCount = stepCounts[i];
+            final double stepTime = stepTimes[i];
+            if (stepCount == 0) {
+                continue;
+            }
+            if (pairCollider.isColliding(ship)) {
+                collidingStepCounts[collidingShips.size()] = stepCount;
+                collidingStepTimes[collidingShips.size()] = stepTime;
+                collidingShips.add(ship);
+                continue;
+            }
+            shipPipelines.add(() -> {
+                for (int step = 0; step < stepCount; step++) {
+                    tickShipPipeline(ship, stepTime);
+                }
+                return null;
+            });
+        }
+
+        try {
+            threadPool.invokeAll(shipPipelines);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        if (!collidingShips.isEmpty()) {
+            tickSerial(collidingShips, Arrays.copyOf(collidingStepCounts, collidingShips.size()),
+                Arrays.copyOf(collidingStepTimes, collidingShips.size()));
+        }
+    }
+
+    /**
+     * Runs the pre collision, collision cache, narrow phase, and post collision steps of a single ship. Must be called
+     * from within the thread pool.
+     */
+    private void tickShipPipeline(S ship, double timeStep) {
+        List<T> collisionTasks = new ArrayList<>();
+        final ShipPhysicsProfile profile = ship.getPhysicsProfile();
+        final int index = ship.getBody().getIndex();
+        try {
+            final long startTime = System.nanoTime();
+            ship.prepareStep(timeStep);
+            store.updateWorldInertia(index, index + 1);
+            store.applyDrag(index, index + 1);
+            store.applyGravity(VSConfig.gravity(), index, index + 1);
+            ship.applyForces();
+            final long preCollisionEndTime = System.nanoTime();
+            profile.addTime(PhysicsPhase.PRE_COLLISION, preCollisionEndTime - startTime);
+            ship.splitIntoCollisionTasks(collisionTasks);
+            profile.addTime(PhysicsPhase.COLLISION_CACHE, System.nanoTime() - preCollisionEndTime);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        try {
+            // Fork the narrow phase of this ship, and wait for all of it to finish
+            List<ForkJoinTask<Void>> forkedTasks = new ArrayList<>(collisionTasks.size());
+            for (T task : collisionTasks) {
+                forkedTasks.add(ForkJoinTask.adapt(task));
+            }
+            ForkJoinTask.invokeAll(forkedTasks);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        // Then apply the collisions in task order, so that the result doesn't depend on thread scheduling.
+        final long impulseStartTime = System.nanoTime();
+        for (T task : collisionTasks) {
+            ship.processCollisionTask(task);
+        }
+        final long impulseEndTime = System.nanoTime();
+        profile.addTime(PhysicsPhase.IMPULSE_RESOLUTION, impulseEndTime - impulseStartTime);
+
+        try {
+            ship.prepareIntegration();
+            store.integrate(VSConfig.shipLowerLimit, VSConfig.shipUpperLimit, index, index + 1);
+            ship.finishStep();
+            profile.addTime(PhysicsPhase.POST_COLLISION, System.nanoTime() - impulseEndTime);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import org.valkyrienskies.mod.common.util.datastructures.TimeHistogram;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * How long each {@link PhysicsPhase} of a single ship takes per physics tick. Times are added from whichever physics
+ * thread ran that part of the ship, and are turned into histogram samples by {@link PhysicsProfiler} at the end of
+ * every physics tick.
+ */
+public class ShipPhysicsProfile {
+
+    // The time spent in each phase so far this tick, indexed by PhysicsPhase.ordinal()
+    private final AtomicLongArray currentTickNanos;
+    private final TimeHistogram[] phaseHistograms;
+    private final TimeHistogram tickHistogram;
+
+    public ShipPhysicsProfile() {
+        this.currentTickNanos = new AtomicLongArray(PhysicsPhase.values().length);
+        this.phaseHistograms = new TimeHistogram[PhysicsPhase.values().length];
+        for (PhysicsPhase phase : PhysicsPhase.SHIP_PHASES) {
+            phaseHistograms[phase.ordinal()] = new TimeHistogram();
+        }
+        this.tickHistogram = new TimeHistogram();
+    }
+
+    /**
+     * Thread safe, adds time to the current tick of phase.
+     */
+    public void addTime(PhysicsPhase phase, long nanos) {
+        currentTickNanos.addAndGet(phase.ordinal(), nanos);
+    }
+
+    /**
+     * Records the current tick, and adds the time of each phase to worldPhaseNanos. Must only be called by the physics
+     * loop once this ship is done for the tick.
+     */
+    void endTick(long[] worldPhaseNanos) {
+        long tickNanos = 0;
+        for (PhysicsPhase phase : PhysicsPhase.SHIP_PHASES) {
+            long phaseNanos = currentTickNanos.getAndSet(phase.ordinal(), 0);
+            phaseHistograms[phase.ordinal()].record(phaseNanos);
+            worldPhaseNanos[phase.ordinal()] += phaseNanos;
+            tickNanos += phaseNanos;
+        }
+        tickHistogram.record(tickNanos);
+    }
+
+    /**
+     * Must only be called by the physics loop.
+     */
+    void reset() {
+        for (PhysicsPhase phase : PhysicsPhase.SHIP_PHASES) {
+            phaseHistograms[phase.ordinal()].reset();
+        }
+        tickHistogram.reset();
+    }
+
+    /**
+     * @return The histogram of phase, or null if phase isn't measured per ship.
+     */
+    public TimeHistogram getPhaseHistogram(PhysicsPhase phase) {
+        return phaseHistograms[phase.ordinal()];
+    }
+
+    /**
+     * The total time of every phase of this ship, per tick.
+     */
+    public TimeHistogram getTickHistogram() {
+        return tickHistogram;
+    }
+}
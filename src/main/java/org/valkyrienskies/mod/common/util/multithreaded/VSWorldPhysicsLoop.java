@@ -1,23 +1,36 @@
 package org.valkyrienskies.mod.common.util.multithreaded;
 
 import com.google.common.collect.ImmutableList;
+import gnu.trove.list.array.TIntArrayList;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import net.minecraft.client.Minecraft;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.world.World;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
+import org.joml.Vector3d;
 import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
 import org.valkyrienskies.mod.common.collision.ShipCollisionTask;
+import org.valkyrienskies.mod.common.collision.ShipToShipCollider;
 import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
+import org.valkyrienskies.mod.common.physics.RigidBodyStore;
+import org.valkyrienskies.mod.common.physics.ShipSleepTracker;
 import org.valkyrienskies.mod.common.ships.ship_world.IHasShipManager;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Handles the physics for a given world. This is run on a separate thread, not on the game tick.
@@ -26,11 +39,18 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class VSWorldPhysicsLoop implements Runnable {
 
     // The number of physics ticks to be considered in the average tick time.
-    private final static long TICK_TIME_QUEUE = 100;
+    private final static int TICK_TIME_QUEUE = 100;
+    // With adaptive substeps, fast ships are split into enough substeps to not move more than this many meters per step
+    private static final double MAX_SUBSTEP_DISTANCE = .5D;
+    // With adaptive substeps, ships that move less than this many meters per tick are only ticked every few ticks
+    private static final double IDLE_TICK_DISTANCE = .001D;
     // Used to give each VS thread a unique name
     private static int worldPhysicsLoopId = 0;
     private final World hostWorld;
-    private final Queue<Long> latestPhysicsTickTimes;
+    // Ring buffer of the last TICK_TIME_QUEUE tick times
+    private final long[] latestPhysicsTickTimes;
+    private int latestPhysicsTickTimesIndex;
+    private volatile int latestPhysicsTickTimesCount;
     // The ships we will be ticking physics for every tick, and sending those
     // updates to players.
     // Used by the game thread to mark this thread for death.
@@ -39,6 +59,26 @@ public class VSWorldPhysicsLoop implements Runnable {
     private final Queue<Runnable> taskQueue;
     private ImmutableList<PhysicsObject> immutableShipsList;
     private final ConcurrentLinkedQueue<IPhysTimeTask> recurringTasks;
+    private final PhysicsTickScheduler scheduler;
+    // The number of physics ticks run so far, used to decide which ticks idle ships are ticked on
+    private long physicsTickCount;
+    // The rigid bodies of the loaded ships, only touched by the physics thread
+    private final RigidBodyStore rigidBodies;
+    // Finds and resolves the collisions between ships, only touched by the physics thread
+    private final ShipToShipCollider shipCollider;
+    // Steps the ships of rigidBodies, only touched by the physics thread
+    private final ShipPhysicsPipeline<PhysicsObject, ShipCollisionTask> pipeline;
+    // Scratch space of updateSleepingShips(), empty between calls so it doesn't keep unloaded ships around
+    private final Set<PhysicsObject> readyToSleep;
+    private final Vector3d sleepVelocity;
+    // Scratch space of planShipSteps(), empty between calls for the same reason
+    private final Map<PhysicsObject, Integer> shipIndices;
+    private final TIntArrayList pairFirstIndices;
+    private final TIntArrayList pairSecondIndices;
+    // Only touched by the physics thread, new benchmarks are handed over through the taskQueue
+    private PhysicsModeBenchmark activeBenchmark;
+    @Getter
+    private final PhysicsProfiler profiler;
 
     @Getter
     private final String name;
@@ -48,10 +88,25 @@ public class VSWorldPhysicsLoop implements Runnable {
         worldPhysicsLoopId++;
         this.hostWorld = host;
         this.threadRunning = true;
-        this.latestPhysicsTickTimes = new ConcurrentLinkedQueue<>();
+        this.latestPhysicsTickTimes = new long[TICK_TIME_QUEUE];
+        this.latestPhysicsTickTimesIndex = 0;
+        this.latestPhysicsTickTimesCount = 0;
         this.taskQueue = new ConcurrentLinkedQueue<>();
         this.immutableShipsList = ImmutableList.of();
         this.recurringTasks = new ConcurrentLinkedQueue<>();
+        this.scheduler = new PhysicsTickScheduler();
+        this.physicsTickCount = 0;
+        this.rigidBodies = new RigidBodyStore();
+        this.shipCollider = new ShipToShipCollider();
+        this.pipeline = new ShipPhysicsPipeline<>(rigidBodies, shipCollider,
+            ValkyrienSkiesMod.getPhysicsThreadPool());
+        this.readyToSleep = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.sleepVelocity = new Vector3d();
+        this.shipIndices = new IdentityHashMap<>();
+        this.pairFirstIndices = new TIntArrayList();
+        this.pairSecondIndices = new TIntArrayList();
+        this.profiler = new PhysicsProfiler();
+        this.profiler.registerMBean(name);
         log.trace(name + " created.");
     }
 
@@ -71,6 +126,24 @@ public class VSWorldPhysicsLoop implements Runnable {
     public void addRecurringTask(IPhysTimeTask physTask) {
         recurringTasks.add(physTask);
     }
+
+    /**
+     * Thread safe way to start comparing the serial and parallel physics pipelines on the ships of this world.
+     *
+     * @return A future completed on the physics thread once the benchmark is done.
+     */
+    public CompletableFuture<PhysicsModeBenchmark> startBenchmark(int ticksPerMode) {
+        PhysicsModeBenchmark benchmark = new PhysicsModeBenchmark(ticksPerMode);
+        addScheduledTask(() -> {
+            if (activeBenchmark != null) {
+                benchmark.getResult().completeExceptionally(
+                    new IllegalStateException("A physics benchmark is already running"));
+            } else {
+                activeBenchmark = benchmark;
+            }
+        });
+        return benchmark.getResult();
+    }
     /*
      * (non-Javadoc)
      *
@@ -78,44 +151,57 @@ public class VSWorldPhysicsLoop implements Runnable {
      */
     @Override
     public void run() {
+        long lastPhysTickStartTime = 0;
+        boolean hasLastPhysTickStartTime = false;
         while (threadRunning) {
             final MinecraftServer mcServer = hostWorld.getMinecraftServer();
             assert mcServer != null;
             // If server then always tick physics, if single-player then only tick when not paused.
             final boolean tickPhysics = mcServer.isServerRunning() && (mcServer.isDedicatedServer() || !isSinglePlayerPaused());
+            // The number of nanoseconds we want our physics engine tick to take
+            final long idealTickTime = getNsPerTick();
 
             if (tickPhysics) {
                 // The number of seconds the physics engine will move forward
                 final double timeToSimulate = VSConfig.getTimeSimulatedPerTick();
-                // The number of nanoseconds we want our physics engine tick to take
-                final long idealTickTime = (long) (1E9 / VSConfig.targetTps);
-
-                final long physTickStartTime = System.nanoTime();
-                // Run the physics engine tick
-                physicsTick(timeToSimulate);
-                final long physTickEndTime = System.nanoTime();
-                final long physTickDuration = physTickEndTime - physTickStartTime;
-
-                // If the physics tick ran faster than the ideal tick time, then pretend it took the ideal tick time by
-                // waiting.
-                if (physTickDuration < idealTickTime) {
-                    final long sleepMillis = (idealTickTime - physTickDuration) / 1_000_000L;
-                    try {
-                        Thread.sleep(sleepMillis);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+                // Every tick has a fixed deadline, if we fell behind then run the ticks we missed back to back.
+                final int dueTicks = scheduler.pollDueTicks(System.nanoTime(), idealTickTime,
+                    VSConfig.PHYSICS_SETTINGS.maxCatchUpTicks);
+                if (dueTicks > 0) {
+                    profiler.recordSchedule(scheduler.getLastLatenessNanos(), dueTicks,
+                        scheduler.getLastDroppedTicks());
                 }
 
-                // Keep track of the time it took to run the physics tick, including the time we spent sleeping.
-                final long physTickDurationIncludingSleep = System.nanoTime() - physTickStartTime;
-                latestPhysicsTickTimes.add(physTickDurationIncludingSleep);
-                // Ensure that latestPhysicsTickTimes only has TICK_TIME_QUEUE # of elements
-                if (latestPhysicsTickTimes.size() > TICK_TIME_QUEUE) {
-                    latestPhysicsTickTimes.remove();
+                for (int i = 0; i < dueTicks && threadRunning; i++) {
+                    final long physTickStartTime = System.nanoTime();
+                    // Run the physics engine tick
+                    physicsTick(timeToSimulate);
+
+                    // Keep track of the time between the starts of physics ticks, which includes the time we spent
+                    // waiting.
+                    if (hasLastPhysTickStartTime) {
+                        latestPhysicsTickTimes[latestPhysicsTickTimesIndex] =
+                            physTickStartTime - lastPhysTickStartTime;
+                        latestPhysicsTickTimesIndex = (latestPhysicsTickTimesIndex + 1) % TICK_TIME_QUEUE;
+                        if (latestPhysicsTickTimesCount < TICK_TIME_QUEUE) {
+                            latestPhysicsTickTimesCount++;
+                        }
+                    }
+                    lastPhysTickStartTime = physTickStartTime;
+                    hasLastPhysTickStartTime = true;
                 }
+
+                // Wait until the next tick is due. Thread.sleep() only takes whole milliseconds, which at 100 tps
+                // loses up to 10% of every tick.
+                PhysicsTickScheduler.waitUntil(scheduler.getNextTickTime());
+            } else {
+                // Start a new schedule once we're unpaused, instead of trying to catch up on the time spent paused.
+                scheduler.reset();
+                hasLastPhysTickStartTime = false;
+                LockSupport.parkNanos(idealTickTime);
             }
         }
+        profiler.unregisterMBean();
         // If we get to this point of run(), then we are about to return and this thread
         // will terminate soon.
         log.trace(name + " killed");
@@ -126,64 +212,208 @@ public class VSWorldPhysicsLoop implements Runnable {
         immutableShipsList = ((IHasShipManager) hostWorld).getManager().getAllLoadedThreadSafe();
 
         // Run tasks queued to run on physics thread
+        final long tickStartTime = System.nanoTime();
         recurringTasks.forEach(t -> t.runTask(delta));
         taskQueue.forEach(Runnable::run);
         taskQueue.clear();
+        final long queuedTaskNanos = System.nanoTime() - tickStartTime;
+
+        // Keep the bodies of the loaded ships together, so they can be stepped in batches
+        List<RigidBodyStore.BodyHandle> bodies = new ArrayList<>(immutableShipsList.size());
+        for (PhysicsObject physicsObject : immutableShipsList) {
+            bodies.add(physicsObject.getPhysicsCalculations().getBody());
+        }
+        rigidBodies.syncBodies(bodies);
 
-        // Make a sublist of physics objects to process physics on.
-        List<PhysicsObject> physicsEntitiesToDoPhysics = new ArrayList<>();
+        // Make a sublist of physics objects that could have physics, including the ones that are asleep.
+        List<PhysicsObject> shipsWithPhysics = new ArrayList<>();
         for (PhysicsObject physicsObject : immutableShipsList) {
             if (physicsObject.isPhysicsEnabled() && physicsObject.getCachedSurroundingChunks() != null) {
+                final ShipSleepTracker sleepTracker = physicsObject.getSleepTracker();
+                if (sleepTracker.pollWakeRequest() || (sleepTracker.isSleeping()
+                    && (!VSConfig.PHYSICS_SETTINGS.shipSleeping || physicsObject.isShipAligningToGrid()))) {
+                    wakeShip(physicsObject);
+                }
+                shipsWithPhysics.add(physicsObject);
+            }
+        }
+
+        // Find the ships that might touch each other this tick, sleeping ships are woken up by awake ones.
+        if (VSConfig.PHYSICS_SETTINGS.shipToShipCollisions) {
+            shipCollider.updatePairs(shipsWithPhysics, delta);
+            wakeShipsTouchingAwakeShips();
+        } else {
+            shipCollider.clearPairs();
+        }
+
+        // Then the sublist of physics objects to process physics on.
+        List<PhysicsObject> physicsEntitiesToDoPhysics = new ArrayList<>(shipsWithPhysics.size());
+        for (PhysicsObject physicsObject : shipsWithPhysics) {
+            if (!physicsObject.getSleepTracker().isSleeping()) {
                 physicsEntitiesToDoPhysics.add(physicsObject);
             }
         }
 
+        // Decide how many steps each ship is simulated in this tick
+        final int[] stepCounts = new int[physicsEntitiesToDoPhysics.size()];
+        final double[] stepTimes = new double[physicsEntitiesToDoPhysics.size()];
+        planShipSteps(physicsEntitiesToDoPhysics, delta, stepCounts, stepTimes);
+        physicsTickCount++;
+
         // Finally, actually process the physics tick
-        tickThePhysicsAndCollision(physicsEntitiesToDoPhysics, delta);
+        final PhysicsModeBenchmark benchmark = activeBenchmark;
+        final long workStartTime = System.nanoTime();
+        if (benchmark != null ? benchmark.isParallelTick()
+            : VSConfig.MULTITHREADING_SETTINGS.parallelShipPhysicsPipeline) {
+            pipeline.tickParallel(physicsEntitiesToDoPhysics, stepCounts, stepTimes);
+        } else {
+            pipeline.tickSerial(physicsEntitiesToDoPhysics, stepCounts, stepTimes);
+        }
+        updateSleepingShips(physicsEntitiesToDoPhysics);
+        final long workEndTime = System.nanoTime();
+        profiler.recordTick(workEndTime - tickStartTime, queuedTaskNanos, physicsEntitiesToDoPhysics);
+        if (benchmark != null && benchmark.recordTick(workEndTime - workStartTime,
+            physicsEntitiesToDoPhysics.size())) {
+            activeBenchmark = null;
+        }
     }
 
     /**
-     * Ticks physics and collision for the List of PhysicsWrapperEntity passed in.
+     * Without adaptive substeps every ship is simulated in a single step of delta seconds. With them, ships that move
+     * far in a tick are split into several shorter steps, and ships that are barely moving are only stepped every
+     * {@link VSConfig.PhysicsSettings#idleTickInterval} ticks, with a step covering the ticks they were skipped for.
+     * Skipped ships that might touch a ship that steps are stepped as well, see
+     * {@link ShipToShipCollider#stepSkippedPartners}.
+     *
+     * @param stepCounts Filled with the number of steps of each ship, 0 if the ship is skipped this tick
+     * @param stepTimes  Filled with the number of seconds simulated by each step of each ship
      */
-    private void tickThePhysicsAndCollision(List<PhysicsObject> shipsWithPhysics, double timeStep) {
-        List<ShipCollisionTask> collisionTasks = new ArrayList<>(
-            shipsWithPhysics.size() * 2);
-        for (PhysicsObject wrapper : shipsWithPhysics) {
-            // Update the physics simulation
-            try {
-                wrapper.getPhysicsCalculations().rawPhysTickPreCol(timeStep);
-                // Update the collision task if necessary
-                wrapper.getPhysicsCalculations().getWorldCollision()
-                        .tickUpdatingTheCollisionCache();
-                // Take the big collision and split into tiny ones
-                wrapper.getPhysicsCalculations().getWorldCollision()
-                        .splitIntoCollisionTasks(collisionTasks);
-            } catch (Exception e) {
-                e.printStackTrace();
+    private void planShipSteps(List<PhysicsObject> ships, double delta, int[] stepCounts, double[] stepTimes) {
+        final VSConfig.PhysicsSettings settings = VSConfig.PHYSICS_SETTINGS;
+        for (int i = 0; i < ships.size(); i++) {
+            if (!settings.adaptiveSubsteps) {
+                stepCounts[i] = 1;
+                stepTimes[i] = delta;
+                continue;
             }
+            final PhysicsCalculations calculations = ships.get(i).getPhysicsCalculations();
+            final AxisAlignedBB shipBB = ships.get(i).getShipBoundingBox();
+            // The center of mass is inside the bounding box, so no block is further from it than the box's diagonal
+            final double radius = Math.sqrt(square(shipBB.maxX - shipBB.minX) + square(shipBB.maxY - shipBB.minY)
+                + square(shipBB.maxZ - shipBB.minZ));
+            final double tickDistance = (calculations.getLinearVelocity().length()
+                + calculations.getAngularVelocity().length() * radius) * delta;
+
+            if (tickDistance < IDLE_TICK_DISTANCE && settings.idleTickInterval > 1) {
+                // Every idle ship is stepped on the same ticks, so idle ships that touch each other step together
+                final boolean stepThisTick = physicsTickCount % settings.idleTickInterval == 0;
+                stepCounts[i] = stepThisTick ? 1 : 0;
+                stepTimes[i] = stepThisTick ? delta * (calculations.getSkippedTicks() + 1) : 0;
+            } else {
+                final int substeps = (int) Math.max(1,
+                    Math.min(settings.maxSubsteps, Math.ceil(tickDistance / MAX_SUBSTEP_DISTANCE)));
+                stepCounts[i] = substeps;
+                stepTimes[i] = delta / substeps;
+            }
+        }
+
+        if (shipCollider.hasPairs()) {
+            final int[] skippedTicks = new int[ships.size()];
+            for (int i = 0; i < ships.size(); i++) {
+                shipIndices.put(ships.get(i), i);
+                skippedTicks[i] = ships.get(i).getPhysicsCalculations().getSkippedTicks();
+            }
+            for (int pair = 0; pair < shipCollider.getPairCount(); pair++) {
+                pairFirstIndices.add(shipIndices.getOrDefault(shipCollider.getPairFirst(pair), -1));
+                pairSecondIndices.add(shipIndices.getOrDefault(shipCollider.getPairSecond(pair), -1));
+            }
+            ShipToShipCollider.stepSkippedPartners(pairFirstIndices, pairSecondIndices, stepCounts, stepTimes,
+                skippedTicks, delta);
+            shipIndices.clear();
+            pairFirstIndices.resetQuick();
+            pairSecondIndices.resetQuick();
         }
+        for (int i = 0; i < ships.size(); i++) {
+            final PhysicsCalculations calculations = ships.get(i).getPhysicsCalculations();
+            calculations.setSkippedTicks(stepCounts[i] == 0 ? calculations.getSkippedTicks() + 1 : 0);
+        }
+    }
 
-        try {
-            // The individual collision tasks will sort through a lot of data to find
-            // collision points
-            ValkyrienSkiesMod.getPhysicsThreadPool().invokeAll(collisionTasks);
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Wakes up every sleeping ship that might touch an awake ship, and the sleeping ships those might touch, and so on.
+     * This is how a ship hit by another body wakes up.
+     */
+    private void wakeShipsTouchingAwakeShips() {
+        boolean wokeShip = true;
+        while (wokeShip) {
+            wokeShip = false;
+            for (int pair = 0; pair < shipCollider.getPairCount(); pair++) {
+                final PhysicsObject first = shipCollider.getPairFirst(pair);
+                final PhysicsObject second = shipCollider.getPairSecond(pair);
+                final boolean firstSleeping = first.getSleepTracker().isSleeping();
+                if (firstSleeping != second.getSleepTracker().isSleeping()) {
+                    wakeShip(firstSleeping ? first : second);
+                    wokeShip = true;
+                }
+            }
         }
+    }
+
+    private static void wakeShip(PhysicsObject ship) {
+        ship.getSleepTracker().wake();
+        // The terrain might have changed while the ship was sleeping
+        ship.setNeedsCollisionCacheUpdate(true);
+        // Sleeping ticks aren't simulated, they aren't skipped ticks to catch up on
+        ship.getPhysicsCalculations().setSkippedTicks(0);
+    }
 
-        // Then those collision points have to be processed sequentially afterwards, all in
-        // this thread. Thankfully this step is not cpu intensive.
-        for (ShipCollisionTask task : collisionTasks) {
-            task.getToTask().processCollisionTask(task);
+    /**
+     * Puts the ships that have been resting for {@link VSConfig.PhysicsSettings#ticksBeforeSleeping} ticks to sleep.
+     * Ships that might touch each other only fall asleep together, a ship left awake would wake the others right back
+     * up.
+     */
+    private void updateSleepingShips(List<PhysicsObject> awakeShips) {
+        final VSConfig.PhysicsSettings settings = VSConfig.PHYSICS_SETTINGS;
+        if (!settings.shipSleeping) {
+            return;
+        }
+        final Vector3d velocity = sleepVelocity;
+        for (PhysicsObject ship : awakeShips) {
+            final PhysicsCalculations calculations = ship.getPhysicsCalculations();
+            final ShipSleepTracker sleepTracker = ship.getSleepTracker();
+            sleepTracker.recordTick(calculations.getLinearVelocity(velocity).length(),
+                calculations.getAngularVelocity(velocity).length(), calculations.areForceProducersActive(),
+                settings.sleepLinearSpeed, settings.sleepAngularSpeed);
+            // Ships being deconstructed are woken right back up, see physicsTick()
+            if (sleepTracker.isReadyToSleep(settings.ticksBeforeSleeping) && !ship.isShipAligningToGrid()) {
+                readyToSleep.add(ship);
+            }
         }
 
-        for (PhysicsObject wrapper : shipsWithPhysics) {
-            try {
-                wrapper.getPhysicsCalculations().rawPhysTickPostCol();
-            } catch (Exception e) {
-                e.printStackTrace();
+        // Every pair is either both awake or both asleep by now, see wakeShipsTouchingAwakeShips()
+        boolean keptShipAwake = true;
+        while (keptShipAwake && !readyToSleep.isEmpty()) {
+            keptShipAwake = false;
+            for (int pair = 0; pair < shipCollider.getPairCount(); pair++) {
+                final PhysicsObject first = shipCollider.getPairFirst(pair);
+                final PhysicsObject second = shipCollider.getPairSecond(pair);
+                if (readyToSleep.contains(first) != readyToSleep.contains(second)) {
+                    readyToSleep.remove(first);
+                    readyToSleep.remove(second);
+                    keptShipAwake = true;
+                }
             }
         }
+
+        for (PhysicsObject ship : readyToSleep) {
+            ship.getSleepTracker().fallAsleep();
+            ship.getPhysicsCalculations().clearVelocities();
+        }
+        readyToSleep.clear();
+    }
+
+    private static double square(double value) {
+        return value * value;
     }
 
     /**
@@ -199,9 +429,9 @@ public class VSWorldPhysicsLoop implements Runnable {
      * @return The average runtime of the last 100 physics ticks in nanoseconds.
      */
     public long getAveragePhysicsTickTimeNano() {
-        if (latestPhysicsTickTimes.size() >= TICK_TIME_QUEUE) {
+        if (latestPhysicsTickTimesCount >= TICK_TIME_QUEUE) {
             long average = 0;
-            for (Long tickTime : latestPhysicsTickTimes) {
+            for (long tickTime : latestPhysicsTickTimes) {
                 average += tickTime;
             }
             return average / TICK_TIME_QUEUE;
@@ -0,0 +1,234 @@
+package org.valkyrienskies.mod.client.render;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.BlockRenderLayer;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.biome.Biome;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.client.render.ShipSectionMesher.IBlockLayerRenderer;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Meshes sections of a made up world with a renderer that looks at what block models look at: the neighbours of a
+ * block, the light around it and the layer being rendered. Meshing a snapshot must give exactly the same vertex data
+ * as meshing the world it was taken of, which is what the render thread used to do.
+ */
+public class ShipSectionMesherTest {
+
+    private static final BlockPos SECTION_MIN = new BlockPos(-32, 48, 1024);
+    private static final BlockPos OFFSET_POS = new BlockPos(-40, 64, 1000);
+    private static final BlockRenderLayer[] LAYERS = BlockRenderLayer.values();
+    // The first state is air, the last one glows
+    private static final IBlockState[] STATES = new IBlockState[6];
+    private static final int GLOWING_LIGHT_VALUE = 14;
+
+    static {
+        for (int i = 0; i < STATES.length; i++) {
+            STATES[i] = createState("state" + i);
+        }
+    }
+
+    /**
+     * Renders every state but air as a cube in one of the layers, with the faces next to air getting the light of the
+     * air block.
+     */
+    private static final IBlockLayerRenderer CUBE_RENDERER = (state, pos, blockAccess, layer, buffer) -> {
+        final int id = Arrays.asList(STATES).indexOf(state);
+        if (id == 0 || LAYERS[id % LAYERS.length] != layer) {
+            return;
+        }
+        final int lightValue = id == STATES.length - 1 ? GLOWING_LIGHT_VALUE : 0;
+        for (EnumFacing facing : EnumFacing.values()) {
+            final BlockPos neighbour = pos.offset(facing);
+            if (blockAccess.getBlockState(neighbour) != STATES[0]) {
+                continue;
+            }
+            final int light = blockAccess.getCombinedLight(neighbour, lightValue);
+            for (int corner = 0; corner < 4; corner++) {
+                buffer.pos(pos.getX() + corner % 2, pos.getY() + facing.ordinal() / 6.0, pos.getZ() + corner / 2)
+                    .color(id * 40, facing.ordinal() * 40, corner * 60, 255)
+                    .tex(corner * .25, facing.ordinal() / 6.0)
+                    .lightmap(light >> 16 & 65535, light & 65535)
+                    .endVertex();
+            }
+        }
+    };
+
+    @Test
+    public void testSnapshotMeshMatchesWorldMesh() {
+        for (int seed = 0; seed < 4; seed++) {
+            final FakeWorld world = new FakeWorld(new Random(seed));
+            final ShipSectionSnapshot snapshot = takeSnapshot(world);
+            for (BlockRenderLayer layer : LAYERS) {
+                final BufferBuilder fromWorld = mesh(world, layer);
+                final BufferBuilder fromSnapshot = mesh(snapshot, layer);
+                assertThat(fromWorld.getVertexCount(), greaterThan(0));
+                assertThat(fromSnapshot.getVertexCount(), equalTo(fromWorld.getVertexCount()));
+                assertThat(fromSnapshot.getByteBuffer(), equalTo(fromWorld.getByteBuffer()));
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshotLight() {
+        final FakeWorld world = new FakeWorld(new Random(1234));
+        final ShipSectionSnapshot snapshot = takeSnapshot(world);
+        final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int x = -1; x <= 16; x++) {
+            for (int y = -1; y <= 16; y++) {
+                for (int z = -1; z <= 16; z++) {
+                    pos.setPos(SECTION_MIN.getX() + x, SECTION_MIN.getY() + y, SECTION_MIN.getZ() + z);
+                    for (int lightValue = 0; lightValue < 16; lightValue++) {
+                        assertThat(snapshot.getCombinedLight(pos, lightValue),
+                            equalTo(world.getCombinedLight(pos, lightValue)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshotIgnoresLaterChanges() {
+        final FakeWorld world = new FakeWorld(new Random(5));
+        final ShipSectionSnapshot snapshot = takeSnapshot(world);
+        final ByteBuffer before = copy(mesh(world, BlockRenderLayer.SOLID).getByteBuffer());
+
+        // The world changes while the snapshot is being meshed
+        world.randomize(new Random(6));
+        final ByteBuffer after = copy(mesh(world, BlockRenderLayer.SOLID).getByteBuffer());
+        final ByteBuffer fromSnapshot = mesh(snapshot, BlockRenderLayer.SOLID).getByteBuffer();
+        assertThat(fromSnapshot, equalTo(before));
+        assertThat(fromSnapshot, not(equalTo(after)));
+    }
+
+    private static ShipSectionSnapshot takeSnapshot(IBlockAccess world) {
+        return new ShipSectionSnapshot(world, SECTION_MIN.getX(), SECTION_MIN.getY(), SECTION_MIN.getZ(),
+            world::getTileEntity);
+    }
+
+    private static BufferBuilder mesh(IBlockAccess blockAccess, BlockRenderLayer layer) {
+        final BufferBuilder buffer = new BufferBuilder(0x1000);
+        ShipSectionMesher.buildLayer(blockAccess, SECTION_MIN, OFFSET_POS, layer, CUBE_RENDERER, buffer);
+        return buffer;
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        final ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Block states that are only ever compared by identity.
+     */
+    private static IBlockState createState(String name) {
+        return (IBlockState) Proxy.newProxyInstance(IBlockState.class.getClassLoader(),
+            new Class<?>[] {IBlockState.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return name;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    /**
+     * Random blocks and light in a box a bit bigger than the snapshot, air with full sky light outside of it.
+     */
+    private static class FakeWorld implements IBlockAccess {
+
+        static final int MARGIN = 3;
+        static final int SIZE = 16 + MARGIN * 2;
+
+        final IBlockState[] states = new IBlockState[SIZE * SIZE * SIZE];
+        final int[] skyLight = new int[SIZE * SIZE * SIZE];
+        final int[] blockLight = new int[SIZE * SIZE * SIZE];
+
+        FakeWorld(Random random) {
+            randomize(random);
+        }
+
+        void randomize(Random random) {
+            for (int i = 0; i < states.length; i++) {
+                states[i] = random.nextInt(5) < 2 ? STATES[0] : STATES[1 + random.nextInt(STATES.length - 1)];
+                skyLight[i] = random.nextInt(16);
+                blockLight[i] = random.nextInt(16);
+            }
+        }
+
+        int getIndex(BlockPos pos) {
+            final int x = pos.getX() - SECTION_MIN.getX() + MARGIN;
+            final int y = pos.getY() - SECTION_MIN.getY() + MARGIN;
+            final int z = pos.getZ() - SECTION_MIN.getZ() + MARGIN;
+            if (x < 0 || x >= SIZE || y < 0 || y >= SIZE || z < 0 || z >= SIZE) {
+                return -1;
+            }
+            return (x * SIZE + y) * SIZE + z;
+        }
+
+        @Override
+        public TileEntity getTileEntity(BlockPos pos) {
+            return null;
+        }
+
+        @Override
+        public int getCombinedLight(BlockPos pos, int lightValue) {
+            final int index = getIndex(pos);
+            if (index == -1) {
+                return 15 << 20 | lightValue << 4;
+            }
+            return skyLight[index] << 20 | Math.max(blockLight[index], lightValue) << 4;
+        }
+
+        @Override
+        public IBlockState getBlockState(BlockPos pos) {
+            final int index = getIndex(pos);
+            return index == -1 ? STATES[0] : states[index];
+        }
+
+        @Override
+        public boolean isAirBlock(BlockPos pos) {
+            return getBlockState(pos) == STATES[0];
+        }
+
+        @Override
+        public Biome getBiome(BlockPos pos) {
+            return null;
+        }
+
+        @Override
+        public int getStrongPower(BlockPos pos, EnumFacing direction) {
+            return 0;
+        }
+
+        @Override
+        public WorldType getWorldType() {
+            return null;
+        }
+
+        @Override
+        public boolean isSideSolid(BlockPos pos, EnumFacing side, boolean _default) {
+            return _default;
+        }
+    }
+}
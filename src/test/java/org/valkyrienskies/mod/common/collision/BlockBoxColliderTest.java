@@ -0,0 +1,146 @@
+package org.valkyrienskies.mod.common.collision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import net.minecraft.util.math.AxisAlignedBB;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import valkyrienwarfare.api.TransformType;
+
+/**
+ * Compares {@link BlockBoxCollider} against the Polygon based collision code it replaces, and checks that it doesn't
+ * allocate.
+ */
+public class BlockBoxColliderTest {
+
+    @RepeatedTest(25)
+    public void testMatchesPolygonCollider() {
+        Random random = new Random();
+        ShipTransform transform = createRandomTransform(random);
+        Vector3dc[] axes = createCollisionNormals(transform);
+        BlockBoxCollider collider = new BlockBoxCollider();
+
+        int collisions = 0;
+        for (int i = 0; i < 2000; i++) {
+            int shipX = random.nextInt(32);
+            int shipY = random.nextInt(32);
+            int shipZ = random.nextInt(32);
+            // Pick a world block close to the ship block, so that they collide most of the time
+            Vector3d shipBlockInWorld = new Vector3d(shipX + .5, shipY + .5, shipZ + .5);
+            transform.transformPosition(shipBlockInWorld, TransformType.SUBSPACE_TO_GLOBAL);
+            int worldX = (int) Math.floor(shipBlockInWorld.x) + random.nextInt(3) - 1;
+            int worldY = (int) Math.floor(shipBlockInWorld.y) + random.nextInt(3) - 1;
+            int worldZ = (int) Math.floor(shipBlockInWorld.z) + random.nextInt(3) - 1;
+
+            Polygon shipPoly = new Polygon(new AxisAlignedBB(shipX, shipY, shipZ, shipX + 1, shipY + 1, shipZ + 1),
+                transform, TransformType.SUBSPACE_TO_GLOBAL);
+            Polygon worldPoly = new Polygon(
+                new AxisAlignedBB(worldX, worldY, worldZ, worldX + 1, worldY + 1, worldZ + 1));
+            PhysPolygonCollider expected = new PhysPolygonCollider(shipPoly, worldPoly, axes);
+
+            boolean collided = collider.collide(shipX, shipY, shipZ, transform, worldX, worldY, worldZ, axes);
+            assertEquals(!expected.seperated, collided);
+            if (!collided) {
+                continue;
+            }
+            collisions++;
+
+            PhysCollisionObject toCollideWith = expected.collisions[1];
+            if (toCollideWith.penetrationDistance > WorldPhysicsCollider.AXIS_TOLERANCE
+                || toCollideWith.penetrationDistance < -WorldPhysicsCollider.AXIS_TOLERANCE) {
+                toCollideWith = expected.collisions[expected.minDistanceIndex];
+            }
+            Vector3dc[] expectedPoints = PolygonCollisionPointFinder.getPointsOfCollisionForPolygons(toCollideWith);
+
+            assertEquals(toCollideWith.collision_normal, collider.getCollisionNormal());
+            assertEquals(toCollideWith.penetrationDistance, collider.getPenetrationDistance());
+            assertEquals(expectedPoints[0], collider.getTopContactPoint());
+            assertEquals(expectedPoints[1], collider.getBottomContactPoint());
+        }
+        assertTrue(collisions > 0);
+    }
+
+    @Test
+    public void testDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Random random = new Random();
+        ShipTransform transform = createRandomTransform(random);
+        Vector3dc[] axes = createCollisionNormals(transform);
+        BlockBoxCollider collider = new BlockBoxCollider();
+        CollisionContactBuffer contacts = new CollisionContactBuffer();
+
+        // Give the JIT time to warm up, and let the contact buffer reach its final size
+        runCollisions(collider, contacts, transform, axes);
+        runCollisions(collider, contacts, transform, axes);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        runCollisions(collider, contacts, transform, axes);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // The Polygon based version allocates several kilobytes per block pair, so 100000 pairs would be hundreds of
+        // megabytes. Leave a little room for the measurement itself.
+        assertTrue(allocated < 64 * 1024, "Allocated " + allocated + " bytes");
+    }
+
+    private static void runCollisions(BlockBoxCollider collider, CollisionContactBuffer contacts,
+        ShipTransform transform, Vector3dc[] axes) {
+        contacts.clear();
+        for (int i = 0; i < 100000; i++) {
+            int shipX = i % 8;
+            int shipY = (i >> 3) % 8;
+            int shipZ = (i >> 6) % 8;
+            if (collider.collide(shipX, shipY, shipZ, transform, shipX + (i % 3) - 1, shipY, shipZ, axes)) {
+                contacts.add(collider);
+            }
+        }
+    }
+
+    private static ShipTransform createRandomTransform(Random random) {
+        Quaterniond rotation = new Quaterniond()
+            .rotateXYZ(random.nextDouble() * Math.PI * 2, random.nextDouble() * Math.PI * 2,
+                random.nextDouble() * Math.PI * 2);
+        Vector3d centerCoord = new Vector3d(random.nextDouble() * 32, random.nextDouble() * 32,
+            random.nextDouble() * 32);
+        return new ShipTransform(random.nextDouble() * 100, 64 + random.nextDouble() * 100,
+            random.nextDouble() * 100, rotation, centerCoord);
+    }
+
+    /**
+     * The same normals as the ones ShipTransformationManager creates for a ship.
+     */
+    private static Vector3dc[] createCollisionNormals(ShipTransform transform) {
+        Vector3dc[] normals = new Vector3dc[15];
+        Vector3d[] alignedNorms = Polygon.generateAxisAlignedNorms();
+        Vector3d[] rotatedNorms = Polygon.generateAxisAlignedNorms();
+        for (int i = 0; i < 3; i++) {
+            transform.transformDirection(rotatedNorms[i], TransformType.SUBSPACE_TO_GLOBAL);
+            normals[i] = alignedNorms[i];
+            normals[i + 3] = rotatedNorms[i];
+        }
+        int cont = 6;
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                Vector3d norm = normals[i].cross(normals[j + 3], new Vector3d());
+                norm.normalize();
+                normals[cont] = norm;
+                cont++;
+            }
+        }
+        for (int i = 0; i < normals.length; i++) {
+            if (normals[i].lengthSquared() < .01) {
+                normals[i] = new Vector3d(0.0D, 1.0D, 0.0D);
+            }
+        }
+        return normals;
+    }
+
+}
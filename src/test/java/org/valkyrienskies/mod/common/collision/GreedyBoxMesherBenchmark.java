@@ -0,0 +1,41 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.util.BenchmarkUtil;
+
+import java.util.Random;
+
+/**
+ * How long meshing a section takes.
+ */
+@Tag("benchmark")
+public class GreedyBoxMesherBenchmark {
+
+    @Test
+    public void benchmarkMesh() throws Exception {
+        Random random = new Random(0);
+        long[][] sections = new long[1000][GreedyBoxMesher.VOXEL_WORDS];
+        for (long[] voxels : sections) {
+            // Random voxels are close to the worst case, real ships are made of much bigger boxes
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        if (random.nextDouble() < .5) {
+                            GreedyBoxMesher.setVoxel(voxels, x, y, z);
+                        }
+                    }
+                }
+            }
+        }
+        long[] boxCount = new long[1];
+        long bestTime = BenchmarkUtil.bestOf(5, () -> {
+            boxCount[0] = 0;
+            for (long[] voxels : sections) {
+                boxCount[0] += GreedyBoxMesher.mesh(voxels).length;
+            }
+        });
+        System.out.printf("Meshing %d sections took %.1f ms, %.1f boxes per section%n", sections.length,
+            bestTime / 1e6, (double) boxCount[0] / sections.length);
+    }
+}
@@ -0,0 +1,85 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class GreedyBoxMesherTest {
+
+    @Test
+    public void testBoxesCoverExactlyTheVoxels() {
+        Random random = new Random();
+        for (int i = 0; i < 200; i++) {
+            double density = random.nextDouble();
+            long[] voxels = new long[GreedyBoxMesher.VOXEL_WORDS];
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        if (random.nextDouble() < density) {
+                            GreedyBoxMesher.setVoxel(voxels, x, y, z);
+                        }
+                    }
+                }
+            }
+            assertCoversExactly(voxels, GreedyBoxMesher.mesh(voxels));
+        }
+    }
+
+    @Test
+    public void testSimpleShapes() {
+        long[] voxels = new long[GreedyBoxMesher.VOXEL_WORDS];
+        assertThat(GreedyBoxMesher.mesh(voxels).length, equalTo(0));
+
+        // A full section is one box
+        for (int i = 0; i < voxels.length; i++) {
+            voxels[i] = -1L;
+        }
+        int[] boxes = GreedyBoxMesher.mesh(voxels);
+        assertThat(boxes.length, equalTo(1));
+        assertCoversExactly(voxels, boxes);
+
+        // So is a hull floor with walls around it, one box per wall
+        voxels = new long[GreedyBoxMesher.VOXEL_WORDS];
+        for (int x = 2; x < 14; x++) {
+            for (int z = 2; z < 14; z++) {
+                GreedyBoxMesher.setVoxel(voxels, x, 3, z);
+                if (x == 2 || x == 13 || z == 2 || z == 13) {
+                    for (int y = 4; y < 8; y++) {
+                        GreedyBoxMesher.setVoxel(voxels, x, y, z);
+                    }
+                }
+            }
+        }
+        boxes = GreedyBoxMesher.mesh(voxels);
+        assertCoversExactly(voxels, boxes);
+        assertThat(boxes.length, lessThan(6));
+    }
+
+    private static void assertCoversExactly(long[] voxels, int[] boxes) {
+        int[] coverCount = new int[4096];
+        for (int box : boxes) {
+            assertThat(GreedyBoxMesher.getMinX(box) < GreedyBoxMesher.getMaxX(box), equalTo(true));
+            assertThat(GreedyBoxMesher.getMinY(box) < GreedyBoxMesher.getMaxY(box), equalTo(true));
+            assertThat(GreedyBoxMesher.getMinZ(box) < GreedyBoxMesher.getMaxZ(box), equalTo(true));
+            for (int x = GreedyBoxMesher.getMinX(box); x < GreedyBoxMesher.getMaxX(box); x++) {
+                for (int y = GreedyBoxMesher.getMinY(box); y < GreedyBoxMesher.getMaxY(box); y++) {
+                    for (int z = GreedyBoxMesher.getMinZ(box); z < GreedyBoxMesher.getMaxZ(box); z++) {
+                        coverCount[GreedyBoxMesher.getIndex(x, y, z)]++;
+                    }
+                }
+            }
+        }
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    int expected = GreedyBoxMesher.getVoxel(voxels, x, y, z) ? 1 : 0;
+                    assertThat(coverCount[GreedyBoxMesher.getIndex(x, y, z)], equalTo(expected));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.valkyrienskies.mod.common.collision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import net.minecraft.util.math.BlockPos;
+import org.junit.jupiter.api.RepeatedTest;
+import org.valkyrienskies.mod.common.util.SectionKeys;
+import org.valkyrienskies.mod.common.util.VSIterationUtils.IntTernaryPredicate;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.SimpleBitOctree;
+
+/**
+ * Compares the incremental cache against a full rebuild of the cache, against a brute force scan of every block, and
+ * against the octree walk {@link WorldPhysicsCollider} does when the incremental cache is turned off.
+ */
+public class IncrementalWorldCollisionCacheTest {
+
+    private final Map<Long, IBitOctree> octrees = new HashMap<>();
+
+    @RepeatedTest(25)
+    public void testIncrementalMatchesFullRebuild() {
+        Random random = new Random();
+        octrees.clear();
+
+        // Fill a 6x6 chunk area with random terrain
+        for (int i = 0; i < 20000; i++) {
+            setBlock(random.nextInt(96), random.nextInt(64), random.nextInt(96), random.nextBoolean());
+        }
+
+        IncrementalWorldCollisionCache incremental = new IncrementalWorldCollisionCache(this::getOctree);
+
+        int minX = random.nextInt(40);
+        int minY = random.nextInt(20);
+        int minZ = random.nextInt(40);
+
+        for (int step = 0; step < 200; step++) {
+            // Move and resize the region, like a ship flying around
+            minX = clamp(minX + random.nextInt(7) - 3, 0, 60);
+            minY = clamp(minY + random.nextInt(5) - 2, 0, 30);
+            minZ = clamp(minZ + random.nextInt(7) - 3, 0, 60);
+            int maxX = minX + 8 + random.nextInt(24);
+            int maxY = minY + 4 + random.nextInt(24);
+            int maxZ = minZ + 8 + random.nextInt(24);
+
+            // Change some blocks both inside and outside of the region
+            int changes = random.nextInt(10);
+            for (int i = 0; i < changes; i++) {
+                setBlock(random.nextInt(96), random.nextInt(64), random.nextInt(96), random.nextBoolean());
+            }
+            // And occasionally replace an entire section, like a chunk being reloaded
+            if (random.nextInt(20) == 0) {
+                octrees.put(SectionKeys.getSectionKey(minX >> 4, minY >> 4, minZ >> 4), new SimpleBitOctree());
+            }
+
+            incremental.update(minX, minY, minZ, maxX, maxY, maxZ);
+
+            IncrementalWorldCollisionCache fullRebuild = new IncrementalWorldCollisionCache(this::getOctree);
+            fullRebuild.update(minX, minY, minZ, maxX, maxY, maxZ);
+
+            TLongSet expected = bruteForceCandidates(minX, minY, minZ, maxX, maxY, maxZ);
+            assertEquals(expected, getCandidates(fullRebuild));
+            assertEquals(expected, getCandidates(incremental));
+            assertEquals(expected.size(), incremental.getCandidateCount());
+        }
+    }
+
+    /**
+     * Checks the candidates against a made up ship, a box that hits the blocks next to it. The ship only moves now and
+     * then, in between only the candidates that are new since the last check may be checked again.
+     */
+    @RepeatedTest(25)
+    public void testHitsMatchRealFullRebuild() {
+        Random random = new Random();
+        octrees.clear();
+
+        for (int i = 0; i < 20000; i++) {
+            setBlock(random.nextInt(96), random.nextInt(64), random.nextInt(96), random.nextBoolean());
+        }
+
+        IncrementalWorldCollisionCache incremental = new IncrementalWorldCollisionCache(this::getOctree);
+        // The minimum corner of the 8x4x8 ship
+        int[] ship = new int[3];
+        IntTernaryPredicate isHit = (x, y, z) -> x >= ship[0] - 1 && x <= ship[0] + 8 && y >= ship[1] - 1
+            && y <= ship[1] + 4 && z >= ship[2] - 1 && z <= ship[2] + 8;
+        int[] checks = new int[1];
+        IntTernaryPredicate countingIsHit = (x, y, z) -> {
+            checks[0]++;
+            return isHit.test(x, y, z);
+        };
+
+        int minX = random.nextInt(40);
+        int minY = random.nextInt(20);
+        int minZ = random.nextInt(40);
+
+        for (int step = 0; step < 200; step++) {
+            // The region still changes when the ship doesn't move, it grows with the velocity of the ship
+            minX = clamp(minX + random.nextInt(7) - 3, 0, 60);
+            minY = clamp(minY + random.nextInt(5) - 2, 0, 30);
+            minZ = clamp(minZ + random.nextInt(7) - 3, 0, 60);
+            int maxX = minX + 8 + random.nextInt(24);
+            int maxY = minY + 4 + random.nextInt(24);
+            int maxZ = minZ + 8 + random.nextInt(24);
+
+            boolean shipMoved = step == 0 || random.nextInt(4) == 0;
+            if (shipMoved) {
+                ship[0] = minX + random.nextInt(maxX - minX - 6);
+                ship[1] = minY + random.nextInt(maxY - minY - 2);
+                ship[2] = minZ + random.nextInt(maxZ - minZ - 6);
+            }
+
+            // Change some blocks, a few of them right next to the ship
+            int changes = random.nextInt(10);
+            for (int i = 0; i < changes; i++) {
+                setBlock(random.nextInt(96), random.nextInt(64), random.nextInt(96), random.nextBoolean());
+            }
+            if (random.nextBoolean()) {
+                setBlock(ship[0] - 1 + random.nextInt(10), ship[1] - 1 + random.nextInt(6),
+                    ship[2] - 1 + random.nextInt(10), random.nextBoolean());
+            }
+
+            incremental.update(minX, minY, minZ, maxX, maxY, maxZ);
+            incremental.checkCandidates(shipMoved, isHit);
+            TLongSet expected = fullRebuildHits(minX, minY, minZ, maxX, maxY, maxZ, isHit);
+            assertEquals(expected, getHits(incremental));
+
+            // Nothing changed, so there's nothing to check
+            checks[0] = 0;
+            incremental.update(minX, minY, minZ, maxX, maxY, maxZ);
+            incremental.checkCandidates(false, countingIsHit);
+            assertEquals(0, checks[0]);
+            assertEquals(expected, getHits(incremental));
+        }
+    }
+
+    private TLongSet fullRebuildHits(int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+        IntTernaryPredicate isHit) {
+        TLongSet hits = new TLongHashSet();
+        for (int sectionX = minX >> 4; sectionX <= maxX >> 4; sectionX++) {
+            for (int sectionY = minY >> 4; sectionY <= maxY >> 4; sectionY++) {
+                for (int sectionZ = minZ >> 4; sectionZ <= maxZ >> 4; sectionZ++) {
+                    IBitOctree octree = getOctree(sectionX, sectionY, sectionZ);
+                    if (octree == null) {
+                        continue;
+                    }
+                    WorldPhysicsCollider.forEachCollisionCandidate(octree, sectionX, sectionY, sectionZ, minX, minY,
+                        minZ, maxX, maxY, maxZ, (x, y, z) -> {
+                            if (isHit.test(x, y, z)) {
+                                hits.add(BlockPos.toLong(x, y, z));
+                            }
+                        });
+                }
+            }
+        }
+        return hits;
+    }
+
+    private TLongSet bruteForceCandidates(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        TLongSet candidates = new TLongHashSet();
+        for (int x = minX & ~15; x < (maxX | 15) + 1; x++) {
+            for (int y = minY & ~15; y < (maxY | 15) + 1; y++) {
+                for (int z = minZ & ~15; z < (maxZ | 15) + 1; z++) {
+                    int baseX = x & ~1;
+                    int baseY = y & ~1;
+                    int baseZ = z & ~1;
+                    if (baseX < minX || baseX > maxX || baseY < minY || baseY > maxY || baseZ < minZ
+                        || baseZ > maxZ) {
+                        continue;
+                    }
+                    IBitOctree octree = getOctree(x >> 4, y >> 4, z >> 4);
+                    if (octree != null && octree.get(x & 15, y & 15, z & 15)) {
+                        candidates.add(BlockPos.toLong(x, y, z));
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private static TLongSet getCandidates(IncrementalWorldCollisionCache cache) {
+        TLongSet candidates = new TLongHashSet();
+        cache.forEachCandidate((x, y, z) -> candidates.add(BlockPos.toLong(x, y, z)));
+        return candidates;
+    }
+
+    private static TLongSet getHits(IncrementalWorldCollisionCache cache) {
+        TLongSet hits = new TLongHashSet();
+        cache.forEachHit((x, y, z) -> hits.add(BlockPos.toLong(x, y, z)));
+        return hits;
+    }
+
+    private void setBlock(int x, int y, int z, boolean solid) {
+        octrees.computeIfAbsent(SectionKeys.getSectionKey(x >> 4, y >> 4, z >> 4), k -> new SimpleBitOctree())
+            .set(x & 15, y & 15, z & 15, solid);
+    }
+
+    private IBitOctree getOctree(int sectionX, int sectionY, int sectionZ) {
+        return octrees.get(SectionKeys.getSectionKey(sectionX, sectionY, sectionZ));
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.valkyrienskies.mod.common.collision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.collision.ShipToShipCollisionTest.TestShip;
+import org.valkyrienskies.mod.common.util.BenchmarkUtil;
+
+/**
+ * How long the collisions between a group of ships all piled on top of each other take. Every ship overlaps every
+ * other ship, so this is the worst case for the broadphase.
+ */
+@Tag("benchmark")
+public class ShipToShipCollisionBenchmark {
+
+    @Test
+    public void benchmarkOverlappingShips() throws Exception {
+        Random random = new Random(0);
+        for (int shipCount : new int[] {2, 10, 50}) {
+            TestShip[] ships = new TestShip[shipCount];
+            AxisAlignedBB[] boxes = new AxisAlignedBB[shipCount];
+            for (int i = 0; i < shipCount; i++) {
+                Vector3d position = new Vector3d(random.nextDouble(), 100 + random.nextDouble(), random.nextDouble());
+                ships[i] = TestShip.createRandom(random, new BlockPos(i * 1600, 64, 0), position, 8);
+                boxes[i] = ships[i].worldBB;
+            }
+            ShipBroadphase broadphase = new ShipBroadphase();
+
+            List<ShipPairCollisionTask> tasks = new ArrayList<>();
+            long bestTime = BenchmarkUtil.bestOf(10, () -> {
+                broadphase.findPairs(boxes, shipCount);
+                tasks.clear();
+                for (int pair = 0; pair < broadphase.getPairCount(); pair++) {
+                    tasks.addAll(ShipToShipCollisionTest.createTasks(ships[broadphase.getFirst(pair)],
+                        ships[broadphase.getSecond(pair)]));
+                }
+                ForkJoinPool.commonPool().invokeAll(tasks);
+            });
+
+            int pairs = broadphase.getPairCount();
+            int contacts = 0;
+            for (ShipPairCollisionTask task : tasks) {
+                contacts += task.getContacts().size();
+            }
+            assertEquals(shipCount * (shipCount - 1) / 2, pairs);
+            System.out.printf("%d ships: %d pairs, %d contacts, %.3f ms%n", shipCount, pairs, contacts,
+                bestTime / 1e6);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.valkyrienskies.mod.common.collision;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.SimpleBitOctree;
+import valkyrienwarfare.api.TransformType;
+
+/**
+ * Compares the ship to ship broadphase and narrow phase against checking every pair of boxes and every pair of
+ * blocks.
+ */
+public class ShipToShipCollisionTest {
+
+    @Test
+    public void testBroadphaseMatchesBruteForce() {
+        Random random = new Random();
+        ShipBroadphase broadphase = new ShipBroadphase();
+        AxisAlignedBB[] boxes = new AxisAlignedBB[0];
+        for (int step = 0; step < 500; step++) {
+            // Sometimes new ships, sometimes the same ships moved a little, like between physics ticks
+            if (step % 50 == 0) {
+                boxes = new AxisAlignedBB[random.nextInt(100)];
+                for (int i = 0; i < boxes.length; i++) {
+                    double x = random.nextDouble() * 200;
+                    double y = random.nextDouble() * 50;
+                    double z = random.nextDouble() * 200;
+                    boxes[i] = new AxisAlignedBB(x, y, z, x + 1 + random.nextDouble() * 30,
+                        y + 1 + random.nextDouble() * 30, z + 1 + random.nextDouble() * 30);
+                }
+            } else {
+                for (int i = 0; i < boxes.length; i++) {
+                    boxes[i] = boxes[i].offset(random.nextDouble() * 4 - 2, random.nextDouble() * 4 - 2,
+                        random.nextDouble() * 4 - 2);
+                }
+            }
+
+            broadphase.findPairs(boxes, boxes.length);
+            TLongArrayList expected = new TLongArrayList();
+            for (int i = 0; i < boxes.length; i++) {
+                for (int j = i + 1; j < boxes.length; j++) {
+                    if (boxes[i].intersects(boxes[j])) {
+                        expected.add(((long) i << 32) | j);
+                    }
+                }
+            }
+            TLongArrayList found = new TLongArrayList();
+            for (int pair = 0; pair < broadphase.getPairCount(); pair++) {
+                assertTrue(broadphase.getFirst(pair) < broadphase.getSecond(pair));
+                found.add(((long) broadphase.getFirst(pair) << 32) | broadphase.getSecond(pair));
+            }
+            assertEquals(expected, found);
+        }
+    }
+
+    @RepeatedTest(25)
+    public void testPairTasksMatchBruteForce() {
+        Random random = new Random();
+        TestShip first = TestShip.createRandom(random, new BlockPos(-1600, 64, 3200), new Vector3d(0, 100, 0), 12);
+        // Sometimes touching the first ship, sometimes just out of reach
+        Vector3d secondPosition = new Vector3d(random.nextDouble() * 2 - 1, random.nextDouble() * 2 - 1,
+            random.nextDouble() * 2 - 1).normalize().mul(8 + random.nextDouble() * 12).add(0, 100, 0);
+        TestShip second = TestShip.createRandom(random, new BlockPos(4800, 64, -800), secondPosition, 12);
+
+        Vector3dc[] axes = ShipPairCollisionTask.createCollisionNormals(first.transform, second.transform);
+        BlockBoxCollider collider = new BlockBoxCollider();
+        TDoubleArrayList expected = new TDoubleArrayList();
+        for (BlockPos firstBlock : first.blocks) {
+            for (BlockPos secondBlock : second.blocks) {
+                if (collider.collideShipBlocks(firstBlock.getX(), firstBlock.getY(), firstBlock.getZ(),
+                    first.transform, secondBlock.getX(), secondBlock.getY(), secondBlock.getZ(), second.transform,
+                    axes)) {
+                    expected.add(collider.getPenetrationDistance());
+                }
+            }
+        }
+
+        TDoubleArrayList found = new TDoubleArrayList();
+        if (first.worldBB.intersects(second.worldBB)) {
+            for (ShipPairCollisionTask task : createTasks(first, second)) {
+                task.call();
+                CollisionContactBuffer contacts = task.getContacts();
+                for (int i = 0; i < contacts.size(); i++) {
+                    found.add(contacts.getPenetrationDistance(i));
+                }
+            }
+        }
+        // The tasks find the block pairs in a different order
+        expected.sort();
+        found.sort();
+        assertArrayEquals(expected.toArray(), found.toArray());
+    }
+
+    /**
+     * Ship 0 moves in two substeps. Ship 1 is idle and skipped this tick but might touch ship 0, and ship 2 is idle and
+     * might touch ship 1. Ship 3 is idle on its own, and ship 4 might touch a sleeping ship.
+     */
+    @Test
+    public void testSkippedShipsStepWithTheirPartners() {
+        int[] stepCounts = {2, 0, 0, 0, 0};
+        double[] stepTimes = {.025, 0, 0, 0, 0};
+        int[] skippedTicks = {0, 3, 1, 3, 2};
+        TIntArrayList pairFirst = new TIntArrayList(new int[] {2, 1, 4});
+        TIntArrayList pairSecond = new TIntArrayList(new int[] {1, 0, -1});
+        ShipToShipCollider.stepSkippedPartners(pairFirst, pairSecond, stepCounts, stepTimes, skippedTicks, .05);
+
+        assertArrayEquals(new int[] {2, 1, 1, 0, 0}, stepCounts);
+        // Each step covers the ticks the ship skipped and this one
+        assertArrayEquals(new double[] {.025, .2, .1, 0, 0}, stepTimes, 1e-12);
+    }
+
+    /**
+     * Creates the tasks the same way {@link ShipToShipCollider} does.
+     */
+    static List<ShipPairCollisionTask> createTasks(TestShip first, TestShip second) {
+        Vector3dc[] axes = ShipPairCollisionTask.createCollisionNormals(first.transform, second.transform);
+        AxisAlignedBB firstRegion = new Polygon(first.worldBB.intersect(second.worldBB), first.transform,
+            TransformType.GLOBAL_TO_SUBSPACE).getEnclosedAABB();
+        List<ShipPairCollisionTask> tasks = new ArrayList<>();
+        for (Map.Entry<BlockPos, IBitOctree> section : first.sections.entrySet()) {
+            ShipPairCollisionTask task = new ShipPairCollisionTask();
+            BlockPos sectionPos = section.getKey();
+            task.reset(first.transform, section.getValue(), sectionPos.getX(), sectionPos.getY(), sectionPos.getZ(),
+                firstRegion, second.transform, second::getSectionOctree, axes);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * A random lump of blocks, stored in octrees the same way as the chunks of a real ship.
+     */
+    static class TestShip {
+
+        final List<BlockPos> blocks = new ArrayList<>();
+        final Map<BlockPos, IBitOctree> sections = new HashMap<>();
+        ShipTransform transform;
+        AxisAlignedBB worldBB;
+
+        static TestShip createRandom(Random random, BlockPos origin, Vector3dc position, int maxSize) {
+            TestShip ship = new TestShip();
+            int sizeX = 2 + random.nextInt(maxSize - 1);
+            int sizeY = 2 + random.nextInt(maxSize - 1);
+            int sizeZ = 2 + random.nextInt(maxSize - 1);
+            for (int x = 0; x < sizeX; x++) {
+                for (int y = 0; y < sizeY; y++) {
+                    for (int z = 0; z < sizeZ; z++) {
+                        if (random.nextDouble() < .7) {
+                            ship.addBlock(origin.add(x, y, z));
+                        }
+                    }
+                }
+            }
+            // Always have a block at the origin, so the ship is never empty
+            ship.addBlock(origin);
+
+            Quaterniond rotation = new Quaterniond()
+                .rotateXYZ(random.nextDouble() * Math.PI * 2, random.nextDouble() * Math.PI * 2,
+                    random.nextDouble() * Math.PI * 2);
+            Vector3d centerCoord = new Vector3d(origin.getX() + sizeX / 2.0, origin.getY() + sizeY / 2.0,
+                origin.getZ() + sizeZ / 2.0);
+            ship.transform = new ShipTransform(position.x(), position.y(), position.z(), rotation, centerCoord);
+            AxisAlignedBB subspaceBB = new AxisAlignedBB(origin.getX(), origin.getY(), origin.getZ(),
+                origin.getX() + sizeX, origin.getY() + sizeY, origin.getZ() + sizeZ);
+            // Grown like the real ship bounding boxes are by ShipToShipCollider
+            ship.worldBB = new Polygon(subspaceBB, ship.transform, TransformType.SUBSPACE_TO_GLOBAL)
+                .getEnclosedAABB().grow(ShipToShipCollider.AABB_EXPANSION);
+            return ship;
+        }
+
+        void addBlock(BlockPos pos) {
+            if (getSectionOctree(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4) == null) {
+                sections.put(new BlockPos(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4),
+                    new SimpleBitOctree());
+            }
+            IBitOctree octree = getSectionOctree(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4);
+            if (!octree.get(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15)) {
+                octree.set(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15, true);
+                blocks.add(pos);
+            }
+        }
+
+        IBitOctree getSectionOctree(int sectionX, int sectionY, int sectionZ) {
+            return sections.get(new BlockPos(sectionX, sectionY, sectionZ));
+        }
+    }
+}
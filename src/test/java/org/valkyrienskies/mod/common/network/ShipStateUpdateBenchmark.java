@@ -0,0 +1,70 @@
+package org.valkyrienskies.mod.common.network;
+
+import static org.valkyrienskies.mod.common.network.ShipStateUpdateTest.createRandomShipData;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Random;
+import net.minecraft.util.math.AxisAlignedBB;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.jackson.VSJacksonUtil;
+import valkyrienwarfare.api.TransformType;
+
+/**
+ * How many bytes per tick the ship updates sent to a player take with {@link ShipStateUpdate} compared to serializing
+ * the whole {@link ShipData} with the CBOR packet mapper, the way every update used to be sent, and how long encoding
+ * them takes. The ships fly and turn a little every tick, like ships being steered.
+ */
+@Tag("benchmark")
+public class ShipStateUpdateBenchmark {
+
+    private static final int TICKS = 200;
+
+    @Test
+    public void benchmarkAgainstPacketMapper() throws IOException {
+        ObjectMapper packetMapper = VSJacksonUtil.getPacketMapper();
+        Random random = new Random(0);
+        for (int shipCount : new int[] {1, 10, 100}) {
+            ShipData[] ships = new ShipData[shipCount];
+            for (int i = 0; i < shipCount; i++) {
+                ships[i] = createRandomShipData(random);
+            }
+            long stateBytes = 0;
+            long cborBytes = 0;
+            long stateTime = 0;
+            long cborTime = 0;
+            for (int tick = 0; tick < TICKS; tick++) {
+                for (ShipData ship : ships) {
+                    moveShip(ship, random);
+                    long start = System.nanoTime();
+                    stateBytes += ShipStateUpdate.encode(ship).length;
+                    long middle = System.nanoTime();
+                    cborBytes += packetMapper.writeValueAsBytes(ship).length;
+                    long end = System.nanoTime();
+                    stateTime += middle - start;
+                    cborTime += end - middle;
+                }
+            }
+            System.out.printf("%d ships: state updates %d bytes per tick (%.1f us to encode), "
+                    + "CBOR %d bytes per tick (%.1f us to encode), %.1fx smaller%n", shipCount, stateBytes / TICKS,
+                stateTime / 1e3 / TICKS, cborBytes / TICKS, cborTime / 1e3 / TICKS, (double) cborBytes / stateBytes);
+        }
+    }
+
+    private static void moveShip(ShipData ship, Random random) {
+        ShipTransform transform = ship.getShipTransform();
+        Vector3d velocity = new Vector3d(random.nextDouble() - .5, random.nextDouble() - .5, random.nextDouble() - .5);
+        Vector3d position = new Vector3d(transform.getPosX(), transform.getPosY(), transform.getPosZ())
+            .add(velocity);
+        Quaterniond rotation = new Quaterniond(transform.rotationQuaternion(TransformType.SUBSPACE_TO_GLOBAL))
+            .rotateY((random.nextDouble() - .5) * .05);
+        ship.setShipTransform(new ShipTransform(position, rotation, transform.getCenterCoord()));
+        AxisAlignedBB shipBB = ship.getShipBB();
+        ship.setShipBB(shipBB.offset(velocity.x, velocity.y, velocity.z));
+    }
+}
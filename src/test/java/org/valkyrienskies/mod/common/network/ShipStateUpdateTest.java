@@ -0,0 +1,85 @@
+package org.valkyrienskies.mod.common.network;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.ChunkPos;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.RepeatedTest;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.chunk_claims.VSChunkClaim;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.cqengine.ConcurrentUpdatableIndexedCollection;
+import org.valkyrienskies.mod.common.util.jackson.VSJacksonUtil;
+import valkyrienwarfare.api.TransformType;
+
+public class ShipStateUpdateTest {
+
+    @RepeatedTest(25)
+    public void testEncodeDecode() throws IOException {
+        Random random = new Random();
+        ShipData shipData = createRandomShipData(random);
+
+        byte[] stateBytes = ShipStateUpdate.encode(shipData);
+        PacketBuffer packetBuffer = new PacketBuffer(Unpooled.wrappedBuffer(stateBytes));
+        ShipStateUpdate decoded = ShipStateUpdate.readData(packetBuffer);
+
+        assertThat(packetBuffer.readableBytes(), is(0));
+        assertEquals(shipData.getUuid(), decoded.getShipID());
+
+        ShipTransform expectedTransform = shipData.getShipTransform();
+        ShipTransform decodedTransform = decoded.getShipTransform();
+        assertEquals(expectedTransform.getPosX(), decodedTransform.getPosX(), 1e-4);
+        assertEquals(expectedTransform.getPosY(), decodedTransform.getPosY(), 1e-4);
+        assertEquals(expectedTransform.getPosZ(), decodedTransform.getPosZ(), 1e-4);
+        assertThat(expectedTransform.getCenterCoord().distance(decodedTransform.getCenterCoord()), lessThan(1e-4));
+
+        // A block at the edge of a large ship should be within a few hundredths of a block of where it should be
+        Vector3d expectedBlockPos = new Vector3d(expectedTransform.getCenterCoord()).add(100, 100, 100);
+        Vector3d decodedBlockPos = new Vector3d(expectedBlockPos);
+        expectedTransform.transformPosition(expectedBlockPos, TransformType.SUBSPACE_TO_GLOBAL);
+        decodedTransform.transformPosition(decodedBlockPos, TransformType.SUBSPACE_TO_GLOBAL);
+        assertThat(expectedBlockPos.distance(decodedBlockPos), lessThan(.02));
+
+        AxisAlignedBB expectedBB = shipData.getShipBB();
+        AxisAlignedBB decodedBB = decoded.getShipBB();
+        assertEquals(expectedBB.minX, decodedBB.minX, 1e-3);
+        assertEquals(expectedBB.minY, decodedBB.minY, 1e-3);
+        assertEquals(expectedBB.minZ, decodedBB.minZ, 1e-3);
+        assertEquals(expectedBB.maxX, decodedBB.maxX, 1e-3);
+        assertEquals(expectedBB.maxY, decodedBB.maxY, 1e-3);
+        assertEquals(expectedBB.maxZ, decodedBB.maxZ, 1e-3);
+
+        // This is the point of ShipStateUpdate, it should be much smaller than sending the entire ShipData
+        byte[] shipDataBytes = VSJacksonUtil.getPacketMapper().writeValueAsBytes(shipData);
+        assertThat(stateBytes.length * 4, lessThan(shipDataBytes.length));
+    }
+
+    static ShipData createRandomShipData(Random random) {
+        ChunkPos centerPos = new ChunkPos(random.nextInt(100000) - 50000, random.nextInt(100000) - 50000);
+        VSChunkClaim chunkClaim = new VSChunkClaim(centerPos);
+        Quaterniond rotation = new Quaterniond().rotateXYZ(random.nextDouble() * Math.PI * 2,
+            random.nextDouble() * Math.PI * 2, random.nextDouble() * Math.PI * 2);
+        Vector3d centerCoord = new Vector3d(centerPos.getXStart() + random.nextDouble() * 16,
+            random.nextDouble() * 256, centerPos.getZStart() + random.nextDouble() * 16);
+        Vector3d position = new Vector3d(random.nextDouble() * 60000 - 30000, random.nextDouble() * 256,
+            random.nextDouble() * 60000 - 30000);
+        ShipTransform transform = new ShipTransform(position, rotation, centerCoord);
+        AxisAlignedBB shipBB = new AxisAlignedBB(position.x - random.nextDouble() * 50,
+            position.y - random.nextDouble() * 50, position.z - random.nextDouble() * 50,
+            position.x + random.nextDouble() * 50, position.y + random.nextDouble() * 50,
+            position.z + random.nextDouble() * 50);
+        return ShipData.createData(new ConcurrentUpdatableIndexedCollection<>(), "TestShip", chunkClaim,
+            UUID.randomUUID(), transform, shipBB);
+    }
+
+}
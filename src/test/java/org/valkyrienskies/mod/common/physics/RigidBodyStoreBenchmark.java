@@ -0,0 +1,58 @@
+package org.valkyrienskies.mod.common.physics;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.physics.RigidBodyStoreTest.ObjectBody;
+import org.valkyrienskies.mod.common.util.BenchmarkUtil;
+
+import java.util.Random;
+
+import static org.valkyrienskies.mod.common.physics.RigidBodyStoreTest.GRAVITY;
+import static org.valkyrienskies.mod.common.physics.RigidBodyStoreTest.MAX_Y;
+import static org.valkyrienskies.mod.common.physics.RigidBodyStoreTest.MIN_Y;
+
+/**
+ * How stepping bodies stored in arrays compares to stepping bodies stored as JOML objects, the way
+ * PhysicsCalculations used to.
+ */
+@Tag("benchmark")
+public class RigidBodyStoreBenchmark {
+
+    @Test
+    public void benchmarkAgainstObjectBodies() throws Exception {
+        Random random = new Random(0);
+        for (int bodyCount : new int[] {1, 50, 500}) {
+            RigidBodyStore store = new RigidBodyStore();
+            ObjectBody[] bodies = new ObjectBody[bodyCount];
+            for (int i = 0; i < bodyCount; i++) {
+                bodies[i] = ObjectBody.createRandom(random);
+                bodies[i].copyInto(store, store.add().getIndex());
+            }
+            // Enough steps per run to get past the resolution of the timer with a single body
+            int steps = 200_000 / bodyCount;
+            long storeTime = BenchmarkUtil.bestOf(10, () -> {
+                for (int step = 0; step < steps; step++) {
+                    store.beginStep();
+                    for (int i = 0; i < bodyCount; i++) {
+                        store.prepareStep(i, .01, bodies[i].getDrag(), .01);
+                    }
+                    store.updateWorldInertia(0, bodyCount);
+                    store.applyDrag(0, bodyCount);
+                    store.applyGravity(GRAVITY, 0, bodyCount);
+                    store.integrate(MIN_Y, MAX_Y, 0, bodyCount);
+                }
+            });
+            long objectTime = BenchmarkUtil.bestOf(10, () -> {
+                for (int step = 0; step < steps; step++) {
+                    for (ObjectBody body : bodies) {
+                        body.stepTime = .01;
+                        body.hasGravity = true;
+                        body.step();
+                    }
+                }
+            });
+            System.out.printf("%d bodies: objects %.1f ns per body step, arrays %.1f ns per body step%n", bodyCount,
+                (double) objectTime / steps / bodyCount, (double) storeTime / steps / bodyCount);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.valkyrienskies.mod.common.physics;
+
+import org.joml.AxisAngle4d;
+import org.joml.Matrix3d;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class RigidBodyStoreTest {
+
+    static final Vector3dc GRAVITY = new Vector3d(0, -9.8, 0);
+    static final double MIN_Y = -30, MAX_Y = 1000;
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    public void testMatchesPerBodyStep() {
+        Random random = new Random();
+        RigidBodyStore store = new RigidBodyStore();
+        List<ObjectBody> reference = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ObjectBody body = ObjectBody.createRandom(random);
+            body.copyInto(store, store.add().getIndex());
+            reference.add(body);
+        }
+
+        for (int step = 0; step < 20; step++) {
+            store.beginStep();
+            for (int i = 0; i < reference.size(); i++) {
+                // Some bodies sit out some steps, and some aren't affected by gravity
+                ObjectBody body = reference.get(i);
+                body.stepTime = random.nextInt(4) == 0 ? 0 : .01 + random.nextDouble() * .04;
+                body.hasGravity = random.nextBoolean();
+                if (body.stepTime > 0) {
+                    store.prepareStep(i, body.stepTime, body.getDrag(),
+                        body.hasGravity ? body.mass * body.stepTime * (1 / body.mass) : 0);
+                }
+            }
+            store.updateWorldInertia(0, store.size());
+            store.applyDrag(0, store.size());
+            store.applyGravity(GRAVITY, 0, store.size());
+            store.integrate(MIN_Y, MAX_Y, 0, store.size());
+
+            for (int i = 0; i < reference.size(); i++) {
+                ObjectBody body = reference.get(i);
+                if (body.stepTime > 0) {
+                    body.step();
+                }
+                body.assertMatches(store, i, body.stepTime > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testHandlesFollowBodies() {
+        RigidBodyStore store = new RigidBodyStore(2);
+        List<RigidBodyStore.BodyHandle> handles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            RigidBodyStore.BodyHandle handle = store.add();
+            store.posX[handle.getIndex()] = i;
+            handles.add(handle);
+        }
+        store.remove(handles.remove(3));
+        store.remove(handles.remove(0));
+        assertThat(store.size(), equalTo(8));
+        assertThat(positionsOf(handles), equalTo(new double[] {1, 2, 4, 5, 6, 7, 8, 9}));
+
+        // Bodies left out are moved to their own store, bodies from other stores are moved in
+        RigidBodyStore other = new RigidBodyStore();
+        RigidBodyStore.BodyHandle moved = other.add();
+        other.posX[moved.getIndex()] = 10;
+        List<RigidBodyStore.BodyHandle> kept = new ArrayList<>(handles.subList(2, 6));
+        kept.add(moved);
+        store.syncBodies(kept);
+        assertThat(store.size(), equalTo(5));
+        assertThat(other.size(), equalTo(0));
+        assertThat(positionsOf(kept), equalTo(new double[] {4, 5, 6, 7, 10}));
+        for (RigidBodyStore.BodyHandle handle : kept) {
+            assertThat(handle.getStore(), sameInstance(store));
+        }
+        assertThat(positionsOf(handles), equalTo(new double[] {1, 2, 4, 5, 6, 7, 8, 9}));
+    }
+
+    private static double[] positionsOf(List<RigidBodyStore.BodyHandle> handles) {
+        return handles.stream().mapToDouble(handle -> handle.getStore().posX[handle.getIndex()]).toArray();
+    }
+
+    /**
+     * A rigid body stepped with JOML objects, the same way PhysicsCalculations did before it was backed by a
+     * {@link RigidBodyStore}.
+     */
+    static class ObjectBody {
+
+        Vector3d position;
+        Quaterniond rotation;
+        Vector3d linearVelocity, angularVelocity;
+        double mass;
+        Matrix3d inertia;
+        Matrix3d worldInertia, worldInvInertia;
+        double stepTime;
+        boolean hasGravity;
+
+        static ObjectBody createRandom(Random random) {
+            ObjectBody body = new ObjectBody();
+            body.position = new Vector3d(5.12e6 + random.nextDouble() * 1000, random.nextDouble() * 200,
+                random.nextDouble() * 1000);
+            body.rotation = new Quaterniond(random.nextGaussian(), random.nextGaussian(), random.nextGaussian(),
+                random.nextGaussian()).normalize();
+            body.linearVelocity = new Vector3d(random.nextGaussian(), random.nextGaussian(), random.nextGaussian())
+                .mul(10);
+            // Most bodies rotate, some too slowly to be rotated
+            double angularScale = random.nextInt(5) == 0 ? .01 : 2;
+            body.angularVelocity = new Vector3d(random.nextGaussian(), random.nextGaussian(), random.nextGaussian())
+                .mul(angularScale);
+            body.mass = 100 + random.nextDouble() * 10000;
+            // A valid inertia tensor, from a random box rotated by a random rotation
+            double a = body.mass * (1 + random.nextDouble() * 100);
+            double b = body.mass * (1 + random.nextDouble() * 100);
+            double c = body.mass * (1 + random.nextDouble() * 100);
+            Matrix3d boxRotation = new Quaterniond(random.nextGaussian(), random.nextGaussian(),
+                random.nextGaussian(), random.nextGaussian()).normalize().get(new Matrix3d());
+            body.inertia = new Matrix3d(boxRotation).mul(new Matrix3d(b + c, 0, 0, 0, a + c, 0, 0, 0, a + b))
+                .mul(boxRotation.transpose(new Matrix3d()));
+            return body;
+        }
+
+        void copyInto(RigidBodyStore store, int index) {
+            store.posX[index] = position.x;
+            store.posY[index] = position.y;
+            store.posZ[index] = position.z;
+            store.rotX[index] = rotation.x;
+            store.rotY[index] = rotation.y;
+            store.rotZ[index] = rotation.z;
+            store.rotW[index] = rotation.w;
+            store.linearVelX[index] = linearVelocity.x;
+            store.linearVelY[index] = linearVelocity.y;
+            store.linearVelZ[index] = linearVelocity.z;
+            store.angularVelX[index] = angularVelocity.x;
+            store.angularVelY[index] = angularVelocity.y;
+            store.angularVelZ[index] = angularVelocity.z;
+            store.setMass(index, mass);
+            store.setBodyInertia(index, inertia);
+        }
+
+        double getDrag() {
+            return Math.pow(PhysicsCalculations.DRAG_CONSTANT, stepTime * 20D);
+        }
+
+        void step() {
+            // calculateFramedMOITensor()
+            Matrix3d rotationMatrix = rotation.get(new Matrix3d());
+            worldInertia = new Matrix3d(rotationMatrix).mul(inertia).mul(rotationMatrix.transpose(new Matrix3d()));
+            worldInvInertia = worldInertia.invert(new Matrix3d());
+            // applyAirDrag()
+            linearVelocity.mul(getDrag());
+            angularVelocity.mul(getDrag());
+            // applyGravity()
+            if (hasGravity) {
+                Vector3d force = GRAVITY.mul(mass * stepTime, new Vector3d());
+                linearVelocity.add(force.x() * (1 / mass), force.y() * (1 / mass), force.z() * (1 / mass));
+            }
+            // integrateAngularVelocity()
+            if (angularVelocity.lengthSquared() >= .001) {
+                AxisAngle4d axisAngle = new AxisAngle4d(angularVelocity.length() * stepTime, angularVelocity.x,
+                    angularVelocity.y, angularVelocity.z);
+                axisAngle.normalize();
+                rotation = rotation.premul(new Quaterniond(axisAngle), new Quaterniond()).normalize();
+            }
+            // integrateLinearVelocity()
+            position.x += linearVelocity.x * stepTime;
+            position.y += linearVelocity.y * stepTime;
+            position.z += linearVelocity.z * stepTime;
+            position.y = Math.min(Math.max(position.y, MIN_Y), MAX_Y);
+        }
+
+        /**
+         * @param checkInertia If the world inertia tensors should be checked, they're only up to date if the body was
+         *                     stepped
+         */
+        void assertMatches(RigidBodyStore store, int i, boolean checkInertia) {
+            // Ships are millions of meters from the origin, so the positions can't be as accurate as the rest
+            assertThat(store.posX[i], closeTo(position.x, 1e-6));
+            assertThat(store.posY[i], closeTo(position.y, 1e-6));
+            assertThat(store.posZ[i], closeTo(position.z, 1e-6));
+            // q and -q are the same rotation
+            double sign = Math.signum(rotation.x * store.rotX[i] + rotation.y * store.rotY[i]
+                + rotation.z * store.rotZ[i] + rotation.w * store.rotW[i]);
+            assertThat(store.rotX[i] * sign, closeTo(rotation.x, TOLERANCE));
+            assertThat(store.rotY[i] * sign, closeTo(rotation.y, TOLERANCE));
+            assertThat(store.rotZ[i] * sign, closeTo(rotation.z, TOLERANCE));
+            assertThat(store.rotW[i] * sign, closeTo(rotation.w, TOLERANCE));
+            assertThat(store.linearVelX[i], closeTo(linearVelocity.x, TOLERANCE));
+            assertThat(store.linearVelY[i], closeTo(linearVelocity.y, TOLERANCE));
+            assertThat(store.linearVelZ[i], closeTo(linearVelocity.z, TOLERANCE));
+            assertThat(store.angularVelX[i], closeTo(angularVelocity.x, TOLERANCE));
+            assertThat(store.angularVelY[i], closeTo(angularVelocity.y, TOLERANCE));
+            assertThat(store.angularVelZ[i], closeTo(angularVelocity.z, TOLERANCE));
+            if (checkInertia) {
+                double inertiaScale = Math.abs(worldInertia.m00) + Math.abs(worldInertia.m11)
+                    + Math.abs(worldInertia.m22);
+                double invInertiaScale = Math.abs(worldInvInertia.m00) + Math.abs(worldInvInertia.m11)
+                    + Math.abs(worldInvInertia.m22);
+                double[] expected = new double[9];
+                double[] expectedInv = new double[9];
+                worldInertia.get(expected);
+                worldInvInertia.get(expectedInv);
+                for (int k = 0; k < 9; k++) {
+                    assertThat(store.worldInertia[k][i], closeTo(expected[k], TOLERANCE * inertiaScale));
+                    assertThat(store.worldInvInertia[k][i], closeTo(expectedInv[k], TOLERANCE * invInertiaScale));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.valkyrienskies.mod.common.physics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ShipSleepTrackerTest {
+
+    private static final double LINEAR_THRESHOLD = .05, ANGULAR_THRESHOLD = .02;
+    private static final int TICKS_TO_SLEEP = 10;
+
+    @Test
+    public void testOnlyRestingShipsAreReadyToSleep() {
+        ShipSleepTracker tracker = new ShipSleepTracker();
+        for (int tick = 1; tick < TICKS_TO_SLEEP; tick++) {
+            assertThat(recordResting(tracker), equalTo(tick));
+            assertThat(tracker.isReadyToSleep(TICKS_TO_SLEEP), equalTo(false));
+        }
+        // Either of the speeds going over its threshold starts the count over
+        double[] moving = {0, 0};
+        for (int i = 0; i < moving.length; i++) {
+            moving[i] = 1;
+            assertThat(tracker.recordTick(moving[0], moving[1], false, LINEAR_THRESHOLD, ANGULAR_THRESHOLD),
+                equalTo(0));
+            moving[i] = 0;
+            assertThat(recordResting(tracker), equalTo(1));
+        }
+
+        for (int tick = 1; tick < TICKS_TO_SLEEP; tick++) {
+            recordResting(tracker);
+        }
+        assertThat(tracker.isReadyToSleep(TICKS_TO_SLEEP), equalTo(true));
+        assertThat(tracker.isSleeping(), equalTo(false));
+        tracker.fallAsleep();
+        assertThat(tracker.isSleeping(), equalTo(true));
+    }
+
+    @Test
+    public void testPushedShipNeverSleeps() {
+        ShipSleepTracker tracker = new ShipSleepTracker();
+        // A heavy ship barely moving, because its engines are too weak for its mass
+        for (int tick = 0; tick < TICKS_TO_SLEEP * 10; tick++) {
+            assertThat(tracker.recordTick(LINEAR_THRESHOLD / 100, 0, true, LINEAR_THRESHOLD, ANGULAR_THRESHOLD),
+                equalTo(0));
+            assertThat(tracker.isReadyToSleep(TICKS_TO_SLEEP), equalTo(false));
+        }
+        // Once the engines are turned off it can rest
+        assertThat(tracker.recordTick(LINEAR_THRESHOLD / 100, 0, false, LINEAR_THRESHOLD, ANGULAR_THRESHOLD),
+            equalTo(1));
+    }
+
+    @Test
+    public void testWakingUp() {
+        ShipSleepTracker tracker = new ShipSleepTracker();
+        // A wake request on an awake ship does nothing but get used up
+        tracker.wakeUp();
+        assertThat(tracker.pollWakeRequest(), equalTo(false));
+
+        sleep(tracker);
+        assertThat(tracker.pollWakeRequest(), equalTo(false));
+        assertThat(tracker.isSleeping(), equalTo(true));
+        tracker.wakeUp();
+        tracker.wakeUp();
+        assertThat(tracker.isSleeping(), equalTo(true));
+        assertThat(tracker.pollWakeRequest(), equalTo(true));
+        assertThat(tracker.isSleeping(), equalTo(false));
+        assertThat(tracker.pollWakeRequest(), equalTo(false));
+        // The ship has to rest all over again before it can sleep
+        assertThat(tracker.isReadyToSleep(TICKS_TO_SLEEP), equalTo(false));
+
+        sleep(tracker);
+        tracker.wake();
+        assertThat(tracker.isSleeping(), equalTo(false));
+        assertThat(tracker.isReadyToSleep(TICKS_TO_SLEEP), equalTo(false));
+    }
+
+    @Test
+    public void testWakeRequestsFromOtherThreads() throws InterruptedException {
+        ShipSleepTracker tracker = new ShipSleepTracker();
+        sleep(tracker);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                tracker.wakeUp();
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Any number of requests wake the ship up exactly once
+        assertThat(tracker.pollWakeRequest(), equalTo(true));
+        assertThat(tracker.pollWakeRequest(), equalTo(false));
+        assertThat(tracker.isSleeping(), equalTo(false));
+    }
+
+    private static int recordResting(ShipSleepTracker tracker) {
+        return tracker.recordTick(LINEAR_THRESHOLD / 2, ANGULAR_THRESHOLD / 2, false, LINEAR_THRESHOLD,
+            ANGULAR_THRESHOLD);
+    }
+
+    private static void sleep(ShipSleepTracker tracker) {
+        for (int tick = 0; tick < TICKS_TO_SLEEP; tick++) {
+            recordResting(tracker);
+        }
+        assertThat(tracker.isReadyToSleep(TICKS_TO_SLEEP), equalTo(true));
+        tracker.fallAsleep();
+    }
+}
@@ -0,0 +1,248 @@
+package org.valkyrienskies.mod.common.physics;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import org.joml.Matrix3d;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.util.multithreaded.IPhysicsPipelineShip;
+import org.valkyrienskies.mod.common.util.multithreaded.ShipPhysicsProfile;
+
+/**
+ * A ship made of a random lump of blocks, falling onto the ground plane at y = 0 while pushed by a constant force and
+ * torque. Its narrow phase finds the blocks below the ground, and the contacts are resolved with impulses on its body,
+ * the same way a real ship reads and writes its body in every part of a step.
+ */
+public class TestPipelineShip implements IPhysicsPipelineShip<TestPipelineShip.GroundCollisionTask> {
+
+    private static final int BLOCKS_PER_TASK = 45;
+
+    private final RigidBodyStore.BodyHandle body;
+    // The centers of the blocks, relative to the center of mass
+    private final List<Vector3dc> blockOffsets;
+    private final Vector3dc force;
+    private final Vector3dc torque;
+    private final ShipPhysicsProfile physicsProfile = new ShipPhysicsProfile();
+    // The position of each contact applied so far followed by its impulse, 4 values per contact
+    private final TDoubleArrayList appliedContacts = new TDoubleArrayList();
+    private double stepTime;
+    private boolean colliding;
+
+    private TestPipelineShip(RigidBodyStore.BodyHandle body, List<Vector3dc> blockOffsets, Vector3dc force,
+        Vector3dc torque) {
+        this.body = body;
+        this.blockOffsets = blockOffsets;
+        this.force = force;
+        this.torque = torque;
+    }
+
+    /**
+     * Adds a random ship at position to store. Ships created from equal randoms are equal.
+     */
+    public static TestPipelineShip createRandom(RigidBodyStore store, Random random, Vector3dc position,
+        int maxSize) {
+        int sizeX = 2 + random.nextInt(maxSize - 1);
+        int sizeY = 2 + random.nextInt(maxSize - 1);
+        int sizeZ = 2 + random.nextInt(maxSize - 1);
+        List<Vector3dc> blockOffsets = new ArrayList<>();
+        for (int x = 0; x < sizeX; x++) {
+            for (int y = 0; y < sizeY; y++) {
+                for (int z = 0; z < sizeZ; z++) {
+                    if (random.nextDouble() < .7) {
+                        blockOffsets.add(new Vector3d(x - sizeX / 2.0 + .5, y - sizeY / 2.0 + .5,
+                            z - sizeZ / 2.0 + .5));
+                    }
+                }
+            }
+        }
+        // Always have a block at the center, so the ship is never empty
+        blockOffsets.add(new Vector3d());
+
+        Vector3d force = randomVector(random, 1000);
+        Vector3d torque = randomVector(random, 1000);
+        TestPipelineShip ship = new TestPipelineShip(store.add(), blockOffsets, force, torque);
+        int i = ship.body.index;
+        double mass = blockOffsets.size() * 100;
+        store.setMass(i, mass);
+        store.setBodyInertia(i, new Matrix3d().scaling(mass * (sizeX * sizeX + sizeY * sizeY + sizeZ * sizeZ) / 12));
+        Quaterniond rotation = new Quaterniond()
+            .rotateXYZ(random.nextDouble() * Math.PI * 2, random.nextDouble() * Math.PI * 2,
+                random.nextDouble() * Math.PI * 2);
+        Vector3d linearVelocity = randomVector(random, 2);
+        Vector3d angularVelocity = randomVector(random, 1);
+        store.posX[i] = position.x();
+        store.posY[i] = position.y();
+        store.posZ[i] = position.z();
+        store.rotX[i] = rotation.x;
+        store.rotY[i] = rotation.y;
+        store.rotZ[i] = rotation.z;
+        store.rotW[i] = rotation.w;
+        store.linearVelX[i] = linearVelocity.x;
+        store.linearVelY[i] = linearVelocity.y;
+        store.linearVelZ[i] = linearVelocity.z;
+        store.angularVelX[i] = angularVelocity.x;
+        store.angularVelY[i] = angularVelocity.y;
+        store.angularVelZ[i] = angularVelocity.z;
+        return ship;
+    }
+
+    private static Vector3d randomVector(Random random, double scale) {
+        return new Vector3d(random.nextDouble() - .5, random.nextDouble() - .5, random.nextDouble() - .5)
+            .mul(scale * 2);
+    }
+
+    /**
+     * @return The positions, rotations, linear velocities and angular velocities of every body of store, one array per
+     * component.
+     */
+    public static double[][] getBodyArrays(RigidBodyStore store) {
+        return new double[][] {store.posX, store.posY, store.posZ, store.rotX, store.rotY, store.rotZ, store.rotW,
+            store.linearVelX, store.linearVelY, store.linearVelZ, store.angularVelX, store.angularVelY,
+            store.angularVelZ};
+    }
+
+    /**
+     * Gives both ships the average of their linear velocities, the way two ships that ran into each other would end
+     * up moving together.
+     */
+    public void pushAgainst(TestPipelineShip other) {
+        RigidBodyStore store = body.store;
+        RigidBodyStore otherStore = other.body.store;
+        int i = body.index;
+        int j = other.body.index;
+        double x = (store.linearVelX[i] + otherStore.linearVelX[j]) * .5;
+        double y = (store.linearVelY[i] + otherStore.linearVelY[j]) * .5;
+        double z = (store.linearVelZ[i] + otherStore.linearVelZ[j]) * .5;
+        store.linearVelX[i] = otherStore.linearVelX[j] = x;
+        store.linearVelY[i] = otherStore.linearVelY[j] = y;
+        store.linearVelZ[i] = otherStore.linearVelZ[j] = z;
+    }
+
+    public TDoubleArrayList getAppliedContacts() {
+        return appliedContacts;
+    }
+
+    public boolean isColliding() {
+        return colliding;
+    }
+
+    public void setColliding(boolean colliding) {
+        this.colliding = colliding;
+    }
+
+    @Override
+    public RigidBodyStore.BodyHandle getBody() {
+        return body;
+    }
+
+    @Override
+    public void prepareStep(double timeStep) {
+        stepTime = timeStep;
+        body.store.prepareStep(body.index, timeStep, PhysicsCalculations.DRAG_CONSTANT, timeStep);
+    }
+
+    @Override
+    public void applyForces() {
+        RigidBodyStore store = body.store;
+        int i = body.index;
+        double invMass = store.invMass[i];
+        store.linearVelX[i] += force.x() * invMass * stepTime;
+        store.linearVelY[i] += force.y() * invMass * stepTime;
+        store.linearVelZ[i] += force.z() * invMass * stepTime;
+        Vector3d angularChange = store.transformByWorldInvInertia(i, torque.mul(stepTime, new Vector3d()));
+        store.angularVelX[i] += angularChange.x;
+        store.angularVelY[i] += angularChange.y;
+        store.angularVelZ[i] += angularChange.z;
+    }
+
+    @Override
+    public void splitIntoCollisionTasks(List<GroundCollisionTask> toAdd) {
+        for (int from = 0; from < blockOffsets.size(); from += BLOCKS_PER_TASK) {
+            toAdd.add(new GroundCollisionTask(this, from, Math.min(from + BLOCKS_PER_TASK, blockOffsets.size())));
+        }
+    }
+
+    @Override
+    public void processCollisionTask(GroundCollisionTask task) {
+        RigidBodyStore store = body.store;
+        int i = body.index;
+        TDoubleArrayList contacts = task.contacts;
+        Vector3d arm = new Vector3d();
+        Vector3d angularImpulse = new Vector3d();
+        for (int contact = 0; contact < contacts.size(); contact += 3) {
+            arm.set(contacts.get(contact) - store.posX[i], contacts.get(contact + 1) - store.posY[i],
+                contacts.get(contact + 2) - store.posZ[i]);
+            // The y velocity of the ship at the contact, (v + w x r).y
+            double velocityY = store.linearVelY[i] + store.angularVelZ[i] * arm.x - store.angularVelX[i] * arm.z;
+            if (velocityY >= 0) {
+                continue;
+            }
+            // The impulse that stops the contact point, along the ground normal (0, 1, 0)
+            store.transformByWorldInvInertia(i, arm.cross(0, 1, 0, angularImpulse)).cross(arm);
+            double impulse = -velocityY / (store.invMass[i] + angularImpulse.y);
+            store.linearVelY[i] += impulse * store.invMass[i];
+            store.transformByWorldInvInertia(i, arm.cross(0, impulse, 0, angularImpulse));
+            store.angularVelX[i] += angularImpulse.x;
+            store.angularVelY[i] += angularImpulse.y;
+            store.angularVelZ[i] += angularImpulse.z;
+            appliedContacts.add(contacts.get(contact));
+            appliedContacts.add(contacts.get(contact + 1));
+            appliedContacts.add(contacts.get(contact + 2));
+            appliedContacts.add(impulse);
+        }
+    }
+
+    @Override
+    public void prepareIntegration() {
+    }
+
+    @Override
+    public void finishStep() {
+        body.store.endStep(body.index);
+    }
+
+    @Override
+    public ShipPhysicsProfile getPhysicsProfile() {
+        return physicsProfile;
+    }
+
+    /**
+     * Finds the blocks of a range of the ship that are below the ground.
+     */
+    public static class GroundCollisionTask implements Callable<Void> {
+
+        private final TestPipelineShip ship;
+        private final int from;
+        private final int to;
+        // The position of each block center below the ground, 3 values per contact
+        private final TDoubleArrayList contacts = new TDoubleArrayList();
+
+        GroundCollisionTask(TestPipelineShip ship, int from, int to) {
+            this.ship = ship;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Void call() {
+            RigidBodyStore store = ship.body.store;
+            int i = ship.body.index;
+            Quaterniond rotation = new Quaterniond(store.rotX[i], store.rotY[i], store.rotZ[i], store.rotW[i]);
+            Vector3d position = new Vector3d();
+            for (int block = from; block < to; block++) {
+                rotation.transform(ship.blockOffsets.get(block), position)
+                    .add(store.posX[i], store.posY[i], store.posZ[i]);
+                if (position.y < 0) {
+                    contacts.add(position.x);
+                    contacts.add(position.y);
+                    contacts.add(position.z);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.valkyrienskies.mod.common.ships;
+
+import static com.googlecode.cqengine.query.QueryFactory.equal;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import com.googlecode.cqengine.resultset.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.ChunkPos;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
+import org.valkyrienskies.mod.common.ships.chunk_claims.VSChunkClaim;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+
+/**
+ * Checks that the chunk to ship map of {@link QueryableShipData} agrees with the CQEngine CHUNKS index it mirrors.
+ */
+public class QueryableShipDataTest {
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testGetShipFromChunkMatchesIndex() {
+        Random random = new Random();
+        QueryableShipData queryableShipData = new QueryableShipData();
+        List<ShipData> ships = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ShipData ship = createShip(queryableShipData, i + 1, random);
+            queryableShipData.addShip(ship);
+            ships.add(ship);
+        }
+
+        for (int i = 0; i < 500; i++) {
+            ShipData ship = ships.get(random.nextInt(ships.size()));
+            switch (random.nextInt(4)) {
+                case 0:
+                    ChunkPos center = ship.getChunkClaim().getCenterPos();
+                    queryableShipData.addChunkClaim(ship, center.x + random.nextInt(21) - 10,
+                        center.z + random.nextInt(21) - 10);
+                    break;
+                case 1:
+                    queryableShipData.removeShip(ship);
+                    break;
+                case 2:
+                    queryableShipData.addShip(ship);
+                    break;
+                default:
+                    ShipData replacement = createShip(queryableShipData, ships.indexOf(ship) + 1, random);
+                    if (queryableShipData.getShip(ship.getUuid()).isPresent()) {
+                        queryableShipData.updateShipData(ship, replacement);
+                        ships.set(ships.indexOf(ship), replacement);
+                    }
+                    break;
+            }
+            checkAgainstIndex(queryableShipData, ships, random);
+        }
+    }
+
+    @Test
+    public void testChunksOutsideShipyard() {
+        QueryableShipData queryableShipData = new QueryableShipData();
+        queryableShipData.addShip(createShip(queryableShipData, 1, new Random()));
+        assertThat(queryableShipData.getShipFromChunk(0, 0), equalTo(Optional.empty()));
+        assertThat(queryableShipData.getShipFromChunk(-ShipChunkAllocator.CHUNK_X_START, 0),
+            equalTo(Optional.empty()));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void checkAgainstIndex(QueryableShipData queryableShipData, List<ShipData> ships, Random random) {
+        for (ShipData ship : ships) {
+            ChunkPos center = ship.getChunkClaim().getCenterPos();
+            // Check every claimed chunk, and some chunks nearby that might not be claimed
+            List<Long> toCheck = new ArrayList<>(ship.getChunkClaim().getClaimedChunks());
+            for (int i = 0; i < 10; i++) {
+                toCheck.add(ChunkPos.asLong(center.x + random.nextInt(31) - 15, center.z + random.nextInt(31) - 15));
+            }
+            for (long chunkLong : toCheck) {
+                Optional<ShipData> expected;
+                try (ResultSet<ShipData> resultSet = queryableShipData.getAllShips()
+                    .retrieve(equal(ShipData.CHUNKS, chunkLong))) {
+                    expected = resultSet.isEmpty() ? Optional.empty() : Optional.of(resultSet.uniqueResult());
+                }
+                assertThat(queryableShipData.getShipFromChunk(chunkLong), equalTo(expected));
+            }
+        }
+    }
+
+    /**
+     * Creates a ship claiming a few chunks around the center of the regionIndex'th region of the shipyard.
+     */
+    @SuppressWarnings("deprecation")
+    private static ShipData createShip(QueryableShipData queryableShipData, int regionIndex, Random random) {
+        ChunkPos centerPos = new ChunkPos(ShipChunkAllocator.CHUNK_X_START,
+            ShipChunkAllocator.CHUNK_Z_START + regionIndex * ShipChunkAllocator.MAX_CHUNK_LENGTH);
+        VSChunkClaim chunkClaim = new VSChunkClaim(centerPos);
+        chunkClaim.addChunkClaim(centerPos.x, centerPos.z);
+        for (int i = 0; i < 5; i++) {
+            chunkClaim.addChunkClaim(centerPos.x + random.nextInt(11) - 5, centerPos.z + random.nextInt(11) - 5);
+        }
+        ShipTransform transform = new ShipTransform(new Vector3d(), new Quaterniond(),
+            new Vector3d(centerPos.getXStart(), 128, centerPos.getZStart()));
+        return ShipData.createData(queryableShipData.getAllShips(), "TestShip" + regionIndex, chunkClaim,
+            UUID.randomUUID(), transform, new AxisAlignedBB(0, 0, 0, 1, 1, 1));
+    }
+}
@@ -0,0 +1,125 @@
+package org.valkyrienskies.mod.common.ships.block_relocation;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.set.hash.TIntHashSet;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.World;
+
+/**
+ * Only used for testing. The breadth first search {@link SpatialDetector} used before the scanline fill, to check the
+ * scanline fill against.
+ */
+public abstract class BreadthFirstSpatialDetector extends SpatialDetector {
+
+    public TIntHashSet nextQueue = new TIntHashSet();
+
+    public BreadthFirstSpatialDetector(BlockPos start, World worldIn, IBlockAccess blockAccess, int maximum,
+        boolean checkCorners) {
+        super(start, worldIn, blockAccess, maximum, checkCorners);
+    }
+
+    @Override
+    protected void calculateSpatialOccupation() {
+        nextQueue
+            .add(firstBlock.getY() + maxRange * maxRangeHalved + maxRangeSquared * maxRangeHalved);
+        MutableBlockPos inRealWorld = new MutableBlockPos();
+        int hash;
+        while (!nextQueue.isEmpty() && !cleanHouse) {
+            TIntIterator queueIter = nextQueue.iterator();
+            foundSet.addAll(nextQueue);
+            nextQueue = new TIntHashSet();
+            while (queueIter.hasNext()) {
+                hash = queueIter.next();
+                setPosWithRespectTo(hash, firstBlock, inRealWorld);
+                if (corners) {
+                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() - 1,
+                        inRealWorld.getZ() - 1,
+                        hash - maxRange - 1 - maxRangeSquared);
+                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() - 1, inRealWorld.getZ(),
+                        hash - maxRange - 1);
+                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() - 1,
+                        inRealWorld.getZ() + 1,
+                        hash - maxRange - 1 + maxRangeSquared);
+                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY(), inRealWorld.getZ() - 1,
+                        hash - maxRange - maxRangeSquared);
+                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY(), inRealWorld.getZ(),
+                        hash - maxRange);
+                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY(), inRealWorld.getZ() + 1,
+                        hash - maxRange + maxRangeSquared);
+                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() + 1,
+                        inRealWorld.getZ() - 1,
+                        hash - maxRange + 1 - maxRangeSquared);
+                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() + 1, inRealWorld.getZ(),
+                        hash - maxRange + 1);
+                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY() + 1,
+                        inRealWorld.getZ() + 1,
+                        hash - maxRange + 1 + maxRangeSquared);
+
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() - 1, inRealWorld.getZ() - 1,
+                        hash - 1 - maxRangeSquared);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() - 1, inRealWorld.getZ(),
+                        hash - 1);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() - 1, inRealWorld.getZ() + 1,
+                        hash - 1 + maxRangeSquared);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY(), inRealWorld.getZ() - 1,
+                        hash - maxRangeSquared);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY(), inRealWorld.getZ() + 1,
+                        hash + maxRangeSquared);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() + 1, inRealWorld.getZ() - 1,
+                        hash + 1 - maxRangeSquared);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() + 1, inRealWorld.getZ(),
+                        hash + 1);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() + 1, inRealWorld.getZ() + 1,
+                        hash + 1 + maxRangeSquared);
+
+                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() - 1,
+                        inRealWorld.getZ() - 1,
+                        hash + maxRange - 1 - maxRangeSquared);
+                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() - 1, inRealWorld.getZ(),
+                        hash + maxRange - 1);
+                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() - 1,
+                        inRealWorld.getZ() + 1,
+                        hash + maxRange - 1 + maxRangeSquared);
+                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY(), inRealWorld.getZ() - 1,
+                        hash + maxRange - maxRangeSquared);
+                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY(), inRealWorld.getZ(),
+                        hash + maxRange);
+                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY(), inRealWorld.getZ() + 1,
+                        hash + maxRange + maxRangeSquared);
+                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() + 1,
+                        inRealWorld.getZ() - 1,
+                        hash + maxRange + 1 - maxRangeSquared);
+                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() + 1, inRealWorld.getZ(),
+                        hash + maxRange + 1);
+                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY() + 1,
+                        inRealWorld.getZ() + 1,
+                        hash + maxRange + 1 + maxRangeSquared);
+                } else {
+                    tryExpanding(inRealWorld.getX() + 1, inRealWorld.getY(), inRealWorld.getZ(),
+                        hash + maxRange);
+                    tryExpanding(inRealWorld.getX() - 1, inRealWorld.getY(), inRealWorld.getZ(),
+                        hash - maxRange);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() + 1, inRealWorld.getZ(),
+                        hash + 1);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY() - 1, inRealWorld.getZ(),
+                        hash - 1);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY(), inRealWorld.getZ() + 1,
+                        hash + maxRangeSquared);
+                    tryExpanding(inRealWorld.getX(), inRealWorld.getY(), inRealWorld.getZ() - 1,
+                        hash - maxRangeSquared);
+                }
+            }
+        }
+    }
+
+    protected void tryExpanding(int x, int y, int z, int hash) {
+        if (isValidExpansion(x, y, z)) {
+            // totalCalls++;
+            if (!foundSet.contains(hash) && (foundSet.size() + nextQueue.size() < maxSize)) {
+                nextQueue.add(hash);
+            }
+        }
+    }
+}
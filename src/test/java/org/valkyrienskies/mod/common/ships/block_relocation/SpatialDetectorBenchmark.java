@@ -0,0 +1,43 @@
+package org.valkyrienskies.mod.common.ships.block_relocation;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetectorTest.BreadthFirstVoxelDetector;
+import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetectorTest.ScanlineVoxelDetector;
+import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetectorTest.VoxelField;
+import org.valkyrienskies.mod.common.util.BenchmarkUtil;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * How the scanline fill compares to the breadth first search it replaced. Both read the same in memory voxel field, so
+ * this only measures the cost of the search itself. Solid boxes are the best case for the scanline fill, random blobs
+ * with short rows are closer to the worst case.
+ */
+@Tag("benchmark")
+public class SpatialDetectorBenchmark {
+
+    @Test
+    public void benchmarkAgainstBreadthFirstSearch() throws Exception {
+        Random random = new Random(0);
+        for (int blockCount : new int[] {1000, 10000, 50000}) {
+            int side = (int) Math.ceil(Math.cbrt(blockCount));
+            benchmark("box", blockCount, VoxelField.createBox(side, side, side));
+            benchmark("blob", blockCount, VoxelField.createRandomBlob(random, blockCount));
+        }
+    }
+
+    private static void benchmark(String shape, int blockCount, VoxelField field) throws Exception {
+        int[] found = new int[2];
+        long scanlineTime = BenchmarkUtil.bestOf(10, () -> found[0] =
+            new ScanlineVoxelDetector(field.getCenter(), field, 100000, true).foundSet.size());
+        long breadthFirstTime = BenchmarkUtil.bestOf(10, () -> found[1] =
+            new BreadthFirstVoxelDetector(field.getCenter(), field, 100000, true).foundSet.size());
+        assertThat(found[0], equalTo(found[1]));
+        System.out.printf("%d block %s: breadth first %.3f ms, scanline %.3f ms%n", blockCount, shape,
+            breadthFirstTime / 1e6, scanlineTime / 1e6);
+    }
+}
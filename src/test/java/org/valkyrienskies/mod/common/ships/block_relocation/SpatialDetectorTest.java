@@ -0,0 +1,280 @@
+package org.valkyrienskies.mod.common.ships.block_relocation;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SpatialDetectorTest {
+
+    static final BlockPos ORIGIN = new BlockPos(5120000, 60, -3000);
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testMatchesBreadthFirstSearch(boolean checkCorners) {
+        Random random = new Random();
+        for (int i = 0; i < 50; i++) {
+            // Sparse enough that some fields fall apart into pieces, and the detectors have to agree on which
+            VoxelField field = VoxelField.createRandomField(random, 40, .2 + random.nextDouble() * .3);
+            BlockPos start = field.getCenter();
+            SpatialDetector scanline = new ScanlineVoxelDetector(start, field, 100000, checkCorners);
+            SpatialDetector breadthFirst = new BreadthFirstVoxelDetector(start, field, 100000, checkCorners);
+            assertThat(scanline.foundSet, equalTo(breadthFirst.foundSet));
+            assertThat(scanline.cleanHouse, equalTo(false));
+        }
+    }
+
+    @Test
+    public void testStopsAtMaxSize() {
+        VoxelField field = VoxelField.createBox(10, 10, 10);
+        SpatialDetector scanline = new ScanlineVoxelDetector(field.getCenter(), field, 501, true);
+        SpatialDetector breadthFirst = new BreadthFirstVoxelDetector(field.getCenter(), field, 501, true);
+        assertThat(scanline.foundSet.size(), equalTo(501));
+        assertThat(breadthFirst.foundSet.size(), equalTo(501));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testBedrockClearsFoundSet(boolean checkCorners) {
+        VoxelField field = VoxelField.createBox(10, 10, 10);
+        field.setBedrock(ORIGIN.getX() + 3, ORIGIN.getY() + 10, ORIGIN.getZ() + 7);
+        SpatialDetector scanline = new ScanlineVoxelDetector(field.getCenter(), field, 100000, checkCorners);
+        SpatialDetector breadthFirst = new BreadthFirstVoxelDetector(field.getCenter(), field, 100000, checkCorners);
+        assertThat(scanline.cleanHouse, equalTo(true));
+        assertThat(scanline.foundSet.size(), equalTo(0));
+        assertThat(breadthFirst.cleanHouse, equalTo(true));
+        assertThat(breadthFirst.foundSet.size(), equalTo(0));
+    }
+
+    /**
+     * Only lets the detector read part of the field at first, like the sections of a snapshot that haven't been copied
+     * yet, then more and more of it. The detector has to end up with the same blocks as if it could read all of it.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testResumesWhereItStopped(boolean checkCorners) {
+        Random random = new Random();
+        for (int i = 0; i < 50; i++) {
+            VoxelField field = VoxelField.createRandomField(random, 40, .3 + random.nextDouble() * .3);
+            BlockPos start = field.getCenter();
+            ScanlineVoxelDetector scanline = new ScanlineVoxelDetector(start, field, 100000, checkCorners,
+                start.getX() + 1 + random.nextInt(5));
+            while (scanline.isIncomplete()) {
+                scanline.availableMaxX += 1 + random.nextInt(10);
+                scanline.resumeDetection();
+            }
+            SpatialDetector breadthFirst = new BreadthFirstVoxelDetector(start, field, 100000, checkCorners);
+            assertThat(scanline.foundSet, equalTo(breadthFirst.foundSet));
+        }
+    }
+
+    @Test
+    public void testResumeFindsBedrock() {
+        VoxelField field = VoxelField.createBox(10, 10, 10);
+        field.setBedrock(ORIGIN.getX() + 9, ORIGIN.getY() + 10, ORIGIN.getZ() + 7);
+        ScanlineVoxelDetector scanline = new ScanlineVoxelDetector(field.getCenter(), field, 100000, true,
+            ORIGIN.getX() + 8);
+        assertThat(scanline.isIncomplete(), equalTo(true));
+        assertThat(scanline.cleanHouse, equalTo(false));
+
+        scanline.availableMaxX = Integer.MAX_VALUE;
+        scanline.resumeDetection();
+        assertThat(scanline.isIncomplete(), equalTo(false));
+        assertThat(scanline.cleanHouse, equalTo(true));
+        assertThat(scanline.foundSet.size(), equalTo(0));
+    }
+
+    /**
+     * The blocks found only stay right as long as the blocks the detector read don't change, and those have to include
+     * the blocks next to the ones found, or a block placed there would be left out of the ship.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testChecksBlocksNextToTheShip(boolean checkCorners) {
+        VoxelField field = VoxelField.createBox(10, 10, 10);
+        SpatialDetector scanline = new ScanlineVoxelDetector(field.getCenter(), field, 100000, checkCorners);
+        assertThat(wasChecked(scanline, ORIGIN.add(5, 5, 5)), equalTo(true));
+        assertThat(wasChecked(scanline, ORIGIN.add(10, 5, 5)), equalTo(true));
+        assertThat(wasChecked(scanline, ORIGIN.add(5, -1, 5)), equalTo(true));
+        assertThat(wasChecked(scanline, ORIGIN.add(5, 5, 10)), equalTo(true));
+        assertThat(wasChecked(scanline, ORIGIN.add(10, 10, 5)), equalTo(checkCorners));
+        // Too far away to make a difference
+        assertThat(wasChecked(scanline, ORIGIN.add(12, 5, 5)), equalTo(false));
+    }
+
+    private static boolean wasChecked(SpatialDetector detector, BlockPos pos) {
+        MutableBlockPos checkedPos = new MutableBlockPos();
+        return !detector.forEachCheckedBlock(hash -> {
+            SpatialDetector.setPosWithRespectTo(hash, detector.firstBlock, checkedPos);
+            return !checkedPos.equals(pos);
+        });
+    }
+
+    /**
+     * Solid and bedrock blocks in a 128 block cube, with ORIGIN as its minimum corner.
+     */
+    static class VoxelField {
+
+        private static final int SIZE = 128;
+        private final BitSet solid = new BitSet(SIZE * SIZE * SIZE);
+        private final BitSet bedrock = new BitSet(SIZE * SIZE * SIZE);
+        private BlockPos center = ORIGIN;
+
+        static VoxelField createBox(int sizeX, int sizeY, int sizeZ) {
+            VoxelField field = new VoxelField();
+            for (int x = 0; x < sizeX; x++) {
+                for (int y = 0; y < sizeY; y++) {
+                    for (int z = 0; z < sizeZ; z++) {
+                        field.setSolid(ORIGIN.getX() + x, ORIGIN.getY() + y, ORIGIN.getZ() + z);
+                    }
+                }
+            }
+            field.center = ORIGIN.add(sizeX / 2, sizeY / 2, sizeZ / 2);
+            return field;
+        }
+
+        static VoxelField createRandomField(Random random, int size, double density) {
+            VoxelField field = new VoxelField();
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    for (int z = 0; z < size; z++) {
+                        if (random.nextDouble() < density) {
+                            field.setSolid(ORIGIN.getX() + x, ORIGIN.getY() + y, ORIGIN.getZ() + z);
+                        }
+                    }
+                }
+            }
+            field.center = ORIGIN.add(size / 2, size / 2, size / 2);
+            field.setSolid(field.center.getX(), field.center.getY(), field.center.getZ());
+            return field;
+        }
+
+        /**
+         * Grows a blob from the center of the field, by adding a block next to a random block of the blob until it
+         * has blockCount blocks.
+         */
+        static VoxelField createRandomBlob(Random random, int blockCount) {
+            VoxelField field = new VoxelField();
+            field.center = ORIGIN.add(SIZE / 2, SIZE / 2, SIZE / 2);
+            int[] blocks = new int[blockCount];
+            blocks[0] = field.getIndex(field.center.getX(), field.center.getY(), field.center.getZ());
+            field.solid.set(blocks[0]);
+            int added = 1;
+            while (added < blockCount) {
+                int from = blocks[random.nextInt(added)];
+                int x = from % SIZE;
+                int y = (from / SIZE) % SIZE;
+                int z = from / (SIZE * SIZE);
+                switch (random.nextInt(6)) {
+                    case 0: x++; break;
+                    case 1: x--; break;
+                    case 2: y++; break;
+                    case 3: y--; break;
+                    case 4: z++; break;
+                    default: z--; break;
+                }
+                if (x < 0 || x >= SIZE || y < 0 || y >= SIZE || z < 0 || z >= SIZE) {
+                    continue;
+                }
+                int index = x + y * SIZE + z * SIZE * SIZE;
+                if (!field.solid.get(index)) {
+                    field.solid.set(index);
+                    blocks[added++] = index;
+                }
+            }
+            return field;
+        }
+
+        BlockPos getCenter() {
+            return center;
+        }
+
+        void setSolid(int x, int y, int z) {
+            solid.set(getIndex(x, y, z));
+        }
+
+        void setBedrock(int x, int y, int z) {
+            bedrock.set(getIndex(x, y, z));
+        }
+
+        boolean isSolid(int x, int y, int z) {
+            int index = getIndex(x, y, z);
+            return index >= 0 && solid.get(index);
+        }
+
+        boolean isBedrock(int x, int y, int z) {
+            int index = getIndex(x, y, z);
+            return index >= 0 && bedrock.get(index);
+        }
+
+        private int getIndex(int x, int y, int z) {
+            x -= ORIGIN.getX();
+            y -= ORIGIN.getY();
+            z -= ORIGIN.getZ();
+            if (x < 0 || x >= SIZE || y < 0 || y >= SIZE || z < 0 || z >= SIZE) {
+                return -1;
+            }
+            return x + y * SIZE + z * SIZE * SIZE;
+        }
+    }
+
+    static class ScanlineVoxelDetector extends SpatialDetector {
+
+        private final VoxelField field;
+        // Blocks at this x or above can't be read yet
+        int availableMaxX;
+
+        ScanlineVoxelDetector(BlockPos start, VoxelField field, int maximum, boolean checkCorners) {
+            this(start, field, maximum, checkCorners, Integer.MAX_VALUE);
+        }
+
+        ScanlineVoxelDetector(BlockPos start, VoxelField field, int maximum, boolean checkCorners,
+            int availableMaxX) {
+            super(start, null, null, maximum, checkCorners);
+            this.field = field;
+            this.availableMaxX = availableMaxX;
+            startDetection();
+        }
+
+        @Override
+        protected boolean isBlockAvailable(int x, int y, int z) {
+            return x < availableMaxX;
+        }
+
+        @Override
+        public boolean isValidExpansion(int x, int y, int z) {
+            if (field.isBedrock(x, y, z)) {
+                cleanHouse = true;
+                return false;
+            }
+            return field.isSolid(x, y, z);
+        }
+    }
+
+    static class BreadthFirstVoxelDetector extends BreadthFirstSpatialDetector {
+
+        private final VoxelField field;
+
+        BreadthFirstVoxelDetector(BlockPos start, VoxelField field, int maximum, boolean checkCorners) {
+            super(start, null, null, maximum, checkCorners);
+            this.field = field;
+            startDetection();
+        }
+
+        @Override
+        public boolean isValidExpansion(int x, int y, int z) {
+            if (field.isBedrock(x, y, z)) {
+                cleanHouse = true;
+                return false;
+            }
+            return field.isSolid(x, y, z);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.valkyrienskies.mod.common.ships.interpolation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class SnapshotTimelineTest {
+
+    private static final double SPEED = .5;
+
+    @Test
+    public void testInterpolatesBetweenSnapshots() {
+        SnapshotTimeline timeline = new SnapshotTimeline(8, 2, 3);
+        double[] positions = new double[8];
+        assertThat(timeline.sample(), equalTo(false));
+
+        positions[timeline.add(100)] = 10;
+        assertThat(timeline.getPlaybackTick(), closeTo(98, 1e-9));
+        // Only one snapshot, so it's shown as is
+        assertThat(sample(timeline, positions), closeTo(10, 1e-9));
+
+        positions[timeline.add(102)] = 12;
+        positions[timeline.add(104)] = 14;
+        for (int i = 0; i < 3; i++) {
+            timeline.tick();
+        }
+        double expected = 10 + (timeline.getPlaybackTick() - 100);
+        assertThat(sample(timeline, positions), closeTo(expected, 1e-9));
+
+        // Older and repeated snapshots
+        assertThat(timeline.add(103), equalTo(-1));
+        int slot = timeline.add(104);
+        assertThat(slot, equalTo(2));
+    }
+
+    @Test
+    public void testExtrapolationIsBounded() {
+        SnapshotTimeline timeline = new SnapshotTimeline(4, 0, 3);
+        double[] positions = new double[4];
+        positions[timeline.add(0)] = 0;
+        positions[timeline.add(1)] = 1;
+        // The server stopped sending, the ship keeps moving for 3 ticks and then stops
+        for (int i = 0; i < 10; i++) {
+            timeline.tick();
+            double expected = Math.min(timeline.getPlaybackTick(), 4);
+            assertThat(sample(timeline, positions), closeTo(expected, 1e-9));
+        }
+    }
+
+    @Test
+    public void testOverwritesOldestSnapshot() {
+        SnapshotTimeline timeline = new SnapshotTimeline(4, 2, 0);
+        double[] positions = new double[4];
+        for (int tick = 0; tick < 20; tick++) {
+            positions[timeline.add(tick)] = tick;
+            timeline.tick();
+            // Playback is clamped to the snapshots that are still there
+            double expected = Math.max(Math.max(0, tick - 3), Math.min(timeline.getPlaybackTick(), tick));
+            assertThat(sample(timeline, positions), closeTo(expected, 1e-9));
+        }
+    }
+
+    @Test
+    public void testDelayFollowsUpdateInterval() {
+        SnapshotTimeline timeline = new SnapshotTimeline(32, 2, 3);
+        double[] positions = new double[32];
+        for (int tick = 0; tick < 400; tick++) {
+            // A far away ship the server only updates every 10 ticks
+            if (tick % 10 == 0) {
+                positions[timeline.add(tick)] = tick;
+            }
+            timeline.tick();
+            if (tick > 100) {
+                // Always between two snapshots, never extrapolating
+                assertThat(sample(timeline, positions), closeTo(timeline.getPlaybackTick(), 1e-9));
+                assertThat(timeline.getAlpha() <= 1, equalTo(true));
+            }
+        }
+        assertThat(timeline.getAverageIntervalTicks(), closeTo(10, 1e-9));
+    }
+
+    /**
+     * Simulates a ship moving at a constant speed, sent to the client over a connection with random latency. The
+     * shown motion should be smooth even though the updates arrive unevenly.
+     */
+    @Test
+    public void testSmoothUnderJitter() {
+        for (int sendInterval = 1; sendInterval <= 3; sendInterval++) {
+            JitterResult buffered = simulate(new Random(1234), sendInterval, 3, true);
+            JitterResult latest = simulate(new Random(1234), sendInterval, 3, false);
+            // Playback runs at close to real time, and never goes backwards
+            assertThat(buffered.minStep > 1 - SnapshotTimeline.MAX_RATE_CHANGE - 1e-9, equalTo(true));
+            assertThat(buffered.maxStep < 1 + SnapshotTimeline.MAX_RATE_CHANGE + 1e-9, equalTo(true));
+            // Motion is linear, so what's shown is exactly where the ship was at the playback time
+            assertThat(buffered.maxPositionError, lessThan(1e-9));
+            // The speed of the ship changes no more than playback speed does
+            assertThat(buffered.maxSpeedError, lessThan(SPEED * SnapshotTimeline.MAX_RATE_CHANGE + 1e-9));
+            assertThat(buffered.meanSpeedError * 4, lessThan(latest.meanSpeedError));
+        }
+    }
+
+    private static JitterResult simulate(Random random, int sendInterval, int maxJitterTicks, boolean buffered) {
+        // The time between snapshots is added to the delay by the timeline itself
+        final SnapshotTimeline timeline = new SnapshotTimeline(32, 1 + maxJitterTicks, 3);
+        final double[] positions = new double[timeline.getCapacity()];
+        // Server tick and arrival tick of the packets on their way
+        final Queue<long[]> inFlight = new ArrayDeque<>();
+        final JitterResult result = new JitterResult();
+        long lastArrival = 0;
+        double latestPosition = 0;
+        double previousShown = Double.NaN;
+        double previousPlayback = Double.NaN;
+        double speedErrorSum = 0;
+        int measuredTicks = 0;
+
+        for (long tick = 0; tick < 2000; tick++) {
+            if (tick % sendInterval == 0) {
+                // TCP, so packets arrive in order even when the latency changes
+                long arrival = Math.max(lastArrival, tick + 2 + random.nextInt(maxJitterTicks + 1));
+                lastArrival = arrival;
+                inFlight.add(new long[] {tick, arrival});
+            }
+            while (!inFlight.isEmpty() && inFlight.peek()[1] <= tick) {
+                long serverTick = inFlight.poll()[0];
+                int slot = timeline.add(serverTick);
+                positions[slot] = serverTick * SPEED;
+                latestPosition = serverTick * SPEED;
+            }
+            timeline.tick();
+            if (timeline.isEmpty()) {
+                continue;
+            }
+            final double shown = buffered ? sample(timeline, positions) : latestPosition;
+
+            // Give the clock some time to settle first
+            if (tick > 100) {
+                double step = timeline.getPlaybackTick() - previousPlayback;
+                result.minStep = Math.min(result.minStep, step);
+                result.maxStep = Math.max(result.maxStep, step);
+                result.maxPositionError = Math.max(result.maxPositionError,
+                    Math.abs(shown - timeline.getPlaybackTick() * SPEED));
+                double speedError = Math.abs((shown - previousShown) - SPEED);
+                result.maxSpeedError = Math.max(result.maxSpeedError, speedError);
+                speedErrorSum += speedError;
+                measuredTicks++;
+            }
+            previousShown = shown;
+            previousPlayback = timeline.getPlaybackTick();
+        }
+        assertThat(timeline.getAverageIntervalTicks(), closeTo(sendInterval, 1e-9));
+        result.meanSpeedError = speedErrorSum / measuredTicks;
+        return result;
+    }
+
+    private static double sample(SnapshotTimeline timeline, double[] positions) {
+        assertThat(timeline.sample(), equalTo(true));
+        double from = positions[timeline.getFromSlot()];
+        double to = positions[timeline.getToSlot()];
+        return from + (to - from) * timeline.getAlpha();
+    }
+
+    private static class JitterResult {
+
+        double minStep = Double.MAX_VALUE;
+        double maxStep = -Double.MAX_VALUE;
+        double maxPositionError = 0;
+        double maxSpeedError = 0;
+        double meanSpeedError = 0;
+    }
+}
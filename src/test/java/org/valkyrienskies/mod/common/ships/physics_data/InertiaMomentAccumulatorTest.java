@@ -0,0 +1,205 @@
+package org.valkyrienskies.mod.common.ships.physics_data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.joml.Matrix3d;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
+
+/**
+ * Checks {@link InertiaMomentAccumulator} against the point by point parallel axis updates that
+ * {@link BasicCenterOfMassProvider} used to do.
+ * <p>
+ * The point by point updates lose precision at shipyard coordinates, the center of mass of a 15000 block ship ends up
+ * about 5E-6 blocks off. So they're run on the ship moved to the origin, and their center of mass moved back after.
+ */
+public class InertiaMomentAccumulatorTest {
+
+    private static final double INERTIA_OFFSET = .4D;
+    private static final double TOLERANCE = 1e-9;
+    private static final double SHIP_X = ShipChunkAllocator.CHUNK_X_START * 16 + 7;
+    private static final double SHIP_Z = ShipChunkAllocator.CHUNK_Z_START * 16 + 7;
+
+    @Test
+    public void testBatchMatchesPointByPoint() {
+        Random random = new Random();
+        List<double[]> blocks = createRandomShip(random, 15000);
+
+        ShipInertiaData expected = new ShipInertiaData();
+        InertiaMomentAccumulator accumulator = InertiaMomentAccumulator.fromInertiaData(new ShipInertiaData());
+        for (double[] block : blocks) {
+            addBlockPointByPoint(expected, block[0], block[1], block[2], block[3]);
+            accumulator.addBoxMass(block[0] + .5, block[1] + .5, block[2] + .5, INERTIA_OFFSET, block[3]);
+        }
+        ShipInertiaData actual = new ShipInertiaData();
+        accumulator.writeTo(actual);
+        assertInertiaEquals(expected, actual);
+    }
+
+    /**
+     * Adding and removing blocks one at a time, like ShipDataMethods.onSetBlockState() does, must end up with the same
+     * inertia as adding all the blocks left at once.
+     */
+    @Test
+    public void testIncrementalMatchesBatch() {
+        Random random = new Random();
+        List<double[]> blocks = createRandomShip(random, 2000);
+
+        ShipInertiaData actual = new ShipInertiaData();
+        List<double[]> placed = new ArrayList<>();
+        double maxInertia = 0;
+        for (int i = 0; i < 2000; i++) {
+            double[] block;
+            double mass;
+            if (!placed.isEmpty() && random.nextInt(3) == 0) {
+                // Remove a block
+                block = placed.remove(random.nextInt(placed.size()));
+                mass = -block[3];
+            } else {
+                block = blocks.get(random.nextInt(blocks.size()));
+                placed.add(block);
+                mass = block[3];
+            }
+            InertiaMomentAccumulator accumulator = InertiaMomentAccumulator.fromInertiaData(actual);
+            accumulator.addBoxMass(block[0] + .5, block[1] + .5, block[2] + .5, INERTIA_OFFSET, mass);
+            accumulator.writeTo(actual);
+
+            InertiaMomentAccumulator batch = InertiaMomentAccumulator.fromInertiaData(new ShipInertiaData());
+            for (double[] placedBlock : placed) {
+                batch.addBoxMass(placedBlock[0] + .5, placedBlock[1] + .5, placedBlock[2] + .5, INERTIA_OFFSET,
+                    placedBlock[3]);
+            }
+            ShipInertiaData expected = new ShipInertiaData();
+            batch.writeTo(expected);
+
+            assertEquals(expected.getGameTickMass(), actual.getGameTickMass(), 1e-6);
+            if (placed.isEmpty()) {
+                continue;
+            }
+            // The center of mass is rounded to a double in the shipyard after every block, so it drifts by a few
+            // rounding errors of about 1E-9 blocks each.
+            assertEquals(expected.getGameTickCenterOfMass().x(), actual.getGameTickCenterOfMass().x(), 1e-6);
+            assertEquals(expected.getGameTickCenterOfMass().y(), actual.getGameTickCenterOfMass().y(), 1e-6);
+            assertEquals(expected.getGameTickCenterOfMass().z(), actual.getGameTickCenterOfMass().z(), 1e-6);
+            // Removing blocks subtracts from the sums of every block placed so far, so the error is relative to the
+            // largest the ship has been, and adds up over the edits.
+            double[] expectedTensor = expected.getGameMoITensor().get(new double[9]);
+            double[] actualTensor = actual.getGameMoITensor().get(new double[9]);
+            maxInertia = Math.max(maxInertia, Math.max(expectedTensor[0], Math.max(expectedTensor[4],
+                expectedTensor[8])));
+            for (int j = 0; j < 9; j++) {
+                assertEquals(expectedTensor[j], actualTensor[j], maxInertia * 10 * TOLERANCE, "Tensor element " + j);
+            }
+        }
+    }
+
+    /**
+     * @return Blocks as {x, y, z, mass}, in a blob in the shipyard.
+     */
+    private static List<double[]> createRandomShip(Random random, int blockCount) {
+        double[] masses = {50, 500, 1500, 2500, 8000};
+        List<double[]> blocks = new ArrayList<>();
+        for (int i = 0; i < blockCount; i++) {
+            blocks.add(new double[] {
+                SHIP_X + random.nextInt(64) - 32, 128 + random.nextInt(32) - 16, SHIP_Z + random.nextInt(64) - 32,
+                masses[random.nextInt(masses.length)]
+            });
+        }
+        return blocks;
+    }
+
+    private static void assertInertiaEquals(ShipInertiaData expected, ShipInertiaData actual) {
+        double mass = expected.getGameTickMass();
+        assertEquals(mass, actual.getGameTickMass(), mass * TOLERANCE);
+        // A double in the shipyard is only precise to about 1E-9 blocks, so allow for a few rounding errors on top
+        assertEquals(expected.getGameTickCenterOfMass().x() + SHIP_X, actual.getGameTickCenterOfMass().x(),
+            TOLERANCE + 4 * Math.ulp(SHIP_X));
+        assertEquals(expected.getGameTickCenterOfMass().y(), actual.getGameTickCenterOfMass().y(), TOLERANCE);
+        assertEquals(expected.getGameTickCenterOfMass().z() + SHIP_Z, actual.getGameTickCenterOfMass().z(),
+            TOLERANCE + 4 * Math.ulp(SHIP_Z));
+        double[] expectedTensor = new double[9];
+        double[] actualTensor = new double[9];
+        expected.getGameMoITensor().get(expectedTensor);
+        actual.getGameMoITensor().get(actualTensor);
+        double scale = Math.max(Math.abs(expectedTensor[0]), Math.max(Math.abs(expectedTensor[4]),
+            Math.abs(expectedTensor[8])));
+        for (int i = 0; i < 9; i++) {
+            assertEquals(expectedTensor[i], actualTensor[i], scale * TOLERANCE, "Tensor element " + i);
+        }
+    }
+
+    // region The point by point implementation BasicCenterOfMassProvider used to have
+
+    /**
+     * Adds a block to inertiaData with the ship moved to the origin.
+     */
+    private static void addBlockPointByPoint(ShipInertiaData inertiaData, double blockX, double blockY, double blockZ,
+        double deltaMass) {
+        double x = blockX - SHIP_X + .5;
+        double y = blockY + .5;
+        double z = blockZ - SHIP_Z + .5;
+
+        deltaMass /= 9;
+        addMassAt(inertiaData, x, y, z, deltaMass);
+        addMassAt(inertiaData, x + INERTIA_OFFSET, y + INERTIA_OFFSET, z + INERTIA_OFFSET, deltaMass);
+        addMassAt(inertiaData, x + INERTIA_OFFSET, y + INERTIA_OFFSET, z - INERTIA_OFFSET, deltaMass);
+        addMassAt(inertiaData, x + INERTIA_OFFSET, y - INERTIA_OFFSET, z + INERTIA_OFFSET, deltaMass);
+        addMassAt(inertiaData, x + INERTIA_OFFSET, y - INERTIA_OFFSET, z - INERTIA_OFFSET, deltaMass);
+        addMassAt(inertiaData, x - INERTIA_OFFSET, y + INERTIA_OFFSET, z + INERTIA_OFFSET, deltaMass);
+        addMassAt(inertiaData, x - INERTIA_OFFSET, y + INERTIA_OFFSET, z - INERTIA_OFFSET, deltaMass);
+        addMassAt(inertiaData, x - INERTIA_OFFSET, y - INERTIA_OFFSET, z + INERTIA_OFFSET, deltaMass);
+        addMassAt(inertiaData, x - INERTIA_OFFSET, y - INERTIA_OFFSET, z - INERTIA_OFFSET, deltaMass);
+    }
+
+    private static void addMassAt(ShipInertiaData inertiaData, double x, double y, double z, double addedMass) {
+        double[] gameMoITensor = new double[9];
+        Matrix3d transposed = inertiaData.getGameMoITensor().transpose(new Matrix3d());
+        transposed.get(gameMoITensor);
+
+        double gameTickMass = inertiaData.getGameTickMass();
+        Vector3d prevCenterOfMass = new Vector3d(inertiaData.getGameTickCenterOfMass());
+        if (gameTickMass > .0001D) {
+            Vector3d newCenterOfMass = inertiaData.getGameTickCenterOfMass().mul(gameTickMass, new Vector3d());
+            newCenterOfMass.add(x * addedMass, y * addedMass, z * addedMass);
+            newCenterOfMass.mul(1.0 / (gameTickMass + addedMass));
+            inertiaData.setGameTickCenterOfMass(newCenterOfMass);
+        } else {
+            inertiaData.setGameTickCenterOfMass(new Vector3d(x, y, z));
+            inertiaData.setGameMoITensor(new Matrix3d().zero());
+        }
+
+        double cmShiftX = prevCenterOfMass.x - inertiaData.getGameTickCenterOfMass().x();
+        double cmShiftY = prevCenterOfMass.y - inertiaData.getGameTickCenterOfMass().y();
+        double cmShiftZ = prevCenterOfMass.z - inertiaData.getGameTickCenterOfMass().z();
+        double rx = x - inertiaData.getGameTickCenterOfMass().x();
+        double ry = y - inertiaData.getGameTickCenterOfMass().y();
+        double rz = z - inertiaData.getGameTickCenterOfMass().z();
+
+        gameMoITensor[0] = gameMoITensor[0] + (cmShiftY * cmShiftY + cmShiftZ * cmShiftZ) * gameTickMass
+            + (ry * ry + rz * rz) * addedMass;
+        gameMoITensor[1] = gameMoITensor[1] - cmShiftX * cmShiftY * gameTickMass - rx * ry * addedMass;
+        gameMoITensor[2] = gameMoITensor[2] - cmShiftX * cmShiftZ * gameTickMass - rx * rz * addedMass;
+        gameMoITensor[3] = gameMoITensor[1];
+        gameMoITensor[4] = gameMoITensor[4] + (cmShiftX * cmShiftX + cmShiftZ * cmShiftZ) * gameTickMass
+            + (rx * rx + rz * rz) * addedMass;
+        gameMoITensor[5] = gameMoITensor[5] - cmShiftY * cmShiftZ * gameTickMass - ry * rz * addedMass;
+        gameMoITensor[6] = gameMoITensor[2];
+        gameMoITensor[7] = gameMoITensor[5];
+        gameMoITensor[8] = gameMoITensor[8] + (cmShiftX * cmShiftX + cmShiftY * cmShiftY) * gameTickMass
+            + (rx * rx + ry * ry) * addedMass;
+
+        inertiaData.setGameMoITensor(new Matrix3d().set(gameMoITensor).transpose());
+
+        if (inertiaData.getGameTickMass() + addedMass < .0001) {
+            inertiaData.setGameTickMass(0);
+        } else {
+            inertiaData.setGameTickMass(inertiaData.getGameTickMass() + addedMass);
+        }
+    }
+
+    // endregion
+}
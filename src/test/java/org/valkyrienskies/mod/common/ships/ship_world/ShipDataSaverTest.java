@@ -0,0 +1,123 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.valkyrienskies.mod.common.ships.QueryableShipData;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
+import org.valkyrienskies.mod.common.ships.chunk_claims.VSChunkClaim;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.jackson.VSJacksonUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ShipDataSaverTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testOnlyChangedShipsAreSaved() throws IOException {
+        ObjectMapper mapper = VSJacksonUtil.getDefaultMapper();
+        Random random = new Random();
+        QueryableShipData ships = new QueryableShipData();
+        for (int i = 0; i < 10; i++) {
+            ships.addShip(createShip(ships, i + 1, random));
+        }
+        ShipDataSaver saver = new ShipDataSaver(ships, new ShipRecordFile(directory), mapper);
+        saver.markAllDirty();
+        saver.save();
+        saver.waitForSaves();
+        assertSameShips(ShipDataSaver.load(new ShipRecordFile(directory), mapper), ships);
+
+        // Nothing changed, so nothing gets written
+        long length = new File(directory, "ships.dat").length();
+        saver.save();
+        saver.waitForSaves();
+        assertThat(new File(directory, "ships.dat").length(), equalTo(length));
+
+        ShipData changed = ships.getShips().get(0);
+        changed.setPhysicsEnabled(!changed.isPhysicsEnabled());
+        ShipData removed = ships.getShips().get(1);
+        ships.removeShip(removed);
+        ShipData added = createShip(ships, 11, random);
+        ships.addShip(added);
+        saver.save();
+        saver.waitForSaves();
+        assertSameShips(ShipDataSaver.load(new ShipRecordFile(directory), mapper), ships);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testCopiesDontChange() throws IOException {
+        ObjectMapper mapper = VSJacksonUtil.getDefaultMapper();
+        QueryableShipData ships = new QueryableShipData();
+        ShipData ship = createShip(ships, 1, new Random());
+        ships.addShip(ship);
+        // Outside of the chunk createShip() puts blocks in
+        BlockPos pos = ship.getChunkClaim().getCenterPos().getBlock(20, 64, 8);
+
+        ShipData copy = ship.copyForSaving();
+        byte[] copyBytes = mapper.writeValueAsBytes(copy);
+        assertThat(copyBytes, equalTo(mapper.writeValueAsBytes(ship)));
+        AxisAlignedBB copyAABB = copy.blockPositions.makeAABB();
+
+        ship.blockPositions.add(pos);
+        ship.activeForcePositions.add(pos);
+        ships.addChunkClaim(ship, pos.getX() >> 4, pos.getZ() >> 4);
+        ship.setPhysicsEnabled(!ship.isPhysicsEnabled());
+        assertThat(mapper.writeValueAsBytes(copy), equalTo(copyBytes));
+        assertThat(copy.blockPositions.makeAABB(), equalTo(copyAABB));
+        assertThat(copy.blockPositions.contains(pos), equalTo(false));
+    }
+
+    private static void assertSameShips(QueryableShipData actual, QueryableShipData expected) throws IOException {
+        ObjectMapper mapper = VSJacksonUtil.getDefaultMapper();
+        Map<UUID, byte[]> actualBytes = new HashMap<>();
+        Map<UUID, byte[]> expectedBytes = new HashMap<>();
+        for (ShipData ship : actual) {
+            actualBytes.put(ship.getUuid(), mapper.writeValueAsBytes(ship));
+        }
+        for (ShipData ship : expected) {
+            expectedBytes.put(ship.getUuid(), mapper.writeValueAsBytes(ship));
+        }
+        assertThat(actualBytes.keySet(), equalTo(expectedBytes.keySet()));
+        for (UUID uuid : expectedBytes.keySet()) {
+            assertThat(actualBytes.get(uuid), equalTo(expectedBytes.get(uuid)));
+        }
+    }
+
+    /**
+     * Creates a ship with a few blocks, in the regionIndex'th region of the shipyard.
+     */
+    @SuppressWarnings("deprecation")
+    private static ShipData createShip(QueryableShipData queryableShipData, int regionIndex, Random random) {
+        ChunkPos centerPos = new ChunkPos(ShipChunkAllocator.CHUNK_X_START,
+            ShipChunkAllocator.CHUNK_Z_START + regionIndex * ShipChunkAllocator.MAX_CHUNK_LENGTH);
+        VSChunkClaim chunkClaim = new VSChunkClaim(centerPos);
+        chunkClaim.addChunkClaim(centerPos.x, centerPos.z);
+        ShipTransform transform = new ShipTransform(new Vector3d(), new Quaterniond(),
+            new Vector3d(centerPos.getXStart(), 128, centerPos.getZStart()));
+        ShipData ship = ShipData.createData(queryableShipData.getAllShips(), "TestShip" + regionIndex, chunkClaim,
+            UUID.randomUUID(), transform, new AxisAlignedBB(0, 0, 0, 1, 1, 1));
+        for (int i = 0; i < 100; i++) {
+            ship.blockPositions.add(centerPos.getBlock(random.nextInt(16), random.nextInt(256), random.nextInt(16)));
+        }
+        return ship;
+    }
+}
@@ -0,0 +1,67 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.valkyrienskies.mod.common.util.BenchmarkUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * How long saving takes when a few ships out of many changed, compared to writing every ship.
+ */
+@Tag("benchmark")
+public class ShipRecordFileBenchmark {
+
+    private static final int RUNS = 5;
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void benchmarkIncrementalSave() throws Exception {
+        Random random = new Random(0);
+        Map<UUID, byte[]> ships = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            ships.put(UUID.randomUUID(), ShipRecordFileTest.randomBytes(random, 50_000));
+        }
+        ShipRecordFile file = new ShipRecordFile(directory);
+        file.write(ships, Collections.emptyList());
+
+        // Every run saves different changes, and writes every ship to a new directory
+        List<UUID> uuids = new ArrayList<>(ships.keySet());
+        List<Map<UUID, byte[]>> changes = new ArrayList<>();
+        List<File> fullDirectories = new ArrayList<>();
+        for (int run = 0; run < RUNS; run++) {
+            Map<UUID, byte[]> changed = new HashMap<>();
+            for (int i = 0; i < 10; i++) {
+                UUID uuid = uuids.get(random.nextInt(uuids.size()));
+                changed.put(uuid, ShipRecordFileTest.randomBytes(random, 50_000));
+            }
+            changes.add(changed);
+            File fullDirectory = new File(directory, "full" + run);
+            assertThat(fullDirectory.mkdir(), equalTo(true));
+            fullDirectories.add(fullDirectory);
+        }
+
+        Iterator<Map<UUID, byte[]>> nextChanges = changes.iterator();
+        long incrementalTime = BenchmarkUtil.bestOf(RUNS,
+            () -> file.write(nextChanges.next(), Collections.emptyList()));
+        Iterator<File> nextDirectory = fullDirectories.iterator();
+        long fullTime = BenchmarkUtil.bestOf(RUNS,
+            () -> new ShipRecordFile(nextDirectory.next()).write(ships, Collections.emptyList()));
+        System.out.printf("Saving 10 of %d ships took %.1f ms, saving all of them took %.1f ms%n", ships.size(),
+            incrementalTime / 1e6, fullTime / 1e6);
+    }
+}
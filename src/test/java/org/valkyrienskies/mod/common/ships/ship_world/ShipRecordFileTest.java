@@ -0,0 +1,205 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ShipRecordFileTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void testWriteAndReopen() throws IOException {
+        Random random = new Random();
+        Map<UUID, byte[]> expected = new HashMap<>();
+        ShipRecordFile file = new ShipRecordFile(directory);
+        for (int save = 0; save < 20; save++) {
+            Map<UUID, byte[]> changed = new HashMap<>();
+            List<UUID> removed = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                changed.put(UUID.randomUUID(), randomBytes(random, 1000));
+            }
+            List<UUID> existing = new ArrayList<>(expected.keySet());
+            Collections.shuffle(existing, random);
+            for (int i = 0; i < Math.min(5, existing.size()); i++) {
+                changed.put(existing.get(i), randomBytes(random, 1000));
+            }
+            for (int i = 5; i < Math.min(8, existing.size()); i++) {
+                removed.add(existing.get(i));
+            }
+            // Removing a ship that was never saved does nothing
+            removed.add(UUID.randomUUID());
+
+            file.write(changed, removed);
+            expected.putAll(changed);
+            expected.keySet().removeAll(removed);
+            assertSameShips(file.readAll(), expected);
+            assertSameShips(new ShipRecordFile(directory).readAll(), expected);
+        }
+    }
+
+    @Test
+    public void testRecoversWithoutIndex() throws IOException {
+        Random random = new Random();
+        ShipRecordFile file = new ShipRecordFile(directory);
+        Map<UUID, byte[]> expected = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            expected.put(UUID.randomUUID(), randomBytes(random, 500));
+        }
+        file.write(expected, Collections.emptyList());
+        UUID removed = expected.keySet().iterator().next();
+        file.write(Collections.emptyMap(), Collections.singleton(removed));
+        expected.remove(removed);
+
+        assertThat(new File(directory, "ships.idx").delete(), equalTo(true));
+        assertSameShips(new ShipRecordFile(directory).readAll(), expected);
+
+        // A broken index is ignored too
+        file.write(Collections.emptyMap(), Collections.emptyList());
+        try (RandomAccessFile index = new RandomAccessFile(new File(directory, "ships.idx"), "rw")) {
+            index.seek(40);
+            index.write(0xFF);
+        }
+        assertSameShips(new ShipRecordFile(directory).readAll(), expected);
+    }
+
+    @Test
+    public void testIgnoresIncompleteRecords() throws IOException {
+        Random random = new Random();
+        ShipRecordFile file = new ShipRecordFile(directory);
+        Map<UUID, byte[]> expected = new HashMap<>();
+        expected.put(UUID.randomUUID(), randomBytes(random, 2000));
+        file.write(expected, Collections.emptyList());
+        File dataFile = new File(directory, "ships.dat");
+        long goodLength = dataFile.length();
+
+        // Like a crash in the middle of appending a record
+        UUID lost = UUID.randomUUID();
+        file.write(Collections.singletonMap(lost, randomBytes(random, 2000)), Collections.emptyList());
+        try (RandomAccessFile data = new RandomAccessFile(dataFile, "rw")) {
+            data.setLength(data.length() - 10);
+        }
+        assertThat(new File(directory, "ships.idx").delete(), equalTo(true));
+
+        ShipRecordFile reopened = new ShipRecordFile(directory);
+        assertSameShips(reopened.readAll(), expected);
+        assertThat(dataFile.length(), equalTo(goodLength));
+
+        // New records go where the incomplete one was
+        reopened.write(Collections.singletonMap(lost, new byte[] {1, 2, 3}), Collections.emptyList());
+        expected.put(lost, new byte[] {1, 2, 3});
+        assertSameShips(new ShipRecordFile(directory).readAll(), expected);
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        Random random = new Random();
+        ShipRecordFile file = new ShipRecordFile(directory);
+        Map<UUID, byte[]> ships = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            ships.put(UUID.randomUUID(), randomBytes(random, 10_000));
+        }
+        file.write(ships, Collections.emptyList());
+        long initialLength = file.getFileLength();
+
+        // Rewriting the same ships over and over shouldn't make the file grow forever
+        for (int save = 0; save < 100; save++) {
+            for (UUID uuid : ships.keySet()) {
+                ships.put(uuid, randomBytes(random, 10_000));
+            }
+            file.write(ships, Collections.emptyList());
+            assertThat(file.getFileLength(), lessThan(Math.max(initialLength * 3, 3L << 20)));
+        }
+        assertSameShips(file.readAll(), ships);
+        assertSameShips(new ShipRecordFile(directory).readAll(), ships);
+    }
+
+    @Test
+    public void testFailedWriteChangesNothing() throws IOException {
+        Random random = new Random();
+        FailingShipRecordFile file = new FailingShipRecordFile(directory);
+        Map<UUID, byte[]> expected = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            expected.put(UUID.randomUUID(), randomBytes(random, 1000));
+        }
+
+        // Even the write that creates the file
+        file.failNextWrite = true;
+        assertThrows(IOException.class, () -> file.write(expected, Collections.emptyList()));
+        assertThat(file.size(), equalTo(0));
+        assertThat(file.getFileLength(), equalTo(0L));
+        assertThat(new File(directory, "ships.dat").exists(), equalTo(false));
+        file.write(expected, Collections.emptyList());
+        long length = file.getFileLength();
+
+        List<UUID> existing = new ArrayList<>(expected.keySet());
+        Map<UUID, byte[]> changed = new HashMap<>();
+        changed.put(existing.get(0), randomBytes(random, 1000));
+        changed.put(UUID.randomUUID(), randomBytes(random, 1000));
+        List<UUID> removed = Collections.singletonList(existing.get(1));
+        file.failNextWrite = true;
+        assertThrows(IOException.class, () -> file.write(changed, removed));
+        assertThat(file.getFileLength(), equalTo(length));
+        assertSameShips(file.readAll(), expected);
+        assertSameShips(new ShipRecordFile(directory).readAll(), expected);
+
+        // Trying again writes over what the failed write left behind
+        file.write(changed, removed);
+        expected.putAll(changed);
+        expected.keySet().removeAll(removed);
+        assertSameShips(file.readAll(), expected);
+        assertSameShips(new ShipRecordFile(directory).readAll(), expected);
+    }
+
+    /**
+     * Fails the next write after writing half of it, like a full disk.
+     */
+    private static class FailingShipRecordFile extends ShipRecordFile {
+
+        boolean failNextWrite = false;
+
+        FailingShipRecordFile(File directory) throws IOException {
+            super(directory);
+        }
+
+        @Override
+        void writeToDataFile(long position, byte[] bytes) throws IOException {
+            if (failNextWrite) {
+                failNextWrite = false;
+                super.writeToDataFile(position, Arrays.copyOf(bytes, bytes.length / 2));
+                throw new IOException("No space left on device");
+            }
+            super.writeToDataFile(position, bytes);
+        }
+    }
+
+    static byte[] randomBytes(Random random, int maxLength) {
+        byte[] bytes = new byte[random.nextInt(maxLength)];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void assertSameShips(Map<UUID, byte[]> actual, Map<UUID, byte[]> expected) {
+        assertThat(actual.keySet(), equalTo(expected.keySet()));
+        for (Map.Entry<UUID, byte[]> entry : expected.entrySet()) {
+            assertThat(actual.get(entry.getKey()), equalTo(entry.getValue()));
+        }
+    }
+}
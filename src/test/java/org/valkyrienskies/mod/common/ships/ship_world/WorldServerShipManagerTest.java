@@ -0,0 +1,108 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.ChunkPos;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.QueryableShipData;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
+import org.valkyrienskies.mod.common.ships.chunk_claims.VSChunkClaim;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+
+/**
+ * Tests the part of {@link WorldServerShipManager#claimChunkOnDemand(net.minecraft.world.chunk.Chunk)} that decides
+ * which ship a chunk a block was placed in gets claimed by.
+ */
+public class WorldServerShipManagerTest {
+
+    @Test
+    public void testClaimsChunkInShipRegion() {
+        QueryableShipData queryableShipData = new QueryableShipData();
+        ShipData ship = createShip(queryableShipData, 1);
+        queryableShipData.addShip(ship);
+        ChunkPos center = ship.getChunkClaim().getCenterPos();
+        int chunkX = center.x + 3;
+        int chunkZ = center.z - ShipChunkAllocator.MAX_CHUNK_RADIUS;
+        assertThat(queryableShipData.getShipFromChunk(chunkX, chunkZ), equalTo(Optional.empty()));
+
+        Optional<ShipData> claimedBy = WorldServerShipManager.claimChunkForRegionOwner(queryableShipData, chunkX,
+            chunkZ, shipData -> { });
+
+        assertThat(claimedBy, equalTo(Optional.of(ship)));
+        assertThat(ship.getChunkClaim().containsChunk(chunkX, chunkZ), is(true));
+        assertThat(queryableShipData.getShipFromChunk(chunkX, chunkZ), equalTo(Optional.of(ship)));
+    }
+
+    @Test
+    public void testOutsideShipRegionClaimsNothing() {
+        QueryableShipData queryableShipData = new QueryableShipData();
+        ShipData ship = createShip(queryableShipData, 1);
+        queryableShipData.addShip(ship);
+        ChunkPos center = ship.getChunkClaim().getCenterPos();
+        int claimedCount = ship.getChunkClaim().getClaimedChunks().size();
+        List<ShipData> beforeClaims = new ArrayList<>();
+
+        // Outside of the shipyard
+        assertThat(WorldServerShipManager.claimChunkForRegionOwner(queryableShipData, 0, 0, beforeClaims::add),
+            equalTo(Optional.empty()));
+        // In the shipyard, but past the edge of the region of the ship
+        assertThat(WorldServerShipManager.claimChunkForRegionOwner(queryableShipData,
+            center.x + ShipChunkAllocator.MAX_CHUNK_RADIUS + 1, center.z, beforeClaims::add),
+            equalTo(Optional.empty()));
+        // In the region next to the one of the ship, which nobody owns
+        assertThat(WorldServerShipManager.claimChunkForRegionOwner(queryableShipData, center.x,
+            center.z + ShipChunkAllocator.MAX_CHUNK_LENGTH, beforeClaims::add), equalTo(Optional.empty()));
+
+        assertThat(beforeClaims, is(empty()));
+        assertThat(ship.getChunkClaim().getClaimedChunks().size(), equalTo(claimedCount));
+    }
+
+    @Test
+    public void testChunkIsCachedBeforeItIsClaimed() {
+        QueryableShipData queryableShipData = new QueryableShipData();
+        ShipData ship = createShip(queryableShipData, 1);
+        queryableShipData.addShip(ship);
+        ChunkPos center = ship.getChunkClaim().getCenterPos();
+        int chunkX = center.x - 2;
+        int chunkZ = center.z + 5;
+        // Stands in for the ClaimedChunkCacheController of the ship
+        List<ShipData> cachedFor = new ArrayList<>();
+
+        WorldServerShipManager.claimChunkForRegionOwner(queryableShipData, chunkX, chunkZ, shipData -> {
+            // Nothing else may see the chunk in the claim until it's in the cache
+            assertThat(shipData.getChunkClaim().containsChunk(chunkX, chunkZ), is(false));
+            assertThat(queryableShipData.getShipFromChunk(chunkX, chunkZ), equalTo(Optional.empty()));
+            cachedFor.add(shipData);
+        });
+
+        assertThat(cachedFor, contains(ship));
+        assertThat(queryableShipData.getShipFromChunk(chunkX, chunkZ), equalTo(Optional.of(ship)));
+    }
+
+    /**
+     * Creates a ship that only claims the center of the regionIndex'th region of the shipyard.
+     */
+    @SuppressWarnings("deprecation")
+    private static ShipData createShip(QueryableShipData queryableShipData, int regionIndex) {
+        ChunkPos centerPos = new ChunkPos(ShipChunkAllocator.CHUNK_X_START,
+            ShipChunkAllocator.CHUNK_Z_START + regionIndex * ShipChunkAllocator.MAX_CHUNK_LENGTH);
+        VSChunkClaim chunkClaim = new VSChunkClaim(centerPos);
+        chunkClaim.addChunkClaim(centerPos.x, centerPos.z);
+        ShipTransform transform = new ShipTransform(new Vector3d(), new Quaterniond(),
+            new Vector3d(centerPos.getXStart(), 128, centerPos.getZStart()));
+        return ShipData.createData(queryableShipData.getAllShips(), "TestShip" + regionIndex, chunkClaim,
+            UUID.randomUUID(), transform, new AxisAlignedBB(0, 0, 0, 1, 1, 1));
+    }
+}
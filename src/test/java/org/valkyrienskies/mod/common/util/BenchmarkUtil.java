@@ -0,0 +1,32 @@
+package org.valkyrienskies.mod.common.util;
+
+/**
+ * Shared by the benchmarks, the test classes tagged with {@code @Tag("benchmark")}. They aren't real benchmarks, they
+ * only print how long something takes to give an idea of how fast it is, so the test task of the build leaves them
+ * out and the benchmark task runs them instead.
+ */
+public class BenchmarkUtil {
+
+    /**
+     * Runs task runs times, and returns the time the fastest run took in nanoseconds. Taking the best of several runs
+     * gives the JIT a chance to warm up.
+     */
+    public static long bestOf(int runs, BenchmarkTask task) throws Exception {
+        long bestTime = Long.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            task.run();
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+        }
+        return bestTime;
+    }
+
+    /**
+     * Like a {@link Runnable}, but allowed to throw, so benchmarks of code that does IO don't have to catch.
+     */
+    @FunctionalInterface
+    public interface BenchmarkTask {
+
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,41 @@
+package org.valkyrienskies.mod.common.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import gnu.trove.set.hash.TLongHashSet;
+import org.junit.jupiter.api.Test;
+
+public class SectionKeysTest {
+
+    // The furthest chunk from the origin in a 30 million block world
+    private static final int MAX_CHUNK = 30_000_000 >> 4;
+
+    @Test
+    public void testKeysRoundTrip() {
+        int[] coordinates = {-MAX_CHUNK, -1, 0, 1, MAX_CHUNK};
+        for (int x : coordinates) {
+            for (int z : coordinates) {
+                for (int y = 0; y < 16; y++) {
+                    long key = SectionKeys.getSectionKey(x, y, z);
+                    assertThat(SectionKeys.getSectionX(key), equalTo(x));
+                    assertThat(SectionKeys.getSectionY(key), equalTo(y));
+                    assertThat(SectionKeys.getSectionZ(key), equalTo(z));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNeighboursHaveDifferentKeys() {
+        TLongHashSet keys = new TLongHashSet();
+        for (int x = -2; x <= 2; x++) {
+            for (int y = 0; y < 16; y++) {
+                for (int z = -2; z <= 2; z++) {
+                    keys.add(SectionKeys.getSectionKey(x, y, z));
+                }
+            }
+        }
+        assertThat(keys.size(), equalTo(5 * 16 * 5));
+    }
+}
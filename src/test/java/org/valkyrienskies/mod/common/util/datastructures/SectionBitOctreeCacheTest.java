@@ -0,0 +1,138 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+public class SectionBitOctreeCacheTest {
+
+    @Test
+    public void testMatchesFreshOctree() {
+        Random random = new Random(0);
+        boolean[] blocks = new boolean[IBitOctree.BLOCKS_TOTAL];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = random.nextBoolean();
+        }
+        SectionBitOctreeCache cache = new SectionBitOctreeCache(index -> blocks[index]);
+        IBitOctree previous = cache.get();
+        assertOctreeMatches(previous, blocks);
+
+        for (int round = 0; round < 100; round++) {
+            boolean[] previousBits = getAllBits(previous);
+            // Sometimes few enough writes to apply one by one, sometimes too many
+            int writes = random.nextInt(2 * SectionBitOctreeCache.MAX_PENDING_WRITES);
+            for (int i = 0; i < writes; i++) {
+                int index = random.nextInt(blocks.length);
+                blocks[index] = random.nextBoolean();
+                assertThat(cache.onBlockSet(index), equalTo(true));
+            }
+            IBitOctree current = cache.get();
+            assertOctreeMatches(current, blocks);
+            // Octrees that were handed out never change
+            assertThat(getAllBits(previous), equalTo(previousBits));
+            previous = current;
+        }
+    }
+
+    /**
+     * One thread writes blocks while others read the octree. The first 16 blocks are the only ones that ever change,
+     * so an octree that is empty or only partly filled shows up as missing solid blocks.
+     */
+    @Test
+    public void testConcurrentReadersSeeCompleteOctrees() throws InterruptedException {
+        final int changingBlocks = 16;
+        final boolean[] blocks = new boolean[IBitOctree.BLOCKS_TOTAL];
+        Arrays.fill(blocks, true);
+        final SectionBitOctreeCache cache = new SectionBitOctreeCache(index -> blocks[index]);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final long endTime = System.nanoTime() + 500_000_000L;
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < endTime) {
+                        IBitOctree octree = cache.get();
+                        boolean[] leaves = new boolean[IBitOctree.BLOCKS_TOTAL];
+                        int solid = 0;
+                        for (int index = 0; index < leaves.length; index++) {
+                            leaves[index] = getBlock(octree, index);
+                            solid += leaves[index] ? 1 : 0;
+                        }
+                        assertThat(solid, greaterThanOrEqualTo(IBitOctree.BLOCKS_TOTAL - changingBlocks));
+                        assertOctreeMatches(octree, leaves);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        Random random = new Random(1);
+        while (System.nanoTime() < endTime) {
+            int index = random.nextInt(changingBlocks);
+            blocks[index] = !blocks[index];
+            cache.onBlockSet(index);
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertOctreeMatches(cache.get(), blocks);
+    }
+
+    @Test
+    public void testIdleOctreeIsDropped() {
+        long[] time = {0};
+        SectionBitOctreeCache cache = new SectionBitOctreeCache(index -> false, () -> time[0]);
+        cache.get();
+        time[0] += SectionBitOctreeCache.IDLE_NANOS;
+        assertThat(cache.onBlockSet(0), equalTo(true));
+
+        // Reading the octree keeps it around
+        cache.get();
+        time[0] += SectionBitOctreeCache.IDLE_NANOS;
+        assertThat(cache.onBlockSet(0), equalTo(true));
+
+        time[0] += 1;
+        assertThat(cache.onBlockSet(0), equalTo(false));
+    }
+
+    /**
+     * Checks the leaves against blocks, and every level above them against an octree built from blocks.
+     */
+    private static void assertOctreeMatches(IBitOctree octree, boolean[] blocks) {
+        SimpleBitOctree expected = new SimpleBitOctree();
+        for (int index = 0; index < IBitOctree.BLOCKS_TOTAL; index++) {
+            expected.set(index & 0xF, (index & 0xF00) >> 8, (index & 0xF0) >> 4, blocks[index]);
+        }
+        assertThat(getAllBits(octree), equalTo(getAllBits(expected)));
+    }
+
+    /**
+     * @param index An index in the order of BlockStateContainer, which isn't the order of the octree
+     */
+    private static boolean getBlock(IBitOctree octree, int index) {
+        return octree.get(index & 0xF, (index & 0xF00) >> 8, (index & 0xF0) >> 4);
+    }
+
+    private static boolean[] getAllBits(IBitOctree octree) {
+        boolean[] bits = new boolean[IBitOctree.BITS_TOTAL];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = octree.getAtIndex(i);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,49 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.util.BenchmarkUtil;
+import org.valkyrienskies.mod.common.util.jackson.VSJacksonUtil;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * How long saving and loading the block positions of a ship takes, compared to the old format of a CBOR array of every
+ * position.
+ */
+@Tag("benchmark")
+public class SmallBlockPosSetCodecBenchmark {
+
+    @Test
+    public void benchmarkSaveAndLoad() throws Exception {
+        ObjectMapper mapper = VSJacksonUtil.getDefaultMapper();
+        Random random = new Random(0);
+        for (int positions : new int[] {100_000, 1_000_000}) {
+            // Roughly the shape of a big ship, a hull that's mostly solid
+            int size = (int) Math.cbrt(positions / .7);
+            SmallBlockPosSet set = SmallBlockPosSetCodecTest.createRandomSet(random, positions, size);
+            Map<String, Object> oldFormat = SmallBlockPosSetCodecTest.toOldFormat(set);
+            byte[] oldBytes = mapper.writeValueAsBytes(oldFormat);
+            byte[] newBytes = mapper.writeValueAsBytes(set);
+
+            long oldSaveTime = BenchmarkUtil.bestOf(5, () -> mapper.writeValueAsBytes(oldFormat));
+            long oldLoadTime = BenchmarkUtil.bestOf(5, () -> {
+                SmallBlockPosSet oldLoaded = mapper.readValue(oldBytes, SmallBlockPosSet.class);
+                // The old format filled the index while loading
+                oldLoaded.contains(0, 0, 0);
+            });
+            long newSaveTime = BenchmarkUtil.bestOf(5, () -> mapper.writeValueAsBytes(set));
+            long newLoadTime = BenchmarkUtil.bestOf(5, () -> mapper.readValue(newBytes, SmallBlockPosSet.class));
+
+            assertThat(mapper.readValue(newBytes, SmallBlockPosSet.class).size(), equalTo(set.size()));
+            System.out.printf("%d positions: old format %d KB, save %.1f ms, load %.1f ms; "
+                    + "new format %d KB, save %.1f ms, load %.1f ms%n", set.size(), oldBytes.length / 1024,
+                oldSaveTime / 1e6, oldLoadTime / 1e6, newBytes.length / 1024, newSaveTime / 1e6, newLoadTime / 1e6);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gnu.trove.list.array.TIntArrayList;
+import net.minecraft.util.math.BlockPos;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.util.jackson.VSJacksonUtil;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SmallBlockPosSetCodecTest {
+
+    private static final int CENTER_X = -1_000_000, CENTER_Z = 2_000_000;
+
+    @Test
+    public void testCodecRoundTrip() throws IOException {
+        Random random = new Random();
+        for (int run = 0; run < 50; run++) {
+            // Anything from a few scattered blocks to solid chunks of ship, which end up as bitmaps
+            SmallBlockPosSet set = createRandomSet(random, 1 + random.nextInt(20_000), 4 + random.nextInt(200));
+            TIntArrayList compressed = compress(set);
+            for (boolean deflate : new boolean[] {false, true}) {
+                int[] decoded = SmallBlockPosSetCodec.decode(SmallBlockPosSetCodec.encode(compressed, deflate));
+                int[] expected = compressed.toArray();
+                Arrays.sort(expected);
+                Arrays.sort(decoded);
+                assertThat(decoded, equalTo(expected));
+            }
+        }
+    }
+
+    @Test
+    public void testCodecRoundTripEdges() throws IOException {
+        SmallBlockPosSet set = new SmallBlockPosSet(CENTER_X, CENTER_Z);
+        for (int x : new int[] {-2048, -2047, -1, 0, 1, 2046, 2047}) {
+            for (int y : new int[] {0, 1, 15, 16, 254, 255}) {
+                for (int z : new int[] {-2048, -2047, -1, 0, 1, 2046, 2047}) {
+                    set.add(CENTER_X + x, y, CENTER_Z + z);
+                }
+            }
+        }
+        TIntArrayList compressed = compress(set);
+        int[] decoded = SmallBlockPosSetCodec.decode(SmallBlockPosSetCodec.encode(compressed, true));
+        int[] expected = compressed.toArray();
+        Arrays.sort(expected);
+        Arrays.sort(decoded);
+        assertThat(decoded, equalTo(expected));
+
+        assertThat(SmallBlockPosSetCodec.decode(SmallBlockPosSetCodec.encode(new TIntArrayList(), true)).length,
+            equalTo(0));
+    }
+
+    @Test
+    public void testCodecRejectsCorruptData() {
+        Random random = new Random();
+        SmallBlockPosSet set = createRandomSet(random, 5_000, 40);
+        byte[] data = SmallBlockPosSetCodec.encode(compress(set), false);
+        assertThrows(IOException.class, () -> SmallBlockPosSetCodec.decode(Arrays.copyOf(data, data.length - 1)));
+        assertThrows(IOException.class, () -> SmallBlockPosSetCodec.decode(new byte[0]));
+        byte[] newerVersion = data.clone();
+        newerVersion[0] = (byte) (SmallBlockPosSetCodec.FORMAT_VERSION + 1);
+        assertThrows(IOException.class, () -> SmallBlockPosSetCodec.decode(newerVersion));
+    }
+
+    @Test
+    public void testJacksonRoundTrip() throws IOException {
+        ObjectMapper mapper = VSJacksonUtil.getDefaultMapper();
+        Random random = new Random();
+        SmallBlockPosSetAABB set = new SmallBlockPosSetAABB(CENTER_X, 0, CENTER_Z, 1024, 1024, 1024);
+        for (int i = 0; i < 10_000; i++) {
+            set.add(CENTER_X + random.nextInt(200) - 100, random.nextInt(60), CENTER_Z + random.nextInt(200) - 100);
+        }
+
+        SmallBlockPosSetAABB loaded = mapper.readValue(mapper.writeValueAsBytes(set), SmallBlockPosSetAABB.class);
+        assertThat(toSet(loaded), equalTo(toSet(set)));
+        assertThat(loaded.makeAABB(), equalTo(set.makeAABB()));
+
+        // The index of a loaded set is built lazily, make sure it's right
+        for (BlockPos pos : toSet(set)) {
+            assertThat(loaded.contains(pos.getX(), pos.getY(), pos.getZ()), equalTo(true));
+        }
+        BlockPos removed = set.iterator().next();
+        assertThat(loaded.remove(removed.getX(), removed.getY(), removed.getZ()), equalTo(true));
+        assertThat(loaded.add(removed.getX(), removed.getY(), removed.getZ()), equalTo(true));
+        assertThat(loaded.add(removed.getX(), removed.getY(), removed.getZ()), equalTo(false));
+        assertThat(loaded.add(CENTER_X, 200, CENTER_Z), equalTo(true));
+        assertThat(loaded.size(), equalTo(set.size() + 1));
+    }
+
+    @Test
+    public void testReadsOldFormat() throws IOException {
+        ObjectMapper mapper = VSJacksonUtil.getDefaultMapper();
+        SmallBlockPosSet set = createRandomSet(new Random(), 1_000, 30);
+        byte[] oldFormat = mapper.writeValueAsBytes(toOldFormat(set));
+
+        SmallBlockPosSet loaded = mapper.readValue(oldFormat, SmallBlockPosSet.class);
+        assertThat(toSet(loaded), equalTo(toSet(set)));
+    }
+
+    /**
+     * @param size The length of the sides of the box the positions are in, the more positions fit in it the denser
+     *             the set is
+     */
+    static SmallBlockPosSet createRandomSet(Random random, int positions, int size) {
+        SmallBlockPosSet set = new SmallBlockPosSet(CENTER_X, CENTER_Z);
+        int offsetX = random.nextInt(4096 - size) - 2048;
+        int offsetZ = random.nextInt(4096 - size) - 2048;
+        int sizeY = Math.min(size, 256);
+        positions = Math.min(positions, size * size * sizeY);
+        while (set.size() < positions) {
+            set.add(CENTER_X + offsetX + random.nextInt(size), random.nextInt(sizeY),
+                CENTER_Z + offsetZ + random.nextInt(size));
+        }
+        return set;
+    }
+
+    private static TIntArrayList compress(SmallBlockPosSet set) {
+        TIntArrayList compressed = new TIntArrayList();
+        set.forEach((x, y, z) -> compressed.add(((x - CENTER_X) & 0xFFF) | (y << 12) | ((z - CENTER_Z) << 20)));
+        return compressed;
+    }
+
+    static Map<String, Object> toOldFormat(SmallBlockPosSet set) {
+        Map<String, Object> oldFormat = new HashMap<>();
+        oldFormat.put("positions", compress(set).toArray());
+        oldFormat.put("centerX", set.getCenterX());
+        oldFormat.put("centerZ", set.getCenterZ());
+        return oldFormat;
+    }
+
+    private static Set<BlockPos> toSet(Iterable<BlockPos> positions) {
+        Set<BlockPos> set = new HashSet<>();
+        positions.forEach(set::add);
+        return set;
+    }
+}
@@ -0,0 +1,62 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.util.BenchmarkUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * How the tree compares to the linear scan it replaced in WorldServerShipManager.getPhysObjectsInAABB(). Each run does
+ * one entity sized query per entity, for 1000 entities spread over the same area as the ships.
+ */
+@Tag("benchmark")
+public class StaticAABBTreeBenchmark {
+
+    @Test
+    public void benchmarkAgainstLinearScan() throws Exception {
+        Random random = new Random(0);
+        for (int shipCount : new int[] {10, 100, 1000}) {
+            List<AxisAlignedBB> ships = StaticAABBTreeTest.createRandomBoxes(random, shipCount, 1000);
+            List<AxisAlignedBB> queries = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                queries.add(StaticAABBTreeTest.createRandomBox(random, 1000, 2));
+            }
+
+            int[] hits = new int[2];
+            List<AxisAlignedBB> results = new ArrayList<>();
+            long linearTime = BenchmarkUtil.bestOf(20, () -> {
+                hits[0] = 0;
+                for (AxisAlignedBB query : queries) {
+                    results.clear();
+                    for (AxisAlignedBB ship : ships) {
+                        if (query.intersects(ship)) {
+                            results.add(ship);
+                        }
+                    }
+                    hits[0] += results.size();
+                }
+            });
+            long treeTime = BenchmarkUtil.bestOf(20, () -> {
+                // Rebuilding the tree is part of the cost, it happens once per tick
+                StaticAABBTree<AxisAlignedBB> tree = new StaticAABBTree<>(ships, box -> box);
+                hits[1] = 0;
+                for (AxisAlignedBB query : queries) {
+                    results.clear();
+                    tree.getIntersecting(query, results);
+                    hits[1] += results.size();
+                }
+            });
+
+            assertThat(hits[1], equalTo(hits[0]));
+            System.out.printf("%d ships: linear scan %.3f ms, tree (including build) %.3f ms%n", shipCount,
+                linearTime / 1e6, treeTime / 1e6);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class StaticAABBTreeTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 4, 5, 10, 100, 1000})
+    public void testMatchesLinearScan(int objectCount) {
+        Random random = new Random();
+        List<AxisAlignedBB> boxes = createRandomBoxes(random, objectCount, 2000);
+        StaticAABBTree<AxisAlignedBB> tree = new StaticAABBTree<>(boxes, box -> box);
+        assertThat(tree.size(), equalTo(objectCount));
+
+        for (int i = 0; i < 1000; i++) {
+            AxisAlignedBB toCheck = createRandomBox(random, 2000, i % 2 == 0 ? 4 : 400);
+            List<AxisAlignedBB> expected = new ArrayList<>();
+            for (AxisAlignedBB box : boxes) {
+                if (toCheck.intersects(box)) {
+                    expected.add(box);
+                }
+            }
+            List<AxisAlignedBB> actual = new ArrayList<>();
+            tree.getIntersecting(toCheck, actual);
+            assertThat(actual.size(), equalTo(expected.size()));
+            assertThat(new HashSet<>(actual), equalTo(new HashSet<>(expected)));
+            // The cheap check may only rule out queries that really hit nothing
+            if (!tree.mayIntersect(toCheck.minX, toCheck.minY, toCheck.minZ, toCheck.maxX, toCheck.maxY,
+                toCheck.maxZ)) {
+                assertThat(expected.size(), equalTo(0));
+            }
+        }
+    }
+
+    static List<AxisAlignedBB> createRandomBoxes(Random random, int count, double worldSize) {
+        List<AxisAlignedBB> boxes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            boxes.add(createRandomBox(random, worldSize, 40));
+        }
+        return boxes;
+    }
+
+    static AxisAlignedBB createRandomBox(Random random, double worldSize, double maxBoxSize) {
+        double x = random.nextDouble() * worldSize;
+        double y = random.nextDouble() * 256;
+        double z = random.nextDouble() * worldSize;
+        return new AxisAlignedBB(x, y, z, x + random.nextDouble() * maxBoxSize, y + random.nextDouble() * maxBoxSize,
+            z + random.nextDouble() * maxBoxSize);
+    }
+}
@@ -0,0 +1,50 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class TimeHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        long previousUpperBound = -1;
+        for (int index = 0; index < 280; index++) {
+            long upperBound = TimeHistogram.getBucketUpperBound(index);
+            // The buckets must be contiguous
+            assertEquals(index, TimeHistogram.getBucketIndex(previousUpperBound + 1));
+            assertEquals(index, TimeHistogram.getBucketIndex(upperBound));
+            previousUpperBound = upperBound;
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+        Random random = new Random();
+        TimeHistogram histogram = new TimeHistogram();
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            // Spread the values over several orders of magnitude, like tick times do
+            values[i] = (long) Math.pow(10, 2 + random.nextDouble() * 6);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMaxNanos());
+        for (double percentile : new double[] {1, 50, 90, 99, 99.9, 100}) {
+            long expected = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long actual = histogram.getPercentileNanos(percentile);
+            // Percentiles are reported as the upper bound of their bucket, which is at most 12.5% above the value
+            assertTrue(actual >= expected && actual <= expected * 1.125 + 1,
+                "p" + percentile + " was " + actual + ", expected " + expected);
+        }
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+}
@@ -0,0 +1,52 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class XZSpatialGridTest {
+
+    @Test
+    public void testMatchesLinearScan() {
+        Random random = new Random();
+        XZSpatialGrid<Integer> grid = new XZSpatialGrid<>(64);
+        // Rebuild the grid a few times, like it is every tick
+        for (int rebuild = 0; rebuild < 5; rebuild++) {
+            int count = random.nextInt(200);
+            double[] xs = new double[count];
+            double[] zs = new double[count];
+            grid.clear();
+            for (int i = 0; i < count; i++) {
+                xs[i] = (random.nextDouble() - .5) * 2000;
+                zs[i] = (random.nextDouble() - .5) * 2000;
+                grid.add(i, xs[i], zs[i]);
+            }
+            assertThat(grid.size(), equalTo(count));
+
+            for (int query = 0; query < 500; query++) {
+                double x = (random.nextDouble() - .5) * 2200;
+                double z = (random.nextDouble() - .5) * 2200;
+                double distance = random.nextDouble() * 300;
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    double xDif = xs[i] - x;
+                    double zDif = zs[i] - z;
+                    if (xDif * xDif + zDif * zDif < distance * distance) {
+                        expected.add(i);
+                    }
+                }
+                List<Integer> actual = new ArrayList<>();
+                grid.getWithinDistance(x, z, distance, actual);
+                assertThat(actual.size(), equalTo(expected.size()));
+                assertThat(new HashSet<>(actual), equalTo(new HashSet<>(expected)));
+                assertThat(grid.anyWithinDistance(x, z, distance), equalTo(!expected.isEmpty()));
+            }
+        }
+    }
+}
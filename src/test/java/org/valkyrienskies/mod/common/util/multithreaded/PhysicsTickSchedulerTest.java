@@ -0,0 +1,77 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.junit.jupiter.api.Test;
+
+public class PhysicsTickSchedulerTest {
+
+    private static final long TICK_NANOS = 10_000_000;
+
+    @Test
+    public void testTicksDontDrift() {
+        PhysicsTickScheduler scheduler = new PhysicsTickScheduler();
+        long now = 1_000;
+        int ticks = 0;
+        for (int i = 0; i < 1000; i++) {
+            ticks += scheduler.pollDueTicks(now, TICK_NANOS, 5);
+            // Wake up a little late every time, like a parked thread does
+            now = scheduler.getNextTickTime() + 50_000;
+        }
+        // Being late never pushes back the following deadlines
+        assertThat(ticks, equalTo(1000));
+        assertThat(scheduler.getNextTickTime(), equalTo(1_000 + 1000 * TICK_NANOS));
+        assertThat(scheduler.getLastLatenessNanos(), equalTo(50_000L));
+    }
+
+    @Test
+    public void testNoTicksBeforeDeadline() {
+        PhysicsTickScheduler scheduler = new PhysicsTickScheduler();
+        assertThat(scheduler.pollDueTicks(0, TICK_NANOS, 5), equalTo(1));
+        assertThat(scheduler.pollDueTicks(TICK_NANOS - 1, TICK_NANOS, 5), equalTo(0));
+        assertThat(scheduler.pollDueTicks(TICK_NANOS, TICK_NANOS, 5), equalTo(1));
+    }
+
+    @Test
+    public void testCatchUpAfterSlowTick() {
+        PhysicsTickScheduler scheduler = new PhysicsTickScheduler();
+        scheduler.pollDueTicks(0, TICK_NANOS, 5);
+        // The first tick took 3.5 ticks, so the three ticks that were due in the meantime get run back to back
+        assertThat(scheduler.pollDueTicks(35 * TICK_NANOS / 10, TICK_NANOS, 5), equalTo(3));
+        assertThat(scheduler.getLastDroppedTicks(), equalTo(0));
+        assertThat(scheduler.getNextTickTime(), equalTo(4 * TICK_NANOS));
+    }
+
+    @Test
+    public void testCatchUpIsBounded() {
+        PhysicsTickScheduler scheduler = new PhysicsTickScheduler();
+        scheduler.pollDueTicks(0, TICK_NANOS, 5);
+        long now = 100 * TICK_NANOS + 1;
+        assertThat(scheduler.pollDueTicks(now, TICK_NANOS, 5), equalTo(5));
+        assertThat(scheduler.getLastDroppedTicks(), equalTo(95));
+        // The dropped ticks are forgotten, the next deadline is the next tick boundary after now
+        assertThat(scheduler.getNextTickTime(), greaterThanOrEqualTo(now));
+        assertThat(scheduler.getNextTickTime() - now, lessThan(TICK_NANOS));
+    }
+
+    @Test
+    public void testResetStartsNewSchedule() {
+        PhysicsTickScheduler scheduler = new PhysicsTickScheduler();
+        scheduler.pollDueTicks(0, TICK_NANOS, 5);
+        scheduler.reset();
+        // Time spent paused isn't caught up on
+        assertThat(scheduler.pollDueTicks(1000 * TICK_NANOS, TICK_NANOS, 5), equalTo(1));
+        assertThat(scheduler.getLastDroppedTicks(), equalTo(0));
+        assertThat(scheduler.getNextTickTime(), equalTo(1001 * TICK_NANOS));
+    }
+
+    @Test
+    public void testWaitUntilIsPrecise() {
+        long deadline = System.nanoTime() + 2_500_000;
+        PhysicsTickScheduler.waitUntil(deadline);
+        assertThat(System.nanoTime() - deadline, greaterThanOrEqualTo(0L));
+    }
+}
@@ -0,0 +1,119 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.collision.ShipPairCollisionTask;
+import org.valkyrienskies.mod.common.physics.RigidBodyStore;
+import org.valkyrienskies.mod.common.physics.TestPipelineShip;
+
+public class ShipPhysicsPipelineTest {
+
+    private static final double TICK_TIME = .05;
+
+    /**
+     * Steps two copies of the same ships, one with {@link ShipPhysicsPipeline#tickSerial(List, int[], double[])} and
+     * the other with {@link ShipPhysicsPipeline#tickParallel(List, int[], double[])}, and checks that every body and
+     * every contact applied comes out bit for bit the same. Ships are skipped or split into several steps on some
+     * ticks, and some of them collide with each other, so every path through both pipelines is taken.
+     */
+    @Test
+    public void testParallelMatchesSerial() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            RigidBodyStore serialStore = new RigidBodyStore();
+            RigidBodyStore parallelStore = new RigidBodyStore();
+            List<TestPipelineShip> serialShips = createShips(serialStore, new Random(0), 24, .25);
+            List<TestPipelineShip> parallelShips = createShips(parallelStore, new Random(0), 24, .25);
+            ShipPhysicsPipeline<TestPipelineShip, TestPipelineShip.GroundCollisionTask> serialPipeline =
+                new ShipPhysicsPipeline<>(serialStore, new TestPairCollider(), pool);
+            ShipPhysicsPipeline<TestPipelineShip, TestPipelineShip.GroundCollisionTask> parallelPipeline =
+                new ShipPhysicsPipeline<>(parallelStore, new TestPairCollider(), pool);
+
+            Random stepRandom = new Random(1);
+            int[] stepCounts = new int[serialShips.size()];
+            double[] stepTimes = new double[serialShips.size()];
+            for (int tick = 0; tick < 100; tick++) {
+                for (int i = 0; i < stepCounts.length; i++) {
+                    stepCounts[i] = stepRandom.nextInt(4);
+                    stepTimes[i] = stepCounts[i] == 0 ? 0 : TICK_TIME / stepCounts[i];
+                }
+                serialPipeline.tickSerial(serialShips, stepCounts, stepTimes);
+                parallelPipeline.tickParallel(parallelShips, stepCounts, stepTimes);
+            }
+
+            double[][] serialBodies = TestPipelineShip.getBodyArrays(serialStore);
+            double[][] parallelBodies = TestPipelineShip.getBodyArrays(parallelStore);
+            for (int array = 0; array < serialBodies.length; array++) {
+                assertThat("Body array " + array, Arrays.equals(serialBodies[array], parallelBodies[array]),
+                    is(true));
+            }
+            int contactCount = 0;
+            for (int i = 0; i < serialShips.size(); i++) {
+                double[] serialContacts = serialShips.get(i).getAppliedContacts().toArray();
+                double[] parallelContacts = parallelShips.get(i).getAppliedContacts().toArray();
+                assertThat("Contacts of ship " + i, Arrays.equals(serialContacts, parallelContacts), is(true));
+                contactCount += serialContacts.length;
+            }
+            // Otherwise the narrow phase wasn't tested at all
+            assertThat(contactCount, greaterThan(0));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Creates shipCount ships next to each other, falling onto the ground. Each ship collides with other ships with a
+     * chance of collidingChance.
+     */
+    static List<TestPipelineShip> createShips(RigidBodyStore store, Random random, int shipCount,
+        double collidingChance) {
+        List<TestPipelineShip> ships = new ArrayList<>(shipCount);
+        for (int i = 0; i < shipCount; i++) {
+            Vector3d position = new Vector3d(i * 20 + random.nextDouble(), 1 + random.nextDouble() * 2,
+                random.nextDouble());
+            TestPipelineShip ship = TestPipelineShip.createRandom(store, random, position, 8);
+            ship.setColliding(random.nextDouble() < collidingChance);
+            ships.add(ship);
+        }
+        return ships;
+    }
+
+    /**
+     * Every colliding ship of a step is pushed against the next colliding ship of that step.
+     */
+    static class TestPairCollider implements IShipPairCollider<TestPipelineShip> {
+
+        private final List<TestPipelineShip> collidingShips = new ArrayList<>();
+
+        @Override
+        public boolean isColliding(TestPipelineShip ship) {
+            return ship.isColliding();
+        }
+
+        @Override
+        public void splitIntoCollisionTasks(List<TestPipelineShip> shipsInStep, List<ShipPairCollisionTask> toAdd) {
+            collidingShips.clear();
+            for (TestPipelineShip ship : shipsInStep) {
+                if (ship.isColliding()) {
+                    collidingShips.add(ship);
+                }
+            }
+        }
+
+        @Override
+        public void processCollisionTasks() {
+            for (int i = 1; i < collidingShips.size(); i++) {
+                collidingShips.get(i - 1).pushAgainst(collidingShips.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.physics.RigidBodyStore;
+import org.valkyrienskies.mod.common.physics.TestPipelineShip;
+import org.valkyrienskies.mod.common.util.BenchmarkUtil;
+
+/**
+ * How the serial and parallel pipelines of {@link ShipPhysicsPipeline} compare for a given number of ships, without
+ * having to spawn that many ships in a world first. The ships are the synthetic ships of
+ * {@link ShipPhysicsPipelineTest}, none of which collide with each other.
+ */
+@Tag("benchmark")
+public class ShipPipelineBenchmark {
+
+    private static final double STEP_TIME = .05;
+    private static final int TICKS = 20;
+
+    @Test
+    public void benchmarkSerialAgainstParallel() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (int shipCount : new int[] {1, 4, 16, 64}) {
+                RigidBodyStore serialStore = new RigidBodyStore();
+                RigidBodyStore parallelStore = new RigidBodyStore();
+                List<TestPipelineShip> serialShips =
+                    ShipPhysicsPipelineTest.createShips(serialStore, new Random(0), shipCount, 0);
+                List<TestPipelineShip> parallelShips =
+                    ShipPhysicsPipelineTest.createShips(parallelStore, new Random(0), shipCount, 0);
+                ShipPhysicsPipeline<TestPipelineShip, TestPipelineShip.GroundCollisionTask> serialPipeline =
+                    new ShipPhysicsPipeline<>(serialStore, new ShipPhysicsPipelineTest.TestPairCollider(), pool);
+                ShipPhysicsPipeline<TestPipelineShip, TestPipelineShip.GroundCollisionTask> parallelPipeline =
+                    new ShipPhysicsPipeline<>(parallelStore, new ShipPhysicsPipelineTest.TestPairCollider(), pool);
+                int[] stepCounts = new int[shipCount];
+                double[] stepTimes = new double[shipCount];
+                Arrays.fill(stepCounts, 1);
+                Arrays.fill(stepTimes, STEP_TIME);
+
+                long serialTime = BenchmarkUtil.bestOf(10, () -> {
+                    for (int tick = 0; tick < TICKS; tick++) {
+                        serialPipeline.tickSerial(serialShips, stepCounts, stepTimes);
+                    }
+                });
+                long parallelTime = BenchmarkUtil.bestOf(10, () -> {
+                    for (int tick = 0; tick < TICKS; tick++) {
+                        parallelPipeline.tickParallel(parallelShips, stepCounts, stepTimes);
+                    }
+                });
+                System.out.printf("%d ships: serial %.3f ms per tick, parallel %.3f ms per tick, %.2fx%n", shipCount,
+                    serialTime / 1e6 / TICKS, parallelTime / 1e6 / TICKS, (double) serialTime / parallelTime);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}